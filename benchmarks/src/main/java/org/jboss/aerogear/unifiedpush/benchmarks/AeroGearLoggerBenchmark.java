@@ -0,0 +1,67 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.benchmarks;
+
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The encoding of log messages done by the {@link AeroGearLogger}. The message is encoded before the level is checked,
+ * so logging with the level switched off measures the encoding alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AeroGearLoggerBenchmark {
+
+    private static final String PLAIN_MESSAGE = "Sending: 1000 GCM notifications for variant 7f1d3f40-cd4b-4bd4-9d41-1df7ae6d11ea";
+    private static final String ESCAPED_MESSAGE = "Installation <alias='john@example.com'> & \"device\" registered\r\nfor variant 7f1d3f40";
+
+    private AeroGearLogger logger;
+
+    @Setup
+    public void setUp() {
+        logger = AeroGearLogger.getInstance(AeroGearLoggerBenchmark.class);
+        Logger.getLogger(AeroGearLoggerBenchmark.class.getSimpleName()).setLevel(Level.OFF);
+    }
+
+    @Benchmark
+    public void plainMessage() {
+        logger.fine(PLAIN_MESSAGE);
+    }
+
+    @Benchmark
+    public void escapedMessage() {
+        logger.fine(ESCAPED_MESSAGE);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.benchmarks;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.api.SimplePushVariant;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.api.WindowsVariant;
+import org.jboss.aerogear.unifiedpush.api.iOSVariant;
+import org.jboss.aerogear.unifiedpush.api.validation.DeviceTokenValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of the device token of a registering installation, for a valid and an invalid token of each variant type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceTokenValidatorBenchmark {
+
+    @Param({"IOS", "ANDROID", "WINDOWS", "SIMPLE_PUSH"})
+    private VariantType type;
+
+    private DeviceTokenValidator validator;
+    private Installation validInstallation;
+    private Installation invalidInstallation;
+
+    @Setup
+    public void setUp() {
+        validator = new DeviceTokenValidator();
+
+        final Variant variant = createVariant(type);
+        validInstallation = createInstallation(variant, tokenFor(type));
+        // a token that only fails at its very end, the most expensive rejection
+        invalidInstallation = createInstallation(variant, tokenFor(type) + "\n");
+    }
+
+    @Benchmark
+    public boolean validToken() {
+        return validator.isValid(validInstallation, null);
+    }
+
+    @Benchmark
+    public boolean invalidToken() {
+        return validator.isValid(invalidInstallation, null);
+    }
+
+    private static Installation createInstallation(Variant variant, String deviceToken) {
+        final Installation installation = new Installation();
+        installation.setVariant(variant);
+        installation.setDeviceToken(deviceToken);
+        return installation;
+    }
+
+    private static Variant createVariant(VariantType type) {
+        switch (type) {
+            case IOS:
+                return new iOSVariant();
+            case ANDROID:
+                return new AndroidVariant();
+            case WINDOWS:
+                return new WindowsVariant();
+            case SIMPLE_PUSH:
+                return new SimplePushVariant();
+            default:
+                throw new IllegalArgumentException("unsupported variant type " + type);
+        }
+    }
+
+    private static String tokenFor(VariantType type) {
+        switch (type) {
+            case IOS:
+                return repeat("0123456789abcdef", 4);
+            case ANDROID:
+                return "APA91b" + repeat("Fx_9-kLq2Zr", 15);
+            case WINDOWS:
+                return "https://db3.notify.windows.com/?token=" + repeat("AwYAAAD", 20);
+            case SIMPLE_PUSH:
+                return "https://updates.push.services.mozilla.com/update/" + repeat("a1b2c3d4", 8);
+            default:
+                throw new IllegalArgumentException("unsupported variant type " + type);
+        }
+    }
+
+    private static String repeat(String value, int times) {
+        final StringBuilder builder = new StringBuilder(value.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
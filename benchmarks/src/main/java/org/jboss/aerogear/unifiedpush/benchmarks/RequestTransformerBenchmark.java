@@ -0,0 +1,89 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.benchmarks;
+
+import org.jboss.aerogear.unifiedpush.rest.util.RequestTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transformation of a sender request of api version 100 to the current format, as done by the version filter for every
+ * request of an older client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestTransformerBenchmark {
+
+    private static final String SENDER_REQUEST_100 = "{" +
+            "\"alias\":[\"someUsername\"]," +
+            "\"deviceType\":[\"someDevice\"]," +
+            "\"categories\":[\"someCategories\"]," +
+            "\"variants\":[\"someVariantIDs\"]," +
+            "\"ttl\":3600," +
+            "\"message\":{" +
+            "\"key\":\"value\"," +
+            "\"key2\":\"other value\"," +
+            "\"alert\":\"HELLO!\"," +
+            "\"action-category\":\"some value\"," +
+            "\"sound\":\"default\"," +
+            "\"badge\":2," +
+            "\"content-available\":true" +
+            "}," +
+            "\"simple-push\":\"version=123\"" +
+            "}";
+
+    private RequestTransformer transformer;
+    private byte[] request;
+    private StringBuilder requestBuilder;
+
+    @Setup
+    public void setUp() {
+        transformer = new RequestTransformer();
+        request = SENDER_REQUEST_100.getBytes(Charset.forName("UTF-8"));
+        requestBuilder = new StringBuilder(SENDER_REQUEST_100);
+    }
+
+    @Benchmark
+    public byte[] transformBytes() {
+        return transformer.transform("/rest/sender", "100", request);
+    }
+
+    @Benchmark
+    public StringBuilder transformStringBuilder() {
+        return transformer.transform("/rest/sender", "100", requestBuilder);
+    }
+
+    @Benchmark
+    public byte[] unknownVersion() {
+        return transformer.transform("/rest/sender", "99", request);
+    }
+}
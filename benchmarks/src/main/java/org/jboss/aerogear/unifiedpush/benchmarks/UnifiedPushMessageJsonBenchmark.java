@@ -0,0 +1,142 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.benchmarks;
+
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of a push message from the parsed request, and its serialization for the push message history: the
+ * streaming {@link UnifiedPushMessage#toJsonString()} against the string concatenation it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnifiedPushMessageJsonBenchmark {
+
+    /**
+     * Number of user parameters in the message.
+     */
+    @Param({"2", "50"})
+    private int dataKeys;
+
+    private Map<String, Object> messageObject;
+    private UnifiedPushMessage message;
+
+    @Setup
+    public void setUp() {
+        messageObject = new LinkedHashMap<String, Object>();
+
+        messageObject.put("alert", "Kickoff in 10 minutes: Germany - Brazil");
+        messageObject.put("sound", "default");
+        messageObject.put("badge", 2);
+        for (int i = 0; i < dataKeys; i++) {
+            messageObject.put("key" + i, "some value of the key " + i);
+        }
+
+        message = new UnifiedPushMessage(request());
+        message.setIpAddress("10.0.0.1");
+        message.setClientIdentifier("admin");
+    }
+
+    /**
+     * Includes copying the parsed request, the constructor takes the message keys out of it.
+     */
+    @Benchmark
+    public UnifiedPushMessage construction() {
+        return new UnifiedPushMessage(request());
+    }
+
+    @Benchmark
+    public String concatenated() {
+        return LegacyJson.toJsonString(message);
+    }
+
+    @Benchmark
+    public String streaming() {
+        return message.toJsonString();
+    }
+
+    @Benchmark
+    public String streamingShortened() {
+        return message.toJsonString(4500);
+    }
+
+    private Map<String, Object> request() {
+        final Map<String, Object> container = new LinkedHashMap<String, Object>();
+        container.put("message", new LinkedHashMap<String, Object>(messageObject));
+        return container;
+    }
+
+    /**
+     * The former implementation of {@link UnifiedPushMessage#toJsonString()}, the baseline.
+     */
+    static final class LegacyJson {
+
+        private LegacyJson() {
+        }
+
+        static String toJsonString(UnifiedPushMessage message) {
+            return "{" +
+                    "\"ipAddress\":\"" + message.getIpAddress() + "\"," +
+                    "\"clientIdentifier\":\"" + message.getClientIdentifier() + "\"," +
+                    "\"simplePush\":\"" + message.getSimplePush() + "\"," +
+                    "\"alert\":\"" + message.getAlert() + "\"," +
+                    "\"action-category\":\"" + message.getActionCategory() + "\"," +
+                    "\"sound\":\"" + message.getSound() + "\"," +
+                    "\"contentAvailable\":" + message.isContentAvailable() + "," +
+                    "\"badge\":" + message.getBadge() + "," +
+                    "\"timeToLive\":" + message.getTimeToLive() + "," +
+                    "\"data\":" + toJson(message.getData()) +
+                    "}";
+        }
+
+        private static String toJson(Map<String, Object> map) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            if (map != null) {
+                for (Iterator<Map.Entry<String, Object>> iterator = map.entrySet().iterator(); iterator.hasNext(); ) {
+                    Map.Entry<String, Object> entry = iterator.next();
+                    sb.append("\"").append(entry.getKey()).append("\":\"").append(entry.getValue()).append("\"");
+                    if (iterator.hasNext()) {
+                        sb.append(",");
+                    }
+                }
+            }
+            sb.append("}");
+            return sb.toString();
+        }
+    }
+}
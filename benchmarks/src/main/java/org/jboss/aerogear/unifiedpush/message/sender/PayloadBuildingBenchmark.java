@@ -0,0 +1,86 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import com.google.android.gcm.server.Message;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of the APNs and GCM payloads of a push message. The senders render the payload once per message, these
+ * benchmarks call the renderers directly so every invocation does the full work.
+ * <p>
+ * Lives in the package of the senders to reach their package visible renderers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBuildingBenchmark {
+
+    /**
+     * Number of user parameters in the message.
+     */
+    @Param({"2", "10"})
+    private int dataKeys;
+
+    private UnifiedPushMessage message;
+
+    @Setup
+    public void setUp() {
+        final Map<String, Object> container = new LinkedHashMap<String, Object>();
+        final Map<String, Object> messageObject = new LinkedHashMap<String, Object>();
+
+        messageObject.put("alert", "Kickoff in 10 minutes: Germany - Brazil");
+        messageObject.put("sound", "default");
+        messageObject.put("badge", 2);
+        messageObject.put("action-category", "MATCH");
+        for (int i = 0; i < dataKeys; i++) {
+            messageObject.put("key" + i, "value " + i);
+        }
+
+        container.put("message", messageObject);
+        container.put("ttl", 3600);
+        message = new UnifiedPushMessage(container);
+    }
+
+    @Benchmark
+    public String apnsPayload() {
+        return APNsPushNotificationSender.APNS_PAYLOAD.render(message);
+    }
+
+    @Benchmark
+    public Message gcmMessage() {
+        return GCMPushNotificationSender.GCM_MESSAGE.render(message);
+    }
+}
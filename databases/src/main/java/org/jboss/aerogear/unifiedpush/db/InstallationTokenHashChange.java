@@ -0,0 +1,115 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.db;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import org.jboss.aerogear.unifiedpush.utils.DeviceTokenUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Fills the <code>tokenHash</code> column of the existing installations, using the same hash as the server
+ * ({@link DeviceTokenUtils#hash(String)}). Unlike the hash functions of the databases, this needs no extension or
+ * extra privileges (e.g. <code>pgcrypto</code> on PostgreSQL).
+ *
+ * The installations are read in pages of {@link #PAGE_SIZE}, ordered by their id.
+ */
+public class InstallationTokenHashChange implements CustomTaskChange {
+
+    static final int PAGE_SIZE = 1000;
+
+    private int updated;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        final Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+
+        PreparedStatement select = null;
+        PreparedStatement update = null;
+        try {
+            select = connection.prepareStatement("SELECT id, deviceToken FROM Installation WHERE tokenHash IS NULL AND id > ? ORDER BY id");
+            select.setMaxRows(PAGE_SIZE);
+            update = connection.prepareStatement("UPDATE Installation SET tokenHash = ? WHERE id = ?");
+
+            String lastId = "";
+            int read;
+            do {
+                read = 0;
+                select.setString(1, lastId);
+                final ResultSet page = select.executeQuery();
+                try {
+                    while (page.next()) {
+                        lastId = page.getString(1);
+                        update.setString(1, DeviceTokenUtils.hash(page.getString(2)));
+                        update.setString(2, lastId);
+                        update.addBatch();
+                        read++;
+                    }
+                } finally {
+                    page.close();
+                }
+
+                if (read > 0) {
+                    update.executeBatch();
+                    updated += read;
+                }
+            } while (read == PAGE_SIZE);
+        } catch (SQLException e) {
+            throw new CustomChangeException("Could not hash the device tokens of the installations", e);
+        } finally {
+            close(select);
+            close(update);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Hashed the device tokens of " + updated + " installations";
+    }
+
+    @Override
+    public void setUp() throws SetupException {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+
+    private static void close(PreparedStatement statement) {
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.metrics;
+
+import org.jboss.aerogear.unifiedpush.message.dispatch.DispatchPipeline;
+import org.jboss.aerogear.unifiedpush.message.dispatch.DispatchStage;
+import org.jboss.aerogear.unifiedpush.message.sender.GCMForChromeAccessTokenCache;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.List;
+
+@Stateless
+@Path("/metrics/dispatch")
+public class DispatchMetricsEndpoint {
+
+    @Inject
+    private DispatchPipeline dispatchPipeline;
+
+    @Inject
+    private GCMForChromeAccessTokenCache chromeAccessTokenCache;
+
+    /**
+     * Queue depth, worker usage and rejected jobs of every stage of the dispatch pipeline.
+     *
+     * @return list of stages
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response dispatchStages() {
+        final List<DispatchStage> stages = dispatchPipeline.getStages();
+
+        return Response.ok(stages).build();
+    }
+
+    /**
+     * Hits, misses and refresh latency of the shared access token cache for the GCM for Chrome applications.
+     *
+     * @return statistics of the cache
+     */
+    @GET
+    @Path("/chrome-tokens")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response chromeAccessTokens() {
+        return Response.ok(chromeAccessTokenCache.getStatistics()).build();
+    }
+}
@@ -18,13 +18,18 @@ package org.jboss.aerogear.unifiedpush.rest.metrics;
 
 import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
+import org.jboss.aerogear.unifiedpush.rest.util.ContinuationToken;
 import org.jboss.aerogear.unifiedpush.service.metrics.PushMessageMetricsService;
 
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.Date;
+import java.util.List;
 
 import static org.jboss.aerogear.unifiedpush.rest.util.HttpRequestUtil.extractSortingQueryParamValue;
 
@@ -44,23 +49,37 @@ public class PushMetricsEndpoint {
             @PathParam("id") String id,
             @QueryParam("page") Integer page,
             @QueryParam("per_page") Integer pageSize,
-            @QueryParam("sort") String sorting) {
+            @QueryParam("sort") String sorting,
+            @QueryParam("after") String after,
+            @QueryParam("exact") boolean exactCount,
+            @Context UriInfo uri) {
 
         pageSize = parsePageSize(pageSize);
 
-        if (page == null) {
-            page = 0;
-        }
-
         if (id == null) {
             return Response.status(Response.Status.NOT_FOUND).entity("Could not find requested information").build();
         }
 
-        PageResult<PushMessageInformation> pageResult =
-                metricsService.findAllForPushApplication(id, extractSortingQueryParamValue(sorting), page, pageSize);
+        final boolean ascending = extractSortingQueryParamValue(sorting);
+
+        if (page != null && after == null) {
+            PageResult<PushMessageInformation> pageResult =
+                    metricsService.findAllForPushApplication(id, ascending, page, pageSize);
+
+            return Response.ok(pageResult.getResultList())
+                    .header("total", pageResult.getCount()).build();
+        }
+
+        final Position position = Position.of(after);
+        if (position == null) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid continuation token").build();
+        }
+
+        final List<PushMessageInformation> messages =
+                metricsService.findAllForPushApplicationAfter(id, ascending, position.submitDate, position.id, pageSize);
 
-        return Response.ok(pageResult.getResultList())
-                .header("total", pageResult.getCount()).build();
+        return continuedPage(messages, pageSize, after, uri)
+                .header("total", metricsService.countForPushApplication(id, exactCount)).build();
     }
 
     @GET
@@ -70,23 +89,86 @@ public class PushMetricsEndpoint {
             @PathParam("id") String id,
             @QueryParam("page") Integer page,
             @QueryParam("per_page") Integer pageSize,
-            @QueryParam("sort") String sorting) {
+            @QueryParam("sort") String sorting,
+            @QueryParam("after") String after,
+            @QueryParam("exact") boolean exactCount,
+            @Context UriInfo uri) {
 
         pageSize = parsePageSize(pageSize);
 
-        if (page == null) {
-            page = 0;
-        }
-
         if (id == null) {
             return Response.status(Response.Status.NOT_FOUND).entity("Could not find requested information").build();
         }
 
-        PageResult<PushMessageInformation> pageResult =
-                metricsService.findAllForVariant(id, extractSortingQueryParamValue(sorting), page, pageSize);
+        final boolean ascending = extractSortingQueryParamValue(sorting);
+
+        if (page != null && after == null) {
+            PageResult<PushMessageInformation> pageResult =
+                    metricsService.findAllForVariant(id, ascending, page, pageSize);
 
-        return Response.ok(pageResult.getResultList())
-                .header("total", pageResult.getCount()).build();
+            return Response.ok(pageResult.getResultList())
+                    .header("total", pageResult.getCount()).build();
+        }
+
+        final Position position = Position.of(after);
+        if (position == null) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid continuation token").build();
+        }
+
+        final List<PushMessageInformation> messages =
+                metricsService.findAllForVariantAfter(id, ascending, position.submitDate, position.id, pageSize);
+
+        return continuedPage(messages, pageSize, after, uri)
+                .header("total", metricsService.countForVariant(id, exactCount)).build();
+    }
+
+    /**
+     * Response with the messages of a keyset page, and the links to the first and the next page.
+     */
+    private Response.ResponseBuilder continuedPage(List<PushMessageInformation> messages, int pageSize, String after, UriInfo uri) {
+        // a full page might be followed by more:
+        String nextToken = null;
+        if (messages.size() == pageSize) {
+            final PushMessageInformation last = messages.get(messages.size() - 1);
+            nextToken = ContinuationToken.encode(String.valueOf(last.getSubmitDate().getTime()), last.getId());
+        }
+
+        return Response.ok(messages)
+                .header("Link", ContinuationToken.getLinkHeader(nextToken, after != null, uri).toString());
+    }
+
+    /**
+     * Sort key (submit date and ID) of the last message of the previous page.
+     */
+    private static final class Position {
+        private static final Position FIRST_PAGE = new Position(null, null);
+
+        private final Date submitDate;
+        private final String id;
+
+        private Position(Date submitDate, String id) {
+            this.submitDate = submitDate;
+            this.id = id;
+        }
+
+        /**
+         * Returns the position encoded in the given continuation token, or <code>null</code> for an invalid token.
+         */
+        static Position of(String continuationToken) {
+            if (continuationToken == null) {
+                return FIRST_PAGE;
+            }
+
+            final String[] values = ContinuationToken.decode(continuationToken, 2);
+            if (values == null) {
+                return null;
+            }
+            try {
+                return new Position(new Date(Long.parseLong(values[0])), values[1]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
     }
 
     private Integer parsePageSize(Integer pageSize) {
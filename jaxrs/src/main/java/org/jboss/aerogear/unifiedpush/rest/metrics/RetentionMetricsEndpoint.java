@@ -0,0 +1,46 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.metrics;
+
+import org.jboss.aerogear.unifiedpush.service.metrics.DeleteOldPushMessageInformationScheduler;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@Stateless
+@Path("/metrics/retention")
+public class RetentionMetricsEndpoint {
+
+    @Inject
+    private DeleteOldPushMessageInformationScheduler retentionJob;
+
+    /**
+     * Progress of the running deletion of outdated push message information, and the outcome of the last one.
+     *
+     * @return statistics of the retention job
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response retentionStatistics() {
+        return Response.ok(retentionJob.getStatistics()).build();
+    }
+}
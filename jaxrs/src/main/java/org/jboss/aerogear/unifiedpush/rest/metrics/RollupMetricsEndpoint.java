@@ -0,0 +1,137 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.metrics;
+
+import org.jboss.aerogear.unifiedpush.api.PushMetricRollup;
+import org.jboss.aerogear.unifiedpush.api.RollupPeriod;
+import org.jboss.aerogear.unifiedpush.service.metrics.PushMetricRollupService;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Hourly and daily delivery numbers of the PushApplications and Variants, for charts over long periods.
+ *
+ * The <code>period</code> query parameter is either <code>hour</code> or <code>day</code> (default), <code>from</code>
+ * and <code>to</code> are milliseconds since the epoch. Without a range, the last 30 days (or 48 hours) are returned.
+ */
+@Stateless
+@Path("/metrics/rollups")
+public class RollupMetricsEndpoint {
+
+    private static final long HOUR_MILLIS = 60L * 60 * 1000;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    // upper bound of the number of buckets of one request
+    private static final long MAX_HOURS = 31 * 24;
+    private static final long MAX_DAYS = 3 * 366;
+
+    @Inject
+    private PushMetricRollupService rollupService;
+
+    @GET
+    @Path("/application/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response rollupsPerApplication(
+            @PathParam("id") String id,
+            @QueryParam("period") String period,
+            @QueryParam("from") Long from,
+            @QueryParam("to") Long to) {
+
+        final Range range = Range.of(period, from, to);
+        if (range == null) {
+            return invalidRange();
+        }
+
+        final List<PushMetricRollup> rollups = rollupService.findForPushApplication(id, range.period, range.from, range.to);
+
+        return Response.ok(rollups).build();
+    }
+
+    @GET
+    @Path("/variant/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response rollupsPerVariant(
+            @PathParam("id") String id,
+            @QueryParam("period") String period,
+            @QueryParam("from") Long from,
+            @QueryParam("to") Long to) {
+
+        final Range range = Range.of(period, from, to);
+        if (range == null) {
+            return invalidRange();
+        }
+
+        final List<PushMetricRollup> rollups = rollupService.findForVariant(id, range.period, range.from, range.to);
+
+        return Response.ok(rollups).build();
+    }
+
+    private static Response invalidRange() {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity("Invalid period or range, up to " + MAX_HOURS + " hours or " + MAX_DAYS + " days can be requested at once").build();
+    }
+
+    /**
+     * The requested buckets.
+     */
+    private static final class Range {
+        private final RollupPeriod period;
+        private final Date from;
+        private final Date to;
+
+        private Range(RollupPeriod period, Date from, Date to) {
+            this.period = period;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Returns the requested range, or <code>null</code> for an unknown period or a too large (or empty) range.
+         */
+        static Range of(String period, Long from, Long to) {
+            final RollupPeriod rollupPeriod;
+            if (period == null || "day".equalsIgnoreCase(period)) {
+                rollupPeriod = RollupPeriod.DAY;
+            } else if ("hour".equalsIgnoreCase(period)) {
+                rollupPeriod = RollupPeriod.HOUR;
+            } else {
+                return null;
+            }
+
+            final long periodMillis = rollupPeriod == RollupPeriod.HOUR ? HOUR_MILLIS : DAY_MILLIS;
+            final long maxBuckets = rollupPeriod == RollupPeriod.HOUR ? MAX_HOURS : MAX_DAYS;
+
+            final long end = to != null ? to : System.currentTimeMillis();
+            final long start = from != null ? from : end - (rollupPeriod == RollupPeriod.HOUR ? 48 * HOUR_MILLIS : 30 * DAY_MILLIS);
+            if (start >= end || (end - start) / periodMillis > maxBuckets) {
+                return null;
+            }
+
+            return new Range(rollupPeriod, rollupPeriod.startOf(new Date(start)), new Date(end));
+        }
+    }
+}
@@ -109,6 +109,7 @@ public class AndroidVariantEndpoint extends AbstractVariantEndpoint {
             // apply updated data:
             androidVariant.setGoogleKey(updatedAndroidApplication.getGoogleKey());
             androidVariant.setProjectNumber(updatedAndroidApplication.getProjectNumber());
+            androidVariant.setPagesInFlight(updatedAndroidApplication.getPagesInFlight());
             androidVariant.setName(updatedAndroidApplication.getName());
             androidVariant.setDescription(updatedAndroidApplication.getDescription());
             variantService.updateVariant(androidVariant);
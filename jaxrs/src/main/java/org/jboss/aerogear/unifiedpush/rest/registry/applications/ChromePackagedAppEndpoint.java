@@ -18,8 +18,10 @@ package org.jboss.aerogear.unifiedpush.rest.registry.applications;
 
 import org.jboss.aerogear.unifiedpush.api.ChromePackagedAppVariant;
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
+import org.jboss.aerogear.unifiedpush.message.sender.GCMForChromeAccessTokenCache;
 
 import javax.ejb.Stateless;
+import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -37,6 +39,9 @@ import java.util.UUID;
 @Path("/applications/{pushAppID}/chrome")
 public class ChromePackagedAppEndpoint extends AbstractVariantEndpoint {
 
+    @Inject
+    private GCMForChromeAccessTokenCache accessTokenCache;
+
     // ===============================================================
     // =============== Mobile variant construct ======================
     // ===============     Chrome Packaged App  ======================
@@ -98,6 +103,9 @@ public class ChromePackagedAppEndpoint extends AbstractVariantEndpoint {
                 return Response.status(Response.Status.BAD_REQUEST).build();
             }
 
+            // the cached access token was issued for the old credentials:
+            accessTokenCache.invalidate(chromePackagedAppVariant.getClientId());
+
             // apply updated data:
             chromePackagedAppVariant.setClientId(updatedChromePackagedApplication.getClientId());
             chromePackagedAppVariant.setClientSecret(updatedChromePackagedApplication.getClientSecret());
@@ -19,6 +19,7 @@ package org.jboss.aerogear.unifiedpush.rest.registry.applications;
 
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
+import org.jboss.aerogear.unifiedpush.rest.util.ContinuationToken;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
 import org.jboss.aerogear.unifiedpush.service.impl.SearchManager;
 import org.jboss.resteasy.spi.Link;
@@ -38,6 +39,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import java.util.List;
 
 
 @Stateless
@@ -52,25 +54,58 @@ public class InstallationManagementEndpoint {
     @Inject
     private ClientInstallationService clientInstallationService;
 
+    /**
+     * Lists the installations of the given variant.
+     *
+     * Clients that pass a <code>page</code> number get offset based pages, with the exact total in the
+     * <code>total</code> header. Without a <code>page</code> number, pages are continued by the (opaque) token of the
+     * <code>next</code> link, which stays fast on deep pages; the <code>total</code> header is then a recently counted
+     * total, unless <code>exact=true</code> is given.
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response findInstallations(@PathParam("variantID") String variantId, @QueryParam("page") Integer page,
-                                      @QueryParam("per_page") Integer pageSize, @Context UriInfo uri) {
+                                      @QueryParam("per_page") Integer pageSize, @QueryParam("after") String after,
+                                      @QueryParam("exact") boolean exactCount, @Context UriInfo uri) {
         if (pageSize != null) {
             pageSize = Math.min(MAX_PAGE_SIZE, pageSize);
         } else {
             pageSize = DEFAULT_PAGE_SIZE;
         }
 
-        if (page == null) {
-            page = 0;
-        }
-
         //Find the variant using the variantID
         if (!searchManager.getSearchService().existsVariantIDForDeveloper(variantId)) {
             return Response.status(Response.Status.NOT_FOUND).entity("Could not find requested Variant").build();
         }
 
+        if (page != null && after == null) {
+            return findInstallationsPage(variantId, page, pageSize, uri);
+        }
+
+        String lastInstallationId = null;
+        if (after != null) {
+            final String[] position = ContinuationToken.decode(after, 1);
+            if (position == null) {
+                return Response.status(Response.Status.BAD_REQUEST).entity("Invalid continuation token").build();
+            }
+            lastInstallationId = position[0];
+        }
+
+        final List<Installation> installations = clientInstallationService.findInstallationsByVariantAfter(variantId, lastInstallationId, pageSize);
+
+        // a full page might be followed by more:
+        String nextToken = null;
+        if (installations.size() == pageSize) {
+            nextToken = ContinuationToken.encode(installations.get(installations.size() - 1).getId());
+        }
+
+        return Response.ok(installations)
+                .header("Link", ContinuationToken.getLinkHeader(nextToken, after != null, uri).toString())
+                .header("total", clientInstallationService.countInstallationsByVariant(variantId, exactCount))
+                .build();
+    }
+
+    private Response findInstallationsPage(String variantId, Integer page, Integer pageSize, UriInfo uri) {
         //Find the installations using the variantID
         PageResult<Installation> pageResult = clientInstallationService.findInstallationsByVariant(variantId, page, pageSize);
 
@@ -18,8 +18,10 @@ package org.jboss.aerogear.unifiedpush.rest.registry.applications;
 
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.api.WindowsVariant;
+import org.jboss.aerogear.unifiedpush.message.sender.WnsServiceCache;
 
 import javax.ejb.Stateless;
+import javax.inject.Inject;
 import javax.validation.ConstraintViolationException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -37,6 +39,9 @@ import javax.ws.rs.core.UriInfo;
 @Path("/applications/{pushAppID}/windows")
 public class WindowsVariantEndpoint extends AbstractVariantEndpoint {
 
+    @Inject
+    private WnsServiceCache wnsServiceCache;
+
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
@@ -100,6 +105,9 @@ public class WindowsVariantEndpoint extends AbstractVariantEndpoint {
                 return builder.build();
             }
 
+            // the cached WNS service is authenticated with the old credentials:
+            wnsServiceCache.invalidate(windowsVariant.getSid());
+
             // apply updated data:
             windowsVariant.setClientSecret(updatedWindowsVariant.getClientSecret());
             windowsVariant.setSid(updatedWindowsVariant.getSid());
@@ -19,11 +19,13 @@ package org.jboss.aerogear.unifiedpush.rest.registry.applications;
 import org.jboss.aerogear.crypto.util.PKCS12;
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.api.iOSVariant;
+import org.jboss.aerogear.unifiedpush.message.sender.ApnsServiceCache;
 import org.jboss.aerogear.unifiedpush.rest.annotations.PATCH;
 import org.jboss.aerogear.unifiedpush.rest.util.iOSApplicationUploadForm;
 import org.jboss.resteasy.annotations.providers.multipart.MultipartForm;
 
 import javax.ejb.Stateless;
+import javax.inject.Inject;
 import javax.validation.ConstraintViolationException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -43,6 +45,9 @@ import javax.ws.rs.core.UriInfo;
 @Path("/applications/{pushAppID}/ios")
 public class iOSVariantEndpoint extends AbstractVariantEndpoint {
 
+    @Inject
+    private ApnsServiceCache apnsServiceCache;
+
     // new iOS
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
@@ -161,6 +166,9 @@ public class iOSVariantEndpoint extends AbstractVariantEndpoint {
             }
 
             variantService.updateVariant(iOSVariant);
+
+            // the cached APNs connection still uses the old certificate:
+            apnsServiceCache.invalidate(iOSVariant.getVariantID());
             return Response.noContent().build();
         }
         return Response.status(Status.NOT_FOUND).entity("Could not find requested Variant").build();
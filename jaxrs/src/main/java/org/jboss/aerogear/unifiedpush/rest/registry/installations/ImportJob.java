@@ -0,0 +1,111 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.registry.installations;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a device import, as reported by the <code>/registry/device/importer/{jobId}</code> resource.
+ */
+public class ImportJob {
+
+    public enum State {
+        SUBMITTED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String variantID;
+    private final Date submitted = new Date();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+
+    private volatile State state = State.SUBMITTED;
+    private volatile Date finished;
+    private volatile String errorMessage;
+
+    public ImportJob(String variantID) {
+        this.variantID = variantID;
+    }
+
+    void started() {
+        state = State.RUNNING;
+    }
+
+    void batchImported(int processedInstallations, int importedInstallations) {
+        processed.addAndGet(processedInstallations);
+        imported.addAndGet(importedInstallations);
+    }
+
+    void completed() {
+        finished = new Date();
+        state = State.COMPLETED;
+    }
+
+    void failed(String errorMessage) {
+        this.errorMessage = errorMessage;
+        finished = new Date();
+        state = State.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getVariantID() {
+        return variantID;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isDone() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    public Date getSubmitted() {
+        return submitted;
+    }
+
+    public Date getFinished() {
+        return finished;
+    }
+
+    /**
+     * Number of installations read from the file so far.
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Number of installations stored so far, the others were duplicates or had no token.
+     */
+    public long getImported() {
+        return imported.get();
+    }
+
+    public long getSkipped() {
+        return processed.get() - imported.get();
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
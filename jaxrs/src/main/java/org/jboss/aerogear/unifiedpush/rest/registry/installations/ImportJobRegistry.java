@@ -0,0 +1,65 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.registry.installations;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the device import jobs. Finished jobs are forgotten after a day.
+ *
+ * The jobs only live in the memory of this server: they are lost on a restart, and a cluster node only knows the
+ * jobs of the imports it has received itself.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ImportJobRegistry {
+
+    private static final long RETENTION = TimeUnit.DAYS.toMillis(1);
+
+    private final ConcurrentMap<String, ImportJob> jobs = new ConcurrentHashMap<String, ImportJob>();
+
+    public ImportJob create(String variantID) {
+        final ImportJob job = new ImportJob(variantID);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    /**
+     * Returns the job with the given ID, or <code>null</code> if there is no such (or no longer a) job.
+     */
+    public ImportJob find(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    @Schedule(hour = "*", persistent = false)
+    public void removeFinishedJobs() {
+        final long oldest = System.currentTimeMillis() - RETENTION;
+        for (Iterator<ImportJob> iterator = jobs.values().iterator(); iterator.hasNext(); ) {
+            final ImportJob job = iterator.next();
+            if (job.isDone() && job.getFinished().getTime() < oldest) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.jboss.aerogear.unifiedpush.rest.registry.installations;
 
 import javax.ws.rs.FormParam;
+import java.io.InputStream;
 
 /**
  * Helper class to read values from the multipart request
@@ -24,17 +25,17 @@ import javax.ws.rs.FormParam;
  */
 public class ImporterForm {
 
-    private byte[] jsonFile;
+    private InputStream jsonFile;
 
     /**
      * Reads the uploaded JSON file from the multipart importer request.
      */
     @FormParam("file")
-    public void setJsonFile(byte[] jsonFile) {
+    public void setJsonFile(InputStream jsonFile) {
         this.jsonFile = jsonFile;
     }
 
-    public byte[] getJsonFile() {
+    public InputStream getJsonFile() {
         return jsonFile;
     }
 }
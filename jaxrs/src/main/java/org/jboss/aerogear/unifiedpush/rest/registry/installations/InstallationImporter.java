@@ -0,0 +1,104 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.registry.installations;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import javax.ejb.Asynchronous;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.jboss.aerogear.unifiedpush.rest.registry.installations.InstallationRegistrationEndpoint.mapper;
+
+/**
+ * Imports the devices of an uploaded JSON file. The file is read with the streaming parser, and the installations
+ * are stored in batches of <code>aerogear.importer.batch-size</code> (default 1000), one transaction per batch,
+ * so the size of the file does not matter.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class InstallationImporter {
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(InstallationImporter.class);
+
+    @Inject
+    private ClientInstallationService clientInstallationService;
+
+    /**
+     * Imports all devices of the given file, which is deleted afterwards.
+     */
+    @Asynchronous
+    public void importInstallations(Variant variant, File jsonFile, ImportJob job) {
+        final int batchSize = Math.max(1, ConfigurationUtils.tryGetIntegerProperty("aerogear.importer.batch-size", DEFAULT_BATCH_SIZE));
+        job.started();
+
+        try {
+            final JsonParser parser = mapper.getFactory().createParser(jsonFile);
+            try {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new JsonParseException("The import file has to contain an array of installations", parser.getCurrentLocation());
+                }
+
+                List<Installation> batch = new ArrayList<Installation>(batchSize);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    batch.add(mapper.readValue(parser, Installation.class));
+
+                    if (batch.size() == batchSize) {
+                        importBatch(variant, batch, job);
+                        batch = new ArrayList<Installation>(batchSize);
+                    }
+                }
+                if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                    throw new JsonParseException("Unexpected content in the import file", parser.getCurrentLocation());
+                }
+                importBatch(variant, batch, job);
+            } finally {
+                parser.close();
+            }
+
+            logger.info("Imported " + job.getImported() + " of " + job.getProcessed() + " devices for variant " + variant.getVariantID());
+            job.completed();
+        } catch (Exception e) {
+            logger.severe("Error when importing devices for variant " + variant.getVariantID(), e);
+            job.failed(e.getMessage());
+        } finally {
+            if (!jsonFile.delete()) {
+                logger.warning("Could not delete uploaded import file " + jsonFile);
+            }
+        }
+    }
+
+    private void importBatch(Variant variant, List<Installation> batch, ImportJob job) {
+        if (!batch.isEmpty()) {
+            job.batchImported(batch.size(), clientInstallationService.importInstallations(variant, batch));
+        }
+    }
+}
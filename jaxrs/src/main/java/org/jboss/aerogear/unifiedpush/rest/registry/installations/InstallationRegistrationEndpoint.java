@@ -16,7 +16,8 @@
  */
 package org.jboss.aerogear.unifiedpush.rest.registry.installations;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
@@ -24,6 +25,7 @@ import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
 import org.jboss.aerogear.unifiedpush.rest.util.HttpBasicHelper;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
 import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
+import org.jboss.aerogear.unifiedpush.service.registration.InstallationWriteBehindQueue;
 import org.jboss.resteasy.annotations.providers.multipart.MultipartForm;
 
 import javax.ejb.Stateless;
@@ -32,6 +34,7 @@ import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
 import javax.ws.rs.OPTIONS;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -43,8 +46,14 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriInfo;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
 
 @Stateless
 @Path("/registry/device")
@@ -59,6 +68,12 @@ public class InstallationRegistrationEndpoint {
     private ClientInstallationService clientInstallationService;
     @Inject
     private GenericVariantService genericVariantService;
+    @Inject
+    private InstallationWriteBehindQueue installationWriteBehindQueue;
+    @Inject
+    private InstallationImporter installationImporter;
+    @Inject
+    private ImportJobRegistry importJobRegistry;
 
     @OPTIONS
     @Path("{token: .*}")
@@ -128,8 +143,15 @@ public class InstallationRegistrationEndpoint {
         // otherwise we register a new installation:
         logger.finest("Mobile Application on device was launched");
 
-        // async:
-        clientInstallationService.addInstallation(variant, entity);
+        // write-behind (if enabled), otherwise async:
+        if (!installationWriteBehindQueue.enqueue(variant, entity)) {
+            if (installationWriteBehindQueue.isSynchronous()) {
+                // the device is only answered once its registration has been stored:
+                clientInstallationService.addOrUpdateInstallations(variant, Collections.singletonList(entity));
+            } else {
+                clientInstallationService.addInstallation(variant, entity);
+            }
+        }
 
         return appendAllowOriginHeader(Response.ok(entity), request);
     }
@@ -165,11 +187,17 @@ public class InstallationRegistrationEndpoint {
                     request);
         }
 
+        // the registration might not have been written yet:
+        final boolean discarded = installationWriteBehindQueue.discard(variant.getVariantID(), token);
+
         // look up all installations (with same token) for the given variant:
         Installation installation =
                 clientInstallationService.findInstallationForVariantByDeviceToken(variant.getVariantID(), token);
 
         if (installation == null) {
+            if (discarded) {
+                return appendAllowOriginHeader(Response.noContent(), request);
+            }
             return appendAllowOriginHeader(Response.status(Status.NOT_FOUND), request);
         } else {
             logger.info("Deleting metadata Installation");
@@ -215,8 +243,15 @@ public class InstallationRegistrationEndpoint {
      * ]
      * </pre>
      *
+     * A file that does not start with a JSON array is rejected right away. The rest of the file is parsed while the
+     * devices are imported: the progress, and a file with an invalid format, are reported by the import job resource,
+     * the <code>Location</code> header of the response points to.
+     *
+     * The import jobs are only kept in the memory of the server that received the upload: their status is lost when
+     * that server restarts, and is not known to the other nodes of a cluster.
+     *
      * @HTTP 200 (OK) Successful submission of import job.
-     * @HTTP 400 (Bad Request) The format of the client request was incorrect.
+     * @HTTP 400 (Bad Request) The format of the client request was incorrect, e.g. the file does not contain a JSON array.
      * @HTTP 401 (Unauthorized) The request requires authentication.
      * @HTTP 404 (Not Found) The requested Variant resource does not exist.
      */
@@ -226,6 +261,7 @@ public class InstallationRegistrationEndpoint {
     public Response importDevice(
             @MultipartForm
             ImporterForm form,
+            @Context UriInfo uriInfo,
             @Context HttpServletRequest request) {
 
         // find the matching variation:
@@ -238,24 +274,117 @@ public class InstallationRegistrationEndpoint {
                     request);
         }
 
-        List<Installation> devices;
+        if (form.getJsonFile() == null) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+
+        // the upload is copied to a file, the import itself runs in the background:
+        File jsonFile = null;
         try {
-            devices = mapper.readValue(form.getJsonFile(), new TypeReference<List<Installation>>() {});
+            jsonFile = File.createTempFile("ups-import-", ".json");
+            copyToFile(form.getJsonFile(), jsonFile);
         } catch (IOException e) {
-            logger.severe("Error when parsing importer json file", e);
+            logger.severe("Error when receiving importer json file", e);
+            if (jsonFile != null) {
+                jsonFile.delete();
+            }
 
-            return Response.status(Status.BAD_REQUEST).build();
+            return Response.status(Status.INTERNAL_SERVER_ERROR).build();
         }
 
-        logger.info("Devices to import: " + devices.size());
+        // don't queue a job for something that is not even a JSON array:
+        if (!startsWithJsonArray(jsonFile)) {
+            jsonFile.delete();
+            return Response.status(Status.BAD_REQUEST).entity("Expected a JSON array of installations").build();
+        }
 
-        clientInstallationService.addInstallations(variant, devices);
+        final ImportJob job = importJobRegistry.create(variant.getVariantID());
+        installationImporter.importInstallations(variant, jsonFile, job);
 
         // return directly, the above is async and may take a bit :-)
         return Response.status(Status.OK)
+                .location(uriInfo.getAbsolutePathBuilder().path(job.getId()).build())
                 .entity("Job submitted for processing").build();
     }
 
+    /**
+     * Progress of an import job, submitted by the same Variant.
+     * The Endpoint is protected using <code>HTTP Basic</code> (credentials <code>VariantID:secret</code>).
+     *
+     * <pre>
+     * curl -u "variantID:secret"
+     *   -v -H "Accept: application/json"
+     *   https://SERVER:PORT/context/rest/registry/device/importer/{jobId}
+     * </pre>
+     *
+     * @param jobId id of the import job, as found in the <code>Location</code> header of the import response
+     * @return the state of the job and the number of processed and imported installations
+     *
+     * @HTTP 200 (OK) Successful request.
+     * @HTTP 401 (Unauthorized) The request requires authentication.
+     * @HTTP 404 (Not Found) There is no such import job for the Variant.
+     */
+    @GET
+    @Path("/importer/{jobId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response importStatus(
+            @PathParam("jobId") String jobId,
+            @Context HttpServletRequest request) {
+
+        // find the matching variation:
+        final Variant variant = loadVariantWhenAuthorized(request);
+        if (variant == null) {
+            return appendAllowOriginHeader(
+                    Response.status(Status.UNAUTHORIZED)
+                            .header("WWW-Authenticate", "Basic realm=\"AeroGear UnifiedPush Server\"")
+                            .entity("Unauthorized Request"),
+                    request);
+        }
+
+        final ImportJob job = importJobRegistry.find(jobId);
+        if (job == null || !job.getVariantID().equals(variant.getVariantID())) {
+            return appendAllowOriginHeader(Response.status(Status.NOT_FOUND), request);
+        }
+
+        return appendAllowOriginHeader(Response.ok(job), request);
+    }
+
+    /**
+     * Checks whether the given file starts with a JSON array, the installations themselves are read by the import.
+     */
+    static boolean startsWithJsonArray(File jsonFile) {
+        JsonParser parser = null;
+        try {
+            parser = mapper.getFactory().createParser(jsonFile);
+            return parser.nextToken() == JsonToken.START_ARRAY;
+        } catch (IOException e) {
+            // not JSON at all
+            return false;
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static void copyToFile(InputStream inputStream, File file) throws IOException {
+        final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            outputStream.close();
+            inputStream.close();
+        }
+    }
+
     private ResponseBuilder appendPreflightResponseHeaders(HttpHeaders headers, ResponseBuilder response) {
         // add response headers for the preflight request
         // required
@@ -288,7 +417,7 @@ public class InstallationRegistrationEndpoint {
         String variantID = credentials[0];
         String secret = credentials[1];
 
-        final Variant variant = genericVariantService.findByVariantID(variantID);
+        final Variant variant = genericVariantService.findByVariantIDCached(variantID);
         if (variant != null && variant.getSecret().equals(secret)) {
             return variant;
         }
@@ -105,7 +105,7 @@ public class PushNotificationSenderEndpoint {
         // add the client identifier
         payload.setClientIdentifier(HttpRequestUtil.extractAeroGearSenderInformation(request));
 
-        // submitted to @Async EJB:
+        // submitted to the dispatch pipeline:
         senderService.send(pushApplication, payload);
         logger.fine("Message sent by: '" + payload.getClientIdentifier() + "'");
         logger.info("Message submitted to PushNetworks for further processing");
@@ -123,7 +123,7 @@ public class PushNotificationSenderEndpoint {
         String pushApplicationID = credentials[0];
         String secret = credentials[1];
 
-        final PushApplication pushApplication = pushApplicationService.findByPushApplicationID(pushApplicationID);
+        final PushApplication pushApplication = pushApplicationService.findByPushApplicationIDCached(pushApplicationID);
         if (pushApplication != null && pushApplication.getMasterSecret().equals(secret)) {
             return pushApplication;
         }
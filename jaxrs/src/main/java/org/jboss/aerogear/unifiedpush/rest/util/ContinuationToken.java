@@ -0,0 +1,105 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.util;
+
+import net.iharder.Base64;
+import org.jboss.resteasy.spi.Link;
+import org.jboss.resteasy.spi.LinkHeader;
+
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.regex.Pattern;
+
+/**
+ * Opaque continuation tokens for keyset paging: the token encodes the sort key of the last element of a page, and
+ * the next page starts right after it. Clients just pass the token on, from the <code>next</code> link.
+ */
+public final class ContinuationToken {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SEPARATOR = "\n";
+
+    private ContinuationToken() {
+        // no-op
+    }
+
+    /**
+     * Encodes the given sort key values into a URL safe token.
+     */
+    public static String encode(String... values) {
+        final StringBuilder builder = new StringBuilder();
+        for (String value : values) {
+            if (builder.length() > 0) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(value);
+        }
+
+        try {
+            return Base64.encodeBytes(builder.toString().getBytes(UTF_8), Base64.URL_SAFE);
+        } catch (IOException e) {
+            // only thrown when compressing
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes a token created by {@link #encode(String...)}.
+     *
+     * @return the sort key values, or <code>null</code> if the token is invalid or does not contain the expected
+     * number of values
+     */
+    public static String[] decode(String token, int expectedValues) {
+        try {
+            final String[] values = new String(Base64.decode(token, Base64.URL_SAFE), UTF_8).split(Pattern.quote(SEPARATOR), -1);
+            return values.length == expectedValues ? values : null;
+        } catch (IOException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Links for keyset paging: <code>first</code> (unless this is the first page) and <code>next</code> (if there
+     * might be more pages), with the <code>after</code> query parameter. Other query parameters (e.g.
+     * <code>per_page</code>) are kept.
+     *
+     * @param nextToken token of the last element of the current page, or <code>null</code> if this is the last page
+     * @param continued <code>true</code> if the current page is not the first one
+     */
+    public static LinkHeader getLinkHeader(String nextToken, boolean continued, UriInfo uri) {
+        final LinkHeader header = new LinkHeader();
+
+        if (continued) {
+            header.addLink(buildLink("first", uri.getRequestUriBuilder().replaceQueryParam("after")));
+        }
+        if (nextToken != null) {
+            header.addLink(buildLink("next", uri.getRequestUriBuilder().replaceQueryParam("after", nextToken)));
+        }
+        return header;
+    }
+
+    private static Link buildLink(String rel, UriBuilder uriBuilder) {
+        final Link link = new Link();
+        link.setHref(uriBuilder.build().toASCIIString());
+        link.setRelationship(rel);
+        return link;
+    }
+}
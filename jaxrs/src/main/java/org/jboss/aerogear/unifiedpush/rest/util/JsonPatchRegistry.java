@@ -0,0 +1,152 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.github.fge.jackson.JacksonUtils;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import org.jboss.aerogear.unifiedpush.rest.util.transform.DynamicTransformer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The json patches of the older api versions, read and compiled once: the patch files are located at
+ * <code>&lt;path&gt;/&lt;version&gt;.json</code> on the classpath. A patch file is loaded on the first lookup of its
+ * path and version, and kept together with the lookups that found no (or a broken) patch file.
+ */
+final class JsonPatchRegistry {
+    private static final Logger logger = Logger.getLogger(JsonPatchRegistry.class.getName());
+
+    private static final String OPERATIONS = "operations";
+    private static final String TRANSFORMER = "dynamicTransformer";
+
+    // path and version come from the request, so the number of remembered lookups is limited:
+    private static final int MAX_ENTRIES = 1000;
+
+    // remembers the lookups without a patch:
+    private static final CompiledPatch NOT_FOUND = new CompiledPatch(Collections.<JsonPatch>emptyList(), null);
+
+    private final ConcurrentMap<String, CompiledPatch> patches = new ConcurrentHashMap<String, CompiledPatch>();
+
+    /**
+     * Returns the patch of the given path and version, or <code>null</code> if there is none.
+     */
+    CompiledPatch get(String path, String version) {
+        final String key = key(path, version);
+
+        CompiledPatch patch = patches.get(key);
+        if (patch == null) {
+            patch = load(path, version);
+            if (patches.size() < MAX_ENTRIES) {
+                final CompiledPatch loaded = patches.putIfAbsent(key, patch);
+                if (loaded != null) {
+                    patch = loaded;
+                }
+            }
+        }
+        return patch == NOT_FOUND ? null : patch;
+    }
+
+    /**
+     * Reads and compiles the patch file of the given path and version, a missing or broken file is logged.
+     */
+    private static CompiledPatch load(String path, String version) {
+        try {
+            return compile(readPatch(path, version));
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("could not find/load path file for version '%s' and path '%s'", version, path), e);
+            return NOT_FOUND;
+        }
+    }
+
+    private static String key(String path, String version) {
+        return path + "/" + version;
+    }
+
+    private static JsonNode readPatch(String path, String version) throws IOException {
+        final InputStream patchFile = JsonPatchRegistry.class.getResourceAsStream(key(path, version) + ".json");
+        if (patchFile == null) {
+            throw new IOException("no such patch file");
+        }
+        try {
+            return JacksonUtils.getReader().readTree(patchFile);
+        } finally {
+            patchFile.close();
+        }
+    }
+
+    private static CompiledPatch compile(JsonNode node) throws Exception {
+        final JsonNode operations = node.findPath(OPERATIONS);
+        // without dynamic transformer, the file only contains the operations:
+        final JsonNode patch = operations.isMissingNode() ? node : operations;
+
+        final List<JsonPatch> compiled = new ArrayList<JsonPatch>();
+        for (JsonNode operation : patch) {
+            final ArrayNode nodes = JsonNodeFactory.instance.arrayNode();
+            nodes.add(operation);
+            compiled.add(JsonPatch.fromJson(nodes));
+        }
+
+        DynamicTransformer dynamicTransformer = null;
+        final String clazz = node.findPath(TRANSFORMER).textValue();
+        if (clazz != null) {
+            dynamicTransformer = (DynamicTransformer) Class.forName(DynamicTransformer.class.getPackage().getName() + "." + clazz).newInstance();
+        }
+
+        return new CompiledPatch(Collections.unmodifiableList(compiled), dynamicTransformer);
+    }
+
+    /**
+     * The operations of a patch file, each compiled on its own, and its (stateless) dynamic transformer.
+     */
+    static final class CompiledPatch {
+        private final List<JsonPatch> operations;
+        private final DynamicTransformer dynamicTransformer;
+
+        private CompiledPatch(List<JsonPatch> operations, DynamicTransformer dynamicTransformer) {
+            this.operations = operations;
+            this.dynamicTransformer = dynamicTransformer;
+        }
+
+        JsonNode apply(JsonNode json) throws IOException {
+            JsonNode jsonNode = json;
+            for (JsonPatch operation : operations) {
+                try {
+                    jsonNode = operation.apply(jsonNode);
+                } catch (JsonPatchException e) {
+                    logger.log(Level.FINEST, "ignore field not found");
+                }
+            }
+
+            if (dynamicTransformer != null) {
+                return dynamicTransformer.transform(jsonNode);
+            }
+            return jsonNode;
+        }
+    }
+}
@@ -17,88 +17,83 @@
 package org.jboss.aerogear.unifiedpush.rest.util;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jackson.JacksonUtils;
-import com.github.fge.jsonpatch.JsonPatch;
-import com.github.fge.jsonpatch.JsonPatchException;
-import org.jboss.aerogear.unifiedpush.rest.util.transform.DynamicTransformer;
 
+import javax.enterprise.context.ApplicationScoped;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Basic request transformer
  */
+@ApplicationScoped
 public class RequestTransformer {
     private final Logger logger = Logger.getLogger(RequestTransformer.class.getName());
 
-    private static final String OPERATIONS = "operations";
-    private static final String TRANSFORMER = "dynamicTransformer";
+    // the patches are read and compiled once, not for every request:
+    private static final JsonPatchRegistry PATCHES = new JsonPatchRegistry();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final AtomicLong transformations = new AtomicLong();
+    private final AtomicLong unknownVersions = new AtomicLong();
+    private final AtomicLong transformNanos = new AtomicLong();
+    private final AtomicLong maxTransformNanos = new AtomicLong();
 
     public StringBuilder transform(String path, String version, StringBuilder json) {
-        try {
-            final JsonNode node = locateJsonPatch(path, version);
-            final JsonNode operations = node.findPath(OPERATIONS);
-            final JsonNode patch;
-            if (patchHasDynamicTransformer(operations)) {
-                patch = operations;
-            } else {
-                patch = node;
-            }
+        final byte[] transformed = transform(path, version, json.toString().getBytes(UTF_8));
+        return new StringBuilder(new String(transformed, UTF_8));
+    }
 
-            final JsonNode patched = transformJson(patch, json);
-            return convertToStringBuilder(applyDynamicTransformer(patched, node));
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, String.format("could not find/load path file for version '%s' and path '%s'", version, path), e);
+    /**
+     * Transforms the given (UTF-8 encoded) json request of an older api version to the current version.
+     *
+     * @return the transformed request, or the given one if there is no patch for the path and version
+     */
+    public byte[] transform(String path, String version, byte[] json) {
+        final JsonPatchRegistry.CompiledPatch patch = PATCHES.get(path, version);
+        if (patch == null) {
+            unknownVersions.incrementAndGet();
+            logger.log(Level.SEVERE, String.format("could not find/load path file for version '%s' and path '%s'", version, path));
             return json;
-        } catch (JsonPatchException e) {
-            throw new RuntimeException("Error in json patch file", e);
         }
-    }
-
-    private boolean patchHasDynamicTransformer(JsonNode operations) {
-        return !operations.isMissingNode();
-    }
 
-    private JsonNode locateJsonPatch(String path, String version) throws IOException {
-        return JacksonUtils.getReader().readTree(getClass().getResourceAsStream(path + "/" + version + ".json"));
-    }
-
-    private JsonNode transformJson(JsonNode patch, StringBuilder json) throws IOException, JsonPatchException {
-        JsonNode jsonNode = convertToJsonNode(json);
-        for (JsonNode operation : patch) {
-            try {
-                final ArrayNode nodes = JsonNodeFactory.instance.arrayNode();
-                nodes.add(operation);
-                JsonPatch patchOperation = JsonPatch.fromJson(nodes);
-                jsonNode = patchOperation.apply(jsonNode);
-            } catch (JsonPatchException e) {
-                logger.log(Level.FINEST, "ignore field not found");
-            }
+        final long start = System.nanoTime();
+        try {
+            final JsonNode patched = patch.apply(JacksonUtils.getReader().readTree(new ByteArrayInputStream(json)));
+            return MAPPER.writeValueAsBytes(patched);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, String.format("could not transform request for version '%s' and path '%s'", version, path), e);
+            return json;
+        } finally {
+            recordTransformation(System.nanoTime() - start);
         }
-        return jsonNode;
     }
 
-    private JsonNode convertToJsonNode(StringBuilder json) throws IOException {
-        return JacksonUtils.getReader().readTree(json.toString());
-    }
+    /**
+     * Number and latency of the transformations so far.
+     */
+    public RequestTransformerStatistics getStatistics() {
+        final long count = transformations.get();
+        final long averageNanos = count == 0 ? 0 : transformNanos.get() / count;
 
-    private StringBuilder convertToStringBuilder(JsonNode dynamicTransformedNode) {
-        return new StringBuilder(dynamicTransformedNode.toString());
+        return new RequestTransformerStatistics(count, unknownVersions.get(),
+                TimeUnit.NANOSECONDS.toMicros(averageNanos), TimeUnit.NANOSECONDS.toMicros(maxTransformNanos.get()));
     }
 
-    JsonNode applyDynamicTransformer(JsonNode json, JsonNode patch) throws IOException {
-        String clazz = patch.findPath(TRANSFORMER).textValue();
-        if (clazz != null) {
-            try {
-                final DynamicTransformer dynamicTransformer = (DynamicTransformer) Class.forName(getClass().getPackage().getName() + ".transform." + clazz).newInstance();
-                return dynamicTransformer.transform(json);
-            } catch (Exception e) {
-                throw new RuntimeException("error in json patch could not instantiate / find dynamic transformer", e);
-            }
+    private void recordTransformation(long nanos) {
+        transformations.incrementAndGet();
+        transformNanos.addAndGet(nanos);
+
+        long max = maxTransformNanos.get();
+        while (nanos > max && !maxTransformNanos.compareAndSet(max, nanos)) {
+            max = maxTransformNanos.get();
         }
-        return json;
     }
 }
@@ -0,0 +1,57 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.util;
+
+/**
+ * Snapshot of the transformations of requests of older api versions by the {@link RequestTransformer}.
+ */
+public class RequestTransformerStatistics {
+
+    private final long transformations;
+    private final long unknownVersions;
+    private final long averageTransformMicros;
+    private final long maxTransformMicros;
+
+    public RequestTransformerStatistics(long transformations, long unknownVersions, long averageTransformMicros, long maxTransformMicros) {
+        this.transformations = transformations;
+        this.unknownVersions = unknownVersions;
+        this.averageTransformMicros = averageTransformMicros;
+        this.maxTransformMicros = maxTransformMicros;
+    }
+
+    public long getTransformations() {
+        return transformations;
+    }
+
+    /**
+     * Number of requests of a version (or path) without patch, they were passed on unchanged.
+     */
+    public long getUnknownVersions() {
+        return unknownVersions;
+    }
+
+    /**
+     * Average duration of a transformation (parsing, patching and serializing), in microseconds.
+     */
+    public long getAverageTransformMicros() {
+        return averageTransformMicros;
+    }
+
+    public long getMaxTransformMicros() {
+        return maxTransformMicros;
+    }
+}
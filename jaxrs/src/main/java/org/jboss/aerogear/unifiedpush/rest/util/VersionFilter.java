@@ -27,11 +27,12 @@ import javax.servlet.ServletResponse;
 import javax.servlet.annotation.WebFilter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 
 /**
  * This filter will change the older api versions to the current one using json diff transform.
@@ -41,6 +42,9 @@ public class VersionFilter implements Filter {
 
     private static final String AEROGEAR_VERSION_PREFIX = "aerogear.v";
     public static final int VERSION_LENGTH = 3;
+    private static final int BUFFER_SIZE = 4096;
+    // the api only accepts json, which is UTF-8 encoded
+    private static final String UTF_8 = "UTF-8";
 
     @Inject
     private RequestTransformer requestTransformer;
@@ -67,38 +71,81 @@ public class VersionFilter implements Filter {
     public void destroy() {
    }
 
+    /**
+     * Hook to manually inject the request transformer.
+     */
+    void setRequestTransformer(RequestTransformer requestTransformer) {
+        this.requestTransformer = requestTransformer;
+    }
+
+    /**
+     * Buffers the raw body once, and serves the transformed body, which is created on first access only.
+     */
     private class TransformHttpServletRequestWrapper extends HttpServletRequestWrapper {
-        private final StringBuilder jsonRequest = new StringBuilder();
+        private final byte[] jsonRequest;
         private final String path;
         private final String version;
+        private byte[] transformed;
 
         public TransformHttpServletRequestWrapper(String version, HttpServletRequest httpRequest) throws IOException {
             super(httpRequest);
 
-            final BufferedReader reader = httpRequest.getReader();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                jsonRequest.append(line);
-            }
+            jsonRequest = readBody(httpRequest);
 
             final String contextPath = httpRequest.getContextPath();
             this.path = httpRequest.getRequestURI().substring(contextPath.length());
             this.version = version;
         }
 
+        private synchronized byte[] getTransformed() {
+            if (transformed == null) {
+                transformed = requestTransformer.transform(path, version, jsonRequest);
+            }
+            return transformed;
+        }
+
         @Override
         public ServletInputStream getInputStream() throws IOException {
-            StringBuilder data = requestTransformer.transform(path, version, jsonRequest);
-            final byte[] bytes = data.toString().getBytes();
+            final ByteArrayInputStream inputStream = new ByteArrayInputStream(getTransformed());
             return new ServletInputStream() {
-                private InputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(bytes));
-
                 @Override
                 public int read() throws IOException {
                     return inputStream.read();
                 }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return inputStream.read(b, off, len);
+                }
+
+                @Override
+                public int available() throws IOException {
+                    return inputStream.available();
+                }
             };
         }
 
+        @Override
+        public BufferedReader getReader() throws IOException {
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(getTransformed()), UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return getTransformed().length;
+        }
+    }
+
+    private static byte[] readBody(HttpServletRequest httpRequest) throws IOException {
+        final int contentLength = httpRequest.getContentLength();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(contentLength > 0 ? contentLength : BUFFER_SIZE);
+
+        final InputStream inputStream = httpRequest.getInputStream();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
     }
 }
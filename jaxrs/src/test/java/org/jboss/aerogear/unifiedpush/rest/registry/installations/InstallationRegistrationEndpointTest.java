@@ -0,0 +1,82 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.registry.installations;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstallationRegistrationEndpointTest {
+
+    private File jsonFile;
+
+    @Before
+    public void createFile() throws IOException {
+        jsonFile = File.createTempFile("import-test-", ".json");
+    }
+
+    @After
+    public void deleteFile() {
+        jsonFile.delete();
+    }
+
+    @Test
+    public void acceptsJsonArray() throws IOException {
+        write("\n  [ { \"deviceToken\" : \"someTokenString\" } ]");
+        assertThat(InstallationRegistrationEndpoint.startsWithJsonArray(jsonFile)).isTrue();
+    }
+
+    @Test
+    public void acceptsArrayWithInvalidContent() throws IOException {
+        // only the start is checked up front, the import job reports the rest:
+        write("[ { \"deviceToken\" : ");
+        assertThat(InstallationRegistrationEndpoint.startsWithJsonArray(jsonFile)).isTrue();
+    }
+
+    @Test
+    public void rejectsJsonObject() throws IOException {
+        write("{ \"deviceToken\" : \"someTokenString\" }");
+        assertThat(InstallationRegistrationEndpoint.startsWithJsonArray(jsonFile)).isFalse();
+    }
+
+    @Test
+    public void rejectsNonJson() throws IOException {
+        write("deviceToken=someTokenString");
+        assertThat(InstallationRegistrationEndpoint.startsWithJsonArray(jsonFile)).isFalse();
+    }
+
+    @Test
+    public void rejectsEmptyFile() {
+        assertThat(InstallationRegistrationEndpoint.startsWithJsonArray(jsonFile)).isFalse();
+    }
+
+    private void write(String content) throws IOException {
+        final OutputStream out = new FileOutputStream(jsonFile);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
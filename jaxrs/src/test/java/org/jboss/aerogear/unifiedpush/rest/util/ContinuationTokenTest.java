@@ -0,0 +1,45 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.util;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContinuationTokenTest {
+
+    @Test
+    public void encodeAndDecodeSortKey() {
+        final String token = ContinuationToken.encode("1418041186000", "c5bd06a7-a6dc-4b0a-8fd7-a64ed0e4d3ae");
+
+        assertThat(token).doesNotContain("/").doesNotContain("+");
+        assertThat(ContinuationToken.decode(token, 2)).containsExactly("1418041186000", "c5bd06a7-a6dc-4b0a-8fd7-a64ed0e4d3ae");
+    }
+
+    @Test
+    public void decodeTokenWithUnexpectedNumberOfValues() {
+        final String token = ContinuationToken.encode("c5bd06a7-a6dc-4b0a-8fd7-a64ed0e4d3ae");
+
+        assertThat(ContinuationToken.decode(token, 1)).containsExactly("c5bd06a7-a6dc-4b0a-8fd7-a64ed0e4d3ae");
+        assertThat(ContinuationToken.decode(token, 2)).isNull();
+    }
+
+    @Test
+    public void decodeInvalidToken() {
+        assertThat(ContinuationToken.decode("%%%not-a-token", 1)).isNull();
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.util;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonPatchRegistryTest {
+
+    @Test
+    public void loadsPatchFileOnce() {
+        final JsonPatchRegistry registry = new JsonPatchRegistry();
+
+        final JsonPatchRegistry.CompiledPatch patch = registry.get("/rest/sender", "100");
+
+        assertThat(patch).isNotNull();
+        assertThat(registry.get("/rest/sender", "100")).isSameAs(patch);
+    }
+
+    @Test
+    public void noPatchForUnknownVersion() {
+        final JsonPatchRegistry registry = new JsonPatchRegistry();
+
+        assertThat(registry.get("/rest/sender", "999")).isNull();
+        assertThat(registry.get("/rest/sender", "999")).isNull();
+        assertThat(registry.get("/rest/unknown", "100")).isNull();
+    }
+}
@@ -6,9 +6,11 @@ import com.github.fge.jackson.JacksonUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  */
@@ -31,4 +33,32 @@ public class RequestTransformerTest {
 
         assertEquals(newNode, patchedNode);
     }
+
+    @Test
+    public void shouldTransformSenderRequestBytes() throws IOException {
+        //given
+        ObjectReader reader = JacksonUtils.getReader();
+        final byte[] json = IOUtils.toByteArray(getClass().getResourceAsStream("/message-format-100.json"));
+
+        //when
+        final byte[] patched = requestTransformer.transform("/rest/sender", "100", json);
+
+        //then
+        JsonNode newNode = reader.readTree(getClass().getResourceAsStream("/new-message-format.json"));
+        assertEquals(newNode, reader.readTree(new ByteArrayInputStream(patched)));
+        assertEquals(1, requestTransformer.getStatistics().getTransformations());
+    }
+
+    @Test
+    public void shouldPassOnRequestOfUnknownVersion() {
+        //given
+        final byte[] json = "{\"alert\":\"hello\"}".getBytes();
+
+        //when
+        final byte[] patched = requestTransformer.transform("/rest/sender", "999", json);
+
+        //then
+        assertSame(json, patched);
+        assertEquals(1, requestTransformer.getStatistics().getUnknownVersions());
+    }
 }
@@ -0,0 +1,157 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.rest.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jackson.JacksonUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VersionFilterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ALERT = "Grüße aus Köln 日本 😀";
+    // a sender request of version 1.0.0, spanning several lines:
+    private static final String BODY = "{\n"
+            + "  \"alias\": [\"jürgen\"],\n"
+            + "  \"deviceType\": [\"iPhone\"],\n"
+            + "  \"categories\": [\"Nachrichten\"],\n"
+            + "  \"variants\": [\"variant\"],\n"
+            + "  \"ttl\": 3600,\n"
+            + "  \"message\": {\n"
+            + "    \"alert\": \"" + ALERT + "\"\n"
+            + "  },\n"
+            + "  \"simple-push\": \"version=123\"\n"
+            + "}";
+
+    private VersionFilter filter;
+    private RequestTransformer requestTransformer;
+
+    @Before
+    public void setUp() {
+        requestTransformer = new RequestTransformer();
+        filter = new VersionFilter();
+        filter.setRequestTransformer(requestTransformer);
+    }
+
+    @Test
+    public void passesOnRequestWithoutVersion() throws Exception {
+        final HttpServletRequest request = request("application/json", BODY);
+
+        assertThat(filter(request)).isSameAs(request);
+    }
+
+    @Test
+    public void keepsMultiLineNonAsciiBody() throws Exception {
+        // an unknown version is passed on as is:
+        final ServletRequest filtered = filter(request("application/json; aerogear.v999", BODY));
+
+        assertThat(readLines(filtered.getReader())).isEqualTo(BODY);
+        assertThat(IOUtils.toByteArray(filtered.getInputStream())).isEqualTo(BODY.getBytes(UTF_8));
+    }
+
+    @Test
+    public void contentLengthCountsBytes() throws Exception {
+        final ServletRequest filtered = filter(request("application/json; aerogear.v999", BODY));
+
+        assertThat(filtered.getContentLength()).isEqualTo(BODY.getBytes(UTF_8).length);
+        assertThat(filtered.getContentLength()).isGreaterThan(BODY.length());
+    }
+
+    @Test
+    public void servesBodyOnEveryRead() throws Exception {
+        final ServletRequest filtered = filter(request("application/json; aerogear.v999", BODY));
+
+        assertThat(IOUtils.toString(filtered.getInputStream(), "UTF-8")).isEqualTo(BODY);
+        assertThat(IOUtils.toString(filtered.getInputStream(), "UTF-8")).isEqualTo(BODY);
+        assertThat(readLines(filtered.getReader())).isEqualTo(BODY);
+        assertThat(readLines(filtered.getReader())).isEqualTo(BODY);
+
+        // transformed once only:
+        assertThat(requestTransformer.getStatistics().getUnknownVersions()).isEqualTo(1);
+    }
+
+    @Test
+    public void transformsNonAsciiBody() throws Exception {
+        final ServletRequest filtered = filter(request("application/json; aerogear.v100", BODY));
+
+        final byte[] transformed = IOUtils.toByteArray(filtered.getInputStream());
+        final JsonNode json = JacksonUtils.getReader().readTree(new ByteArrayInputStream(transformed));
+
+        assertThat(json.path("message").path("alert").asText()).isEqualTo(ALERT);
+        assertThat(json.path("criteria").path("alias").path(0).asText()).isEqualTo("jürgen");
+        assertThat(filtered.getContentLength()).isEqualTo(transformed.length);
+        assertThat(JacksonUtils.getReader().readTree(filtered.getReader())).isEqualTo(json);
+    }
+
+    private ServletRequest filter(HttpServletRequest request) throws Exception {
+        final FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(request, mock(ServletResponse.class), chain);
+
+        final ArgumentCaptor<ServletRequest> filtered = ArgumentCaptor.forClass(ServletRequest.class);
+        verify(chain).doFilter(filtered.capture(), any(ServletResponse.class));
+        return filtered.getValue();
+    }
+
+    private static HttpServletRequest request(String accept, String body) throws IOException {
+        final byte[] bytes = body.getBytes(UTF_8);
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
+
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("accept")).thenReturn(accept);
+        when(request.getContextPath()).thenReturn("/ag-push");
+        when(request.getRequestURI()).thenReturn("/ag-push/rest/sender");
+        when(request.getContentLength()).thenReturn(bytes.length);
+        when(request.getInputStream()).thenReturn(new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return inputStream.read();
+            }
+        });
+        return request;
+    }
+
+    private static String readLines(BufferedReader reader) throws IOException {
+        final StringBuilder content = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (content.length() > 0) {
+                content.append('\n');
+            }
+            content.append(line);
+        }
+        return content.toString();
+    }
+}
@@ -0,0 +1,77 @@
+#!/bin/sh
+#
+# JBoss, Home of Professional Open Source
+# Copyright Red Hat, Inc., and individual contributors.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# 	http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Runs the load test against a local WildFly, without any network access:
+#
+#   JBOSS_HOME=/path/to/wildfly loadtest/run-loadtest.sh [-Dloadtest.installations=10000 ...]
+#
+# Deploys the server (servers/ups-wildfly/target/ag-push.war) with the load test datasource, starts WildFly
+# pointing at the stand-in push networks, runs the driver and stops WildFly again. See loadtest/README.md.
+
+set -e
+
+if [ -z "$JBOSS_HOME" ]; then
+    echo "JBOSS_HOME has to point to the WildFly installation to test" >&2
+    exit 1
+fi
+
+LOADTEST_DIR=$(cd "$(dirname "$0")" && pwd)
+PROJECT_DIR=$(dirname "$LOADTEST_DIR")
+WAR="$PROJECT_DIR/servers/ups-wildfly/target/ag-push.war"
+DEPLOYMENTS="$JBOSS_HOME/standalone/deployments"
+UPS_URL=${UPS_URL:-http://localhost:8080/ag-push}
+
+if [ ! -f "$WAR" ]; then
+    echo "$WAR is missing, build the server first: mvn clean install" >&2
+    exit 1
+fi
+if [ -f "$DEPLOYMENTS/unifiedpush-h2-ds.xml" ]; then
+    echo "$DEPLOYMENTS/unifiedpush-h2-ds.xml defines the same datasource, remove it for the load test" >&2
+    exit 1
+fi
+
+mkdir -p "$LOADTEST_DIR/target"
+cp "$LOADTEST_DIR/unifiedpush-loadtest-h2-ds.xml" "$DEPLOYMENTS/"
+cp "$WAR" "$DEPLOYMENTS/"
+
+# the stand-ins listen on their default ports, see LoadTestDriver
+"$JBOSS_HOME/bin/standalone.sh" \
+    -Daerogear.apns.gateway=localhost:2195 \
+    -Daerogear.apns.feedback=localhost:2196 \
+    -Daerogear.gcm.endpoint=http://localhost:8091/gcm/send \
+    -Djavax.net.ssl.trustStore="$LOADTEST_DIR/src/test/resources/mock-truststore.jks" \
+    -Djavax.net.ssl.trustStorePassword=loadtest \
+    > "$LOADTEST_DIR/target/server.log" 2>&1 &
+
+trap '"$JBOSS_HOME/bin/jboss-cli.sh" --connect command=:shutdown > /dev/null 2>&1 || true' EXIT
+
+echo "Waiting for $UPS_URL (server log: $LOADTEST_DIR/target/server.log)"
+attempts=0
+until curl -s -o /dev/null "$UPS_URL/rest/sender"; do
+    attempts=$((attempts + 1))
+    if [ $attempts -gt 180 ]; then
+        echo "The server did not start within 3 minutes" >&2
+        exit 1
+    fi
+    sleep 1
+done
+
+mvn -o -q -f "$LOADTEST_DIR/pom.xml" test-compile exec:java \
+    -Dloadtest.ups.url="$UPS_URL" \
+    -Dloadtest.jdbc.url="jdbc:h2:$JBOSS_HOME/standalone/data/unifiedpush-loadtest;AUTO_SERVER=TRUE" \
+    "$@"
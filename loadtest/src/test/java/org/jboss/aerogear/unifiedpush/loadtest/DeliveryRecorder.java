@@ -0,0 +1,172 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects what the stand-in push networks received. The driver sends every push message with the alert
+ * <code>loadtest-&lt;number&gt;</code>, which ends up in the payload of every network, so each delivery can be
+ * matched to the request it was sent for.
+ */
+public class DeliveryRecorder {
+
+    private static final Pattern MESSAGE_NUMBER = Pattern.compile("loadtest-(\\d+)");
+
+    private final ConcurrentMap<Integer, Message> messages = new ConcurrentHashMap<Integer, Message>();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong unknown = new AtomicLong();
+    private final AtomicLong lastActivityNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * Registers a message that is about to be sent to the given number of receivers.
+     */
+    public void expect(int number, int receivers) {
+        final long now = System.nanoTime();
+        lastActivityNanos.set(now);
+        messages.put(number, new Message(receivers, now));
+    }
+
+    /**
+     * Drops a message that has not been accepted by the server, nothing will be delivered for it.
+     */
+    public void forget(int number) {
+        messages.remove(number);
+    }
+
+    /**
+     * Records receivers of the message the payload belongs to that have been accepted by the push network.
+     */
+    public void delivered(String payload, int receivers) {
+        record(payload, receivers, false);
+    }
+
+    /**
+     * Records receivers of the message the payload belongs to that have been rejected by the push network.
+     */
+    public void failed(String payload, int receivers) {
+        record(payload, receivers, true);
+    }
+
+    private void record(String payload, int receivers, boolean failure) {
+        final long now = System.nanoTime();
+        lastActivityNanos.set(now);
+
+        final Message message = find(payload);
+        if (message == null) {
+            unknown.addAndGet(receivers);
+            return;
+        }
+
+        (failure ? failed : delivered).addAndGet(receivers);
+        message.record(receivers, now);
+    }
+
+    private Message find(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        final Matcher matcher = MESSAGE_NUMBER.matcher(payload);
+        return matcher.find() ? messages.get(Integer.valueOf(matcher.group(1))) : null;
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Receivers of payloads that did not belong to a message of the driver.
+     */
+    public long getUnknown() {
+        return unknown.get();
+    }
+
+    public long getLastActivityNanos() {
+        return lastActivityNanos.get();
+    }
+
+    /**
+     * Whether all receivers of all expected messages have been reached, or rejected.
+     */
+    public boolean isComplete() {
+        for (Message message : messages.values()) {
+            if (!message.isComplete()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getCompletedMessages() {
+        int completed = 0;
+        for (Message message : messages.values()) {
+            if (message.isComplete()) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Time from the start of the request until the last receiver has been reached, of every completed message.
+     */
+    public List<Long> getEndToEndNanos() {
+        final List<Long> latencies = new ArrayList<Long>();
+        for (Message message : messages.values()) {
+            if (message.isComplete()) {
+                latencies.add(message.endToEndNanos());
+            }
+        }
+        return latencies;
+    }
+
+    private static class Message {
+        private final int receivers;
+        private final long sentNanos;
+        private int reached;
+        private long lastNanos;
+
+        Message(int receivers, long sentNanos) {
+            this.receivers = receivers;
+            this.sentNanos = sentNanos;
+        }
+
+        synchronized void record(int count, long now) {
+            reached += count;
+            lastNanos = Math.max(lastNanos, now);
+        }
+
+        synchronized boolean isComplete() {
+            return reached >= receivers;
+        }
+
+        synchronized long endToEndNanos() {
+            return lastNanos - sentNanos;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The push application created for a load test run, with the credentials the driver sends with.
+ */
+public class LoadTestApplication {
+
+    private final String id = UUID.randomUUID().toString();
+    private final String pushApplicationID = UUID.randomUUID().toString();
+    private final String masterSecret = UUID.randomUUID().toString();
+    private final String name;
+    private final List<String> variantIDs = new ArrayList<String>();
+    private int installations;
+
+    public LoadTestApplication(String name) {
+        this.name = name;
+    }
+
+    void addVariant(String variantID, int variantInstallations) {
+        variantIDs.add(variantID);
+        installations += variantInstallations;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPushApplicationID() {
+        return pushApplicationID;
+    }
+
+    public String getMasterSecret() {
+        return masterSecret;
+    }
+
+    public List<String> getVariantIDs() {
+        return Collections.unmodifiableList(variantIDs);
+    }
+
+    /**
+     * Installations of all variants, the receivers of every push message.
+     */
+    public int getInstallations() {
+        return installations;
+    }
+}
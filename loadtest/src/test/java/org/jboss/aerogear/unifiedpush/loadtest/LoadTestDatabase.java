@@ -0,0 +1,309 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.utils.DeviceTokenUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Direct access to the H2 database of the server under test, which has to be opened with <code>AUTO_SERVER=TRUE</code>
+ * so a second process can connect. Creates the push application, variants and installations of the load test in bulk,
+ * which is a lot faster than registering the installations over HTTP, and reads the query statistics of H2.
+ */
+public class LoadTestDatabase {
+
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final int TOP_STATEMENTS = 10;
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    public LoadTestDatabase(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    /**
+     * Creates a push application without variants.
+     */
+    public LoadTestApplication createApplication(String name) throws SQLException {
+        final LoadTestApplication application = new LoadTestApplication(name);
+
+        final Connection connection = connect();
+        try {
+            final PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO PushApplication (id, name, description, developer, pushApplicationID, masterSecret) VALUES (?, ?, ?, ?, ?, ?)");
+            insert.setString(1, application.getId());
+            insert.setString(2, name);
+            insert.setString(3, "created by the load test driver");
+            insert.setString(4, "loadtest");
+            insert.setString(5, application.getPushApplicationID());
+            insert.setString(6, application.getMasterSecret());
+            insert.executeUpdate();
+            insert.close();
+        } finally {
+            connection.close();
+        }
+        return application;
+    }
+
+    /**
+     * Adds a variant of the given type to the application, and an installation for each of the device tokens.
+     *
+     * @return the variantID of the new variant
+     */
+    public String addVariant(LoadTestApplication application, VariantType type, List<String> deviceTokens) throws SQLException {
+        final String id = UUID.randomUUID().toString();
+        final String variantID = UUID.randomUUID().toString();
+
+        final Connection connection = connect();
+        try {
+            connection.setAutoCommit(false);
+
+            final PreparedStatement variant = connection.prepareStatement(
+                    "INSERT INTO Variant (id, name, description, developer, secret, type, variantID, variants_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            variant.setString(1, id);
+            variant.setString(2, application.getName() + " " + type);
+            variant.setString(3, "created by the load test driver");
+            variant.setString(4, "loadtest");
+            variant.setString(5, UUID.randomUUID().toString());
+            variant.setInt(6, type.ordinal());
+            variant.setString(7, variantID);
+            variant.setString(8, application.getId());
+            variant.executeUpdate();
+            variant.close();
+
+            insertVariantDetails(connection, id, type);
+            insertInstallations(connection, variantID, type, deviceTokens);
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.close();
+        }
+
+        application.addVariant(variantID, deviceTokens.size());
+        return variantID;
+    }
+
+    private static void insertVariantDetails(Connection connection, String id, VariantType type) throws SQLException {
+        final PreparedStatement details;
+        switch (type) {
+            case IOS:
+                details = connection.prepareStatement(
+                        "INSERT INTO iOSVariant (id, certificate, passphrase, production) VALUES (?, ?, ?, ?)");
+                details.setString(1, id);
+                details.setBytes(2, readResource("/apns-client.p12"));
+                details.setString(3, MockTls.PASSWORD);
+                details.setBoolean(4, false);
+                break;
+            case ANDROID:
+                details = connection.prepareStatement(
+                        "INSERT INTO AndroidVariant (id, googleKey, projectNumber) VALUES (?, ?, ?)");
+                details.setString(1, id);
+                details.setString(2, "loadtest-google-key");
+                details.setString(3, "123456789");
+                break;
+            case WINDOWS:
+                details = connection.prepareStatement(
+                        "INSERT INTO WindowsVariant (id, sid, clientSecret) VALUES (?, ?, ?)");
+                details.setString(1, id);
+                details.setString(2, "ms-app://loadtest");
+                details.setString(3, "loadtest-client-secret");
+                break;
+            case SIMPLE_PUSH:
+                details = connection.prepareStatement("INSERT INTO SimplePushVariant (id) VALUES (?)");
+                details.setString(1, id);
+                break;
+            default:
+                throw new IllegalArgumentException("The load test does not support " + type + " variants");
+        }
+        details.executeUpdate();
+        details.close();
+    }
+
+    private static void insertInstallations(Connection connection, String variantID, VariantType type, List<String> deviceTokens) throws SQLException {
+        final PreparedStatement installation = connection.prepareStatement(
+                "INSERT INTO Installation (id, enabled, deviceToken, tokenHash, deviceType, operatingSystem, osVersion, alias, platform, variantID) " +
+                "VALUES (?, TRUE, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+        int batched = 0;
+        for (String deviceToken : deviceTokens) {
+            installation.setString(1, UUID.randomUUID().toString());
+            installation.setString(2, deviceToken);
+            installation.setString(3, DeviceTokenUtils.hash(deviceToken));
+            installation.setString(4, "loadtest");
+            installation.setString(5, type.getTypeName());
+            installation.setString(6, "1.0");
+            installation.setString(7, "loadtest-" + batched);
+            installation.setString(8, type.getTypeName());
+            installation.setString(9, variantID);
+            installation.addBatch();
+
+            if (++batched % INSERT_BATCH_SIZE == 0) {
+                installation.executeBatch();
+            }
+        }
+        installation.executeBatch();
+        installation.close();
+    }
+
+    /**
+     * Removes the application, its variants and installations, and the metrics of its push messages.
+     */
+    public void removeApplication(LoadTestApplication application) throws SQLException {
+        final Connection connection = connect();
+        try {
+            connection.setAutoCommit(false);
+
+            execute(connection, "DELETE FROM VariantMetricInformation WHERE variantInformations_id IN " +
+                    "(SELECT id FROM PushMessageInformation WHERE pushApplicationId = ?)", application.getPushApplicationID());
+            execute(connection, "DELETE FROM PushMessageInformation WHERE pushApplicationId = ?", application.getPushApplicationID());
+            execute(connection, "DELETE FROM PushMetricRollup WHERE pushApplicationId = ?", application.getPushApplicationID());
+            for (String variantID : application.getVariantIDs()) {
+                execute(connection, "DELETE FROM Installation WHERE variantID = ?", variantID);
+            }
+            for (String table : new String[] {"iOSVariant", "AndroidVariant", "WindowsVariant", "SimplePushVariant"}) {
+                execute(connection, "DELETE FROM " + table + " WHERE id IN (SELECT id FROM Variant WHERE variants_id = ?)", application.getId());
+            }
+            execute(connection, "DELETE FROM Variant WHERE variants_id = ?", application.getId());
+            execute(connection, "DELETE FROM PushApplication WHERE id = ?", application.getId());
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Starts counting the statements executed by the database from zero.
+     */
+    public void resetQueryStatistics() throws SQLException {
+        final Connection connection = connect();
+        try {
+            final Statement statement = connection.createStatement();
+            // switching the statistics off drops the collected ones
+            statement.execute("SET QUERY_STATISTICS FALSE");
+            statement.execute("SET QUERY_STATISTICS_MAX_ENTRIES 1000");
+            statement.execute("SET QUERY_STATISTICS TRUE");
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * The statements executed since {@link #resetQueryStatistics()}.
+     */
+    public QueryStatistics readQueryStatistics() throws SQLException {
+        final Connection connection = connect();
+        try {
+            final Statement statement = connection.createStatement();
+            final ResultSet resultSet = statement.executeQuery(
+                    "SELECT SQL_STATEMENT, EXECUTION_COUNT, CUMULATIVE_EXECUTION_TIME FROM INFORMATION_SCHEMA.QUERY_STATISTICS " +
+                    "WHERE SQL_STATEMENT NOT LIKE '%INFORMATION_SCHEMA%' ORDER BY EXECUTION_COUNT DESC");
+
+            long total = 0;
+            final List<String> top = new ArrayList<String>();
+            while (resultSet.next()) {
+                final long count = resultSet.getLong(2);
+                total += count;
+                if (top.size() < TOP_STATEMENTS) {
+                    top.add(String.format("%8d x %8.1f ms  %s", count, resultSet.getDouble(3), oneLine(resultSet.getString(1))));
+                }
+            }
+            resultSet.close();
+            statement.close();
+
+            return new QueryStatistics(total, top);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    private static void execute(Connection connection, String sql, String parameter) throws SQLException {
+        final PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setString(1, parameter);
+        statement.executeUpdate();
+        statement.close();
+    }
+
+    private static String oneLine(String sql) {
+        return sql.replaceAll("\\s+", " ");
+    }
+
+    private static byte[] readResource(String name) {
+        final InputStream in = LoadTestDatabase.class.getResourceAsStream(name);
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            in.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + name, e);
+        }
+    }
+
+    /**
+     * Total number of executed statements, and the most frequent ones.
+     */
+    public static class QueryStatistics {
+        private final long executions;
+        private final List<String> topStatements;
+
+        QueryStatistics(long executions, List<String> topStatements) {
+            this.executions = executions;
+            this.topStatements = topStatements;
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public List<String> getTopStatements() {
+            return topStatements;
+        }
+    }
+}
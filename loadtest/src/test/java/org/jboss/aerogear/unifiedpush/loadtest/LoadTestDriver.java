@@ -0,0 +1,341 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import net.iharder.Base64;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch throughput of a running UnifiedPush Server against local stand-ins of the push networks.
+ *
+ * Starts the stand-ins, creates a push application with a variant per network and
+ * <code>loadtest.installations</code> installations each directly in the H2 database of the server, fires
+ * <code>loadtest.messages</code> push messages at <code>/rest/sender</code> and waits until the stand-ins received
+ * them. Reports the sends per second, the latency of the sender requests and the end-to-end latency of the messages,
+ * and the number of statements the database executed.
+ *
+ * The server has to be started with the properties printed on startup, see <code>README.md</code>.
+ */
+public final class LoadTestDriver {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String upsUrl = System.getProperty("loadtest.ups.url", "http://localhost:8080/ag-push");
+    private final List<String> networks = Arrays.asList(System.getProperty("loadtest.networks", "apns,gcm,simplepush").split("\\s*,\\s*"));
+    private final int installationsPerVariant = Integer.getInteger("loadtest.installations", 1000);
+    private final int messages = Integer.getInteger("loadtest.messages", 100);
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 4);
+    private final long settleTimeoutNanos = TimeUnit.SECONDS.toNanos(Long.getLong("loadtest.settle-timeout", 60));
+    private final boolean keepData = Boolean.getBoolean("loadtest.keep-data");
+
+    private final DeliveryRecorder recorder = new DeliveryRecorder();
+    private final LoadTestDatabase database;
+
+    private MockApnsServer apns;
+    private MockGcmServer gcm;
+    private MockWnsServer wns;
+    private MockSimplePushServer simplePush;
+
+    private LoadTestDriver(LoadTestDatabase database) {
+        this.database = database;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final String jdbcUrl = System.getProperty("loadtest.jdbc.url");
+        if (jdbcUrl == null) {
+            System.err.println("The H2 database of the server is required: -Dloadtest.jdbc.url=jdbc:h2:<data dir>/unifiedpush;AUTO_SERVER=TRUE");
+            System.exit(1);
+        }
+
+        final LoadTestDatabase database = new LoadTestDatabase(jdbcUrl,
+                System.getProperty("loadtest.jdbc.user", "sa"), System.getProperty("loadtest.jdbc.password", "sa"));
+
+        new LoadTestDriver(database).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        startMockServers();
+        try {
+            final LoadTestApplication application = createApplication();
+            try {
+                database.resetQueryStatistics();
+                final long start = System.nanoTime();
+
+                final List<Long> requestNanos = sendMessages(application);
+                awaitDeliveries();
+
+                report(application, requestNanos, start, database.readQueryStatistics());
+            } finally {
+                if (!keepData) {
+                    database.removeApplication(application);
+                }
+            }
+        } finally {
+            stopMockServers();
+        }
+    }
+
+    private void startMockServers() throws IOException {
+        final List<String> serverProperties = new ArrayList<String>();
+
+        if (networks.contains("apns")) {
+            final int port = Integer.getInteger("loadtest.apns.port", 2195);
+            final int feedbackPort = Integer.getInteger("loadtest.apns.feedback-port", 2196);
+            apns = new MockApnsServer(port, feedbackPort, MockServerSettings.fromSystemProperties("apns"), recorder);
+            apns.start();
+            serverProperties.add("-Daerogear.apns.gateway=localhost:" + port);
+            serverProperties.add("-Daerogear.apns.feedback=localhost:" + feedbackPort);
+        }
+        if (networks.contains("gcm")) {
+            gcm = new MockGcmServer(Integer.getInteger("loadtest.gcm.port", 8091), MockServerSettings.fromSystemProperties("gcm"), recorder);
+            gcm.start();
+            serverProperties.add("-Daerogear.gcm.endpoint=" + gcm.getSendUrl());
+        }
+        if (networks.contains("wns")) {
+            wns = new MockWnsServer(Integer.getInteger("loadtest.wns.port", 8092), MockServerSettings.fromSystemProperties("wns"), recorder);
+            wns.start();
+        }
+        if (networks.contains("simplepush")) {
+            simplePush = new MockSimplePushServer(Integer.getInteger("loadtest.simplepush.port", 8093), MockServerSettings.fromSystemProperties("simplepush"), recorder);
+            simplePush.start();
+        }
+        if (apns != null || wns != null) {
+            serverProperties.add("-Djavax.net.ssl.trustStore=<loadtest>/src/test/resources/mock-truststore.jks");
+            serverProperties.add("-Djavax.net.ssl.trustStorePassword=" + MockTls.PASSWORD);
+        }
+
+        System.out.println("Stand-in push networks started, the server under test needs:");
+        for (String property : serverProperties) {
+            System.out.println("    " + property);
+        }
+    }
+
+    private void stopMockServers() {
+        if (apns != null) {
+            apns.stop();
+        }
+        if (gcm != null) {
+            gcm.stop();
+        }
+        if (wns != null) {
+            wns.stop();
+        }
+        if (simplePush != null) {
+            simplePush.stop();
+        }
+    }
+
+    private LoadTestApplication createApplication() throws Exception {
+        final LoadTestApplication application = database.createApplication("loadtest-" + System.currentTimeMillis());
+
+        if (apns != null) {
+            final List<String> tokens = new ArrayList<String>(installationsPerVariant);
+            for (int i = 0; i < installationsPerVariant; i++) {
+                tokens.add(String.format("%064x", i));
+            }
+            database.addVariant(application, VariantType.IOS, tokens);
+        }
+        if (gcm != null) {
+            final List<String> tokens = new ArrayList<String>(installationsPerVariant);
+            for (int i = 0; i < installationsPerVariant; i++) {
+                tokens.add(String.format("APA91b-loadtest-%0100d", i));
+            }
+            database.addVariant(application, VariantType.ANDROID, tokens);
+        }
+        if (wns != null) {
+            final List<String> tokens = new ArrayList<String>(installationsPerVariant);
+            for (int i = 0; i < installationsPerVariant; i++) {
+                tokens.add(wns.getChannelUri("channel-" + i));
+            }
+            database.addVariant(application, VariantType.WINDOWS, tokens);
+        }
+        if (simplePush != null) {
+            final List<String> tokens = new ArrayList<String>(installationsPerVariant);
+            for (int i = 0; i < installationsPerVariant; i++) {
+                tokens.add(simplePush.getUpdateUrl("channel-" + i));
+            }
+            database.addVariant(application, VariantType.SIMPLE_PUSH, tokens);
+        }
+
+        System.out.println("Created push application " + application.getPushApplicationID() + " with "
+                + application.getInstallations() + " installations");
+        return application;
+    }
+
+    /**
+     * Sends the push messages with the configured concurrency.
+     *
+     * @return the latency of the accepted sender requests
+     */
+    private List<Long> sendMessages(final LoadTestApplication application) throws InterruptedException {
+        final String authorization = "Basic " + Base64.encodeBytes(
+                (application.getPushApplicationID() + ':' + application.getMasterSecret()).getBytes(UTF_8));
+
+        final ExecutorService senders = Executors.newFixedThreadPool(concurrency);
+        final List<Callable<Long>> requests = new ArrayList<Callable<Long>>();
+        for (int i = 0; i < messages; i++) {
+            final int number = i;
+            requests.add(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    recorder.expect(number, application.getInstallations());
+                    boolean accepted = false;
+                    try {
+                        final Long nanos = send(authorization, number);
+                        accepted = nanos != null;
+                        return nanos;
+                    } finally {
+                        if (!accepted) {
+                            recorder.forget(number);
+                        }
+                    }
+                }
+            });
+        }
+
+        final List<Long> requestNanos = new ArrayList<Long>();
+        try {
+            for (Future<Long> request : senders.invokeAll(requests)) {
+                try {
+                    final Long nanos = request.get();
+                    if (nanos != null) {
+                        requestNanos.add(nanos);
+                    }
+                } catch (Exception e) {
+                    System.out.println("Sender request failed: " + e.getCause());
+                }
+            }
+        } finally {
+            senders.shutdownNow();
+        }
+        return requestNanos;
+    }
+
+    /**
+     * POSTs a push message to the sender endpoint.
+     *
+     * @return the latency of the request, <code>null</code> if it was rejected
+     */
+    private Long send(String authorization, int number) throws IOException {
+        final byte[] body = ("{\"message\":{\"alert\":\"loadtest-" + number + "\",\"sound\":\"default\",\"badge\":1}," +
+                "\"simple-push\":\"version=loadtest-" + number + "\"}").getBytes(UTF_8);
+
+        final long start = System.nanoTime();
+        final HttpURLConnection connection = (HttpURLConnection) new URL(upsUrl + "/rest/sender").openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Authorization", authorization);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(body.length);
+
+            final OutputStream out = connection.getOutputStream();
+            out.write(body);
+            out.close();
+
+            final int status = connection.getResponseCode();
+            drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            if (status / 100 != 2) {
+                System.out.println("Push message " + number + " was rejected with status " + status);
+                return null;
+            }
+            return System.nanoTime() - start;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Waits until every push message has reached all of its receivers, or nothing has been received for the settle
+     * timeout, e.g. because APNs notifications were lost on a closed connection.
+     */
+    private void awaitDeliveries() throws InterruptedException {
+        while (!recorder.isComplete() && System.nanoTime() - recorder.getLastActivityNanos() < settleTimeoutNanos) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
+    private void report(LoadTestApplication application, List<Long> requestNanos, long start, LoadTestDatabase.QueryStatistics queries) {
+        final long received = recorder.getDelivered() + recorder.getFailed();
+        final long expected = (long) requestNanos.size() * application.getInstallations();
+        final double seconds = Math.max(recorder.getLastActivityNanos() - start, 1) / 1e9;
+        final List<Long> endToEndNanos = recorder.getEndToEndNanos();
+
+        System.out.println();
+        System.out.println("UnifiedPush load test");
+        System.out.println(String.format("  networks          %s", networks));
+        System.out.println(String.format("  installations     %d (%d per variant)", application.getInstallations(), installationsPerVariant));
+        System.out.println(String.format("  push messages     %d sent, %d accepted, concurrency %d", messages, requestNanos.size(), concurrency));
+        System.out.println(String.format("  sender requests   p50 %.1f ms, p99 %.1f ms",
+                millis(percentile(requestNanos, 50)), millis(percentile(requestNanos, 99))));
+        System.out.println(String.format("  deliveries        %d delivered, %d failed, %d missing, %d unknown",
+                recorder.getDelivered(), recorder.getFailed(), Math.max(expected - received, 0), recorder.getUnknown()));
+        System.out.println(String.format("  throughput        %.1f sends/sec", received / seconds));
+        System.out.println(String.format("  end-to-end        p50 %.1f ms, p99 %.1f ms (%d of %d messages complete)",
+                millis(percentile(endToEndNanos, 50)), millis(percentile(endToEndNanos, 99)), recorder.getCompletedMessages(), messages));
+        System.out.println(String.format("  database          %d statements (%.1f per push message)",
+                queries.getExecutions(), queries.getExecutions() / (double) Math.max(requestNanos.size(), 1)));
+        for (String statement : queries.getTopStatements()) {
+            System.out.println("    " + statement);
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of the given values, 0 if there are none.
+     */
+    static long percentile(List<Long> values, int percentile) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        final List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        final int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        final byte[] buffer = new byte[1024];
+        while (in.read(buffer) != -1) {
+            // the response is not needed, reading it lets the connection be reused
+        }
+        in.close();
+    }
+}
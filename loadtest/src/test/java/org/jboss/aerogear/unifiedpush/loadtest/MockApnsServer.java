@@ -0,0 +1,218 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stand-in for the APNs binary interface, over TLS: reads the notifications of the simple (0), enhanced (1) and
+ * frame (2) formats. A failing notification is answered like APNs does, with an error response
+ * (<code>8</code>, invalid token) after which the connection is closed, so the notifications that were already written
+ * to it are lost.
+ *
+ * The feedback service never reports inactive devices, so the installations of the load test are not removed.
+ */
+public class MockApnsServer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int ERROR_RESPONSE = 8;
+    private static final int INVALID_TOKEN = 8;
+
+    private final Logger logger = Logger.getLogger(MockApnsServer.class.getName());
+
+    private final int gatewayPort;
+    private final int feedbackPort;
+    private final MockServerSettings settings;
+    private final DeliveryRecorder recorder;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+
+    private ServerSocket gateway;
+    private ServerSocket feedback;
+
+    public MockApnsServer(int gatewayPort, int feedbackPort, MockServerSettings settings, DeliveryRecorder recorder) {
+        this.gatewayPort = gatewayPort;
+        this.feedbackPort = feedbackPort;
+        this.settings = settings;
+        this.recorder = recorder;
+    }
+
+    public void start() throws IOException {
+        gateway = listen(gatewayPort);
+        feedback = listen(feedbackPort);
+
+        accept(gateway, new ConnectionHandler() {
+            @Override
+            public void handle(Socket socket) throws IOException {
+                readNotifications(socket);
+            }
+        });
+        accept(feedback, new ConnectionHandler() {
+            @Override
+            public void handle(Socket socket) throws IOException {
+                // no inactive devices, the feedback service closes the connection right after the handshake
+                ((SSLSocket) socket).startHandshake();
+            }
+        });
+    }
+
+    public void stop() {
+        close(gateway);
+        close(feedback);
+        connections.shutdownNow();
+    }
+
+    private static ServerSocket listen(int port) throws IOException {
+        final SSLServerSocket socket = (SSLServerSocket) MockTls.serverContext().getServerSocketFactory().createServerSocket(port);
+        socket.setNeedClientAuth(false);
+        return socket;
+    }
+
+    private void accept(final ServerSocket serverSocket, final ConnectionHandler handler) {
+        connections.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        connections.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    handler.handle(socket);
+                                } catch (EOFException e) {
+                                    // the client has closed the connection
+                                } catch (IOException e) {
+                                    logger.log(Level.FINE, "APNs connection failed", e);
+                                } finally {
+                                    close(socket);
+                                }
+                            }
+                        });
+                    } catch (SocketException e) {
+                        // closed by stop()
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Could not accept APNs connection", e);
+                    }
+                }
+            }
+        });
+    }
+
+    private void readNotifications(Socket socket) throws IOException {
+        final DataInputStream in = new DataInputStream(socket.getInputStream());
+        while (true) {
+            final Notification notification = readNotification(in);
+
+            settings.simulateLatency();
+            if (settings.nextFails()) {
+                recorder.failed(notification.payload, 1);
+
+                final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeByte(ERROR_RESPONSE);
+                out.writeByte(INVALID_TOKEN);
+                out.writeInt(notification.identifier);
+                out.flush();
+                return;
+            }
+            recorder.delivered(notification.payload, 1);
+        }
+    }
+
+    private static Notification readNotification(DataInputStream in) throws IOException {
+        final int command = in.readUnsignedByte();
+        switch (command) {
+            case 0: {
+                skip(in, in.readUnsignedShort());
+                return new Notification(0, readString(in, in.readUnsignedShort()));
+            }
+            case 1: {
+                final int identifier = in.readInt();
+                in.readInt(); // expiry
+                skip(in, in.readUnsignedShort());
+                return new Notification(identifier, readString(in, in.readUnsignedShort()));
+            }
+            case 2: {
+                int remaining = in.readInt();
+                int identifier = 0;
+                String payload = null;
+                while (remaining > 0) {
+                    final int item = in.readUnsignedByte();
+                    final int length = in.readUnsignedShort();
+                    if (item == 2) {
+                        payload = readString(in, length);
+                    } else if (item == 3) {
+                        identifier = in.readInt();
+                    } else {
+                        skip(in, length);
+                    }
+                    remaining -= 3 + length;
+                }
+                return new Notification(identifier, payload);
+            }
+            default:
+                throw new IOException("Unknown APNs command " + command);
+        }
+    }
+
+    private static String readString(DataInputStream in, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void skip(DataInputStream in, int length) throws IOException {
+        in.readFully(new byte[length]);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+
+    private interface ConnectionHandler {
+        void handle(Socket socket) throws IOException;
+    }
+
+    private static class Notification {
+        private final int identifier;
+        private final String payload;
+
+        Notification(int identifier, String payload) {
+            this.identifier = identifier;
+            this.payload = payload;
+        }
+    }
+}
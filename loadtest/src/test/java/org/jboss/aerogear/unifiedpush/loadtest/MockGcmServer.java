@@ -0,0 +1,103 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the GCM HTTP connection server, at <code>/gcm/send</code>. Answers every registration ID of a multicast
+ * request on its own: failures are reported as <code>Unavailable</code>, which doesn't remove the installation.
+ */
+public class MockGcmServer extends MockHttpServer {
+
+    public static final String SEND_PATH = "/gcm/send";
+
+    private static final Pattern REGISTRATION_IDS = Pattern.compile("\"registration_ids\"\\s*:\\s*\\[([^\\]]*)\\]");
+
+    private final AtomicLong messageIds = new AtomicLong();
+
+    public MockGcmServer(int port, MockServerSettings settings, DeliveryRecorder recorder) {
+        super(port, false, settings, recorder);
+    }
+
+    /**
+     * The URL to configure as <code>aerogear.gcm.endpoint</code>.
+     */
+    public String getSendUrl() {
+        return getUrl() + SEND_PATH;
+    }
+
+    @Override
+    protected void registerHandlers(HttpServer server) {
+        server.createContext(SEND_PATH, delayed(new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final String request = readBody(exchange);
+                respond(exchange, 200, "application/json", multicastResult(request));
+            }
+        }));
+    }
+
+    String multicastResult(String request) {
+        final int registrationIds = countRegistrationIds(request);
+
+        final StringBuilder results = new StringBuilder();
+        int successes = 0;
+        for (int i = 0; i < registrationIds; i++) {
+            if (i > 0) {
+                results.append(',');
+            }
+            if (settings.nextFails()) {
+                results.append("{\"error\":\"Unavailable\"}");
+            } else {
+                successes++;
+                results.append("{\"message_id\":\"0:").append(messageIds.incrementAndGet()).append("\"}");
+            }
+        }
+
+        recorder.delivered(request, successes);
+        recorder.failed(request, registrationIds - successes);
+
+        return "{\"multicast_id\":" + messageIds.incrementAndGet() +
+                ",\"success\":" + successes +
+                ",\"failure\":" + (registrationIds - successes) +
+                ",\"canonical_ids\":0" +
+                ",\"results\":[" + results + "]}";
+    }
+
+    private static int countRegistrationIds(String request) {
+        final Matcher matcher = REGISTRATION_IDS.matcher(request);
+        if (!matcher.find()) {
+            return 0;
+        }
+        int quotes = 0;
+        final String ids = matcher.group(1);
+        for (int i = 0; i < ids.length(); i++) {
+            if (ids.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes / 2;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MockGcmServerTest {
+
+    private static final String REQUEST = "{\"data\":{\"alert\":\"loadtest-7\",\"badge\":\"1\"},\"registration_ids\":[\"a\",\"b\",\"c\"]}";
+
+    private DeliveryRecorder recorder;
+
+    @Before
+    public void setUp() {
+        recorder = new DeliveryRecorder();
+        recorder.expect(7, 3);
+    }
+
+    @Test
+    public void answerEveryRegistrationId() {
+        final MockGcmServer server = new MockGcmServer(0, new MockServerSettings(0, 0), recorder);
+
+        assertThat(server.multicastResult(REQUEST))
+                .startsWith("{\"multicast_id\":")
+                .contains("\"success\":3,\"failure\":0,\"canonical_ids\":0,\"results\":[{\"message_id\":");
+        assertThat(recorder.getDelivered()).isEqualTo(3);
+        assertThat(recorder.isComplete()).isTrue();
+        assertThat(recorder.getEndToEndNanos()).hasSize(1);
+    }
+
+    @Test
+    public void reportFailuresAsUnavailable() {
+        final MockGcmServer server = new MockGcmServer(0, new MockServerSettings(0, 1), recorder);
+
+        assertThat(server.multicastResult(REQUEST))
+                .contains("\"success\":0,\"failure\":3,\"canonical_ids\":0,\"results\":[{\"error\":\"Unavailable\"},{\"error\":\"Unavailable\"},{\"error\":\"Unavailable\"}]}");
+        assertThat(recorder.getFailed()).isEqualTo(3);
+        assertThat(recorder.isComplete()).isTrue();
+    }
+
+    @Test
+    public void countPayloadsOfOtherMessagesAsUnknown() {
+        final MockGcmServer server = new MockGcmServer(0, new MockServerSettings(0, 0), recorder);
+
+        server.multicastResult("{\"data\":{\"alert\":\"hello\"},\"registration_ids\":[\"a\"]}");
+
+        assertThat(recorder.getUnknown()).isEqualTo(1);
+        assertThat(recorder.isComplete()).isFalse();
+    }
+}
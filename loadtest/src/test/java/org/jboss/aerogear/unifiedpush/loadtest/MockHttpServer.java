@@ -0,0 +1,126 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Base of the stand-in push networks that are spoken to over HTTP(S), on top of the HTTP server of the JDK.
+ */
+public abstract class MockHttpServer {
+
+    protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int port;
+    private final boolean tls;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private HttpServer server;
+
+    protected final MockServerSettings settings;
+    protected final DeliveryRecorder recorder;
+
+    protected MockHttpServer(int port, boolean tls, MockServerSettings settings, DeliveryRecorder recorder) {
+        this.port = port;
+        this.tls = tls;
+        this.settings = settings;
+        this.recorder = recorder;
+    }
+
+    public void start() throws IOException {
+        final InetSocketAddress address = new InetSocketAddress(port);
+        if (tls) {
+            final HttpsServer httpsServer = HttpsServer.create(address, 0);
+            httpsServer.setHttpsConfigurator(new HttpsConfigurator(MockTls.serverContext()));
+            server = httpsServer;
+        } else {
+            server = HttpServer.create(address, 0);
+        }
+        registerHandlers(server);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Base URL of the server, e.g. <code>http://localhost:8093</code>.
+     */
+    public String getUrl() {
+        return (tls ? "https" : "http") + "://localhost:" + port;
+    }
+
+    protected abstract void registerHandlers(HttpServer server);
+
+    /**
+     * Wraps the handler so the exchange is always closed, and the request is held up for the configured latency.
+     */
+    protected HttpHandler delayed(final HttpHandler handler) {
+        return new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    settings.simulateLatency();
+                    handler.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        };
+    }
+
+    protected static String readBody(HttpExchange exchange) throws IOException {
+        final InputStream in = exchange.getRequestBody();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), UTF_8);
+    }
+
+    protected static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        final byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.flush();
+    }
+}
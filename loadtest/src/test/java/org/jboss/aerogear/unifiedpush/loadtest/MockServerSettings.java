@@ -0,0 +1,78 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and error rate of a stand-in push network, read from the <code>loadtest.&lt;network&gt;.latency</code>
+ * (milliseconds per request, default 0) and <code>loadtest.&lt;network&gt;.error-rate</code> (0.0 to 1.0, default 0)
+ * system properties.
+ */
+public final class MockServerSettings {
+
+    private final long latencyMillis;
+    private final double errorRate;
+
+    public MockServerSettings(long latencyMillis, double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("error rate must be between 0 and 1: " + errorRate);
+        }
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+    }
+
+    public static MockServerSettings fromSystemProperties(String network) {
+        return new MockServerSettings(
+                Long.getLong("loadtest." + network + ".latency", 0),
+                Double.parseDouble(System.getProperty("loadtest." + network + ".error-rate", "0")));
+    }
+
+    /**
+     * Holds up the calling thread for the configured latency.
+     */
+    public void simulateLatency() {
+        if (latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Whether the next request should be answered with an error, at the configured rate.
+     */
+    public boolean nextFails() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    @Override
+    public String toString() {
+        return "latency " + latencyMillis + " ms, error rate " + errorRate;
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+
+/**
+ * Stand-in for the SimplePush servers: the device tokens of the load test are update URLs
+ * <code>http://localhost:&lt;port&gt;/simplepush/&lt;channel&gt;</code>, the <code>version=</code> payload is accepted
+ * with <code>200</code>, failures are answered with <code>500</code>.
+ */
+public class MockSimplePushServer extends MockHttpServer {
+
+    public static final String UPDATE_PATH = "/simplepush/";
+
+    public MockSimplePushServer(int port, MockServerSettings settings, DeliveryRecorder recorder) {
+        super(port, false, settings, recorder);
+    }
+
+    /**
+     * The update URL of the given channel, used as device token.
+     */
+    public String getUpdateUrl(String channel) {
+        return getUrl() + UPDATE_PATH + channel;
+    }
+
+    @Override
+    protected void registerHandlers(HttpServer server) {
+        server.createContext(UPDATE_PATH, delayed(new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final String version = readBody(exchange);
+                if (settings.nextFails()) {
+                    recorder.failed(version, 1);
+                    respond(exchange, 500, null, null);
+                } else {
+                    recorder.delivered(version, 1);
+                    respond(exchange, 200, null, null);
+                }
+            }
+        }));
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * TLS of the stand-in push networks: a self-signed certificate for <code>localhost</code>. The server under test has to
+ * trust it, with <code>-Djavax.net.ssl.trustStore=mock-truststore.jks -Djavax.net.ssl.trustStorePassword=loadtest</code>.
+ */
+final class MockTls {
+
+    static final String PASSWORD = "loadtest";
+
+    private MockTls() {
+    }
+
+    static SSLContext serverContext() {
+        try {
+            final KeyStore keyStore = KeyStore.getInstance("JKS");
+            final InputStream stream = MockTls.class.getResourceAsStream("/mock-server.jks");
+            try {
+                keyStore.load(stream, PASSWORD.toCharArray());
+            } finally {
+                stream.close();
+            }
+
+            final KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, PASSWORD.toCharArray());
+
+            final SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers.getKeyManagers(), null, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not set up TLS of the mock servers", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the keystore of the mock servers", e);
+        }
+    }
+}
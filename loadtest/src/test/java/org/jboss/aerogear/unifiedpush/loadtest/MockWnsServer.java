@@ -0,0 +1,80 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+
+/**
+ * Stand-in for WNS, over TLS: hands out access tokens at <code>/accesstoken.srf</code> and receives the notifications
+ * at the channel URIs <code>https://localhost:&lt;port&gt;/wns/&lt;channel&gt;</code>, which are the device tokens of
+ * the load test. Failures are answered with <code>503</code>, which doesn't expire the channel.
+ *
+ * The WNS library authenticates against the fixed <code>login.live.com</code>, so the server under test only gets
+ * its access tokens from here if that name resolves to this machine.
+ */
+public class MockWnsServer extends MockHttpServer {
+
+    public static final String TOKEN_PATH = "/accesstoken.srf";
+    public static final String CHANNEL_PATH = "/wns/";
+
+    public MockWnsServer(int port, MockServerSettings settings, DeliveryRecorder recorder) {
+        super(port, true, settings, recorder);
+    }
+
+    /**
+     * The channel URI of the given channel, used as device token.
+     */
+    public String getChannelUri(String channel) {
+        return getUrl() + CHANNEL_PATH + channel;
+    }
+
+    @Override
+    protected void registerHandlers(HttpServer server) {
+        server.createContext(TOKEN_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    readBody(exchange);
+                    respond(exchange, 200, "application/json",
+                            "{\"token_type\":\"bearer\",\"access_token\":\"loadtest\",\"expires_in\":86400}");
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.createContext(CHANNEL_PATH, delayed(new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final String notification = readBody(exchange);
+                if (settings.nextFails()) {
+                    recorder.failed(notification, 1);
+                    respond(exchange, 503, null, null);
+                } else {
+                    recorder.delivered(notification, 1);
+                    exchange.getResponseHeaders().set("X-WNS-Status", "received");
+                    exchange.getResponseHeaders().set("X-WNS-DeviceConnectionStatus", "connected");
+                    exchange.getResponseHeaders().set("X-WNS-Msg-ID", Long.toHexString(System.nanoTime()));
+                    respond(exchange, 200, null, null);
+                }
+            }
+        }));
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.jboss.aerogear.unifiedpush.api;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
@@ -32,6 +33,9 @@ public class AndroidVariant extends Variant {
     @Size(min = 1, max = 255)
     private String projectNumber;
 
+    @Min(1)
+    private Integer pagesInFlight;
+
     /**
      * The "Google Project Number" from the API Console is <i>not</i> needed for sending push messages, but it is a convenience to "see" it on
      * the Admin UI as well, since the Android applications require it (called Sender ID there). That way all informations are stored on the
@@ -56,6 +60,19 @@ public class AndroidVariant extends Variant {
         this.googleKey = googleKey;
     }
 
+    /**
+     * The number of GCM multicast pages (of up to 1000 registration IDs each) that are sent to Google at the same time,
+     * for a large push message. Optional, the server wide <code>aerogear.gcm.pages-in-flight</code> setting is used if
+     * it is not set.
+     */
+    public Integer getPagesInFlight() {
+        return pagesInFlight;
+    }
+
+    public void setPagesInFlight(final Integer pagesInFlight) {
+        this.pagesInFlight = pagesInFlight;
+    }
+
     @Override
     public VariantType getType() {
         return VariantType.ANDROID;
@@ -18,6 +18,7 @@ package org.jboss.aerogear.unifiedpush.api;
 
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.jboss.aerogear.unifiedpush.api.validation.DeviceTokenCheck;
+import org.jboss.aerogear.unifiedpush.utils.DeviceTokenUtils;
 
 import java.util.Set;
 
@@ -31,6 +32,8 @@ public class Installation extends BaseModel {
 
     private boolean enabled = true;
     private String deviceToken;
+    @JsonIgnore
+    private String tokenHash;
     private String deviceType;
     private String operatingSystem;
     private String osVersion;
@@ -75,6 +78,16 @@ public class Installation extends BaseModel {
      */
     public void setDeviceToken(final String deviceToken) {
         this.deviceToken = deviceToken;
+        this.tokenHash = DeviceTokenUtils.hash(deviceToken);
+    }
+
+    /**
+     * The SHA-256 hash of the <code>deviceToken</code>, used to look up installations (the token itself is too long
+     * to be indexed).
+     */
+    @JsonIgnore
+    public String getTokenHash() {
+        return tokenHash;
     }
 
     public String getDeviceType() {
@@ -0,0 +1,139 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.api;
+
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+/**
+ * Pre-aggregated delivery numbers of a PushApplication, or of one of its variants, for one hour or one day. The rows
+ * are maintained while the outcomes of the push messages are stored, and are not removed together with the
+ * {@link PushMessageInformation} objects they were computed from.
+ */
+public class PushMetricRollup extends BaseModel {
+
+    @NotNull
+    private RollupPeriod period;
+    @NotNull
+    private Date periodStart;
+    @NotNull
+    private String pushApplicationId;
+    private String variantID;
+
+    private long sends;
+    private long receivers;
+    private long successes;
+    private long failures;
+
+    public PushMetricRollup() {
+    }
+
+    public PushMetricRollup(RollupPeriod period, Date periodStart, String pushApplicationId, String variantID) {
+        this.period = period;
+        this.periodStart = periodStart;
+        this.pushApplicationId = pushApplicationId;
+        this.variantID = variantID;
+    }
+
+    /**
+     * The length of the bucket
+     */
+    public RollupPeriod getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(RollupPeriod period) {
+        this.period = period;
+    }
+
+    /**
+     * The start of the bucket: the submit dates of the counted push messages are within the period that starts here
+     */
+    public Date getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(Date periodStart) {
+        this.periodStart = periodStart;
+    }
+
+    /**
+     * The ID of the PushApplication that sent the counted push messages
+     */
+    public String getPushApplicationId() {
+        return pushApplicationId;
+    }
+
+    public void setPushApplicationId(String pushApplicationId) {
+        this.pushApplicationId = pushApplicationId;
+    }
+
+    /**
+     * The ID of the variant, or <code>null</code> for the numbers of the entire PushApplication
+     */
+    public String getVariantID() {
+        return variantID;
+    }
+
+    public void setVariantID(String variantID) {
+        this.variantID = variantID;
+    }
+
+    /**
+     * Number of push messages that were delivered to (at least one installation of) the application or variant
+     */
+    public long getSends() {
+        return sends;
+    }
+
+    public void setSends(long sends) {
+        this.sends = sends;
+    }
+
+    /**
+     * Number of receivers of those push messages
+     */
+    public long getReceivers() {
+        return receivers;
+    }
+
+    public void setReceivers(long receivers) {
+        this.receivers = receivers;
+    }
+
+    /**
+     * Number of receivers the push network accepted the message for
+     */
+    public long getSuccesses() {
+        return successes;
+    }
+
+    public void setSuccesses(long successes) {
+        this.successes = successes;
+    }
+
+    /**
+     * Number of receivers the delivery to the push network failed for
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    public void setFailures(long failures) {
+        this.failures = failures;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.api;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * The length of the time buckets of a {@link PushMetricRollup}. Buckets start at the full hour, or at midnight, in UTC.
+ */
+public enum RollupPeriod {
+
+    /**
+     * One bucket per hour.
+     */
+    HOUR(Calendar.HOUR_OF_DAY),
+
+    /**
+     * One bucket per (UTC) day.
+     */
+    DAY(Calendar.DAY_OF_MONTH);
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final int field;
+
+    private RollupPeriod(int field) {
+        this.field = field;
+    }
+
+    /**
+     * Returns the start of the bucket the given date belongs to.
+     */
+    public Date startOf(Date date) {
+        final Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTime(date);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        if (field == Calendar.DAY_OF_MONTH) {
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+        }
+        return calendar.getTime();
+    }
+}
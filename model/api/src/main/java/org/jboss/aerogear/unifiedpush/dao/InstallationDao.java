@@ -19,6 +19,7 @@ package org.jboss.aerogear.unifiedpush.dao;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface InstallationDao extends GenericBaseDao<Installation, String> {
@@ -33,6 +34,19 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     List<Installation> findInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens);
 
+    /**
+     * Returns those tokens of the given <code>Set</code>, that are already registered for the given Variant
+     */
+    List<String> findDeviceTokensForVariantByDeviceTokens(String variantID, Set<String> deviceTokens);
+
+    /**
+     * Deletes all installations matching the <code>Set</code> of deviceTokens for the given Variant, using a few bulk
+     * statements instead of loading and removing the installations one by one.
+     *
+     * @return the number of deleted installations
+     */
+    int deleteInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens);
+
     /**
      * Sender API for installations:
      *
@@ -40,6 +54,19 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     List<String> findAllDeviceTokenForVariantIDByCriteria(String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes);
 
+    /**
+     * Sender API for installations:
+     *
+     * Query the next batch of (distinct) tokens for the given variant, by respecting a few criteria arguments (categories, aliases and deviceTypes).
+     * The tokens are sorted by their hash, and the batch starts after the hash of the given <code>lastTokenFromPreviousBatch</code>.
+     *
+     * @param lastTokenFromPreviousBatch last token of the previous batch, or <code>null</code> for the first batch
+     * @param batchSize maximum number of tokens returned
+     * @return the tokens of the batch, an empty list once all tokens have been read
+     */
+    List<String> findDeviceTokensForVariantIDByCriteria(String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes,
+                                                        String lastTokenFromPreviousBatch, int batchSize);
+
     /**
      * Find all installations for the variant specified.
      * @param variantID the id of the variant to find the installations for
@@ -50,6 +77,21 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     PageResult<Installation> findInstallationsByVariant(String variantID, String developer, Integer page, Integer pageSize);
 
+    /**
+     * Keyset paging: loads the next page of installations for the variant specified, ordered by their ID.
+     * @param variantID the id of the variant to find the installations for
+     * @param developer the developer
+     * @param lastInstallationID ID of the last installation of the previous page, or <code>null</code> for the first page
+     * @param pageSize the size of the page
+     * @return the installations of the page, an empty list after the last page
+     */
+    List<Installation> findInstallationsByVariantAfter(String variantID, String developer, String lastInstallationID, int pageSize);
+
+    /**
+     * Counts the installations of the variant specified.
+     */
+    long countInstallationsByVariant(String variantID, String developer);
+
     /**
      * Counts the total number of registered devices/clients for the give List of variantIDs
      */
@@ -60,4 +102,9 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      * Counts the total number of all registered devices/clients
      */
     long getNumberOfDevicesForVariantIDs();
+
+    /**
+     * Counts the registered devices/clients of all variants, grouped by the developer of the variant.
+     */
+    Map<String, Long> countInstallationsByDeveloper();
 }
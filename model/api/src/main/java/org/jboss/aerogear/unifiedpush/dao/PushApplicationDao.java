@@ -55,6 +55,11 @@ public interface PushApplicationDao extends GenericBaseDao<PushApplication, Stri
      */
     List<PushApplication> findByVariantIds(List<String> variantIDs);
 
+    /**
+     * Return application name and id of those variants matching given ids, that belong to the given user
+     */
+    List<PushApplication> findByVariantIdsForDeveloper(List<String> variantIDs, String developer);
+
     //Admin queries
     /**
      * Finder that returns an actual PushApplicationEntity, identified by its ID and its owner/developer.
@@ -64,4 +69,9 @@ public interface PushApplicationDao extends GenericBaseDao<PushApplication, Stri
     PageResult<PushApplication> findAll(Integer page, Integer pageSize);
 
     long getNumberOfPushApplicationsForDeveloper();
+
+    /**
+     * Counts all PushApplications, grouped by their developer.
+     */
+    Map<String, Long> countPushApplicationsByDeveloper();
 }
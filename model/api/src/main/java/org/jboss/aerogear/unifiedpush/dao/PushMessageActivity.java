@@ -0,0 +1,54 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.dao;
+
+import java.util.Date;
+
+/**
+ * Projection of a push message request, together with the name of its PushApplication, for the activity
+ * list on the 'Dashboard'.
+ */
+public class PushMessageActivity {
+
+    private final String pushApplicationID;
+    private final String applicationName;
+    private final long totalReceivers;
+    private final Date submitDate;
+
+    public PushMessageActivity(String pushApplicationID, String applicationName, long totalReceivers, Date submitDate) {
+        this.pushApplicationID = pushApplicationID;
+        this.applicationName = applicationName;
+        this.totalReceivers = totalReceivers;
+        this.submitDate = submitDate;
+    }
+
+    public String getPushApplicationID() {
+        return pushApplicationID;
+    }
+
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    public long getTotalReceivers() {
+        return totalReceivers;
+    }
+
+    public Date getSubmitDate() {
+        return submitDate;
+    }
+}
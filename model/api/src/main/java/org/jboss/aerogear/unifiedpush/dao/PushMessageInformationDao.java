@@ -18,8 +18,10 @@ package org.jboss.aerogear.unifiedpush.dao;
 
 import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 public interface PushMessageInformationDao extends GenericBaseDao<PushMessageInformation, String>  {
 
@@ -52,24 +54,72 @@ public interface PushMessageInformationDao extends GenericBaseDao<PushMessageInf
     PageResult<PushMessageInformation> findAllForVariant(String id, boolean ascending, Integer page, Integer pageSize);
 
     /**
-     * Filters those variantIDs where the variant shows errors/issues for previous message sends
+     * Keyset paging: loads the next page of push message metadata objects for the given PushApplication, ordered
+     * (asc/desc) by date.
+     *
+     * @param pushApplicationId ID of the PushApplication
+     * @param ascending boolean to define if ASC ordering (by date) or DESC ordering should be executed.
+     * @param lastSubmitDate submit date of the last object of the previous page, or <code>null</code> for the first page
+     * @param lastId ID of the last object of the previous page, or <code>null</code> for the first page
+     * @param pageSize the number of elements in the result.
+     */
+    List<PushMessageInformation> findAllForPushApplicationAfter(String pushApplicationId, boolean ascending, Date lastSubmitDate, String lastId, int pageSize);
+
+    /**
+     * Keyset paging: loads the next page of push message metadata objects for the given Variant, ordered (asc/desc) by date.
+     *
+     * @see #findAllForPushApplicationAfter(String, boolean, java.util.Date, String, int)
+     */
+    List<PushMessageInformation> findAllForVariantAfter(String variantID, boolean ascending, Date lastSubmitDate, String lastId, int pageSize);
+
+    /**
+     * Counts the push message metadata objects of the given PushApplication.
+     */
+    long countForPushApplication(String pushApplicationId);
+
+    /**
+     * Counts the push message metadata objects of the given Variant.
      */
-    List<String> findVariantIDsWithWarnings(String loginName);
+    long countForVariant(String variantID);
 
     /**
-     * Filters the three most recent PushMessageInformation objects
+     * Filters the three most recent push message requests, together with the name of their PushApplication
      */
-    List<PushMessageInformation> findLastThreeActivity(String loginName);
+    List<PushMessageActivity> findLastThreeActivity(String loginName);
 
     /**
      * Delete all Push Message Information entries that are older than the given date
      */
     void deletePushInformationOlderThan(Date oldest);
 
+    /**
+     * Deletes (at most) the <code>maxResults</code> oldest Push Message Information entries that are older than the
+     * given date, except for those of the given PushApplications, with bulk statements.
+     *
+     * @return the number of deleted entries, less than <code>maxResults</code> if there are no more outdated entries
+     */
+    int deletePushInformationOlderThan(Date oldest, Collection<String> excludedPushApplicationIDs, int maxResults);
+
+    /**
+     * Deletes (at most) the <code>maxResults</code> oldest Push Message Information entries of the given PushApplication
+     * that are older than the given date, with bulk statements.
+     *
+     * @return the number of deleted entries, less than <code>maxResults</code> if there are no more outdated entries
+     */
+    int deletePushInformationOlderThan(String pushApplicationID, Date oldest, int maxResults);
+
     //Admin queries
+    /**
+     * Filters those variantIDs where the variant shows errors/issues for previous message sends
+     */
     List<String> findVariantIDsWithWarnings();
 
-    List<PushMessageInformation> findLastThreeActivity();
+    List<PushMessageActivity> findLastThreeActivity();
 
     long getNumberOfPushMessagesForApplications();
+
+    /**
+     * Counts the push messages of all PushApplications, grouped by the developer of the PushApplication.
+     */
+    Map<String, Long> countPushMessagesByDeveloper();
 }
@@ -0,0 +1,56 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.dao;
+
+import org.jboss.aerogear.unifiedpush.api.PushMetricRollup;
+import org.jboss.aerogear.unifiedpush.api.RollupPeriod;
+
+import java.util.Date;
+import java.util.List;
+
+public interface PushMetricRollupDao extends GenericBaseDao<PushMetricRollup, String> {
+
+    /**
+     * Adds the numbers of the given rollup to the stored one of the same period, bucket, PushApplication and variant,
+     * or stores the given rollup if there is none yet.
+     */
+    void addToRollup(PushMetricRollup increment);
+
+    /**
+     * Loads the rollups of the entire PushApplication, ordered by the start of their bucket.
+     *
+     * @param pushApplicationId ID of the PushApplication
+     * @param period length of the buckets
+     * @param from start of the first bucket (inclusive)
+     * @param to end of the last bucket (exclusive)
+     */
+    List<PushMetricRollup> findForPushApplication(String pushApplicationId, RollupPeriod period, Date from, Date to);
+
+    /**
+     * Loads the rollups of the given Variant, ordered by the start of their bucket.
+     *
+     * @see #findForPushApplication(String, org.jboss.aerogear.unifiedpush.api.RollupPeriod, java.util.Date, java.util.Date)
+     */
+    List<PushMetricRollup> findForVariant(String variantID, RollupPeriod period, Date from, Date to);
+
+    /**
+     * Deletes the rollups of the given period whose bucket starts before the given date.
+     *
+     * @return the number of deleted rollups
+     */
+    int deleteRollupsOlderThan(RollupPeriod period, Date oldest);
+}
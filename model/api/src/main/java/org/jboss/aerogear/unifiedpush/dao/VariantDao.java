@@ -45,6 +45,11 @@ public interface VariantDao extends GenericBaseDao<Variant, String> {
      */
     List<Variant> findAllVariantsByIDs(List<String> variantIDs);
 
+    /**
+     * Loads list of all variants of the push application with the given pushApplicationID.
+     */
+    List<Variant> findAllVariantsByPushApplicationID(String pushApplicationID);
+
     //Admin queries
     boolean existsVariantIDForAdmin(String variantID);
 }
@@ -0,0 +1,109 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helper to read tuning values for the server from system properties (e.g. <code>-Dkey=value</code>
+ * or the <code>system-properties</code> section of the application server configuration),
+ * falling back to a default when the property is absent or malformed.
+ */
+public final class ConfigurationUtils {
+
+    private static final AeroGearLogger logger = AeroGearLogger.getInstance(ConfigurationUtils.class);
+
+    private ConfigurationUtils() {
+        // no-op
+    }
+
+    /**
+     * Returns the value of the given system property, or the <code>defaultValue</code> if it has not been specified.
+     */
+    public static String tryGetProperty(String key, String defaultValue) {
+        try {
+            return System.getProperty(key, defaultValue);
+        } catch (SecurityException e) {
+            logger.severe("Could not read system property '" + key + "'", e);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the integer value of the given system property, or the <code>defaultValue</code> if it has not been
+     * specified or is not a valid number.
+     */
+    public static int tryGetIntegerProperty(String key, int defaultValue) {
+        final String value = tryGetProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warning("Ignoring invalid value '" + value + "' for system property '" + key + "'");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the long value of the given system property, or the <code>defaultValue</code> if it has not been
+     * specified or is not a valid number.
+     */
+    public static long tryGetLongProperty(String key, long defaultValue) {
+        final String value = tryGetProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warning("Ignoring invalid value '" + value + "' for system property '" + key + "'");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the boolean value of the given system property, or the <code>defaultValue</code> if it has not been specified.
+     */
+    public static boolean tryGetBooleanProperty(String key, boolean defaultValue) {
+        final String value = tryGetProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Returns all system properties whose key starts with the given prefix, keyed by the rest of their key. Used for
+     * settings that can be given per entity, e.g. <code>prefix.&lt;pushApplicationID&gt;</code>.
+     */
+    public static Map<String, String> tryGetPropertiesWithPrefix(String prefix) {
+        final Map<String, String> properties = new HashMap<String, String>();
+        try {
+            for (String key : System.getProperties().stringPropertyNames()) {
+                if (key.startsWith(prefix) && key.length() > prefix.length()) {
+                    properties.put(key.substring(prefix.length()), System.getProperty(key));
+                }
+            }
+        } catch (SecurityException e) {
+            logger.severe("Could not read system properties with prefix '" + prefix + "'", e);
+        }
+        return properties;
+    }
+}
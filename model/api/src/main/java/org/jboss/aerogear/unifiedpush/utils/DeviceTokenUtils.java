@@ -0,0 +1,55 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.utils;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class DeviceTokenUtils {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private DeviceTokenUtils() {
+        // no-op
+    }
+
+    /**
+     * Returns the (lower case, hex encoded) SHA-256 hash of the given device token, or <code>null</code> for a
+     * <code>null</code> token. Device tokens can be up to 4096 characters long, which is too long for a database
+     * index, so installations are looked up by the hash of their token.
+     */
+    public static String hash(String deviceToken) {
+        if (deviceToken == null) {
+            return null;
+        }
+
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(deviceToken.getBytes(UTF_8));
+            final char[] hash = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hash[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                hash[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -70,4 +70,12 @@ public class InstallationTest {
         deviceInstallation.setDeviceToken("http://server.com/update/21345321354");
         assertThat(deviceInstallation.getDeviceToken()).isEqualTo("http://server.com/update/21345321354");
     }
+
+    @Test
+    public void tokenHashFollowsDeviceToken() {
+        assertThat(deviceInstallation.getTokenHash()).isEqualTo("893b70424df167faa506a0f286d63b5bb6228cb69bb0c4b7407d30da91149d51");
+
+        deviceInstallation.setDeviceToken(null);
+        assertThat(deviceInstallation.getTokenHash()).isNull();
+    }
 }
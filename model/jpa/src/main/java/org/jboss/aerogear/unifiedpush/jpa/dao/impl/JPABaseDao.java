@@ -19,6 +19,9 @@ package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public abstract class JPABaseDao {
 
@@ -37,6 +40,21 @@ public abstract class JPABaseDao {
         return entityManager.createQuery(jpql);
     }
 
+    protected Query createNativeQuery(String sql) {
+        return entityManager.createNativeQuery(sql);
+    }
+
+    /**
+     * Turns the rows of a <code>select key, count(...) ... group by key</code> query into a map.
+     */
+    protected Map<String, Long> toCountsByKey(List<Object[]> rows) {
+        final Map<String, Long> counts = new HashMap<String, Long>();
+        for (Object[] row : rows) {
+            counts.put((String) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+
     protected void persist(Object entity) {
         entityManager.joinTransaction();
         entityManager.persist(entity);
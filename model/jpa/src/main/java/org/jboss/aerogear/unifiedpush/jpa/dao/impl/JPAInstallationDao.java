@@ -19,6 +19,7 @@ package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
+import org.jboss.aerogear.unifiedpush.utils.DeviceTokenUtils;
 
 import javax.persistence.Query;
 import javax.persistence.criteria.*;
@@ -26,6 +27,12 @@ import java.util.*;
 
 public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
 
+    /**
+     * Maximum number of tokens in the IN clause of one bulk delete: some databases limit the number of
+     * bind parameters of a statement.
+     */
+    private static final int DELETE_CHUNK_SIZE = 500;
+
     @Override
     public void create(Installation installation) {
         persist(installation);
@@ -33,7 +40,13 @@ public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
 
     @Override
     public void update(Installation installation) {
-        merge(installation);
+        // installations loaded by this DAO are still managed: their changes are written by the
+        // flush at commit, so there is no need for an extra merge (and immediate flush)
+        if (entityManager.contains(installation)) {
+            entityManager.joinTransaction();
+        } else {
+            merge(installation);
+        }
     }
 
     @Override
@@ -61,6 +74,37 @@ public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
         return new PageResult<Installation>(result, count);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Installation> findInstallationsByVariantAfter(String variantID, String developer, String lastInstallationID, int pageSize) {
+        final StringBuilder jpqlString = new StringBuilder("select installation from Installation installation")
+                .append(" join installation.variant abstractVariant")
+                .append(" where abstractVariant.variantID = :variantID and abstractVariant.developer = :developer");
+
+        // unlike an offset, continuing after the last row of the previous page does not get slower on deep pages:
+        if (lastInstallationID != null) {
+            jpqlString.append(" and installation.id > :lastInstallationID");
+        }
+
+        final Query query = createQuery(jpqlString.append(" order by installation.id").toString())
+                .setParameter("variantID", variantID)
+                .setParameter("developer", developer);
+        if (lastInstallationID != null) {
+            query.setParameter("lastInstallationID", lastInstallationID);
+        }
+
+        return query.setMaxResults(pageSize).getResultList();
+    }
+
+    @Override
+    public long countInstallationsByVariant(String variantID, String developer) {
+        return (Long) createQuery("select count(installation) from Installation installation join installation.variant abstractVariant" +
+                " where abstractVariant.variantID = :variantID and abstractVariant.developer = :developer")
+                .setParameter("variantID", variantID)
+                .setParameter("developer", developer)
+                .getSingleResult();
+    }
+
     private Predicate[] getPredicates(String variantID, String developer, CriteriaBuilder builder, Join join) {
         return new Predicate[]{builder.equal(join.get("variantID"), variantID),
                     builder.and(builder.equal(join.get("developer"), developer))};
@@ -72,8 +116,10 @@ public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
         return getSingleResultForQuery(createQuery("select installation from Installation installation " +
                 " join installation.variant abstractVariant" +
                 " where abstractVariant.variantID = :variantID" +
+                " and installation.tokenHash = :tokenHash" +
                 " and installation.deviceToken = :deviceToken")
                 .setParameter("variantID", variantID)
+                .setParameter("tokenHash", DeviceTokenUtils.hash(deviceToken))
                 .setParameter("deviceToken", deviceToken));
     }
 
@@ -88,13 +134,82 @@ public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
         return createQuery("select installation from Installation installation " +
                 " join installation.variant abstractVariant " +
                 " where abstractVariant.variantID = :variantID" +
-                " and installation.deviceToken IN :deviceTokens")
+                " and installation.tokenHash IN :tokenHashes")
+                .setParameter("variantID", variantID)
+                .setParameter("tokenHashes", hashes(deviceTokens))
+                .getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> findDeviceTokensForVariantByDeviceTokens(String variantID, Set<String> deviceTokens) {
+        // if there are no device-tokens, no need to bug the database
+        if (deviceTokens == null || deviceTokens.isEmpty()) {
+            return Collections.EMPTY_LIST;
+        }
+
+        return createQuery("select installation.deviceToken from Installation installation " +
+                " join installation.variant abstractVariant " +
+                " where abstractVariant.variantID = :variantID" +
+                " and installation.tokenHash IN :tokenHashes")
                 .setParameter("variantID", variantID)
-                .setParameter("deviceTokens", deviceTokens)
+                .setParameter("tokenHashes", hashes(deviceTokens))
                 .getResultList();
     }
 
     @Override
+    @SuppressWarnings("unchecked")
+    public int deleteInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens) {
+        // if there are no device-tokens, no need to bug the database
+        if (deviceTokens == null || deviceTokens.isEmpty()) {
+            return 0;
+        }
+
+        // pending changes have to be visible to the bulk statements:
+        entityManager.joinTransaction();
+        entityManager.flush();
+
+        int deleted = 0;
+        final List<String> tokenHashes = new ArrayList<String>(hashes(deviceTokens));
+        for (int from = 0; from < tokenHashes.size(); from += DELETE_CHUNK_SIZE) {
+            final List<String> chunk = tokenHashes.subList(from, Math.min(from + DELETE_CHUNK_SIZE, tokenHashes.size()));
+
+            // categories might be shared with other installations, so we only remove the orphaned ones afterwards:
+            final List<Number> categoryIDs = createNativeQuery("select ic.categories_id from Installation_Category ic" +
+                    " join Installation installation on installation.id = ic.Installation_id" +
+                    " where installation.variantID = :variantID and installation.tokenHash in (:tokenHashes)")
+                    .setParameter("variantID", variantID)
+                    .setParameter("tokenHashes", chunk)
+                    .getResultList();
+
+            createNativeQuery("delete from Installation_Category where Installation_id in" +
+                    " (select installation.id from Installation installation" +
+                    " where installation.variantID = :variantID and installation.tokenHash in (:tokenHashes))")
+                    .setParameter("variantID", variantID)
+                    .setParameter("tokenHashes", chunk)
+                    .executeUpdate();
+
+            deleted += createNativeQuery("delete from Installation where variantID = :variantID and tokenHash in (:tokenHashes)")
+                    .setParameter("variantID", variantID)
+                    .setParameter("tokenHashes", chunk)
+                    .executeUpdate();
+
+            if (!categoryIDs.isEmpty()) {
+                final Set<Long> ids = new HashSet<Long>();
+                for (Number categoryID : categoryIDs) {
+                    ids.add(categoryID.longValue());
+                }
+                createNativeQuery("delete from Category where id in (:categoryIDs)" +
+                        " and id not in (select ic.categories_id from Installation_Category ic)")
+                        .setParameter("categoryIDs", ids)
+                        .executeUpdate();
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
     public List<String> findAllDeviceTokenForVariantIDByCriteria(String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes) {
         // the required part: Join + all tokens for variantID;
 
@@ -102,7 +217,35 @@ public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
                 .append( " left join installation.categories c ")
                 .append(" join installation.variant abstractVariant where abstractVariant.variantID = :variantID AND installation.enabled = true");
 
-        return this.executeDynamicQuery(jpqlString, variantID, categories, aliases, deviceTypes);
+        return this.executeDynamicQuery(jpqlString, variantID, categories, aliases, deviceTypes).getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> findDeviceTokensForVariantIDByCriteria(String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes,
+                                                               String lastTokenFromPreviousBatch, int batchSize) {
+        // keyset paging on the (variantID, tokenHash) index: the batch continues after the hash of the last token of
+        // the previous one, so the database neither skips over the already read rows (like with an offset) nor sorts
+        // the (unindexed) tokens themselves
+        final StringBuilder jpqlString = new StringBuilder("select distinct installation.tokenHash, installation.deviceToken from Installation installation")
+                .append(" left join installation.categories c ")
+                .append(" join installation.variant abstractVariant where abstractVariant.variantID = :variantID AND installation.enabled = true");
+
+        if (lastTokenFromPreviousBatch != null) {
+            jpqlString.append(" and installation.tokenHash > :lastTokenHash");
+        }
+
+        final Query query = this.executeDynamicQuery(jpqlString, variantID, categories, aliases, deviceTypes, " order by installation.tokenHash");
+        if (lastTokenFromPreviousBatch != null) {
+            query.setParameter("lastTokenHash", DeviceTokenUtils.hash(lastTokenFromPreviousBatch));
+        }
+
+        final List<Object[]> rows = query.setMaxResults(batchSize).getResultList();
+        final List<String> deviceTokens = new ArrayList<String>(rows.size());
+        for (Object[] row : rows) {
+            deviceTokens.add((String) row[1]);
+        }
+        return deviceTokens;
     }
 
     @Override
@@ -123,6 +266,12 @@ public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
                 .getSingleResult();
     }
 
+    @Override
+    public Map<String, Long> countInstallationsByDeveloper() {
+        return toCountsByKey(createQuery("select abstractVariant.developer, count(installation) from Installation installation "
+                + "join installation.variant abstractVariant group by abstractVariant.developer").getResultList());
+    }
+
 
     /**
      *
@@ -130,11 +279,15 @@ public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
      * The method appends different criterias to the given JPQL string, IF PRESENT.
      *
      * Done in one method, instead of having similar, but error-thrown Strings, in different methods.
+     * The returned query has all parameters of the criteria applied.
      *
      * TODO: perhaps moving to Criteria API for this later
      */
-    @SuppressWarnings("unchecked")
-    private List<String> executeDynamicQuery(final StringBuilder jpqlBaseString, String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes) {
+    private Query executeDynamicQuery(final StringBuilder jpqlBaseString, String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes) {
+        return executeDynamicQuery(jpqlBaseString, variantID, categories, aliases, deviceTypes, "");
+    }
+
+    private Query executeDynamicQuery(final StringBuilder jpqlBaseString, String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes, String orderBy) {
 
         // parameter names and values, stored in a map:
         final Map<String, Object> parameters = new LinkedHashMap<String, Object>();
@@ -163,7 +316,7 @@ public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
         }
 
         // the entire JPQL string
-        Query jpql = createQuery(jpqlBaseString.toString());
+        Query jpql = createQuery(jpqlBaseString.append(orderBy).toString());
         // add REQUIRED param:
         jpql.setParameter("variantID", variantID);
 
@@ -173,8 +326,19 @@ public class JPAInstallationDao extends JPABaseDao implements InstallationDao {
             jpql.setParameter(parameterName, parameters.get(parameterName));
         }
 
-        return jpql.getResultList();
+        return jpql;
+    }
+    /**
+     * Installations are looked up by the (indexed) hash of their token
+     */
+    private static Set<String> hashes(Collection<String> deviceTokens) {
+        final Set<String> tokenHashes = new HashSet<String>(deviceTokens.size());
+        for (String deviceToken : deviceTokens) {
+            tokenHashes.add(DeviceTokenUtils.hash(deviceToken));
+        }
+        return tokenHashes;
     }
+
     /**
      * Checks if the list is empty, and not null
      */
@@ -125,6 +125,16 @@ public class JPAPushApplicationDao extends JPABaseDao implements PushApplication
         return (List<PushApplication>) createQuery(jpql).setParameter("variantIDs", variantIDs).getResultList();
     }
 
+    @Override
+    public List<PushApplication> findByVariantIdsForDeveloper(List<String> variantIDs, String developer) {
+        final String jpql = "select pa from PushApplication pa left join fetch pa.variants v where v.variantID in (:variantIDs) and v.developer = :developer";
+
+        return (List<PushApplication>) createQuery(jpql)
+                .setParameter("variantIDs", variantIDs)
+                .setParameter("developer", developer)
+                .getResultList();
+    }
+
     @Override
     public PushApplication find(String id) {
         return entityManager.find(PushApplication.class, id);
@@ -167,4 +177,9 @@ public class JPAPushApplicationDao extends JPABaseDao implements PushApplication
                 .getSingleResult();
     }
 
+    @Override
+    public Map<String, Long> countPushApplicationsByDeveloper() {
+        return toCountsByKey(createQuery("select pa.developer, count(pa) from PushApplication pa group by pa.developer").getResultList());
+    }
+
 }
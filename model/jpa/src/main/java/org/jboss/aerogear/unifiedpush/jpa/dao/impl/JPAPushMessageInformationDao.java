@@ -19,11 +19,17 @@ package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
 
 import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
+import org.jboss.aerogear.unifiedpush.dao.PushMessageActivity;
 import org.jboss.aerogear.unifiedpush.dao.PushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
 
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 
 public class JPAPushMessageInformationDao extends JPABaseDao implements PushMessageInformationDao {
@@ -31,6 +37,14 @@ public class JPAPushMessageInformationDao extends JPABaseDao implements PushMess
     private static final String ASC = "ASC";
     private static final String DESC = "DESC";
 
+    // number of outdated entries that are deleted at once:
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    // activity of the dashboard, with the name of the push application in one go:
+    private static final String SELECT_ACTIVITY = "select new org.jboss.aerogear.unifiedpush.dao.PushMessageActivity"
+            + "(p.pushApplicationID, p.name, pmi.totalReceivers, pmi.submitDate) "
+            + "from PushMessageInformation pmi, PushApplication p where pmi.pushApplicationId = p.pushApplicationID";
+
     private final AeroGearLogger logger = AeroGearLogger.getInstance(JPAPushMessageInformationDao.class);
 
 
@@ -55,6 +69,59 @@ public class JPAPushMessageInformationDao extends JPABaseDao implements PushMess
         return executePagedQuery(variantID, "variantID", page, pageSize, query, countQuery);
     }
 
+    @Override
+    public List<PushMessageInformation> findAllForPushApplicationAfter(String pushApplicationId, boolean ascending, Date lastSubmitDate, String lastId, int pageSize) {
+        return executeKeysetQuery("pmi.pushApplicationId = :pushApplicationId", "pushApplicationId", pushApplicationId,
+                ascending, lastSubmitDate, lastId, pageSize);
+    }
+
+    @Override
+    public List<PushMessageInformation> findAllForVariantAfter(String variantID, boolean ascending, Date lastSubmitDate, String lastId, int pageSize) {
+        // no fetch join: the page size has to be applied by the database, not in memory
+        return executeKeysetQuery("pmi.id IN (select p.id from PushMessageInformation p JOIN p.variantInformations vi where vi.variantID = :variantID)",
+                "variantID", variantID, ascending, lastSubmitDate, lastId, pageSize);
+    }
+
+    @Override
+    public long countForPushApplication(String pushApplicationId) {
+        return (Long) createQuery("select count(*) from PushMessageInformation pmi where pmi.pushApplicationId = :pushApplicationId")
+                .setParameter("pushApplicationId", pushApplicationId).getSingleResult();
+    }
+
+    @Override
+    public long countForVariant(String variantID) {
+        // a message keeps one entry per outcome (status and reason) of a variant, so it is counted once:
+        return (Long) createQuery("select count(distinct pmi) from PushMessageInformation pmi JOIN pmi.variantInformations vi where vi.variantID = :variantID")
+                .setParameter("variantID", variantID).getSingleResult();
+    }
+
+    /**
+     * Orders by date, and by ID for objects with the same date, and continues after the last object of the previous
+     * page (if given) instead of skipping an offset.
+     */
+    @SuppressWarnings("unchecked")
+    private List<PushMessageInformation> executeKeysetQuery(String condition, String paramName, String param, boolean ascending,
+                                                            Date lastSubmitDate, String lastId, int pageSize) {
+        final String order = ascendingOrDescending(ascending);
+        final StringBuilder query = new StringBuilder("select pmi from PushMessageInformation pmi where ").append(condition);
+
+        final boolean continued = lastSubmitDate != null && lastId != null;
+        if (continued) {
+            final String comparison = ascending ? ">" : "<";
+            query.append(" and (pmi.submitDate ").append(comparison).append(" :lastSubmitDate")
+                    .append(" or (pmi.submitDate = :lastSubmitDate and pmi.id ").append(comparison).append(" :lastId))");
+        }
+        query.append(" ORDER BY pmi.submitDate ").append(order).append(", pmi.id ").append(order);
+
+        final Query jpql = createQuery(query.toString()).setParameter(paramName, param);
+        if (continued) {
+            jpql.setParameter("lastSubmitDate", lastSubmitDate, TemporalType.TIMESTAMP)
+                    .setParameter("lastId", lastId);
+        }
+
+        return jpql.setMaxResults(pageSize).getResultList();
+    }
+
     private PageResult<PushMessageInformation> executePagedQuery(String param, String paramName, Integer page, Integer pageSize, String query, String countQuery) {
         List<PushMessageInformation> pushMessageInformationList = createQuery(query)
                 .setParameter(paramName, param)
@@ -94,35 +161,72 @@ public class JPAPushMessageInformationDao extends JPABaseDao implements PushMess
     }
 
     @Override
-    public List<String> findVariantIDsWithWarnings(String loginName) {
-        return createQuery("select distinct vmi.variantID from VariantMetricInformation vmi" +
-                " where vmi.variantID IN (select t.variantID from Variant t where t.developer = :developer)" +
-                " and vmi.deliveryStatus = false")
+    public List<PushMessageActivity> findLastThreeActivity(String loginName) {
+        return createQuery(SELECT_ACTIVITY + " and p.developer = :developer ORDER BY pmi.submitDate " + DESC)
                 .setParameter("developer", loginName)
+                .setMaxResults(3)
                 .getResultList();
     }
 
     @Override
-    public List<PushMessageInformation> findLastThreeActivity(String loginName) {
-        return createQuery("select pmi from PushMessageInformation pmi where pmi.pushApplicationId" +
-                " IN (select p.pushApplicationID from PushApplication p where p.developer = :developer)" +
-                " ORDER BY pmi.submitDate " + DESC)
-                .setParameter("developer", loginName)
-                .setMaxResults(3)
-                .getResultList();
+    public void deletePushInformationOlderThan(Date oldest) {
+        int deleted = 0;
+        int batch;
+        do {
+            batch = deletePushInformationOlderThan(oldest, Collections.<String>emptySet(), DELETE_BATCH_SIZE);
+            deleted += batch;
+        } while (batch == DELETE_BATCH_SIZE);
+
+        logger.info("Deleted ['" + deleted + "'] outdated PushMessageInformation objects");
     }
 
     @Override
-    public void deletePushInformationOlderThan(Date oldest) {
-        // TODO: use criteria API...
-        List<PushMessageInformation> oldMessages = createQuery("select pmi FROM PushMessageInformation pmi WHERE pmi.submitDate < :oldest")
-        .setParameter("oldest", oldest).getResultList();
+    public int deletePushInformationOlderThan(Date oldest, Collection<String> excludedPushApplicationIDs, int maxResults) {
+        final StringBuilder jpql = new StringBuilder("select pmi.id from PushMessageInformation pmi where pmi.submitDate < :oldest");
+        if (!excludedPushApplicationIDs.isEmpty()) {
+            jpql.append(" and pmi.pushApplicationId not in (:excludedPushApplicationIDs)");
+        }
+        jpql.append(" ORDER BY pmi.submitDate ").append(ASC);
 
-        logger.info("Deleting ['" + oldMessages.size() + "'] outdated PushMessageInformation objects");
+        final Query query = createQuery(jpql.toString())
+                .setParameter("oldest", oldest, TemporalType.TIMESTAMP)
+                .setMaxResults(maxResults);
+        if (!excludedPushApplicationIDs.isEmpty()) {
+            query.setParameter("excludedPushApplicationIDs", excludedPushApplicationIDs);
+        }
+        return deleteByIds(query.getResultList());
+    }
 
-        for (PushMessageInformation oldMessage : oldMessages) {
-            remove(oldMessage);
+    @Override
+    public int deletePushInformationOlderThan(String pushApplicationID, Date oldest, int maxResults) {
+        final List<String> ids = createQuery("select pmi.id from PushMessageInformation pmi" +
+                " where pmi.pushApplicationId = :pushApplicationId and pmi.submitDate < :oldest ORDER BY pmi.submitDate " + ASC)
+                .setParameter("pushApplicationId", pushApplicationID)
+                .setParameter("oldest", oldest, TemporalType.TIMESTAMP)
+                .setMaxResults(maxResults)
+                .getResultList();
+        return deleteByIds(ids);
+    }
+
+    /**
+     * Deletes the given Push Message Information entries, and their variant informations, with two bulk statements
+     * instead of loading (and removing) every entry.
+     */
+    private int deleteByIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
         }
+
+        // pending changes have to be visible to the bulk statements:
+        entityManager.joinTransaction();
+        entityManager.flush();
+
+        createNativeQuery("delete from VariantMetricInformation where variantInformations_id in (:ids)")
+                .setParameter("ids", ids)
+                .executeUpdate();
+        return createNativeQuery("delete from PushMessageInformation where id in (:ids)")
+                .setParameter("ids", ids)
+                .executeUpdate();
     }
 
     //Admin queries
@@ -135,10 +239,8 @@ public class JPAPushMessageInformationDao extends JPABaseDao implements PushMess
     }
 
     @Override
-    public List<PushMessageInformation> findLastThreeActivity() {
-        return createQuery("select pmi from PushMessageInformation pmi where pmi.pushApplicationId" +
-                " IN (select p.pushApplicationID from PushApplication p)" +
-                " ORDER BY pmi.submitDate " + DESC)
+    public List<PushMessageActivity> findLastThreeActivity() {
+        return createQuery(SELECT_ACTIVITY + " ORDER BY pmi.submitDate " + DESC)
                 .setMaxResults(3)
                 .getResultList();
     }
@@ -149,6 +251,12 @@ public class JPAPushMessageInformationDao extends JPABaseDao implements PushMess
                 "IN (select p.pushApplicationID from PushApplication p)").getSingleResult();
     }
 
+    @Override
+    public Map<String, Long> countPushMessagesByDeveloper() {
+        return toCountsByKey(createQuery("select p.developer, count(pmi) from PushMessageInformation pmi, PushApplication p "
+                + "where pmi.pushApplicationId = p.pushApplicationID group by p.developer").getResultList());
+    }
+
 
     /**
      * Helper that returns 'ASC' when true and 'DESC' when false.
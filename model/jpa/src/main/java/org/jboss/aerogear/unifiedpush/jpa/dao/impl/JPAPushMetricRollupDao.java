@@ -0,0 +1,126 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
+
+import org.jboss.aerogear.unifiedpush.api.PushMetricRollup;
+import org.jboss.aerogear.unifiedpush.api.RollupPeriod;
+import org.jboss.aerogear.unifiedpush.dao.PushMetricRollupDao;
+
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class JPAPushMetricRollupDao extends JPABaseDao implements PushMetricRollupDao {
+
+    // concurrent first updates of a bucket (e.g. on different nodes) may store more than one row for it,
+    // the queries add them up:
+    private static final String SELECT_SUMS = "select r.periodStart, r.pushApplicationId, r.variantID, "
+            + "sum(r.sends), sum(r.receivers), sum(r.successes), sum(r.failures) from PushMetricRollup r "
+            + "where r.period = :period and r.periodStart >= :from and r.periodStart < :to and ";
+    private static final String GROUP_BY_BUCKET = " group by r.periodStart, r.pushApplicationId, r.variantID order by r.periodStart";
+
+    @Override
+    public void addToRollup(PushMetricRollup increment) {
+        entityManager.joinTransaction();
+
+        final Query update = createQuery("update PushMetricRollup r set r.sends = r.sends + :sends, "
+                + "r.receivers = r.receivers + :receivers, r.successes = r.successes + :successes, r.failures = r.failures + :failures "
+                + "where r.period = :period and r.periodStart = :periodStart and r.pushApplicationId = :pushApplicationId and "
+                + (increment.getVariantID() == null ? "r.variantID is null" : "r.variantID = :variantID"))
+                .setParameter("sends", increment.getSends())
+                .setParameter("receivers", increment.getReceivers())
+                .setParameter("successes", increment.getSuccesses())
+                .setParameter("failures", increment.getFailures())
+                .setParameter("period", increment.getPeriod())
+                .setParameter("periodStart", increment.getPeriodStart(), TemporalType.TIMESTAMP)
+                .setParameter("pushApplicationId", increment.getPushApplicationId());
+        if (increment.getVariantID() != null) {
+            update.setParameter("variantID", increment.getVariantID());
+        }
+
+        if (update.executeUpdate() == 0) {
+            persist(increment);
+        }
+    }
+
+    @Override
+    public List<PushMetricRollup> findForPushApplication(String pushApplicationId, RollupPeriod period, Date from, Date to) {
+        final Query query = createQuery(SELECT_SUMS + "r.pushApplicationId = :pushApplicationId and r.variantID is null" + GROUP_BY_BUCKET)
+                .setParameter("pushApplicationId", pushApplicationId);
+        return findRollups(query, period, from, to);
+    }
+
+    @Override
+    public List<PushMetricRollup> findForVariant(String variantID, RollupPeriod period, Date from, Date to) {
+        final Query query = createQuery(SELECT_SUMS + "r.variantID = :variantID" + GROUP_BY_BUCKET)
+                .setParameter("variantID", variantID);
+        return findRollups(query, period, from, to);
+    }
+
+    @Override
+    public int deleteRollupsOlderThan(RollupPeriod period, Date oldest) {
+        entityManager.joinTransaction();
+
+        return createQuery("delete from PushMetricRollup r where r.period = :period and r.periodStart < :oldest")
+                .setParameter("period", period)
+                .setParameter("oldest", oldest, TemporalType.TIMESTAMP)
+                .executeUpdate();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<PushMetricRollup> findRollups(Query query, RollupPeriod period, Date from, Date to) {
+        final List<Object[]> rows = query
+                .setParameter("period", period)
+                .setParameter("from", from, TemporalType.TIMESTAMP)
+                .setParameter("to", to, TemporalType.TIMESTAMP)
+                .getResultList();
+
+        final List<PushMetricRollup> rollups = new ArrayList<PushMetricRollup>(rows.size());
+        for (Object[] row : rows) {
+            final PushMetricRollup rollup = new PushMetricRollup(period, (Date) row[0], (String) row[1], (String) row[2]);
+            rollup.setSends((Long) row[3]);
+            rollup.setReceivers((Long) row[4]);
+            rollup.setSuccesses((Long) row[5]);
+            rollup.setFailures((Long) row[6]);
+            rollups.add(rollup);
+        }
+        return rollups;
+    }
+
+    @Override
+    public PushMetricRollup find(String id) {
+        return entityManager.find(PushMetricRollup.class, id);
+    }
+
+    @Override
+    public void create(PushMetricRollup rollup) {
+        persist(rollup);
+    }
+
+    @Override
+    public void update(PushMetricRollup rollup) {
+        merge(rollup);
+    }
+
+    @Override
+    public void delete(PushMetricRollup rollup) {
+        PushMetricRollup entity = find(rollup.getId());
+        remove(entity);
+    }
+}
@@ -84,6 +84,12 @@ public class JPAVariantDao extends JPABaseDao implements VariantDao {
                 .setParameter("variantIDs", variantIDs).getResultList();
     }
 
+    @Override
+    public List<Variant> findAllVariantsByPushApplicationID(String pushApplicationID) {
+        return createQuery("select v from PushApplication pa join pa.variants v where pa.pushApplicationID = :pushApplicationID")
+                .setParameter("pushApplicationID", pushApplicationID).getResultList();
+    }
+
     @Override
     public Variant find(String id) {
         return entityManager.find(Variant.class, id);
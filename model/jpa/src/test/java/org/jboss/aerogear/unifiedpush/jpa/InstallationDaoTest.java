@@ -29,6 +29,7 @@ import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAInstallationDao;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAPushApplicationDao;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAVariantDao;
+import org.jboss.aerogear.unifiedpush.utils.DeviceTokenUtils;
 import org.jboss.aerogear.unifiedpush.utils.TestUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -44,6 +45,7 @@ import javax.validation.ConstraintViolationException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -191,6 +193,14 @@ public class InstallationDaoTest {
         assertThat(installationDao.getNumberOfDevicesForVariantIDs("me")).isEqualTo(6);
     }
 
+    @Test
+    public void countDevicesByDeveloper() {
+        final Map<String, Long> counts = installationDao.countInstallationsByDeveloper();
+
+        assertThat(counts).hasSize(1);
+        assertThat(counts.get("me")).isEqualTo(6);
+    }
+
     @Test
     public void findDeviceTokensForOneInstallationOfOneVariant() {
         String[] alias = { "foo@bar.org" };
@@ -307,6 +317,46 @@ public class InstallationDaoTest {
         assertThat(list).hasSize(0);
     }
 
+    @Test
+    public void findInstallationsByVariantInKeysetPages() {
+        final List<Installation> firstPage = installationDao.findInstallationsByVariantAfter(androidVariantID, "me", null, 2);
+        assertThat(firstPage).hasSize(2);
+        assertThat(firstPage.get(0).getId().compareTo(firstPage.get(1).getId())).isNegative();
+
+        final List<Installation> secondPage = installationDao.findInstallationsByVariantAfter(androidVariantID, "me", firstPage.get(1).getId(), 2);
+        assertThat(secondPage).hasSize(1);
+        assertThat(secondPage.get(0).getId().compareTo(firstPage.get(1).getId())).isPositive();
+
+        assertThat(installationDao.countInstallationsByVariant(androidVariantID, "me")).isEqualTo(3);
+        assertThat(installationDao.findInstallationsByVariantAfter(androidVariantID, "someone else", null, 2)).isEmpty();
+    }
+
+    @Test
+    public void findExistingDeviceTokens() {
+        final Set<String> tokenz = new HashSet<String>();
+        tokenz.add(DEVICE_TOKEN_1);
+        tokenz.add("foobar223");
+
+        assertThat(installationDao.findDeviceTokensForVariantByDeviceTokens(androidVariantID, tokenz)).containsOnly(DEVICE_TOKEN_1);
+        assertThat(installationDao.findDeviceTokensForVariantByDeviceTokens(simplePushVariantID, tokenz)).isEmpty();
+    }
+
+    @Test
+    public void bulkDeleteInstallationsByDeviceTokens() {
+        final Set<String> tokenz = new HashSet<String>();
+        tokenz.add(DEVICE_TOKEN_1);
+        tokenz.add(DEVICE_TOKEN_2);
+        tokenz.add("foobar223");
+
+        assertThat(installationDao.deleteInstallationsForVariantByDeviceTokens(androidVariantID, tokenz)).isEqualTo(2);
+        assertThat(installationDao.findInstallationsForVariantByDeviceTokens(androidVariantID, tokenz)).isEmpty();
+
+        // the categories are shared with the SimplePush installations:
+        final List<String> soccerEndpoints = installationDao.findAllDeviceTokenForVariantIDByCriteria(simplePushVariantID, Arrays.asList("soccer"), null, null);
+        assertThat(soccerEndpoints).hasSize(1);
+        assertThat(installationDao.getNumberOfDevicesForVariantIDs("me")).isEqualTo(4);
+    }
+
     @Test
     public void deleteNonExistingInstallation() {
         Installation installation = new Installation();
@@ -378,6 +428,27 @@ public class InstallationDaoTest {
         assertThat(tokens.get(0)).startsWith("http://server:8080/update/");
     }
 
+    @Test
+    public void findPushEndpointsInBatches() {
+        final List<String> firstBatch = installationDao.findDeviceTokensForVariantIDByCriteria(simplePushVariantID, null, null, null, null, 2);
+        assertThat(firstBatch).hasSize(2);
+
+        final List<String> secondBatch = installationDao.findDeviceTokensForVariantIDByCriteria(simplePushVariantID, null, null, null, firstBatch.get(1), 2);
+        assertThat(secondBatch).hasSize(1);
+        assertThat(DeviceTokenUtils.hash(secondBatch.get(0)).compareTo(DeviceTokenUtils.hash(firstBatch.get(1)))).isPositive();
+        assertThat(firstBatch).doesNotContain(secondBatch.get(0));
+
+        final List<String> lastBatch = installationDao.findDeviceTokensForVariantIDByCriteria(simplePushVariantID, null, null, null, secondBatch.get(0), 2);
+        assertThat(lastBatch).isEmpty();
+    }
+
+    @Test
+    public void findDeviceTokensInBatchesForCategories() {
+        String[] cats = { "soccer", "news", "weather" };
+        List<String> tokens = installationDao.findDeviceTokensForVariantIDByCriteria(androidVariantID, Arrays.asList(cats), null, null, null, 10);
+        assertThat(tokens).containsExactly(DEVICE_TOKEN_1, DEVICE_TOKEN_2);
+    }
+
     @Test
     public void shouldValidateDeviceId() {
         // given
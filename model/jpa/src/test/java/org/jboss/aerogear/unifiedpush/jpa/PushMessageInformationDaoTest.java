@@ -21,6 +21,7 @@ import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.VariantMetricInformation;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
+import org.jboss.aerogear.unifiedpush.dao.PushMessageActivity;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAPushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.utils.DateUtils;
 import org.jboss.aerogear.unifiedpush.utils.TestUtils;
@@ -28,6 +29,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import javax.persistence.*;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 
@@ -346,7 +348,7 @@ public class PushMessageInformationDaoTest {
 
         flushAndClear();
 
-        List<PushMessageInformation> lastActivity = pushMessageInformationDao.findLastThreeActivity(loginName);
+        List<PushMessageActivity> lastActivity = pushMessageInformationDao.findLastThreeActivity(loginName);
         assertThat(lastActivity).hasSize(3);
 
     }
@@ -420,8 +422,10 @@ public class PushMessageInformationDaoTest {
 
         flushAndClear();
 
-        List<PushMessageInformation> lastActivity = pushMessageInformationDao.findLastThreeActivity(loginName);
+        List<PushMessageActivity> lastActivity = pushMessageInformationDao.findLastThreeActivity(loginName);
         assertThat(lastActivity).hasSize(2);
+        assertThat(lastActivity).extracting("pushApplicationID", "applicationName")
+                .contains(tuple("231231231", "app"), tuple("231231232", "app"));
 
     }
 
@@ -523,6 +527,62 @@ public class PushMessageInformationDaoTest {
         assertThat(list.get(0).getSubmitDate()).isAfter(list.get(1).getSubmitDate());
     }
 
+    @Test
+    public void keysetPagingInDescendingDateOrder() {
+
+        PushMessageInformation pmi = new PushMessageInformation();
+        pmi.setPushApplicationId("231231231");
+        VariantMetricInformation variantTwo = new VariantMetricInformation();
+        variantTwo.setDeliveryStatus(Boolean.TRUE);
+        variantTwo.setReceivers(2000);
+        variantTwo.setVariantID("213");
+        pmi.getVariantInformations().add(variantTwo);
+        pushMessageInformationDao.create(pmi);
+        flushAndClear();
+
+        final List<PushMessageInformation> firstPage =
+                pushMessageInformationDao.findAllForPushApplicationAfter("231231231", Boolean.FALSE, null, null, 1);
+        assertThat(firstPage).hasSize(1);
+        assertThat(firstPage.get(0).getId()).isEqualTo(pmi.getId());
+
+        final PushMessageInformation last = firstPage.get(0);
+        final List<PushMessageInformation> secondPage =
+                pushMessageInformationDao.findAllForPushApplicationAfter("231231231", Boolean.FALSE, last.getSubmitDate(), last.getId(), 1);
+        assertThat(secondPage).hasSize(1);
+        assertThat(secondPage.get(0).getId()).isEqualTo(pushMessageInformationID);
+
+        assertThat(pushMessageInformationDao.findAllForPushApplicationAfter("231231231", Boolean.FALSE,
+                secondPage.get(0).getSubmitDate(), secondPage.get(0).getId(), 1)).isEmpty();
+
+        // same for the variant, which both messages went to:
+        assertThat(pushMessageInformationDao.findAllForVariantAfter("213", Boolean.FALSE, null, null, 25)).hasSize(2);
+        assertThat(pushMessageInformationDao.findAllForVariantAfter("213", Boolean.FALSE, last.getSubmitDate(), last.getId(), 25)).hasSize(1);
+        assertThat(pushMessageInformationDao.countForVariant("213")).isEqualTo(2);
+        assertThat(pushMessageInformationDao.countForPushApplication("231231231")).isEqualTo(2);
+    }
+
+    @Test
+    public void countMessageWithMixedOutcomesOnce() {
+
+        PushMessageInformation pmi = new PushMessageInformation();
+        pmi.setPushApplicationId("231231231");
+        VariantMetricInformation delivered = new VariantMetricInformation();
+        delivered.setDeliveryStatus(Boolean.TRUE);
+        delivered.setReceivers(1500);
+        delivered.setVariantID("213");
+        pmi.getVariantInformations().add(delivered);
+        VariantMetricInformation failed = new VariantMetricInformation();
+        failed.setDeliveryStatus(Boolean.FALSE);
+        failed.setReceivers(500);
+        failed.setReason("Error sending payload to GCM server");
+        failed.setVariantID("213");
+        pmi.getVariantInformations().add(failed);
+        pushMessageInformationDao.create(pmi);
+        flushAndClear();
+
+        assertThat(pushMessageInformationDao.countForVariant("213")).isEqualTo(2);
+    }
+
     @Test
     public void testLongRawJsonPayload() {
         PushMessageInformation largePushMessageInformation = new PushMessageInformation();
@@ -553,4 +613,28 @@ public class PushMessageInformationDaoTest {
         messageInformations = pushMessageInformationDao.findAllForPushApplication("231231231", Boolean.TRUE);
         assertThat(messageInformations).hasSize(0);
     }
+
+    @Test
+    public void deleteOldPushMessageInformationsInBatchesExceptExcludedApplications() {
+        final PushMessageInformation other = new PushMessageInformation();
+        other.setPushApplicationId("231231232");
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(1980, Calendar.JANUARY, 1);
+        other.setSubmitDate(calendar.getTime());
+        pushMessageInformationDao.create(other);
+        flushAndClear();
+
+        final int deleted = pushMessageInformationDao.deletePushInformationOlderThan(DateUtils.calculatePastDate(0),
+                Arrays.asList("231231231"), 10);
+        flushAndClear();
+
+        assertThat(deleted).isEqualTo(1);
+        assertThat(pushMessageInformationDao.findAllForPushApplication("231231231", Boolean.TRUE)).hasSize(1);
+        assertThat(pushMessageInformationDao.findAllForPushApplication("231231232", Boolean.TRUE)).isEmpty();
+
+        assertThat(pushMessageInformationDao.deletePushInformationOlderThan("231231231", DateUtils.calculatePastDate(0), 10)).isEqualTo(1);
+        flushAndClear();
+
+        assertThat(pushMessageInformationDao.findAllForPushApplication("231231231", Boolean.TRUE)).isEmpty();
+    }
 }
@@ -0,0 +1,136 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.jpa;
+
+import org.jboss.aerogear.unifiedpush.api.PushMetricRollup;
+import org.jboss.aerogear.unifiedpush.api.RollupPeriod;
+import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAPushMetricRollupDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.RollbackException;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class PushMetricRollupDaoTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private EntityManager entityManager;
+    private JPAPushMetricRollupDao rollupDao;
+    private Date firstHour;
+
+    @Before
+    public void setUp() {
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory("UnifiedPush");
+        entityManager = emf.createEntityManager();
+
+        entityManager.getTransaction().begin();
+
+        rollupDao = new JPAPushMetricRollupDao();
+        rollupDao.setEntityManager(entityManager);
+
+        firstHour = RollupPeriod.HOUR.startOf(new Date(0));
+    }
+
+    @After
+    public void tearDown() {
+        try {
+            entityManager.getTransaction().commit();
+        } catch (RollbackException e) {
+            //ignore
+        }
+
+        entityManager.close();
+    }
+
+    @Test
+    public void bucketStartsAtFullHourOrMidnight() {
+        final Date date = new Date(3 * 24 * HOUR + 5 * HOUR + 1234567);
+
+        assertThat(RollupPeriod.HOUR.startOf(date)).isEqualTo(new Date(3 * 24 * HOUR + 5 * HOUR));
+        assertThat(RollupPeriod.DAY.startOf(date)).isEqualTo(new Date(3 * 24 * HOUR));
+    }
+
+    @Test
+    public void addToExistingRollup() {
+        rollupDao.addToRollup(rollup("app", null, firstHour, 1, 10, 8, 2));
+        rollupDao.addToRollup(rollup("app", null, firstHour, 1, 5, 5, 0));
+        rollupDao.addToRollup(rollup("app", "variant", firstHour, 1, 5, 5, 0));
+        rollupDao.flushAndClear();
+
+        final List<PushMetricRollup> rollups = rollupDao.findForPushApplication("app", RollupPeriod.HOUR, firstHour, new Date(firstHour.getTime() + HOUR));
+
+        assertThat(rollups).extracting("periodStart.time", "variantID", "sends", "receivers", "successes", "failures")
+                .containsExactly(tuple(firstHour.getTime(), null, 2L, 15L, 13L, 2L));
+    }
+
+    @Test
+    public void findRollupsOfVariantInRange() {
+        final Date secondHour = new Date(firstHour.getTime() + HOUR);
+        final Date thirdHour = new Date(firstHour.getTime() + 2 * HOUR);
+
+        rollupDao.create(rollup("app", "variant", firstHour, 1, 1, 1, 0));
+        rollupDao.create(rollup("app", "variant", secondHour, 2, 2, 0, 2));
+        rollupDao.create(rollup("app", "variant", thirdHour, 3, 3, 3, 0));
+        rollupDao.create(rollup("app", "other", secondHour, 4, 4, 4, 0));
+        // a second row of the same bucket is added up:
+        rollupDao.create(rollup("app", "variant", secondHour, 1, 1, 1, 0));
+        rollupDao.flushAndClear();
+
+        final List<PushMetricRollup> rollups = rollupDao.findForVariant("variant", RollupPeriod.HOUR, firstHour, thirdHour);
+
+        assertThat(rollups).extracting("periodStart.time", "sends", "receivers", "successes", "failures")
+                .containsExactly(tuple(firstHour.getTime(), 1L, 1L, 1L, 0L), tuple(secondHour.getTime(), 3L, 3L, 1L, 2L));
+    }
+
+    @Test
+    public void deleteOutdatedHourlyRollups() {
+        final Date secondHour = new Date(firstHour.getTime() + HOUR);
+
+        rollupDao.create(rollup("app", null, firstHour, 1, 1, 1, 0));
+        rollupDao.create(rollup("app", null, secondHour, 1, 1, 1, 0));
+        final PushMetricRollup daily = rollup("app", null, firstHour, 2, 2, 2, 0);
+        daily.setPeriod(RollupPeriod.DAY);
+        rollupDao.create(daily);
+        rollupDao.flushAndClear();
+
+        assertThat(rollupDao.deleteRollupsOlderThan(RollupPeriod.HOUR, secondHour)).isEqualTo(1);
+        rollupDao.flushAndClear();
+
+        assertThat(rollupDao.findForPushApplication("app", RollupPeriod.HOUR, firstHour, new Date(secondHour.getTime() + HOUR)))
+                .extracting("periodStart.time").containsExactly(secondHour.getTime());
+        assertThat(rollupDao.find(daily.getId())).isNotNull();
+    }
+
+    private static PushMetricRollup rollup(String pushApplicationId, String variantID, Date periodStart,
+                                           long sends, long receivers, long successes, long failures) {
+        final PushMetricRollup rollup = new PushMetricRollup(RollupPeriod.HOUR, periodStart, pushApplicationId, variantID);
+        rollup.setSends(sends);
+        rollup.setReceivers(receivers);
+        rollup.setSuccesses(successes);
+        rollup.setFailures(failures);
+        return rollup;
+    }
+}
@@ -19,6 +19,7 @@ package org.jboss.aerogear.unifiedpush.jpa;
 import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
 import org.jboss.aerogear.unifiedpush.api.Category;
 import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.api.iOSVariant;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAInstallationDao;
@@ -121,6 +122,39 @@ public class VariantDaoTest {
         assertThat(variants).extracting("name").contains("Something Android", "Something more Android");
     }
 
+    @Test
+    public void findVariantsByPushApplicationID() {
+
+        final AndroidVariant av = new AndroidVariant();
+        av.setName("Android Variant");
+        av.setGoogleKey("KEY");
+        variantDao.create(av);
+
+        final AndroidVariant otherVariant = new AndroidVariant();
+        otherVariant.setName("Other Android Variant");
+        otherVariant.setGoogleKey("KEY");
+        variantDao.create(otherVariant);
+
+        final PushApplication pushApplication = new PushApplication();
+        pushApplication.setName("Push App");
+        pushApplication.getVariants().add(av);
+        entityManager.persist(pushApplication);
+
+        final PushApplication otherPushApplication = new PushApplication();
+        otherPushApplication.setName("Other Push App");
+        otherPushApplication.getVariants().add(otherVariant);
+        entityManager.persist(otherPushApplication);
+
+        entityManager.flush();
+        entityManager.clear();
+
+        final List<Variant> variants = variantDao.findAllVariantsByPushApplicationID(pushApplication.getPushApplicationID());
+
+        assertThat(variants).hasSize(1);
+        assertThat(variants).extracting("variantID").containsOnly(av.getVariantID());
+        assertThat(variantDao.findAllVariantsByPushApplicationID("unknown")).isEmpty();
+    }
+
     @Test
     public void findVariantById() {
 
@@ -0,0 +1,199 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message;
+
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Minimal streaming JSON writer for the push message payloads: appends maps, collections, arrays, strings, numbers,
+ * booleans and <code>null</code> to a per thread buffer, which is reused by the next message.
+ *
+ * Strings longer than the (optional) limit are cut, everything else that is no JSON type is written as its
+ * <code>toString()</code> value.
+ */
+final class JsonWriter {
+
+    private static final int INITIAL_CAPACITY = 512;
+    // larger buffers are not kept for the next message
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+    };
+
+    private final StringBuilder out;
+    private final int maxStringLength;
+    private boolean first = true;
+
+    private JsonWriter(StringBuilder out, int maxStringLength) {
+        this.out = out;
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * Starts a JSON object in the buffer of the current thread.
+     *
+     * @param maxStringLength the maximum length of the written strings, a negative value for no limit
+     */
+    static JsonWriter startObject(int maxStringLength) {
+        StringBuilder out = BUFFER.get();
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            out = new StringBuilder(INITIAL_CAPACITY);
+            BUFFER.set(out);
+        }
+        out.setLength(0);
+        out.append('{');
+        return new JsonWriter(out, maxStringLength);
+    }
+
+    JsonWriter field(String name, Object value) {
+        if (!first) {
+            out.append(',');
+        }
+        first = false;
+        writeString(name, -1);
+        out.append(':');
+        writeValue(value);
+        return this;
+    }
+
+    /**
+     * Closes the object and returns its JSON.
+     */
+    String endObject() {
+        out.append('}');
+        return out.toString();
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            writeString((String) value, maxStringLength);
+        } else if (value instanceof Boolean) {
+            out.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Number) {
+            writeNumber((Number) value);
+        } else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value);
+        } else if (value instanceof Iterable) {
+            writeIterator(((Iterable<?>) value).iterator());
+        } else if (value.getClass().isArray()) {
+            writeArray(value);
+        } else {
+            writeString(value.toString(), maxStringLength);
+        }
+    }
+
+    private void writeNumber(Number value) {
+        final double doubleValue = value.doubleValue();
+        if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+            // not a JSON number
+            writeString(value.toString(), -1);
+        } else {
+            out.append(value.toString());
+        }
+    }
+
+    private void writeMap(Map<?, ?> map) {
+        out.append('{');
+        boolean firstEntry = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!firstEntry) {
+                out.append(',');
+            }
+            firstEntry = false;
+            writeString(String.valueOf(entry.getKey()), -1);
+            out.append(':');
+            writeValue(entry.getValue());
+        }
+        out.append('}');
+    }
+
+    private void writeIterator(Iterator<?> iterator) {
+        out.append('[');
+        while (iterator.hasNext()) {
+            writeValue(iterator.next());
+            if (iterator.hasNext()) {
+                out.append(',');
+            }
+        }
+        out.append(']');
+    }
+
+    private void writeArray(Object array) {
+        out.append('[');
+        final int length = Array.getLength(array);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            writeValue(Array.get(array, i));
+        }
+        out.append(']');
+    }
+
+    private void writeString(String value, int maxLength) {
+        int length = maxLength >= 0 ? Math.min(value.length(), maxLength) : value.length();
+        if (length < value.length() && length > 0 && Character.isHighSurrogate(value.charAt(length - 1))) {
+            // don't cut a character in half
+            length--;
+        }
+        out.append('"');
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    // control characters, and the line separators JavaScript doesn't allow in strings:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        out.append("\\u").append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+                                .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
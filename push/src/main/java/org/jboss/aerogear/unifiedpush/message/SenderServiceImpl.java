@@ -20,53 +20,54 @@ import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.SimplePushVariant;
 import org.jboss.aerogear.unifiedpush.api.Variant;
-import org.jboss.aerogear.unifiedpush.api.VariantMetricInformation;
+import org.jboss.aerogear.unifiedpush.message.dispatch.DispatchPipeline;
 import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
-import org.jboss.aerogear.unifiedpush.message.sender.NotificationSenderCallback;
-import org.jboss.aerogear.unifiedpush.message.sender.PushNotificationSender;
-import org.jboss.aerogear.unifiedpush.message.sender.SenderTypeLiteral;
-import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
 import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
+import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardCounters;
 import org.jboss.aerogear.unifiedpush.service.metrics.PushMessageMetricsService;
 
-import javax.ejb.Asynchronous;
+import javax.annotation.Resource;
 import javax.ejb.Stateless;
-import javax.enterprise.inject.Any;
-import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 @Stateless
-@Asynchronous
 public class SenderServiceImpl implements SenderService {
 
-    private final AeroGearLogger logger = AeroGearLogger.getInstance(SenderServiceImpl.class);
+    // length of the rawJsonMessage column of the push message history
+    private static final int MAX_STORED_JSON_LENGTH = 4500;
 
-    @Inject
-    @Any
-    private Instance<PushNotificationSender> senders;
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(SenderServiceImpl.class);
 
     @Inject
-    private ClientInstallationService clientInstallationService;
+    private DispatchPipeline dispatchPipeline;
     @Inject
     private GenericVariantService genericVariantService;
     @Inject
     private PushMessageMetricsService metricsService;
+    @Inject
+    private DashboardCounters dashboardCounters;
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
 
     @Override
-    @Asynchronous
     public void send(PushApplication pushApplication, UnifiedPushMessage message) {
         logger.info("Processing send request with '" + message.toString() + "' payload");
 
         final PushMessageInformation pushMessageInformation =
                 metricsService.storeNewRequestFrom(
                         pushApplication.getPushApplicationID(),
-                        message.toJsonString(),
+                        message.toJsonString(MAX_STORED_JSON_LENGTH),
                         message.getIpAddress(),
                         message.getClientIdentifier()
                         );
+        dashboardCounters.messageSubmitted(pushApplication);
 
         // collections for all the different variants:
         final Set<Variant> variants = new HashSet<Variant>();
@@ -87,79 +88,42 @@ public class SenderServiceImpl implements SenderService {
                 }
             }
         } else {
-            // No specific variants have been requested,
-            // we get all the variants, from the given PushApplicationEntity:
-            variants.addAll(pushApplication.getVariants());
+            // No specific variants have been requested, we get all the variants of the given PushApplicationEntity.
+            // The push application might come from the credential cache, so its variants are loaded fresh:
+            variants.addAll(genericVariantService.findAllVariantsByPushApplicationID(pushApplication.getPushApplicationID()));
         }
 
-        // all possible criteria
-        final List<String> categories = criteria.getCategories();
-        final List<String> aliases = criteria.getAliases();
-        final List<String> deviceTypes = criteria.getDeviceTypes();
-
-        // TODO: DISPATCH TO A QUEUE .....
+        final List<Variant> variantsToDispatch = new ArrayList<Variant>();
         for (final Variant variant : variants) {
 
             if (variant instanceof SimplePushVariant && message.getSimplePush() != null) {
                 // SP needs the 'simple-push' be present, the 'message' (aka data) has no meanings here
-
-                final PushNotificationSender simplePushSender = senders.select(new SenderTypeLiteral(SimplePushVariant.class)).get();
-
-                final List<String> tokenPerVariant = clientInstallationService.findAllDeviceTokenForVariantIDByCriteria(variant.getVariantID(), categories, aliases, deviceTypes);
-                final SenderServiceCallback senderCallback = new SenderServiceCallback(variant, tokenPerVariant.size(), pushMessageInformation);
-                simplePushSender.sendPushMessage(variant, tokenPerVariant, message, senderCallback);
+                variantsToDispatch.add(variant);
 
             } else if (!(variant instanceof SimplePushVariant) && message.getData() != null) {
                 // all other variants require 'message' (aka data) to be present
-
-                final List<String> tokenPerVariant = clientInstallationService.findAllDeviceTokenForVariantIDByCriteria(variant.getVariantID(), categories, aliases, deviceTypes);
-                senders.select(new SenderTypeLiteral(variant.getClass())).get()
-                        .sendPushMessage(variant, tokenPerVariant, message, new SenderServiceCallback(variant, tokenPerVariant.size(), pushMessageInformation));
+                variantsToDispatch.add(variant);
             }
         }
-    }
-
-    /**
-     * Helpers to update the given {@link PushMessageInformation} with a {@link VariantMetricInformation} object
-     */
-    private void updateStatusOfPushMessageInformation(final PushMessageInformation pushMessageInformation, final String variantID, final int receives, final Boolean deliveryStatus) {
-        this.updateStatusOfPushMessageInformation(pushMessageInformation, variantID, receives, deliveryStatus, null);
-    }
-
-    private void updateStatusOfPushMessageInformation(final PushMessageInformation pushMessageInformation, final String variantID, final int receives, final Boolean deliveryStatus, final String reason) {
-        final VariantMetricInformation variantMetricInformation = new VariantMetricInformation();
-        variantMetricInformation.setVariantID(variantID);
-        variantMetricInformation.setReceivers(receives);
-        variantMetricInformation.setDeliveryStatus(deliveryStatus);
-        variantMetricInformation.setReason(reason);
-        pushMessageInformation.getVariantInformations().add(variantMetricInformation);
-        pushMessageInformation.setTotalReceivers(pushMessageInformation.getTotalReceivers() + receives);
-
-        // store it!
-        metricsService.updatePushMessageInformation(pushMessageInformation);
-    }
-
-    private class SenderServiceCallback implements NotificationSenderCallback {
-        private final Variant variant;
-        private final int tokenSize;
-        private final PushMessageInformation pushMessageInformation;
-
-        public SenderServiceCallback(Variant variant, int tokenSize, PushMessageInformation pushMessageInformation) {
-            this.variant = variant;
-            this.tokenSize = tokenSize;
-            this.pushMessageInformation = pushMessageInformation;
-        }
 
-        @Override
-        public void onSuccess() {
-            logger.fine(String.format("Sent '%s' message to '%d' devices", variant.getType().getTypeName(), tokenSize));
-            updateStatusOfPushMessageInformation(pushMessageInformation, variant.getVariantID(), tokenSize, Boolean.TRUE);
-        }
+        // the workers of the pipeline update the stored push message information,
+        // so we hand over the jobs once it has been committed:
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
 
-        @Override
-        public void onError(final String reason) {
-            logger.warning(String.format("Error on '%s' delivery", variant.getType().getTypeName()));
-            updateStatusOfPushMessageInformation(pushMessageInformation, variant.getVariantID(), tokenSize, Boolean.FALSE, reason);
-        }
+            @Override
+            public void afterCompletion(int status) {
+                if (status != Status.STATUS_COMMITTED) {
+                    logger.warning("Push message job was not stored, nothing is dispatched");
+                    return;
+                }
+                // queue one job per variant, the token lookup and the delivery happen on the workers of the pipeline:
+                for (Variant variant : variantsToDispatch) {
+                    dispatchPipeline.submit(variant, criteria, message, pushMessageInformation);
+                }
+            }
+        });
     }
 }
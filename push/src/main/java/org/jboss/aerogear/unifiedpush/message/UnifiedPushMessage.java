@@ -16,8 +16,10 @@
  */
 package org.jboss.aerogear.unifiedpush.message;
 
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Contains the data of the JSON payload that has been sent to the
@@ -28,6 +30,11 @@ import java.util.Map;
  */
 public class UnifiedPushMessage {
 
+    // length of the strings of a shortened JSON representation
+    private static final int SHORTENED_STRING_LENGTH = 64;
+    // stands for a rendered null payload
+    private static final Object NO_PAYLOAD = new Object();
+
     private String ipAddress;
     private String clientIdentifier;
 
@@ -43,6 +50,9 @@ public class UnifiedPushMessage {
 
     private final Map<String, Object> data;
 
+    // the payloads rendered for the push networks, created on first use
+    private volatile ConcurrentMap<PayloadRenderer<?>, Object> renderedPayloads;
+
     /**
      * Messages are submitted as flexible JSON maps, like:
      * <pre>
@@ -228,35 +238,94 @@ public class UnifiedPushMessage {
 
     public void setClientIdentifier(String clientIdentifier) { this.clientIdentifier = clientIdentifier; }
 
-    public String toJsonString() {
-        return "{" +
-                "\"ipAddress\":\"" + ipAddress + "\"," +
-                "\"clientIdentifier\":\"" + clientIdentifier + "\"," +
-                "\"simplePush\":\"" + simplePush + "\"," +
-                "\"alert\":\"" + alert + "\"," +
-                "\"action-category\":\"" + actionCategory + "\"," +
-                "\"sound\":\"" + sound + "\"," +
-                "\"contentAvailable\":" + contentAvailable + "," +
-                "\"badge\":" + badge + "," +
-                "\"timeToLive\":" + timeToLive + "," +
-                "\"data\":" + toJson(data) +
-                "}";
+    /**
+     * Returns the payload of the given renderer, which is rendered once per message: all variants and token batches of
+     * a push network share the payload, instead of rendering it again and again.
+     *
+     * @param renderer renders the payload of a push network, with certain options. Renderers are compared by identity,
+     *                 use one (constant) instance per push network and options.
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> T getRenderedPayload(PayloadRenderer<T> renderer) {
+        final ConcurrentMap<PayloadRenderer<?>, Object> payloads = renderedPayloads();
+
+        Object payload = payloads.get(renderer);
+        if (payload == null) {
+            final T rendered = renderer.render(this);
+            final Object previous = payloads.putIfAbsent(renderer, rendered == null ? NO_PAYLOAD : rendered);
+            payload = previous != null ? previous : rendered;
+        }
+        return payload == NO_PAYLOAD ? null : (T) payload;
     }
 
-    private String toJson(Map<String, Object> map) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        if (map != null) {
-            for (Iterator<Map.Entry<String, Object>> iterator = map.entrySet().iterator(); iterator.hasNext(); ) {
-                Map.Entry<String, Object> entry = iterator.next();
-                sb.append("\"").append(entry.getKey()).append("\":\"").append(entry.getValue()).append("\"");
-                if (iterator.hasNext()) {
-                    sb.append(",");
+    private ConcurrentMap<PayloadRenderer<?>, Object> renderedPayloads() {
+        ConcurrentMap<PayloadRenderer<?>, Object> payloads = renderedPayloads;
+        if (payloads == null) {
+            synchronized (this) {
+                payloads = renderedPayloads;
+                if (payloads == null) {
+                    payloads = new ConcurrentHashMap<PayloadRenderer<?>, Object>();
+                    renderedPayloads = payloads;
                 }
             }
         }
-        sb.append("}");
-        return sb.toString();
+        return payloads;
+    }
+
+    /**
+     * Renders the wire payload of a push network from a message. The rendered payload must be immutable, it is shared by
+     * the concurrent deliveries of the message.
+     *
+     * @see UnifiedPushMessage#getRenderedPayload(org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage.PayloadRenderer)
+     */
+    public interface PayloadRenderer<T> {
+
+        /**
+         * @return the payload, or <code>null</code> if the message can't be sent to the push network
+         */
+        T render(UnifiedPushMessage message);
+    }
+
+    /**
+     * Returns the JSON representation of the message, as stored in the push message history.
+     */
+    public String toJsonString() {
+        return writeJson(-1, true, false);
+    }
+
+    /**
+     * Returns the JSON representation of the message, shortened to the given length if it is longer: the strings are
+     * cut first, then the data is left out. A shortened representation contains <code>"truncated":true</code>.
+     */
+    public String toJsonString(int maxLength) {
+        final String json = toJsonString();
+        if (json.length() <= maxLength) {
+            return json;
+        }
+
+        final String shortenedStrings = writeJson(SHORTENED_STRING_LENGTH, true, true);
+        if (shortenedStrings.length() <= maxLength) {
+            return shortenedStrings;
+        }
+        return writeJson(SHORTENED_STRING_LENGTH, false, true);
+    }
+
+    private String writeJson(int maxStringLength, boolean withData, boolean truncated) {
+        final JsonWriter writer = JsonWriter.startObject(maxStringLength)
+                .field("ipAddress", ipAddress)
+                .field("clientIdentifier", clientIdentifier)
+                .field("simplePush", simplePush)
+                .field("alert", alert)
+                .field("action-category", actionCategory)
+                .field("sound", sound)
+                .field("contentAvailable", contentAvailable)
+                .field("badge", badge)
+                .field("timeToLive", timeToLive)
+                .field("data", withData && data != null ? data : Collections.emptyMap());
+        if (truncated) {
+            writer.field("truncated", Boolean.TRUE);
+        }
+        return writer.endObject();
     }
 
     @Override
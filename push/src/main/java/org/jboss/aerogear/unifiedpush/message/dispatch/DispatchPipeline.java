@@ -0,0 +1,337 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.dispatch;
+
+import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.message.SendCriteria;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Staged pipeline that processes the push message jobs, submitted by the {@link org.jboss.aerogear.unifiedpush.message.SenderService}.
+ *
+ * <ul>
+ *     <li>the <code>token-resolution</code> stage loads the device tokens of a variant from the database</li>
+ *     <li>one <code>delivery-&lt;type&gt;</code> stage per push network hands the tokens over to the matching sender</li>
+ *     <li>the <code>requests</code> stage is used by the senders, to run the requests of one delivery (e.g. the pages of a
+ *     GCM multicast) in parallel, see {@link #invokeAll(Collection, int)}</li>
+ * </ul>
+ *
+ * Each stage has its own workers and a bounded queue, so a slow push network (or the database) does not stall the
+ * delivery to the other networks. Workers and queue capacity of a stage are configured with the
+ * <code>aerogear.dispatch.&lt;stage&gt;.workers</code> and <code>aerogear.dispatch.&lt;stage&gt;.queue</code> system properties.
+ *
+ * The tokens are read in batches (<code>aerogear.dispatch.token-batch-size</code>, default 1000), each batch becomes one
+ * delivery job. The batch size of a push network can be set with <code>aerogear.dispatch.delivery-&lt;type&gt;.token-batch-size</code>:
+ * Android batches default to 4000 tokens, so that the GCM sender has several multicast pages to send in parallel.
+ * When the delivery stage is busy, the token resolution waits for free space in its queue (up to
+ * <code>aerogear.dispatch.enqueue-timeout</code> seconds), so the memory used by a job does not depend on the size of the variant.
+ *
+ * The pipeline itself does not touch the database, so it does not take part in the transaction of the caller.
+ *
+ * The workers are container managed threads, created by the default <code>ManagedThreadFactory</code> of the
+ * server (<code>java:comp/DefaultManagedThreadFactory</code>). On servers without the Java EE concurrency
+ * utilities, the stages create their own threads. On shutdown, the stages finish their queued jobs first.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class DispatchPipeline {
+
+    public static final String TOKEN_RESOLUTION_STAGE = "token-resolution";
+    public static final String DELIVERY_STAGE_PREFIX = "delivery-";
+    public static final String REQUESTS_STAGE = "requests";
+
+    private static final String PROPERTY_PREFIX = "aerogear.dispatch.";
+    private static final int DEFAULT_WORKERS = 4;
+    private static final int DEFAULT_REQUEST_WORKERS = 16;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    private static final int DEFAULT_TOKEN_BATCH_SIZE = 1000;
+    private static final int DEFAULT_ANDROID_TOKEN_BATCH_SIZE = 4000;
+    private static final long DEFAULT_ENQUEUE_TIMEOUT_SECONDS = 60;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final String MANAGED_THREAD_FACTORY = "java:comp/DefaultManagedThreadFactory";
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(DispatchPipeline.class);
+
+    @Inject
+    private ClientInstallationService clientInstallationService;
+
+    @Inject
+    private NotificationDispatcher dispatcher;
+
+    private final Map<VariantType, Integer> tokenBatchSizes = new EnumMap<VariantType, Integer>(VariantType.class);
+    private long enqueueTimeoutSeconds;
+    private DispatchStage tokenResolutionStage;
+    private final Map<VariantType, DispatchStage> deliveryStages = new EnumMap<VariantType, DispatchStage>(VariantType.class);
+    private DispatchStage requestsStage;
+    private ThreadFactory threadFactory;
+
+    @PostConstruct
+    public void start() {
+        final int tokenBatchSize = ConfigurationUtils.tryGetIntegerProperty(PROPERTY_PREFIX + "token-batch-size", DEFAULT_TOKEN_BATCH_SIZE);
+        enqueueTimeoutSeconds = ConfigurationUtils.tryGetLongProperty(PROPERTY_PREFIX + "enqueue-timeout", DEFAULT_ENQUEUE_TIMEOUT_SECONDS);
+        threadFactory = lookupManagedThreadFactory();
+        tokenResolutionStage = createStage(TOKEN_RESOLUTION_STAGE);
+        for (VariantType type : VariantType.values()) {
+            deliveryStages.put(type, createStage(DELIVERY_STAGE_PREFIX + type.getTypeName()));
+            tokenBatchSizes.put(type, Math.max(1, ConfigurationUtils.tryGetIntegerProperty(PROPERTY_PREFIX + DELIVERY_STAGE_PREFIX + type.getTypeName() + ".token-batch-size",
+                    type == VariantType.ANDROID ? DEFAULT_ANDROID_TOKEN_BATCH_SIZE : tokenBatchSize)));
+        }
+        requestsStage = createStage(REQUESTS_STAGE, DEFAULT_REQUEST_WORKERS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (DispatchStage stage : getStages()) {
+            try {
+                final int dropped = stage.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (dropped > 0) {
+                    logger.warning("Stage '" + stage.getName() + "' did not finish in time, dropped " + dropped + " queued jobs");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warning("Interrupted while waiting for stage '" + stage.getName() + "' to finish");
+            }
+        }
+    }
+
+    /**
+     * Queues the delivery of the message to all devices of the given variant that match the criteria.
+     *
+     * @return false if the job was rejected, because the pipeline is saturated. The failure has already been recorded
+     * on the given {@link PushMessageInformation}.
+     */
+    public boolean submit(Variant variant, SendCriteria criteria, UnifiedPushMessage message, PushMessageInformation pushMessageInformation) {
+        final boolean accepted = tokenResolutionStage.submit(new TokenResolutionJob(variant, criteria, message, pushMessageInformation));
+        if (!accepted) {
+            rejected(tokenResolutionStage, variant, 0, pushMessageInformation);
+        }
+        return accepted;
+    }
+
+    /**
+     * Returns all stages of the pipeline, starting with the token resolution.
+     */
+    public List<DispatchStage> getStages() {
+        final List<DispatchStage> stages = new ArrayList<DispatchStage>();
+        stages.add(tokenResolutionStage);
+        stages.addAll(deliveryStages.values());
+        stages.add(requestsStage);
+        return stages;
+    }
+
+    /**
+     * Runs the given requests on the workers of the <code>requests</code> stage, with at most <code>maxInFlight</code>
+     * of them at the same time, and waits until all of them have finished. When the stage is saturated, a request
+     * is executed on the calling thread, which also slows down the caller.
+     *
+     * Intended for the senders, the requests must not call this method themselves.
+     *
+     * @return the exceptions thrown by the failed requests, an empty list if all of them succeeded
+     */
+    public List<Exception> invokeAll(Collection<? extends Callable<?>> requests, int maxInFlight) throws InterruptedException {
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+
+        // nothing to parallelize:
+        if (requests.size() == 1) {
+            new Request(requests.iterator().next(), failures, null, null).run();
+            return failures;
+        }
+
+        final Semaphore inFlight = new Semaphore(Math.max(1, maxInFlight));
+        final CountDownLatch done = new CountDownLatch(requests.size());
+        for (Callable<?> callable : requests) {
+            inFlight.acquire();
+            final Request request = new Request(callable, failures, inFlight, done);
+            if (!requestsStage.submit(request)) {
+                request.run();
+            }
+        }
+        done.await();
+
+        return failures;
+    }
+
+    private DispatchStage createStage(String name) {
+        return createStage(name, DEFAULT_WORKERS);
+    }
+
+    private DispatchStage createStage(String name, int defaultWorkers) {
+        final int workers = ConfigurationUtils.tryGetIntegerProperty(PROPERTY_PREFIX + name + ".workers", defaultWorkers);
+        final int queueCapacity = ConfigurationUtils.tryGetIntegerProperty(PROPERTY_PREFIX + name + ".queue", DEFAULT_QUEUE_CAPACITY);
+        logger.fine("Starting dispatch stage '" + name + "' with " + workers + " workers and a queue of " + queueCapacity);
+        return new DispatchStage(name, workers, queueCapacity, threadFactory);
+    }
+
+    /**
+     * The thread factory of the container, <code>null</code> if the server does not provide one.
+     */
+    private ThreadFactory lookupManagedThreadFactory() {
+        try {
+            return (ThreadFactory) new InitialContext().lookup(MANAGED_THREAD_FACTORY);
+        } catch (NamingException e) {
+            logger.info("No managed thread factory available (" + MANAGED_THREAD_FACTORY + "), the dispatch stages create their own threads");
+            return null;
+        }
+    }
+
+    private void rejected(DispatchStage stage, Variant variant, int receivers, PushMessageInformation pushMessageInformation) {
+        logger.severe("Dispatch stage '" + stage.getName() + "' is full, dropping delivery for variant '" + variant.getVariantID() + "'"
+                + (receivers > 0 ? " to " + receivers + " devices" : ""));
+        dispatcher.reportFailure(variant, receivers, pushMessageInformation, "Server busy: dispatch queue '" + stage.getName() + "' is full");
+    }
+
+    /**
+     * Loads the device tokens for a variant, batch by batch, and passes them on to the delivery stage of its push network.
+     * Once the delivery stage rejects a batch, the remaining batches are only counted, and reported as failed together.
+     */
+    private class TokenResolutionJob implements Runnable {
+        private final Variant variant;
+        private final SendCriteria criteria;
+        private final UnifiedPushMessage message;
+        private final PushMessageInformation pushMessageInformation;
+
+        TokenResolutionJob(Variant variant, SendCriteria criteria, UnifiedPushMessage message, PushMessageInformation pushMessageInformation) {
+            this.variant = variant;
+            this.criteria = criteria;
+            this.message = message;
+            this.pushMessageInformation = pushMessageInformation;
+        }
+
+        @Override
+        public void run() {
+            final DispatchStage deliveryStage = deliveryStages.get(variant.getType());
+            final int tokenBatchSize = tokenBatchSizes.get(variant.getType());
+            String lastToken = null;
+            List<String> tokens;
+            int dropped = 0;
+
+            try {
+                do {
+                    tokens = clientInstallationService.findDeviceTokensForVariantIDByCriteria(variant.getVariantID(),
+                            criteria.getCategories(), criteria.getAliases(), criteria.getDeviceTypes(), lastToken, tokenBatchSize);
+
+                    // no need to send empty list
+                    if (tokens.isEmpty()) {
+                        break;
+                    }
+                    lastToken = tokens.get(tokens.size() - 1);
+
+                    if (dropped > 0 || !deliveryStage.submit(new DeliveryJob(variant, tokens, message, pushMessageInformation), enqueueTimeoutSeconds, TimeUnit.SECONDS)) {
+                        dropped += tokens.size();
+                    }
+                } while (tokens.size() == tokenBatchSize);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warning("Interrupted while dispatching message to variant '" + variant.getVariantID() + "'");
+            } catch (Exception e) {
+                logger.severe("Error loading device tokens for variant '" + variant.getVariantID() + "'", e);
+                dispatcher.reportFailure(variant, 0, pushMessageInformation, "Error loading device tokens");
+            }
+
+            if (dropped > 0) {
+                rejected(deliveryStage, variant, dropped, pushMessageInformation);
+            }
+        }
+    }
+
+    /**
+     * Sends the message to a list of device tokens, using the sender of the push network.
+     */
+    private class DeliveryJob implements Runnable {
+        private final Variant variant;
+        private final List<String> tokens;
+        private final UnifiedPushMessage message;
+        private final PushMessageInformation pushMessageInformation;
+
+        DeliveryJob(Variant variant, List<String> tokens, UnifiedPushMessage message, PushMessageInformation pushMessageInformation) {
+            this.variant = variant;
+            this.tokens = tokens;
+            this.message = message;
+            this.pushMessageInformation = pushMessageInformation;
+        }
+
+        @Override
+        public void run() {
+            try {
+                dispatcher.deliver(variant, tokens, message, pushMessageInformation);
+            } catch (Exception e) {
+                logger.severe("Error delivering message to variant '" + variant.getVariantID() + "'", e);
+            }
+        }
+    }
+
+    /**
+     * A request of {@link #invokeAll(Collection, int)}, that releases its in-flight permit once it is done.
+     */
+    private static class Request implements Runnable {
+        private final Callable<?> callable;
+        private final List<Exception> failures;
+        private final Semaphore inFlight;
+        private final CountDownLatch done;
+
+        Request(Callable<?> callable, List<Exception> failures, Semaphore inFlight, CountDownLatch done) {
+            this.callable = callable;
+            this.failures = failures;
+            this.inFlight = inFlight;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                callable.call();
+            } catch (Exception e) {
+                failures.add(e);
+            } finally {
+                if (inFlight != null) {
+                    inFlight.release();
+                    done.countDown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.dispatch;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single stage of the {@link DispatchPipeline}: a fixed number of worker threads, reading jobs
+ * from a bounded queue. Once the queue is full, further jobs are rejected instead of piling up in memory.
+ *
+ * Every job holds a permit of the stage until it has finished, there are as many permits as workers and queue
+ * slots, so a job that is accepted always finds a worker or a free queue slot.
+ */
+public class DispatchStage {
+
+    private final String name;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore permits;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates a stage, with worker threads of its own.
+     */
+    public DispatchStage(String name, int workers, int queueCapacity) {
+        this(name, workers, queueCapacity, null);
+    }
+
+    /**
+     * Creates a stage, with worker threads from the given (e.g. container managed) thread factory.
+     *
+     * @param threadFactory creates the worker threads, if <code>null</code>, the stage creates its own (daemon) threads
+     */
+    public DispatchStage(String name, int workers, int queueCapacity, ThreadFactory threadFactory) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.permits = new Semaphore(workers + queueCapacity);
+        // the queue itself is bounded by the permits:
+        this.executor = new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new StageThreadFactory(name, threadFactory));
+    }
+
+    /**
+     * Queues the given job for execution on one of the workers of this stage.
+     *
+     * @return false if the queue of this stage is full (or the stage has been shut down) and the job was not accepted.
+     */
+    public boolean submit(Runnable job) {
+        if (executor.isShutdown() || !permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        return execute(job);
+    }
+
+    /**
+     * Queues the given job for execution on one of the workers of this stage, waiting (up to the given time)
+     * for free space in the queue. Used by producers that can be slowed down, instead of dropping their jobs.
+     *
+     * @return false if there was no free space in the queue within the given time (or the stage has been shut down).
+     */
+    public boolean submit(Runnable job, long timeout, TimeUnit unit) throws InterruptedException {
+        if (executor.isShutdown() || !permits.tryAcquire(timeout, unit)) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        return execute(job);
+    }
+
+    /**
+     * Stops accepting new jobs and waits (for the given time) until the queued jobs have been processed.
+     *
+     * @return the number of queued jobs that have not been processed within the given time, and were dropped
+     */
+    public int shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(timeout, unit)) {
+            return executor.shutdownNow().size();
+        }
+        return 0;
+    }
+
+    /**
+     * Hands the job (holding a permit) over to the executor, the permit is released once the job has finished.
+     */
+    private boolean execute(final Runnable job) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        job.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // shut down in the meantime
+            permits.release();
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of jobs waiting for a free worker.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Number of workers currently processing a job.
+     */
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    public int getWorkers() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public long getCompletedJobs() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Number of jobs that were turned away, because the queue was full.
+     */
+    public long getRejectedJobs() {
+        return rejected.get();
+    }
+
+    /**
+     * Names the worker threads after their stage, which makes thread dumps readable.
+     */
+    private static class StageThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final ThreadFactory threadFactory;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        StageThreadFactory(String stageName, ThreadFactory threadFactory) {
+            this.prefix = "ups-dispatch-" + stageName + "-";
+            this.threadFactory = threadFactory;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            if (threadFactory == null) {
+                final Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+            final Thread thread = threadFactory.newThread(runnable);
+            if (thread != null) {
+                thread.setName(prefix + counter.incrementAndGet());
+            }
+            return thread;
+        }
+    }
+}
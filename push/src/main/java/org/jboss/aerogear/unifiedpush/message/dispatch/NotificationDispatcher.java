@@ -0,0 +1,143 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.dispatch;
+
+import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.sender.NotificationSenderCallback;
+import org.jboss.aerogear.unifiedpush.message.sender.PushNotificationSender;
+import org.jboss.aerogear.unifiedpush.message.sender.SenderTypeLiteral;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands a batch of device tokens over to the {@link PushNotificationSender} of the matching push network,
+ * and records the outcome on the {@link PushMessageInformation} of the push message job.
+ *
+ * Invoked by the workers of the delivery stages of the {@link DispatchPipeline}.
+ */
+@Stateless
+public class NotificationDispatcher {
+
+    private static final AeroGearLogger logger = AeroGearLogger.getInstance(NotificationDispatcher.class);
+
+    @Inject
+    @Any
+    private Instance<PushNotificationSender> senders;
+
+    @Inject
+    private PushMessageMetricsAccumulator metricsAccumulator;
+
+    /**
+     * Sends the message to the given tokens of the variant. No transaction is kept open while talking to the push network,
+     * the outcomes reported to the sender callback are collected by the {@link PushMessageMetricsAccumulator}, and
+     * written once the delivery has finished.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void deliver(Variant variant, Collection<String> tokens, UnifiedPushMessage message, PushMessageInformation pushMessageInformation) {
+        final PushNotificationSender sender = senders.select(new SenderTypeLiteral(variant.getClass())).get();
+        try {
+            sender.sendPushMessage(variant, tokens, message, new SenderServiceCallback(metricsAccumulator, variant, tokens.size(), pushMessageInformation));
+        } finally {
+            metricsAccumulator.requestFlush();
+        }
+    }
+
+    /**
+     * Records a failed delivery, for tokens that never reached a push network (e.g. when a stage of the pipeline was full).
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reportFailure(Variant variant, int receivers, PushMessageInformation pushMessageInformation, String reason) {
+        metricsAccumulator.record(pushMessageInformation.getId(), variant.getVariantID(), receivers, Boolean.FALSE, reason);
+        metricsAccumulator.requestFlush();
+    }
+
+    /**
+     * Records the outcomes reported by a sender for one batch of tokens. The batch is counted at most once: the
+     * outcomes reported with a count are taken from the tokens of the batch that have not been reported yet, and an
+     * outcome without a count covers all of the remaining tokens.
+     */
+    static class SenderServiceCallback implements NotificationSenderCallback {
+        private final PushMessageMetricsAccumulator metricsAccumulator;
+        private final Variant variant;
+        private final AtomicInteger remaining;
+        private final PushMessageInformation pushMessageInformation;
+
+        SenderServiceCallback(PushMessageMetricsAccumulator metricsAccumulator, Variant variant, int tokenSize, PushMessageInformation pushMessageInformation) {
+            this.metricsAccumulator = metricsAccumulator;
+            this.variant = variant;
+            this.remaining = new AtomicInteger(tokenSize);
+            this.pushMessageInformation = pushMessageInformation;
+        }
+
+        @Override
+        public void onSuccess() {
+            success(remaining.getAndSet(0));
+        }
+
+        @Override
+        public void onSuccess(int count) {
+            success(take(count));
+        }
+
+        @Override
+        public void onError(final String reason) {
+            error(remaining.getAndSet(0), reason);
+        }
+
+        @Override
+        public void onError(int count, String reason) {
+            error(take(count), reason);
+        }
+
+        private void success(int receivers) {
+            if (receivers > 0) {
+                logger.fine(String.format("Sent '%s' message to '%d' devices", variant.getType().getTypeName(), receivers));
+                metricsAccumulator.record(pushMessageInformation.getId(), variant.getVariantID(), receivers, Boolean.TRUE, null);
+            }
+        }
+
+        private void error(int receivers, String reason) {
+            if (receivers > 0) {
+                logger.warning(String.format("Error on '%s' delivery", variant.getType().getTypeName()));
+                metricsAccumulator.record(pushMessageInformation.getId(), variant.getVariantID(), receivers, Boolean.FALSE, reason);
+            }
+        }
+
+        /**
+         * Takes up to the given number of tokens from the ones that have not been reported yet.
+         */
+        private int take(int count) {
+            while (true) {
+                final int current = remaining.get();
+                final int taken = Math.min(Math.max(count, 0), current);
+                if (remaining.compareAndSet(current, current - taken)) {
+                    return taken;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.dispatch;
+
+import org.jboss.aerogear.unifiedpush.api.VariantMetricInformation;
+import org.jboss.aerogear.unifiedpush.service.metrics.PushMessageMetricsService;
+import org.jboss.aerogear.unifiedpush.service.util.CoalescingFlush;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.SessionContext;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects the delivery outcomes reported by the senders in memory, and stores them on the
+ * {@link org.jboss.aerogear.unifiedpush.api.PushMessageInformation} in the background.
+ *
+ * Outcomes are summed up per push message, variant, delivery status and reason, so a push message job results in one
+ * {@link VariantMetricInformation} per distinct outcome, no matter how often the senders invoke their callback. The
+ * pending outcomes are written when a delivery has finished, see {@link #requestFlush()}, and at least every
+ * <code>aerogear.metrics.flush-interval</code> milliseconds (default 1000), one transaction per push message.
+ *
+ * Pending outcomes only live in memory: they are written on a regular shutdown, but lost when the server crashes.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class PushMessageMetricsAccumulator {
+
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(PushMessageMetricsAccumulator.class);
+
+    private final ConcurrentMap<String, PendingMetrics> pendingMetrics = new ConcurrentHashMap<String, PendingMetrics>();
+    private final CoalescingFlush flush = new CoalescingFlush() {
+        @Override
+        protected void flushInBackground() {
+            context.getBusinessObject(PushMessageMetricsAccumulator.class).flushInBackground();
+        }
+
+        @Override
+        protected void write() {
+            writePending();
+        }
+    };
+
+    @Resource
+    private TimerService timerService;
+
+    @Resource
+    private SessionContext context;
+
+    @Inject
+    private PushMessageMetricsService metricsService;
+
+    @PostConstruct
+    public void init() {
+        final long flushInterval = Math.max(1, ConfigurationUtils.tryGetLongProperty("aerogear.metrics.flush-interval", DEFAULT_FLUSH_INTERVAL));
+        timerService.createIntervalTimer(flushInterval, flushInterval, new TimerConfig(null, false));
+    }
+
+    /**
+     * Adds the outcome of a delivery to the pending metrics of the given push message. Cheap, does not touch the database.
+     */
+    public void record(String pushMessageInformationId, String variantID, long receivers, Boolean deliveryStatus, String reason) {
+        // the pending metrics of a message could be taken by a concurrent flush, in that case we start over:
+        while (true) {
+            PendingMetrics pending = pendingMetrics.get(pushMessageInformationId);
+            if (pending == null) {
+                final PendingMetrics created = new PendingMetrics();
+                pending = pendingMetrics.putIfAbsent(pushMessageInformationId, created);
+                if (pending == null) {
+                    pending = created;
+                }
+            }
+            if (pending.add(variantID, receivers, deliveryStatus, reason)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the pending metrics in the background, e.g. once a delivery has finished. Requests are coalesced, only one
+     * flush is queued at a time.
+     */
+    public void requestFlush() {
+        flush.request();
+    }
+
+    /**
+     * Number of push messages with metrics that have not been written yet.
+     */
+    public int getPendingCount() {
+        return pendingMetrics.size();
+    }
+
+    @Asynchronous
+    public void flushInBackground() {
+        flush.flush();
+    }
+
+    @Timeout
+    public void onFlushInterval() {
+        flush.flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush.flushAndWait();
+    }
+
+    /**
+     * Stores the given metrics on the push message, in its own transaction.
+     *
+     * Not intended to be called directly, the metrics are written by the flush.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void store(String pushMessageInformationId, Collection<VariantMetricInformation> variantInformations) {
+        metricsService.addVariantInformations(pushMessageInformationId, variantInformations);
+    }
+
+    /**
+     * Writes the pending metrics of all push messages. Invoked by the {@link CoalescingFlush}, one flush at a time.
+     */
+    private void writePending() {
+        final PushMessageMetricsAccumulator accumulator = context.getBusinessObject(PushMessageMetricsAccumulator.class);
+        for (Map.Entry<String, PendingMetrics> entry : pendingMetrics.entrySet()) {
+            if (!pendingMetrics.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+
+            final Collection<VariantMetricInformation> variantInformations = entry.getValue().close();
+            try {
+                accumulator.store(entry.getKey(), variantInformations);
+            } catch (Exception e) {
+                logger.severe("Could not store the metrics of push message '" + entry.getKey() + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Hook to manually inject the session context, used to reach the business interface of this bean.
+     */
+    void setContext(SessionContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Hook to manually inject the metrics service.
+     */
+    void setMetricsService(PushMessageMetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * The outcomes of one push message, that have not been written yet. Once closed by a flush, nothing can be added
+     * anymore.
+     */
+    private static class PendingMetrics {
+        private final Map<String, VariantMetricInformation> variantInformations = new LinkedHashMap<String, VariantMetricInformation>();
+        private boolean closed;
+
+        synchronized boolean add(String variantID, long receivers, Boolean deliveryStatus, String reason) {
+            if (closed) {
+                return false;
+            }
+
+            final String key = variantID + '\n' + deliveryStatus + '\n' + reason;
+            VariantMetricInformation variantInformation = variantInformations.get(key);
+            if (variantInformation == null) {
+                variantInformation = new VariantMetricInformation();
+                variantInformation.setVariantID(variantID);
+                variantInformation.setDeliveryStatus(deliveryStatus);
+                variantInformation.setReason(reason);
+                variantInformations.put(key, variantInformation);
+            }
+            variantInformation.setReceivers(variantInformation.getReceivers() + receivers);
+            return true;
+        }
+
+        synchronized Collection<VariantMetricInformation> close() {
+            closed = true;
+            return new ArrayList<VariantMetricInformation>(variantInformations.values());
+        }
+    }
+}
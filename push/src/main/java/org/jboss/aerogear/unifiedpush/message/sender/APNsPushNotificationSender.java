@@ -20,7 +20,6 @@ import com.notnoop.apns.APNS;
 import com.notnoop.apns.ApnsDelegateAdapter;
 import com.notnoop.apns.ApnsNotification;
 import com.notnoop.apns.ApnsService;
-import com.notnoop.apns.ApnsServiceBuilder;
 import com.notnoop.apns.EnhancedApnsNotification;
 import com.notnoop.apns.PayloadBuilder;
 import org.jboss.aerogear.unifiedpush.api.Variant;
@@ -30,7 +29,6 @@ import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
 import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
 
 import javax.inject.Inject;
-import java.io.ByteArrayInputStream;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
@@ -41,9 +39,72 @@ public class APNsPushNotificationSender implements PushNotificationSender {
 
     private final AeroGearLogger logger = AeroGearLogger.getInstance(APNsPushNotificationSender.class);
 
+    /**
+     * The cached {@link ApnsService} of a variant is shared by all sends, while the delivery status has to be reported
+     * to the callback of the current send. With error detection turned off, the delegate is notified on the thread
+     * that pushes the notifications, so the callback of the current send is kept per thread. The delegate is notified
+     * once per token, and reports each of them on its own.
+     */
+    private static final ThreadLocal<NotificationSenderCallback> CURRENT_CALLBACK = new ThreadLocal<NotificationSenderCallback>();
+
+    private static final AeroGearLogger delegateLogger = AeroGearLogger.getInstance(APNsPushNotificationSender.class);
+
+    private static final ApnsDelegateAdapter CALLBACK_DELEGATE = new ApnsDelegateAdapter() {
+        @Override
+        public void messageSent(ApnsNotification message, boolean resent) {
+            final NotificationSenderCallback callback = CURRENT_CALLBACK.get();
+            if (callback != null) {
+                callback.onSuccess(1);
+            }
+        }
+
+        @Override
+        public void messageSendFailed(ApnsNotification message, Throwable e) {
+            delegateLogger.severe("Error sending payload to APNs server", e);
+            final NotificationSenderCallback callback = CURRENT_CALLBACK.get();
+            if (callback != null) {
+                callback.onError(1, "Error sending payload to APNs server: " + e.getMessage());
+            }
+        }
+    };
+
+    /**
+     * Builds the JSON payload for APNs, <code>null</code> if the message is too long. Package visible for the benchmarks.
+     */
+    static final UnifiedPushMessage.PayloadRenderer<String> APNS_PAYLOAD = new UnifiedPushMessage.PayloadRenderer<String>() {
+        @Override
+        public String render(UnifiedPushMessage pushMessage) {
+            PayloadBuilder builder = APNS.newPayload()
+                    // adding recognized key values
+                    .alertBody(pushMessage.getAlert()) // alert dialog, in iOS
+                    .badge(pushMessage.getBadge()) // little badge icon update;
+                    .sound(pushMessage.getSound()) // sound to be played by app
+                    .category(pushMessage.getActionCategory()); // iOS8: User Action category
+
+            // apply the 'content-available:1' value:
+            if (pushMessage.isContentAvailable()) {
+                // content-available is for 'silent' notifications and Newsstand
+                builder = builder.instantDeliveryOrSilentNotification();
+            }
+
+            builder = builder.customFields(pushMessage.getData()); // adding other (submitted) fields
+
+            // we are done with adding values here, before building let's check if the msg is too long
+            if (builder.isTooLong()) {
+                return null;
+            }
+
+            // all good, let's build the JSON payload for APNs
+            return builder.build();
+        }
+    };
+
     @Inject
     private ClientInstallationService clientInstallationService;
 
+    @Inject
+    private ApnsServiceCache apnsServiceCache;
+
     /**
      * Sends APNs notifications ({@link UnifiedPushMessage}) to all devices, that are represented by
      * the {@link Collection} of tokens for the given {@link iOSVariant}.
@@ -56,23 +117,9 @@ public class APNsPushNotificationSender implements PushNotificationSender {
 
         final iOSVariant iOSVariant = (iOSVariant) variant;
 
-        PayloadBuilder builder = APNS.newPayload()
-                // adding recognized key values
-                .alertBody(pushMessage.getAlert()) // alert dialog, in iOS
-                .badge(pushMessage.getBadge()) // little badge icon update;
-                .sound(pushMessage.getSound()) // sound to be played by app
-                .category(pushMessage.getActionCategory()); // iOS8: User Action category
-
-                // apply the 'content-available:1' value:
-                if (pushMessage.isContentAvailable()) {
-                    // content-available is for 'silent' notifications and Newsstand
-                    builder = builder.instantDeliveryOrSilentNotification();
-                }
-
-                builder = builder.customFields(pushMessage.getData()); // adding other (submitted) fields
-
-        // we are done with adding values here, before building let's check if the msg is too long
-        if (builder.isTooLong()) {
+        // the payload is the same for all iOS variants:
+        final String apnsMessage = pushMessage.getRenderedPayload(APNS_PAYLOAD);
+        if (apnsMessage == null) {
             logger.warning("Nothing sent to APNs since the payload is too large");
             // invoke the error callback and return, as it is pointless to send something out
             callback.onError("message too long for APNs");
@@ -80,17 +127,13 @@ public class APNsPushNotificationSender implements PushNotificationSender {
             return;
         }
 
-        // all good, let's build the JSON payload for APNs
-        final String apnsMessage  =  builder.build();
-
-        ApnsService service = buildApnsService(iOSVariant, callback);
+        final ApnsService service = apnsServiceCache.getApnsService(iOSVariant, CALLBACK_DELEGATE);
 
         if (service != null) {
+            CURRENT_CALLBACK.set(callback);
             try {
                 logger.fine("Sending transformed APNs payload: " + apnsMessage);
-                // send:
-                service.start();
-
+                // send, the (cached) service is already started:
                 Date expireDate = createFutureDateBasedOnTTL(pushMessage.getTimeToLive());
                 service.push(tokens, apnsMessage, expireDate);
                 logger.info("Message to APNs has been submitted");
@@ -108,8 +151,8 @@ public class APNsPushNotificationSender implements PushNotificationSender {
             } catch (Exception e) {
                 callback.onError("Error sending payload to APNs server: " + e.getMessage());
             } finally {
-                // tear down and release resources:
-                service.stop();
+                // the service stays open for the next send, only the callback is released:
+                CURRENT_CALLBACK.remove();
             }
         } else {
             logger.severe("No certificate was found. Could not send messages to APNs");
@@ -145,55 +188,9 @@ public class APNsPushNotificationSender implements PushNotificationSender {
     }
 
     /**
-     * Returns the ApnsService, based on the required profile (production VS sandbox/test).
-     * Null is returned if there is no "configuration" for the request stage
+     * Hook to manually inject the cache of APNs services.
      */
-    private ApnsService buildApnsService(iOSVariant iOSVariant, final NotificationSenderCallback notificationSenderCallback) {
-
-        // this check should not be needed, but you never know:
-        if (iOSVariant.getCertificate() != null && iOSVariant.getPassphrase() != null) {
-
-            final ApnsServiceBuilder builder = APNS.newService().withNoErrorDetection();
-
-            // using the APNS Delegate callback to trigger our own notifications for success/failure status:
-            builder.withDelegate(new ApnsDelegateAdapter() {
-                @Override
-                public void messageSent(ApnsNotification message, boolean resent) {
-                    notificationSenderCallback.onSuccess();
-                }
-
-                @Override
-                public void messageSendFailed(ApnsNotification message, Throwable e) {
-                    logger.severe("Error sending payload to APNs server", e);
-                    notificationSenderCallback.onError("Error sending payload to APNs server: " + e.getMessage());
-                }
-            });
-
-            // add the certificate:
-            try {
-                ByteArrayInputStream stream = new ByteArrayInputStream(iOSVariant.getCertificate());
-                builder.withCert(stream, iOSVariant.getPassphrase());
-
-                // release the stream
-                stream.close();
-            } catch (Exception e) {
-                logger.severe("Error reading certificate", e);
-
-                // indicating an incomplete service
-                return null;
-            }
-
-            // pick the destination:
-            if (iOSVariant.isProduction()) {
-                builder.withProductionDestination();
-            } else {
-                builder.withSandboxDestination();
-            }
-
-            // create the service
-            return builder.build();
-        }
-        // null if, why ever, there was no cert/passphrase
-        return null;
+    void setApnsServiceCache(ApnsServiceCache apnsServiceCache) {
+        this.apnsServiceCache = apnsServiceCache;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,272 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import com.notnoop.apns.APNS;
+import com.notnoop.apns.ApnsDelegate;
+import com.notnoop.apns.ApnsService;
+import com.notnoop.apns.ApnsServiceBuilder;
+import org.jboss.aerogear.unifiedpush.api.iOSVariant;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one started {@link ApnsService} per iOS variant, so that the certificate is parsed, and the TLS connection
+ * to APNs is established, once instead of for every push message.
+ *
+ * Entries are keyed on the variantID and remember the certificate, passphrase and destination they have been built
+ * with: a changed variant gets a new service. Services that have not been used for
+ * <code>aerogear.apns.idle-timeout</code> seconds (default 600) are removed.
+ *
+ * A removed or replaced service may still be pushing a batch for another thread, so it is not stopped right away:
+ * it is retired, and stopped by {@link #evictIdleServices()} once it has been retired for
+ * <code>aerogear.apns.retire-grace-period</code> seconds (default 120).
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ApnsServiceCache {
+
+    private static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 600;
+    private static final long DEFAULT_RETIRE_GRACE_PERIOD_SECONDS = 120;
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(ApnsServiceCache.class);
+
+    private final ConcurrentMap<String, CachedApnsService> services = new ConcurrentHashMap<String, CachedApnsService>();
+    private final long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(
+            ConfigurationUtils.tryGetLongProperty("aerogear.apns.idle-timeout", DEFAULT_IDLE_TIMEOUT_SECONDS));
+
+    // replaced services, stopped after a grace period so that the batches still pushing through them can finish:
+    private final Queue<RetiredApnsService> retired = new ConcurrentLinkedQueue<RetiredApnsService>();
+    private final long retireGracePeriodMillis = TimeUnit.SECONDS.toMillis(
+            ConfigurationUtils.tryGetLongProperty("aerogear.apns.retire-grace-period", DEFAULT_RETIRE_GRACE_PERIOD_SECONDS));
+
+    /**
+     * Returns the started ApnsService for the given variant, based on the required profile (production VS sandbox/test).
+     * Null is returned if there is no "configuration" for the request stage, or if the certificate could not be read.
+     *
+     * @param iOSVariant the variant to send to
+     * @param delegate receives the success/failure notifications, used when a new service has to be built
+     */
+    public ApnsService getApnsService(iOSVariant iOSVariant, ApnsDelegate delegate) {
+
+        // this check should not be needed, but you never know:
+        if (iOSVariant.getCertificate() == null || iOSVariant.getPassphrase() == null) {
+            return null;
+        }
+
+        final String variantID = iOSVariant.getVariantID();
+
+        CachedApnsService cached = services.get(variantID);
+        if (cached == null || !cached.isBuiltFrom(iOSVariant)) {
+            // building a service is rare (first use, or a new certificate), so a simple lock is good enough:
+            synchronized (this) {
+                cached = services.get(variantID);
+                if (cached == null || !cached.isBuiltFrom(iOSVariant)) {
+                    final ApnsService service = buildApnsService(iOSVariant, delegate);
+                    if (service == null) {
+                        return null;
+                    }
+                    service.start();
+
+                    final CachedApnsService previous = services.put(variantID, cached = new CachedApnsService(service, iOSVariant));
+                    if (previous != null) {
+                        logger.info("Certificate of iOS variant '" + variantID + "' has changed, replacing APNs service");
+                        retire(previous);
+                    }
+                }
+            }
+        }
+
+        cached.touch();
+        return cached.service;
+    }
+
+    /**
+     * Removes the service of the given variant, e.g. after a new certificate has been uploaded. The service is stopped
+     * after the retire grace period.
+     */
+    public void invalidate(String variantID) {
+        final CachedApnsService cached = services.remove(variantID);
+        if (cached != null) {
+            logger.fine("Removing APNs service of iOS variant '" + variantID + "'");
+            retire(cached);
+        }
+    }
+
+    /**
+     * Retires the services that have not been used within the idle timeout, and stops the retired services whose grace
+     * period has passed.
+     */
+    @Schedule(hour = "*", minute = "*/5", persistent = false)
+    public void evictIdleServices() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<String, CachedApnsService>> iterator = services.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, CachedApnsService> entry = iterator.next();
+            final CachedApnsService cached = entry.getValue();
+            if (now - cached.lastUsed > idleTimeoutMillis && services.remove(entry.getKey(), cached)) {
+                logger.fine("Removing idle APNs service of iOS variant '" + entry.getKey() + "'");
+                retire(cached);
+            }
+        }
+
+        for (RetiredApnsService service : retired) {
+            if (now - service.retiredAt >= retireGracePeriodMillis && retired.remove(service)) {
+                stop(service.service);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stopAll() {
+        for (String variantID : services.keySet()) {
+            final CachedApnsService cached = services.remove(variantID);
+            if (cached != null) {
+                stop(cached.service);
+            }
+        }
+        RetiredApnsService service;
+        while ((service = retired.poll()) != null) {
+            stop(service.service);
+        }
+    }
+
+    /**
+     * Number of cached services.
+     */
+    public int size() {
+        return services.size();
+    }
+
+    /**
+     * Number of replaced services that have not been stopped yet.
+     */
+    int retiredSize() {
+        return retired.size();
+    }
+
+    private void retire(CachedApnsService cached) {
+        retired.add(new RetiredApnsService(cached.service));
+    }
+
+    private void stop(ApnsService service) {
+        try {
+            // tear down and release resources:
+            service.stop();
+        } catch (Exception e) {
+            logger.warning("Error stopping APNs service: " + e.getMessage());
+        }
+    }
+
+    private ApnsService buildApnsService(iOSVariant iOSVariant, ApnsDelegate delegate) {
+        final ApnsServiceBuilder builder = APNS.newService().withNoErrorDetection();
+
+        // using the APNS Delegate callback to trigger our own notifications for success/failure status:
+        builder.withDelegate(delegate);
+
+        // add the certificate:
+        try {
+            ByteArrayInputStream stream = new ByteArrayInputStream(iOSVariant.getCertificate());
+            builder.withCert(stream, iOSVariant.getPassphrase());
+
+            // release the stream
+            stream.close();
+        } catch (Exception e) {
+            logger.severe("Error reading certificate", e);
+
+            // indicating an incomplete service
+            return null;
+        }
+
+        // pick the destination:
+        if (iOSVariant.isProduction()) {
+            builder.withProductionDestination();
+        } else {
+            builder.withSandboxDestination();
+        }
+
+        // a local stand-in for APNs, see StandInDestinations:
+        final InetSocketAddress gateway = StandInDestinations.apnsGateway();
+        if (gateway != null) {
+            builder.withGatewayDestination(gateway.getHostString(), gateway.getPort());
+        }
+        final InetSocketAddress feedback = StandInDestinations.apnsFeedback();
+        if (feedback != null) {
+            builder.withFeedbackDestination(feedback.getHostString(), feedback.getPort());
+        }
+
+        // create the service
+        return builder.build();
+    }
+
+    private static class CachedApnsService {
+        private final ApnsService service;
+        private final byte[] certificate;
+        private final String passphrase;
+        private final boolean production;
+        private volatile long lastUsed;
+
+        CachedApnsService(ApnsService service, iOSVariant iOSVariant) {
+            this.service = service;
+            this.certificate = iOSVariant.getCertificate();
+            this.passphrase = iOSVariant.getPassphrase();
+            this.production = iOSVariant.isProduction();
+            touch();
+        }
+
+        /**
+         * Whether the variant still has the certificate, passphrase and destination this service was built with. The
+         * certificate bytes are only compared if the variant holds a different array than the one the service was
+         * built from.
+         */
+        boolean isBuiltFrom(iOSVariant iOSVariant) {
+            final byte[] other = iOSVariant.getCertificate();
+            return production == iOSVariant.isProduction()
+                    && passphrase.equals(iOSVariant.getPassphrase())
+                    && (certificate == other || Arrays.equals(certificate, other));
+        }
+
+        void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    private static class RetiredApnsService {
+        private final ApnsService service;
+        private final long retiredAt = System.currentTimeMillis();
+
+        RetiredApnsService(ApnsService service) {
+            this.service = service;
+        }
+    }
+}
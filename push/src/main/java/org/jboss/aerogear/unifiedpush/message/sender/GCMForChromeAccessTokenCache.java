@@ -0,0 +1,229 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import org.jboss.aerogear.unifiedpush.api.ChromePackagedAppVariant;
+import org.jboss.aerogear.unifiedpush.message.helper.ChromePackagedAppTokenCache;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.SessionContext;
+import javax.ejb.Singleton;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared cache of the OAuth access tokens for the GCM for Chrome applications, keyed by their client ID.
+ *
+ * <ul>
+ *     <li>only one refresh per application is running at any time, concurrent callers wait for its result</li>
+ *     <li>tokens that expire within <code>aerogear.chrome.token-refresh-ahead</code> seconds (default 300) are
+ *     returned right away and refreshed in the background, so a send only has to wait for a token if there was none yet,
+ *     or if it already expired</li>
+ * </ul>
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GCMForChromeAccessTokenCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ACCESS_TOKEN_URL = "https://accounts.google.com/o/oauth2/token";
+    private static final long DEFAULT_REFRESH_AHEAD_SECONDS = 300;
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(GCMForChromeAccessTokenCache.class);
+
+    private final ConcurrentMap<String, ChromePackagedAppTokenCache> accessTokens = new ConcurrentHashMap<String, ChromePackagedAppTokenCache>();
+    private final ConcurrentMap<String, FutureTask<ChromePackagedAppTokenCache>> refreshes = new ConcurrentHashMap<String, FutureTask<ChromePackagedAppTokenCache>>();
+    private final long refreshAheadMillis = TimeUnit.SECONDS.toMillis(
+            ConfigurationUtils.tryGetLongProperty("aerogear.chrome.token-refresh-ahead", DEFAULT_REFRESH_AHEAD_SECONDS));
+    // bumped by every invalidate, a refresh that started before only hands its token to the callers waiting for it:
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong failedRefreshCount = new AtomicLong();
+    private final AtomicLong refreshNanos = new AtomicLong();
+
+    @Resource
+    private SessionContext context;
+
+    /**
+     * Returns a valid access token for the given application, or <code>null</code> if none could be obtained.
+     */
+    public String getAccessToken(ChromePackagedAppVariant chromePackagedAppVariant) {
+        final ChromePackagedAppTokenCache cached = accessTokens.get(chromePackagedAppVariant.getClientId());
+        final long now = System.currentTimeMillis();
+
+        if (cached != null && cached.getExpiresIn() > now) {
+            hits.incrementAndGet();
+
+            // about to expire? Get the next one, while the current one is still used:
+            if (cached.getExpiresIn() - now < refreshAheadMillis && !refreshes.containsKey(chromePackagedAppVariant.getClientId())) {
+                context.getBusinessObject(GCMForChromeAccessTokenCache.class).refreshInBackground(chromePackagedAppVariant);
+            }
+            return cached.getAccessToken();
+        }
+
+        misses.incrementAndGet();
+        final ChromePackagedAppTokenCache refreshed = refresh(chromePackagedAppVariant);
+        return (refreshed != null) ? refreshed.getAccessToken() : null;
+    }
+
+    /**
+     * Refreshes the access token of the given application, without blocking the caller.
+     */
+    @Asynchronous
+    public void refreshInBackground(ChromePackagedAppVariant chromePackagedAppVariant) {
+        // several sends may have asked for it, only the first one has to do the work:
+        final ChromePackagedAppTokenCache cached = accessTokens.get(chromePackagedAppVariant.getClientId());
+        if (cached == null || cached.getExpiresIn() - System.currentTimeMillis() < refreshAheadMillis) {
+            refresh(chromePackagedAppVariant);
+        }
+    }
+
+    /**
+     * Drops the access token of the given application, e.g. after its credentials have been changed. A refresh that
+     * is still running with the old credentials does not put its token back, and later callers do not wait for it.
+     */
+    public void invalidate(String clientId) {
+        generation.incrementAndGet();
+        refreshes.remove(clientId);
+        accessTokens.remove(clientId);
+    }
+
+    public GCMForChromeAccessTokenCacheStatistics getStatistics() {
+        final long refreshed = refreshCount.get();
+        final long failed = failedRefreshCount.get();
+        final long requests = refreshed + failed;
+        return new GCMForChromeAccessTokenCacheStatistics(accessTokens.size(), hits.get(), misses.get(), refreshed, failed,
+                requests == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(refreshNanos.get()) / requests);
+    }
+
+    /**
+     * Single-flight refresh: the first caller performs the request, everybody else waits for its result.
+     */
+    private ChromePackagedAppTokenCache refresh(final ChromePackagedAppVariant chromePackagedAppVariant) {
+        final String clientId = chromePackagedAppVariant.getClientId();
+        final long startGeneration = generation.get();
+        final FutureTask<ChromePackagedAppTokenCache> task = new FutureTask<ChromePackagedAppTokenCache>(new Callable<ChromePackagedAppTokenCache>() {
+            @Override
+            public ChromePackagedAppTokenCache call() throws Exception {
+                final long start = System.nanoTime();
+                try {
+                    final ChromePackagedAppTokenCache accessToken = requestAccessToken(chromePackagedAppVariant);
+                    if (generation.get() == startGeneration) {
+                        accessTokens.put(clientId, accessToken);
+                        // invalidated while putting it?
+                        if (generation.get() != startGeneration) {
+                            accessTokens.remove(clientId, accessToken);
+                        }
+                    }
+                    refreshCount.incrementAndGet();
+                    return accessToken;
+                } catch (Exception e) {
+                    failedRefreshCount.incrementAndGet();
+                    throw e;
+                } finally {
+                    refreshNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        });
+
+        FutureTask<ChromePackagedAppTokenCache> refresh = refreshes.putIfAbsent(clientId, task);
+        if (refresh == null) {
+            refresh = task;
+            try {
+                task.run();
+            } finally {
+                refreshes.remove(clientId, task);
+            }
+        }
+
+        try {
+            return refresh.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            logger.severe("Error during Post execution to GCM for Chrome Network For access token refresh", e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Requests a new access token for the given application from Google.
+     */
+    protected ChromePackagedAppTokenCache requestAccessToken(ChromePackagedAppVariant chromePackagedAppVariant) throws Exception {
+        HttpURLConnection conn = null;
+        try {
+            conn = post(chromePackagedAppVariant);
+            final JSONObject response = (JSONObject) new JSONParser().parse(GCMForChromePushNotificationSender.getString(conn.getInputStream()));
+
+            final ChromePackagedAppTokenCache accessToken = new ChromePackagedAppTokenCache();
+            accessToken.setAccessToken(response.get("access_token").toString());
+            // Convert to millis
+            accessToken.setExpiresIn(System.currentTimeMillis() + Long.parseLong(response.get("expires_in").toString()) * 1000);
+            return accessToken;
+        } finally {
+            // tear down
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    private HttpURLConnection post(ChromePackagedAppVariant chromePackagedAppVariant) throws IOException {
+        String body = "client_secret="+chromePackagedAppVariant.getClientSecret()+"&grant_type=refresh_token&refresh_token="+chromePackagedAppVariant.getRefreshToken()+"&client_id="+chromePackagedAppVariant.getClientId();
+
+        byte[] bytes = body.getBytes(UTF_8);
+        HttpURLConnection conn = (HttpURLConnection) new URL(ACCESS_TOKEN_URL).openConnection();
+        conn.setDoOutput(true);
+        conn.setUseCaches(false);
+        conn.setFixedLengthStreamingMode(bytes.length);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        OutputStream out = null;
+        try {
+            out = conn.getOutputStream();
+            out.write(bytes);
+        } finally {
+            // in case something blows up, while writing
+            // the payload, we wanna close the stream:
+            if (out != null) {
+                out.close();
+            }
+        }
+        return conn;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+/**
+ * Snapshot of the usage of the {@link GCMForChromeAccessTokenCache}.
+ */
+public class GCMForChromeAccessTokenCacheStatistics {
+
+    private final int cachedTokens;
+    private final long hits;
+    private final long misses;
+    private final long refreshes;
+    private final long failedRefreshes;
+    private final long averageRefreshMillis;
+
+    public GCMForChromeAccessTokenCacheStatistics(int cachedTokens, long hits, long misses, long refreshes, long failedRefreshes, long averageRefreshMillis) {
+        this.cachedTokens = cachedTokens;
+        this.hits = hits;
+        this.misses = misses;
+        this.refreshes = refreshes;
+        this.failedRefreshes = failedRefreshes;
+        this.averageRefreshMillis = averageRefreshMillis;
+    }
+
+    public int getCachedTokens() {
+        return cachedTokens;
+    }
+
+    /**
+     * Number of lookups that found a valid token.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of lookups that had to wait for a new token.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getRefreshes() {
+        return refreshes;
+    }
+
+    public long getFailedRefreshes() {
+        return failedRefreshes;
+    }
+
+    /**
+     * Average duration of a token request to Google, in milliseconds.
+     */
+    public long getAverageRefreshMillis() {
+        return averageRefreshMillis;
+    }
+}
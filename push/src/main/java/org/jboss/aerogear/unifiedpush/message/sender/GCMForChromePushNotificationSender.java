@@ -19,12 +19,9 @@ package org.jboss.aerogear.unifiedpush.message.sender;
 import org.jboss.aerogear.unifiedpush.api.ChromePackagedAppVariant;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
-import org.jboss.aerogear.unifiedpush.message.helper.ChromePackagedAppTokenCache;
 import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
+import javax.inject.Inject;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,21 +31,28 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.Collection;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 
 @SenderType(ChromePackagedAppVariant.class)
 public class GCMForChromePushNotificationSender implements PushNotificationSender {
 
     private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final String MESSAGE_URL = "https://www.googleapis.com/gcm_for_chrome/v1/messages";
-    private static final String ACCESS_TOKEN_URL = "https://accounts.google.com/o/oauth2/token";
 
     private final AeroGearLogger logger = AeroGearLogger.getInstance(GCMForChromePushNotificationSender.class);
 
-    // We need a place to hold the current access token/expire time for each GCM for Chrome application. Not good practice to always get a new access token
-    private Map<String, ChromePackagedAppTokenCache> accessTokenMap = new HashMap<String, ChromePackagedAppTokenCache>();
+    /**
+     * Renders the part of the body that follows the channel ID.
+     */
+    private static final UnifiedPushMessage.PayloadRenderer<String> PAYLOAD_SUFFIX = new UnifiedPushMessage.PayloadRenderer<String>() {
+        @Override
+        public String render(UnifiedPushMessage pushMessage) {
+            return "', 'subchannelId': '0', 'payload': '" + pushMessage.getAlert() + "'}";
+        }
+    };
+
+    // Not good practice to always get a new access token, the tokens of all GCM for Chrome applications are shared:
+    @Inject
+    private GCMForChromeAccessTokenCache accessTokenCache;
 
     public void sendPushMessage(Variant variant, Collection<String> tokens, UnifiedPushMessage pushMessage, NotificationSenderCallback callback) {
         // no need to send empty list
@@ -58,28 +62,36 @@ public class GCMForChromePushNotificationSender implements PushNotificationSende
 
         final ChromePackagedAppVariant chromePackagedAppVariant = (ChromePackagedAppVariant) variant;
 
-        String accessToken = fetchAccessToken(chromePackagedAppVariant);
+        final String accessToken = accessTokenCache.getAccessToken(chromePackagedAppVariant);
+        if (accessToken == null) {
+            logger.severe("No access token for GCM for Chrome application '" + chromePackagedAppVariant.getClientId() + "', not sending");
+            callback.onError(tokens.size(), "Could not obtain a GCM/Chrome access token");
+            return;
+        }
+
+        // only the channel differs, the rest of the body is the same for all tokens and variants:
+        final String payloadSuffix = pushMessage.getRenderedPayload(PAYLOAD_SUFFIX);
 
-        // iterate over all the given channelIDs
+        // iterate over all the given channelIDs, each one is reported on its own:
         for (String channelID : tokens) {
 
             HttpURLConnection conn = null;
             try {
                 final String clientURL = MESSAGE_URL;
                 // POST the payload to the GCM For Chrome server
-                conn = post(clientURL, "{'channelId': '" + channelID + "', 'subchannelId': '0', 'payload': '" + pushMessage.getAlert() + "'}", accessToken);
+                conn = post(clientURL, "{'channelId': '" + channelID + payloadSuffix, accessToken);
                 int chromePackagedAppStatusCode = conn.getResponseCode();
 
                 // did we get a 'good' status code?
                 if (chromePackagedAppStatusCode < 400) {
-                    callback.onSuccess();
+                    callback.onSuccess(1);
                 } else {
                     logger.severe("Error during Post execution to GCM for Chrome Network, status code was: " + chromePackagedAppStatusCode);
-                    callback.onError("Error delivering GCM/Chrome payload");
+                    callback.onError(1, "Error delivering GCM/Chrome payload");
                 }
             } catch (IOException e) {
                 logger.severe("Error during Post execution to GCM for Chrome Network", e);
-                callback.onError("Error delivering GCM/Chrome payload");
+                callback.onError(1, "Error delivering GCM/Chrome payload");
             } finally {
                 // tear down
                 if (conn != null ) {
@@ -120,86 +132,6 @@ public class GCMForChromePushNotificationSender implements PushNotificationSende
         return conn;
     }
 
-    protected HttpURLConnection refreshAccessToken( ChromePackagedAppVariant chromePackagedAppVariant ) throws IOException{
-
-        String body = "client_secret="+chromePackagedAppVariant.getClientSecret()+"&grant_type=refresh_token&refresh_token="+chromePackagedAppVariant.getRefreshToken()+"&client_id="+chromePackagedAppVariant.getClientId();
-
-        byte[] bytes = body.getBytes(UTF_8);
-        HttpURLConnection conn = getConnection(ACCESS_TOKEN_URL);
-        conn.setDoOutput(true);
-        conn.setUseCaches(false);
-        conn.setFixedLengthStreamingMode(bytes.length);
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        OutputStream out = null;
-        try {
-            out = conn.getOutputStream();
-            out.write(bytes);
-        } finally {
-            // in case something blows up, while writing
-            // the payload, we wanna close the stream:
-            if (out != null) {
-                out.close();
-            }
-        }
-        return conn;
-    }
-
-    /**
-     *
-     * @param chromePackagedAppVariant
-     * @return a valid access token
-     */
-
-    protected String fetchAccessToken(ChromePackagedAppVariant chromePackagedAppVariant) {
-        HttpURLConnection accessTokenConn = null;
-        JSONParser jsonParser = new JSONParser();
-        ChromePackagedAppTokenCache accessTokenObject = null;
-        String accessToken = null;
-        long expireTime = 0; // in milliseconds
-
-        try {
-            // Not good practice to always get a new access token. so only get one if it is expired or null
-            accessTokenObject = accessTokenMap.get(chromePackagedAppVariant.getClientId());
-
-            if( accessTokenObject != null ) {
-                accessToken = accessTokenObject.getAccessToken();
-                expireTime = accessTokenObject.getExpiresIn();
-            }
-
-            if( accessToken == null || expireTime < new Date().getTime() ) {
-                accessTokenConn = refreshAccessToken(chromePackagedAppVariant);
-                String stringResponse = getString(accessTokenConn.getInputStream());
-                accessToken = ((JSONObject)jsonParser.parse(stringResponse)).get("access_token").toString();
-                String expiresIn = ((JSONObject)jsonParser.parse(stringResponse)).get("expires_in").toString();
-
-                // Convert to millis
-                long ex = Long.parseLong( expiresIn );
-                expireTime = new Date().getTime() + (ex * 1000);
-
-                if( accessTokenObject == null ) {
-                    accessTokenObject = new ChromePackagedAppTokenCache();
-                }
-
-                accessTokenObject.setAccessToken(accessToken);
-                accessTokenObject.setExpiresIn(expireTime);
-
-                accessTokenMap.put(chromePackagedAppVariant.getClientId(),accessTokenObject);
-            }
-        } catch (IOException e) {
-            logger.severe("Error during Post execution to GCM for Chrome Network For access token refresh", e);
-        } catch (ParseException e) {
-            logger.severe("Error during Parse of Response ", e);
-        } finally {
-            // tear down
-            if (accessTokenConn != null ) {
-                accessTokenConn.disconnect();
-            }
-        }
-
-        return accessToken;
-    }
-
     /**
      * Convenience method to open/establish a HttpURLConnection.
      */
@@ -208,6 +140,13 @@ public class GCMForChromePushNotificationSender implements PushNotificationSende
         return conn;
     }
 
+    /**
+     * Hook to manually inject the access token cache.
+     */
+    void setAccessTokenCache(GCMForChromeAccessTokenCache accessTokenCache) {
+        this.accessTokenCache = accessTokenCache;
+    }
+
     /**
      * Convenience method to convert an InputStream to a String.
      *
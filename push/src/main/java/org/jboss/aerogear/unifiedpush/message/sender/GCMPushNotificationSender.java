@@ -25,95 +25,160 @@ import com.google.android.gcm.server.Sender;
 import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.dispatch.DispatchPipeline;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
 import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 @SenderType(AndroidVariant.class)
 public class GCMPushNotificationSender implements PushNotificationSender {
 
     private static final int GCM_PAGE = 1000;
+    private static final int DEFAULT_PAGES_IN_FLIGHT = 4;
+
+    /**
+     * Builds the (immutable) GCM message. Package visible for the benchmarks.
+     */
+    static final UnifiedPushMessage.PayloadRenderer<Message> GCM_MESSAGE = new UnifiedPushMessage.PayloadRenderer<Message>() {
+        @Override
+        public Message render(UnifiedPushMessage pushMessage) {
+            // payload builder:
+            Builder gcmBuilder = new Message.Builder();
+
+            // add the "recognized" keys...
+            gcmBuilder.addData("alert", pushMessage.getAlert());
+            gcmBuilder.addData("sound", pushMessage.getSound());
+            gcmBuilder.addData("badge", "" + pushMessage.getBadge());
+
+            // if present, apply the time-to-live metadata:
+            int ttl = pushMessage.getTimeToLive();
+            if (ttl != -1) {
+                gcmBuilder.timeToLive(ttl);
+            }
+
+            // iterate over the missing keys:
+            Set<String> keys = pushMessage.getData().keySet();
+            for (String key : keys) {
+                // GCM needs stringified values:
+                gcmBuilder.addData(key, "" + pushMessage.getData().get(key));
+            }
+
+            return gcmBuilder.build();
+        }
+    };
 
     @Inject
     private ClientInstallationService clientInstallationService;
 
+    @Inject
+    private DispatchPipeline dispatchPipeline;
+
     private final AeroGearLogger logger = AeroGearLogger.getInstance(GCMPushNotificationSender.class);
 
     /**
      * Sends GCM notifications ({@link UnifiedPushMessage}) to all devices, that are represented by 
      * the {@link List} of tokens for the given {@link AndroidVariant}.
+     *
+     * GCM accepts up to 1000 registration IDs per request, larger batches are split into pages that are sent in
+     * parallel, see {@link #pagesInFlight(AndroidVariant)}. The outcome of every page is reported on its own.
      */
-    public void sendPushMessage(Variant variant, Collection<String> tokens, UnifiedPushMessage pushMessage, NotificationSenderCallback callback) {
+    public void sendPushMessage(Variant variant, Collection<String> tokens, UnifiedPushMessage pushMessage, final NotificationSenderCallback callback) {
 
         // no need to send empty list
         if (tokens.isEmpty()) {
             return;
         }
 
-        final List<String>  registrationIDs = new ArrayList(tokens);
+        final List<String> registrationIDs = (tokens instanceof List) ? (List<String>) tokens : new ArrayList<String>(tokens);
         final AndroidVariant androidVariant = (AndroidVariant) variant;
 
-        // payload builder:
-        Builder gcmBuilder = new Message.Builder();
-
-        // add the "recognized" keys...
-        gcmBuilder.addData("alert", pushMessage.getAlert());
-        gcmBuilder.addData("sound", pushMessage.getSound());
-        gcmBuilder.addData("badge", "" + pushMessage.getBadge());
-
-        // if present, apply the time-to-live metadata:
-        int ttl = pushMessage.getTimeToLive();
-        if (ttl != -1) {
-            gcmBuilder.timeToLive(ttl);
-        }
-
-        // iterate over the missing keys:
-        Set<String> keys = pushMessage.getData().keySet();
-        for (String key : keys) {
-            // GCM needs stringified values:
-            gcmBuilder.addData(key, "" + pushMessage.getData().get(key));
-        }
-
-        Message gcmMessage = gcmBuilder.build();
+        // the message is the same for all Android variants:
+        final Message gcmMessage = pushMessage.getRenderedPayload(GCM_MESSAGE);
 
         // send it out.....
         try {
             logger.fine("Sending transformed GCM payload: " + gcmMessage);
 
-            final Sender sender = new Sender(androidVariant.getGoogleKey());
-
-            // GCM does only allow a 1000 device IDs
-            while (! registrationIDs.isEmpty()) {
-
-                int toIndex = GCM_PAGE;
-
-                if (registrationIDs.size() < GCM_PAGE) {
-                    toIndex = registrationIDs.size();
-                }
-                List<String> sublist = registrationIDs.subList(0, toIndex);
-
-                // send out a message to a few devices...
-                processGCM(androidVariant, sublist, gcmMessage, sender);
-                registrationIDs.removeAll(sublist);
+            final Sender sender = createSender(androidVariant.getGoogleKey());
+
+            // GCM does only allow a 1000 device IDs, the pages are views on the list of all IDs:
+            final List<Callable<Void>> pages = new ArrayList<Callable<Void>>();
+            for (int fromIndex = 0; fromIndex < registrationIDs.size(); fromIndex += GCM_PAGE) {
+                final List<String> page = registrationIDs.subList(fromIndex, Math.min(fromIndex + GCM_PAGE, registrationIDs.size()));
+                pages.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        // send out a message to a few devices...
+                        try {
+                            processGCM(androidVariant, page, gcmMessage, sender);
+                        } catch (Exception e) {
+                            // GCM exceptions:
+                            logger.severe("Error sending payload for [" + page.size() + "] devices to GCM server", e);
+                            callback.onError(page.size(), "Error sending payload to GCM server");
+                            throw e;
+                        }
+                        callback.onSuccess(page.size());
+                        return null;
+                    }
+                });
             }
 
-            logger.info("Message to GCM has been submitted");
-            callback.onSuccess();
+            // the pages are sent in parallel:
+            final List<Exception> failures = dispatchPipeline.invokeAll(pages, pagesInFlight(androidVariant));
+            if (failures.isEmpty()) {
+                logger.info("Message to GCM has been submitted");
+            } else {
+                logger.warning("Message to GCM has been submitted, " + failures.size() + " of " + pages.size() + " pages failed");
+            }
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.onError("Interrupted while sending payload to GCM server");
         } catch (Exception e) {
-            // GCM exceptions:
+            // the pages that have not been sent:
             logger.severe("Error sending payload to GCM server", e);
             callback.onError("Error sending payload to GCM server");
         }
     }
 
+    /**
+     * Creates the GCM sender, posting to a local stand-in instead of GCM if one is configured, see
+     * {@link StandInDestinations}.
+     */
+    private static Sender createSender(String googleKey) {
+        final String endpoint = StandInDestinations.gcmEndpoint();
+        if (endpoint == null) {
+            return new Sender(googleKey);
+        }
+        return new Sender(googleKey) {
+            @Override
+            protected HttpURLConnection getConnection(String url) throws IOException {
+                return super.getConnection(endpoint);
+            }
+        };
+    }
+
+    /**
+     * Number of pages that are sent to GCM at the same time, for the given variant. Configured on the variant, falling
+     * back to the <code>aerogear.gcm.pages-in-flight</code> system property (default 4).
+     */
+    private int pagesInFlight(AndroidVariant androidVariant) {
+        if (androidVariant.getPagesInFlight() != null) {
+            return androidVariant.getPagesInFlight();
+        }
+        return ConfigurationUtils.tryGetIntegerProperty("aerogear.gcm.pages-in-flight", DEFAULT_PAGES_IN_FLIGHT);
+    }
+
     /**
      * Process the HTTP POST to the GCM infrastructor for the given list of registrationIDs.     *
      */
@@ -168,4 +233,18 @@ public class GCMPushNotificationSender implements PushNotificationSender {
         logger.fine("Deleting '" + inactiveTokens.size() + "' invalid Android installations");
         clientInstallationService.removeInstallationsForVariantByDeviceTokens(variantID, inactiveTokens);
     }
+
+    /**
+     * Hook to manually inject the dispatch pipeline, which runs the pages in parallel.
+     */
+    void setDispatchPipeline(DispatchPipeline dispatchPipeline) {
+        this.dispatchPipeline = dispatchPipeline;
+    }
+
+    /**
+     * Hook to manually inject the client installation service.
+     */
+    void setClientInstallationService(ClientInstallationService clientInstallationService) {
+        this.clientInstallationService = clientInstallationService;
+    }
 }
@@ -0,0 +1,105 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects the tokens that a push network reported as expired/inactive, and removes the matching installations in bulk:
+ * every minute, or as soon as <code>aerogear.inactive-tokens.flush-size</code> (default 1000) tokens of a variant
+ * have been collected.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class InactiveTokenCollector {
+
+    private static final int DEFAULT_FLUSH_SIZE = 1000;
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(InactiveTokenCollector.class);
+
+    private final ConcurrentMap<String, Set<String>> inactiveTokensByVariant = new ConcurrentHashMap<String, Set<String>>();
+    private final int flushSize = ConfigurationUtils.tryGetIntegerProperty("aerogear.inactive-tokens.flush-size", DEFAULT_FLUSH_SIZE);
+
+    @Inject
+    private ClientInstallationService clientInstallationService;
+
+    /**
+     * Queues the installations of the given tokens for removal.
+     */
+    public void add(String variantID, Collection<String> inactiveTokens) {
+        if (inactiveTokens.isEmpty()) {
+            return;
+        }
+
+        Set<String> tokens = inactiveTokensByVariant.get(variantID);
+        if (tokens == null) {
+            final Set<String> newTokens = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            tokens = inactiveTokensByVariant.putIfAbsent(variantID, newTokens);
+            if (tokens == null) {
+                tokens = newTokens;
+            }
+        }
+        tokens.addAll(inactiveTokens);
+
+        if (tokens.size() >= flushSize) {
+            flush(variantID);
+        }
+    }
+
+    /**
+     * Removes the installations of all collected tokens.
+     */
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public void flush() {
+        for (String variantID : inactiveTokensByVariant.keySet()) {
+            flush(variantID);
+        }
+    }
+
+    private void flush(String variantID) {
+        final Set<String> tokens = inactiveTokensByVariant.remove(variantID);
+        if (tokens == null || tokens.isEmpty()) {
+            return;
+        }
+
+        // a token added while its set is flushed may be missed, the push network reports it again on the next send
+        final Set<String> tokensToRemove = new HashSet<String>(tokens);
+        logger.info("Deleting '" + tokensToRemove.size() + "' inactive installations of variant '" + variantID + "'");
+        clientInstallationService.removeInstallationsForVariantByDeviceTokens(variantID, tokensToRemove);
+    }
+
+    /**
+     * Hook to manually inject the client installation service.
+     */
+    void setClientInstallationService(ClientInstallationService clientInstallationService) {
+        this.clientInstallationService = clientInstallationService;
+    }
+}
@@ -26,13 +26,28 @@ public interface NotificationSenderCallback {
      * Simple indicator which will be called on a successful to deliver to the push network. However, the invocation of
      * this callback does <b>NOT</b> mean the messages have been sent out to the mobile devices. The invocation simply means
      * the {@link org.jboss.aerogear.unifiedpush.message.sender.PushNotificationSender} was able to send the messages to
-     * the push network for its further processing
+     * the push network for its further processing.
+     *
+     * Covers the whole batch of tokens, or the part of it that has not been reported with a count yet.
      */
     void onSuccess();
 
+    /**
+     * Like {@link #onSuccess()}, for the given number of tokens of the batch. Used by senders that talk to the push
+     * network token by token, or page by page.
+     */
+    void onSuccess(int count);
+
     /**
      * Simple indicator which will be called on any type of error that occurred while sending the payload to the
      * underlying push network.
+     *
+     * Covers the whole batch of tokens, or the part of it that has not been reported with a count yet.
      */
     void onError(String reason);
+
+    /**
+     * Like {@link #onError(String)}, for the given number of tokens of the batch.
+     */
+    void onError(int count, String reason);
 }
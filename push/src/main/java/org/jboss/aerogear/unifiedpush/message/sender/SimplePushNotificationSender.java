@@ -19,26 +19,49 @@ package org.jboss.aerogear.unifiedpush.message.sender;
 import org.jboss.aerogear.unifiedpush.api.SimplePushVariant;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.dispatch.DispatchPipeline;
 import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
 
+import javax.inject.Inject;
 import javax.ws.rs.core.Response.Status;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 @SenderType(SimplePushVariant.class)
 public class SimplePushNotificationSender implements PushNotificationSender {
 
     private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_CONNECTIONS_PER_HOST = 4;
+    private static final int DEFAULT_REQUESTS_IN_FLIGHT = 16;
 
     private final AeroGearLogger logger = AeroGearLogger.getInstance(SimplePushNotificationSender.class);
 
+    @Inject
+    private DispatchPipeline dispatchPipeline;
+
     /**
      * Sends SimplePush notifications to all connected clients, that are represented by
      * the {@link Collection} of channelIDs, for the given SimplePush network.
+     *
+     * The update URLs are grouped by their push server (host), each server is contacted over at most
+     * <code>aerogear.simplepush.connections-per-host</code> (default 4) kept-alive connections at the same time,
+     * and at most <code>aerogear.simplepush.requests-in-flight</code> (default 16) connections are used in total.
+     * A slow push server therefore only holds up its own clients.
+     *
+     * The outcome is reported once for the whole batch: the number of delivered updates, and the number of failed
+     * ones together with the first error.
      */
     public void sendPushMessage(Variant variant, Collection<String> tokens, UnifiedPushMessage pushMessage, NotificationSenderCallback callback) {
 
@@ -47,42 +70,137 @@ public class SimplePushNotificationSender implements PushNotificationSender {
             return;
         }
 
-        String payload = pushMessage.getSimplePush();
+        String simplePushPayload = pushMessage.getSimplePush();
         // if there was no payload provided, but we have clients, we send an empty string
         // the SimplePush Server accepts that and will use the timestamp
-        if (payload == null) {
-            payload = "";
+        if (simplePushPayload == null) {
+            simplePushPayload = "";
         }
+        final String payload = simplePushPayload;
 
-        // iterate over all the given channels, if there are channels:
-        for (String clientURL : tokens) {
+        final int connectionsPerHost = Math.max(1, ConfigurationUtils.tryGetIntegerProperty("aerogear.simplepush.connections-per-host", DEFAULT_CONNECTIONS_PER_HOST));
+        final int requestsInFlight = ConfigurationUtils.tryGetIntegerProperty("aerogear.simplepush.requests-in-flight", DEFAULT_REQUESTS_IN_FLIGHT);
 
-            HttpURLConnection conn = null;
-            try {
-                // PUT the version payload to the SimplePushServer
-                logger.finest("Sending out SimplePush payload: " + payload);
-                conn = put(clientURL, payload);
-                int simplePushStatusCode = conn.getResponseCode();
-                logger.info("SimplePush Status: " + simplePushStatusCode);
-
-                if (Status.OK.getStatusCode() == simplePushStatusCode) {
-                    callback.onSuccess();
-                } else {
-                    logger.severe("Error during PUT execution to SimplePush Network, status code was: " + simplePushStatusCode);
-                    callback.onError("Error delivering the payload. SimplePush Network status code was: " + simplePushStatusCode );
+        // one (sequential) request job per connection, each job only talks to one host:
+        final Outcome outcome = new Outcome();
+        final List<Callable<Void>> requests = new ArrayList<Callable<Void>>();
+        for (List<String> clientURLs : slice(groupByHost(tokens), connectionsPerHost)) {
+            requests.add(new UpdateRequest(clientURLs, payload, outcome));
+        }
+
+        try {
+            final List<Exception> failures = dispatchPipeline.invokeAll(requests, requestsInFlight);
+            if (!failures.isEmpty()) {
+                logger.warning(failures.size() + " of " + requests.size() + " SimplePush request jobs failed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe("Interrupted while sending SimplePush payload", e);
+            outcome.failed(tokens.size() - outcome.reported(), "Error delivering SimplePush payload");
+        }
+
+        outcome.report(callback);
+    }
+
+    /**
+     * PUTs the payload to a single update URL, returns <code>null</code> if it has been delivered, or the reason why not.
+     */
+    private String sendUpdate(String clientURL, String payload) {
+        HttpURLConnection conn = null;
+        try {
+            // PUT the version payload to the SimplePushServer
+            logger.finest("Sending out SimplePush payload: " + payload);
+            conn = put(clientURL, payload);
+            int simplePushStatusCode = conn.getResponseCode();
+            logger.info("SimplePush Status: " + simplePushStatusCode);
+
+            if (Status.OK.getStatusCode() == simplePushStatusCode) {
+                return null;
+            }
+            logger.severe("Error during PUT execution to SimplePush Network, status code was: " + simplePushStatusCode);
+            return "Error delivering the payload. SimplePush Network status code was: " + simplePushStatusCode;
+        } catch (IOException e) {
+            // any error while performing the PUT
+            logger.severe("Error during PUT execution to SimplePush Network", e);
+            return "Error delivering SimplePush payload";
+        } catch (IllegalArgumentException e) {
+            // if, for some reason there is no token/URL on the metadata...
+            logger.severe(e.getMessage(), e);
+            return e.getMessage();
+        } finally {
+            // release the connection for the next request to the same host
+            if (conn != null) {
+                release(conn);
+            }
+        }
+    }
+
+    /**
+     * Groups the update URLs by their push server (protocol, host and port), keeping the given order.
+     * URLs that can not be parsed end up in one group and fail when they are sent.
+     */
+    static Map<String, List<String>> groupByHost(Collection<String> clientURLs) {
+        final Map<String, List<String>> clientURLsByHost = new LinkedHashMap<String, List<String>>();
+        for (String clientURL : clientURLs) {
+            String host = "";
+            if (clientURL != null) {
+                try {
+                    final URL url = new URL(clientURL.trim());
+                    host = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+                } catch (MalformedURLException e) {
+                    // reported once the URL is used
                 }
-            } catch (IOException e) {
-                // any error while performing the PUT
-                logger.severe("Error during PUT execution to SimplePush Network", e);
-                callback.onError("Error delivering SimplePush payload");
-            } catch (IllegalArgumentException e) {
-                // if, for some reason there is no token/URL on the metadata...
-                logger.severe(e.getMessage(), e);
-                callback.onError(e.getMessage());
-            } finally {
-                // tear down
-                if (conn != null) {
-                    conn.disconnect();
+            }
+
+            List<String> clientURLsOfHost = clientURLsByHost.get(host);
+            if (clientURLsOfHost == null) {
+                clientURLsOfHost = new ArrayList<String>();
+                clientURLsByHost.put(host, clientURLsOfHost);
+            }
+            clientURLsOfHost.add(clientURL);
+        }
+        return clientURLsByHost;
+    }
+
+    /**
+     * Splits the update URLs of every host into at most the given number of slices of about the same size, one per
+     * connection. A slice only contains the URLs of one host.
+     */
+    static List<List<String>> slice(Map<String, List<String>> clientURLsByHost, int connectionsPerHost) {
+        final List<List<String>> slices = new ArrayList<List<String>>();
+        for (List<String> clientURLsOfHost : clientURLsByHost.values()) {
+            final int sliceSize = (clientURLsOfHost.size() + connectionsPerHost - 1) / connectionsPerHost;
+            for (int fromIndex = 0; fromIndex < clientURLsOfHost.size(); fromIndex += sliceSize) {
+                slices.add(clientURLsOfHost.subList(fromIndex, Math.min(fromIndex + sliceSize, clientURLsOfHost.size())));
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * Reads the (small) response to its end and closes it. Unlike <code>disconnect()</code>, this keeps the
+     * underlying connection open, and the JDK reuses it for the next request to the same host.
+     */
+    private void release(HttpURLConnection conn) {
+        InputStream in = null;
+        try {
+            in = conn.getErrorStream();
+            if (in == null) {
+                in = conn.getInputStream();
+            }
+            final byte[] buffer = new byte[512];
+            while (in.read(buffer) != -1) {
+                // drain
+            }
+        } catch (IOException e) {
+            // the connection can not be reused
+            conn.disconnect();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
                 }
             }
         }
@@ -128,4 +246,84 @@ public class SimplePushNotificationSender implements PushNotificationSender {
         HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
         return conn;
     }
+
+    /**
+     * Hook to manually inject the dispatch pipeline.
+     */
+    void setDispatchPipeline(DispatchPipeline dispatchPipeline) {
+        this.dispatchPipeline = dispatchPipeline;
+    }
+
+    /**
+     * Sends the payload to the update URLs of one slice, one after the other. If the job breaks off, the URLs it did
+     * not get to are counted as failed.
+     */
+    private class UpdateRequest implements Callable<Void> {
+        private final List<String> clientURLs;
+        private final String payload;
+        private final Outcome outcome;
+
+        UpdateRequest(List<String> clientURLs, String payload, Outcome outcome) {
+            this.clientURLs = clientURLs;
+            this.payload = payload;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public Void call() {
+            int sent = 0;
+            try {
+                for (String clientURL : clientURLs) {
+                    final String reason = sendUpdate(clientURL, payload);
+                    sent++;
+                    if (reason == null) {
+                        outcome.delivered();
+                    } else {
+                        outcome.failed(1, reason);
+                    }
+                }
+            } catch (RuntimeException e) {
+                outcome.failed(clientURLs.size() - sent, "Error delivering SimplePush payload");
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Collects the outcome of the updates of one batch, so that it is reported to the callback once.
+     */
+    private static class Outcome {
+        private int delivered;
+        private int failed;
+        private String reason;
+
+        synchronized void delivered() {
+            delivered++;
+        }
+
+        synchronized void failed(int count, String reason) {
+            if (count <= 0) {
+                return;
+            }
+            failed += count;
+            // the first error is the one reported:
+            if (this.reason == null) {
+                this.reason = reason;
+            }
+        }
+
+        synchronized int reported() {
+            return delivered + failed;
+        }
+
+        synchronized void report(NotificationSenderCallback callback) {
+            if (delivered > 0) {
+                callback.onSuccess(delivered);
+            }
+            if (failed > 0) {
+                callback.onError(failed, reason);
+            }
+        }
+    }
 }
@@ -0,0 +1,111 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+
+/**
+ * Local stand-ins for APNs and GCM, e.g. those of the load test module, configured with system properties:
+ * <ul>
+ *     <li><code>aerogear.apns.gateway</code>, <code>aerogear.apns.feedback</code>: <code>host:port</code> of the
+ *     APNs gateway and feedback service</li>
+ *     <li><code>aerogear.gcm.endpoint</code>: URL the GCM messages are posted to</li>
+ * </ul>
+ *
+ * Only destinations on the loopback interface are accepted, anything else is ignored and logged: the push messages
+ * and the credentials of the variants never leave the machine because of these properties.
+ */
+final class StandInDestinations {
+
+    static final String APNS_GATEWAY = "aerogear.apns.gateway";
+    static final String APNS_FEEDBACK = "aerogear.apns.feedback";
+    static final String GCM_ENDPOINT = "aerogear.gcm.endpoint";
+
+    private static final AeroGearLogger logger = AeroGearLogger.getInstance(StandInDestinations.class);
+
+    private StandInDestinations() {
+    }
+
+    /**
+     * The stand-in for the APNs gateway, <code>null</code> if none (or no valid one) is configured.
+     */
+    static InetSocketAddress apnsGateway() {
+        return hostAndPort(APNS_GATEWAY);
+    }
+
+    /**
+     * The stand-in for the APNs feedback service, <code>null</code> if none (or no valid one) is configured.
+     */
+    static InetSocketAddress apnsFeedback() {
+        return hostAndPort(APNS_FEEDBACK);
+    }
+
+    /**
+     * The stand-in for the GCM endpoint, <code>null</code> if none (or no valid one) is configured.
+     */
+    static String gcmEndpoint() {
+        final String endpoint = ConfigurationUtils.tryGetProperty(GCM_ENDPOINT, null);
+        if (endpoint == null) {
+            return null;
+        }
+        try {
+            if (isLoopback(new URL(endpoint).getHost())) {
+                return endpoint;
+            }
+        } catch (MalformedURLException e) {
+            // rejected below
+        }
+        logger.severe("Ignoring '" + GCM_ENDPOINT + "', only URLs on the loopback interface are accepted: " + endpoint);
+        return null;
+    }
+
+    private static InetSocketAddress hostAndPort(String key) {
+        final String destination = ConfigurationUtils.tryGetProperty(key, null);
+        if (destination == null) {
+            return null;
+        }
+        final int separator = destination.lastIndexOf(':');
+        if (separator > 0) {
+            final String host = destination.substring(0, separator);
+            try {
+                final int port = Integer.parseInt(destination.substring(separator + 1));
+                if (port > 0 && port < 65536 && isLoopback(host)) {
+                    return InetSocketAddress.createUnresolved(host, port);
+                }
+            } catch (NumberFormatException e) {
+                // rejected below
+            }
+        }
+        logger.severe("Ignoring '" + key + "', only host:port on the loopback interface is accepted: " + destination);
+        return null;
+    }
+
+    private static boolean isLoopback(String host) {
+        try {
+            return !host.isEmpty() && InetAddress.getByName(host).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
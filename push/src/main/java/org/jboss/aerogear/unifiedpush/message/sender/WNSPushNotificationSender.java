@@ -17,62 +17,118 @@
 package org.jboss.aerogear.unifiedpush.message.sender;
 
 import ar.com.fernandospr.wns.WnsService;
-import ar.com.fernandospr.wns.exceptions.WnsException;
 import ar.com.fernandospr.wns.model.WnsNotificationResponse;
 import ar.com.fernandospr.wns.model.WnsToast;
 import ar.com.fernandospr.wns.model.builders.WnsToastBuilder;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.api.WindowsVariant;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
-import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.message.dispatch.DispatchPipeline;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletResponse;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @SenderType(WindowsVariant.class)
 public class WNSPushNotificationSender implements PushNotificationSender {
 
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_BATCHES_IN_FLIGHT = 4;
+
+    /**
+     * Simple initial version just sends a toast message.
+     */
+    private static final UnifiedPushMessage.PayloadRenderer<WnsToast> WNS_TOAST = new UnifiedPushMessage.PayloadRenderer<WnsToast>() {
+        @Override
+        public WnsToast render(UnifiedPushMessage pushMessage) {
+            return new WnsToastBuilder().bindingTemplateToastText01(pushMessage.getAlert()).build();
+        }
+    };
+
     private final Logger logger = Logger.getLogger(WNSPushNotificationSender.class.getName());
 
     @Inject
-    private ClientInstallationService clientInstallationService;
+    private WnsServiceCache wnsServiceCache;
+
+    @Inject
+    private InactiveTokenCollector inactiveTokenCollector;
 
+    @Inject
+    private DispatchPipeline dispatchPipeline;
+
+    /**
+     * Sends the toast to the channel URIs in batches of <code>aerogear.wns.batch-size</code> (default 100), with up to
+     * <code>aerogear.wns.batches-in-flight</code> (default 4) batches at the same time.
+     */
     @Override
-    public void sendPushMessage(Variant variant, Collection<String> clientIdentifiers, UnifiedPushMessage pushMessage, NotificationSenderCallback senderCallback) {
+    public void sendPushMessage(Variant variant, Collection<String> clientIdentifiers, UnifiedPushMessage pushMessage, final NotificationSenderCallback senderCallback) {
         // no need to send empty list
         if (clientIdentifiers.isEmpty()) {
             return;
         }
 
         final WindowsVariant windowsVariant = (WindowsVariant) variant;
-        WnsService wnsService = new WnsService(windowsVariant.getSid(), windowsVariant.getClientSecret(), true);
+        final WnsService wnsService = wnsServiceCache.getWnsService(windowsVariant);
 
-        //simple initial version just send toast message
-        WnsToast toast =  new WnsToastBuilder().bindingTemplateToastText01(pushMessage.getAlert()).build();
-        try {
-            Set<String> expiredClientIdentifiers = new HashSet<String>(clientIdentifiers.size());
-            final List<WnsNotificationResponse> responses = wnsService.pushToast(new ArrayList<String>(clientIdentifiers), toast);
-            for (WnsNotificationResponse response : responses) {
-                if (response.code == HttpServletResponse.SC_GONE) {
-                    expiredClientIdentifiers.add(response.channelUri);
+        // the toast is the same for all Windows variants:
+        final WnsToast toast = pushMessage.getRenderedPayload(WNS_TOAST);
+
+        final List<String> channelUris = new ArrayList<String>(clientIdentifiers);
+        final int batchSize = Math.max(1, ConfigurationUtils.tryGetIntegerProperty("aerogear.wns.batch-size", DEFAULT_BATCH_SIZE));
+        final Set<String> expiredClientIdentifiers = Collections.synchronizedSet(new HashSet<String>());
+
+        final List<Callable<Void>> batches = new ArrayList<Callable<Void>>();
+        for (int fromIndex = 0; fromIndex < channelUris.size(); fromIndex += batchSize) {
+            final List<String> batch = channelUris.subList(fromIndex, Math.min(fromIndex + batchSize, channelUris.size()));
+            batches.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    // each batch reports its own outcome, a failed batch does not affect the others:
+                    final List<WnsNotificationResponse> responses;
+                    try {
+                        responses = wnsService.pushToast(batch, toast);
+                    } catch (Exception e) {
+                        senderCallback.onError(batch.size(), "Error sending payload to WNS");
+                        throw e;
+                    }
+                    for (WnsNotificationResponse response : responses) {
+                        if (response.code == HttpServletResponse.SC_GONE) {
+                            expiredClientIdentifiers.add(response.channelUri);
+                        }
+                    }
+                    senderCallback.onSuccess(batch.size());
+                    return null;
                 }
-            }
+            });
+        }
+
+        try {
+            final List<Exception> failures = dispatchPipeline.invokeAll(batches,
+                    ConfigurationUtils.tryGetIntegerProperty("aerogear.wns.batches-in-flight", DEFAULT_BATCHES_IN_FLIGHT));
+
+            // the expired channels are removed in bulk, together with the ones of other sends:
             if (!expiredClientIdentifiers.isEmpty()) {
-                logger.log(Level.INFO, String.format("Deleting '%d' expired WNS installations", expiredClientIdentifiers.size()));
-                clientInstallationService.removeInstallationsForVariantByDeviceTokens(variant.getVariantID(), expiredClientIdentifiers);
+                logger.log(Level.INFO, String.format("Collected '%d' expired WNS installations for deletion", expiredClientIdentifiers.size()));
+                inactiveTokenCollector.add(variant.getVariantID(), expiredClientIdentifiers);
             }
-        } catch (WnsException exception) {
-            senderCallback.onError(exception.getMessage());
-        }
 
-        logger.log(Level.INFO, "Message to WNS has been submitted");
-        senderCallback.onSuccess();
+            if (failures.isEmpty()) {
+                logger.log(Level.INFO, "Message to WNS has been submitted");
+            } else {
+                logger.log(Level.SEVERE, "Error sending payload to WNS, " + failures.size() + " of " + batches.size() + " batches failed", failures.get(0));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            senderCallback.onError("Interrupted while sending payload to WNS");
+        }
     }
 }
@@ -0,0 +1,128 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import ar.com.fernandospr.wns.WnsService;
+import org.jboss.aerogear.unifiedpush.api.WindowsVariant;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one {@link WnsService} per Windows application (SID and client secret), so that the OAuth access token
+ * of the application is reused, instead of authenticating against WNS for every push message.
+ *
+ * Services that have not been used for <code>aerogear.wns.idle-timeout</code> seconds (default 600) are removed.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class WnsServiceCache {
+
+    private static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 600;
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(WnsServiceCache.class);
+
+    private final ConcurrentMap<String, CachedWnsService> services = new ConcurrentHashMap<String, CachedWnsService>();
+    private final long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(
+            ConfigurationUtils.tryGetLongProperty("aerogear.wns.idle-timeout", DEFAULT_IDLE_TIMEOUT_SECONDS));
+
+    /**
+     * Returns the (authenticated) service for the SID and client secret of the given variant.
+     */
+    public WnsService getWnsService(WindowsVariant windowsVariant) {
+        final String key = windowsVariant.getSid() + ':' + windowsVariant.getClientSecret();
+
+        CachedWnsService cached = services.get(key);
+        if (cached == null) {
+            // creating the service authenticates against WNS, do it once:
+            synchronized (this) {
+                cached = services.get(key);
+                if (cached == null) {
+                    cached = new CachedWnsService(createWnsService(windowsVariant));
+                    services.put(key, cached);
+                }
+            }
+        }
+
+        cached.touch();
+        return cached.service;
+    }
+
+    /**
+     * Removes the services of the given SID, e.g. after the client secret has been changed.
+     */
+    public void invalidate(String sid) {
+        final String prefix = sid + ':';
+        for (String key : services.keySet()) {
+            if (key.startsWith(prefix)) {
+                services.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes the services that have not been used within the idle timeout.
+     */
+    @Schedule(hour = "*", minute = "*/5", persistent = false)
+    public void evictIdleServices() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<String, CachedWnsService>> iterator = services.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue().lastUsed > idleTimeoutMillis) {
+                logger.fine("Removing idle WNS service");
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of cached services.
+     */
+    public int size() {
+        return services.size();
+    }
+
+    /**
+     * Creates the service for the SID and client secret of the given variant.
+     */
+    protected WnsService createWnsService(WindowsVariant windowsVariant) {
+        return new WnsService(windowsVariant.getSid(), windowsVariant.getClientSecret(), true);
+    }
+
+    private static class CachedWnsService {
+        private final WnsService service;
+        private volatile long lastUsed;
+
+        CachedWnsService(WnsService service) {
+            this.service = service;
+            touch();
+        }
+
+        void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -485,11 +485,11 @@ public class UnifiedPushMessageTest {
 
         //then
         assertEquals("{" +
-                "\"ipAddress\":\"null\"," +
-                "\"clientIdentifier\":\"null\"," +
-                "\"simplePush\":\"null\"," +
+                "\"ipAddress\":null," +
+                "\"clientIdentifier\":null," +
+                "\"simplePush\":null," +
                 "\"alert\":\"Howdy\"," +
-                "\"action-category\":\"null\"," +
+                "\"action-category\":null," +
                 "\"sound\":\"default\"," +
                 "\"contentAvailable\":false," +
                 "\"badge\":2," +
@@ -499,4 +499,120 @@ public class UnifiedPushMessageTest {
                 "}" +
                 "}", json);
     }
+
+    @Test
+    public void testNestedAndEscapedDataToJson() {
+        //given
+        final Map<String, Object> container = new LinkedHashMap<String, Object>();
+        final Map<String, Object> messageObject = new LinkedHashMap<String, Object>();
+        final Map<String, Object> nested = new LinkedHashMap<String, Object>();
+        nested.put("count", 3);
+        nested.put("tags", Arrays.asList("a", "b"));
+
+        messageObject.put("alert", "Say \"hi\"\n\\o/");
+        messageObject.put("nested", nested);
+        messageObject.put("flag", true);
+        messageObject.put("nothing", null);
+
+        container.put("message", messageObject);
+        final UnifiedPushMessage unifiedPushMessage = new UnifiedPushMessage(container);
+
+        //when
+        String json = unifiedPushMessage.toJsonString();
+
+        //then
+        assertEquals("{" +
+                "\"ipAddress\":null," +
+                "\"clientIdentifier\":null," +
+                "\"simplePush\":null," +
+                "\"alert\":\"Say \\\"hi\\\"\\n\\\\o/\"," +
+                "\"action-category\":null," +
+                "\"sound\":null," +
+                "\"contentAvailable\":false," +
+                "\"badge\":-1," +
+                "\"timeToLive\":-1," +
+                "\"data\":{" +
+                "\"nested\":{\"count\":3,\"tags\":[\"a\",\"b\"]}," +
+                "\"flag\":true," +
+                "\"nothing\":null" +
+                "}" +
+                "}", json);
+    }
+
+    @Test
+    public void testShortenedJson() {
+        //given
+        final Map<String, Object> container = new LinkedHashMap<String, Object>();
+        final Map<String, Object> messageObject = new LinkedHashMap<String, Object>();
+        final StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longValue.append("long");
+        }
+
+        messageObject.put("alert", longValue.toString());
+        messageObject.put("someKey", longValue.toString());
+
+        container.put("message", messageObject);
+        final UnifiedPushMessage unifiedPushMessage = new UnifiedPushMessage(container);
+
+        //when
+        final String json = unifiedPushMessage.toJsonString(4500);
+
+        //then
+        final String shortened = longValue.substring(0, 64);
+        assertEquals("{" +
+                "\"ipAddress\":null," +
+                "\"clientIdentifier\":null," +
+                "\"simplePush\":null," +
+                "\"alert\":\"" + shortened + "\"," +
+                "\"action-category\":null," +
+                "\"sound\":null," +
+                "\"contentAvailable\":false," +
+                "\"badge\":-1," +
+                "\"timeToLive\":-1," +
+                "\"data\":{" +
+                "\"someKey\":\"" + shortened + "\"" +
+                "}," +
+                "\"truncated\":true" +
+                "}", json);
+        assertEquals(json, unifiedPushMessage.toJsonString(json.length()));
+    }
+
+    @Test
+    public void testPayloadIsRenderedOnce() {
+        //given
+        final Map<String, Object> container = new LinkedHashMap<String, Object>();
+        final Map<String, Object> messageObject = new LinkedHashMap<String, Object>();
+        messageObject.put("alert", "Howdy");
+        container.put("message", messageObject);
+        final UnifiedPushMessage unifiedPushMessage = new UnifiedPushMessage(container);
+
+        final int[] renderings = new int[2];
+        final UnifiedPushMessage.PayloadRenderer<String> alertRenderer = new UnifiedPushMessage.PayloadRenderer<String>() {
+            @Override
+            public String render(UnifiedPushMessage message) {
+                renderings[0]++;
+                return message.getAlert().toUpperCase();
+            }
+        };
+        final UnifiedPushMessage.PayloadRenderer<String> nullRenderer = new UnifiedPushMessage.PayloadRenderer<String>() {
+            @Override
+            public String render(UnifiedPushMessage message) {
+                renderings[1]++;
+                return null;
+            }
+        };
+
+        //when
+        final String first = unifiedPushMessage.getRenderedPayload(alertRenderer);
+        final String second = unifiedPushMessage.getRenderedPayload(alertRenderer);
+        unifiedPushMessage.getRenderedPayload(nullRenderer);
+
+        //then
+        assertEquals("HOWDY", first);
+        assertSame(first, second);
+        assertEquals(1, renderings[0]);
+        assertNull(unifiedPushMessage.getRenderedPayload(nullRenderer));
+        assertEquals(1, renderings[1]);
+    }
 }
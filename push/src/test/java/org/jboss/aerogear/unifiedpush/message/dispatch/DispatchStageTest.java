@@ -0,0 +1,182 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.dispatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DispatchStageTest {
+
+    private final CountDownLatch blocker = new CountDownLatch(1);
+    private final AtomicInteger processed = new AtomicInteger();
+
+    private DispatchStage stage;
+
+    @Before
+    public void setUp() {
+        // one worker and room for two more jobs:
+        stage = new DispatchStage("test", 1, 2);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        blocker.countDown();
+        stage.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void rejectsJobsOnceTheQueueIsFull() {
+        assertThat(stage.submit(blockingJob())).isTrue();
+        assertThat(stage.submit(countingJob())).isTrue();
+        assertThat(stage.submit(countingJob())).isTrue();
+
+        assertThat(stage.submit(countingJob())).isFalse();
+        assertThat(stage.getRejectedJobs()).isEqualTo(1);
+    }
+
+    @Test
+    public void acceptsJobsAgainOnceTheWorkerIsDone() throws InterruptedException {
+        fillStage();
+
+        blocker.countDown();
+        assertThat(stage.submit(countingJob(), 5, TimeUnit.SECONDS)).isTrue();
+        assertThat(stage.shutdown(5, TimeUnit.SECONDS)).isZero();
+        assertThat(processed.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void waitsForFreeSpace() throws InterruptedException {
+        fillStage();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                blocker.countDown();
+            }
+        }).start();
+
+        final long start = System.nanoTime();
+        assertThat(stage.submit(countingJob(), 5, TimeUnit.SECONDS)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100);
+        assertThat(stage.getRejectedJobs()).isZero();
+    }
+
+    @Test
+    public void givesUpAfterTheTimeout() throws InterruptedException {
+        fillStage();
+
+        final long start = System.nanoTime();
+        assertThat(stage.submit(countingJob(), 200, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(150);
+        assertThat(stage.getRejectedJobs()).isEqualTo(1);
+        assertThat(stage.getQueueDepth()).isEqualTo(2);
+    }
+
+    @Test
+    public void drainsTheQueueOnShutdown() throws InterruptedException {
+        fillStage();
+        blocker.countDown();
+
+        assertThat(stage.shutdown(5, TimeUnit.SECONDS)).isZero();
+        assertThat(processed.get()).isEqualTo(2);
+
+        // no new jobs after the shutdown:
+        assertThat(stage.submit(countingJob())).isFalse();
+        assertThat(stage.submit(countingJob(), 100, TimeUnit.MILLISECONDS)).isFalse();
+    }
+
+    @Test
+    public void dropsTheQueuedJobsWhenTheShutdownTimesOut() throws InterruptedException {
+        fillStage();
+
+        assertThat(stage.shutdown(100, TimeUnit.MILLISECONDS)).isEqualTo(2);
+        assertThat(processed.get()).isZero();
+    }
+
+    @Test
+    public void usesTheGivenThreadFactory() throws InterruptedException {
+        final AtomicInteger created = new AtomicInteger();
+        final DispatchStage managedStage = new DispatchStage("managed", 2, 2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                created.incrementAndGet();
+                return new Thread(runnable);
+            }
+        });
+        final CountDownLatch done = new CountDownLatch(2);
+        final String[] threadNames = new String[2];
+        for (int i = 0; i < 2; i++) {
+            final int index = i;
+            managedStage.submit(new Runnable() {
+                @Override
+                public void run() {
+                    threadNames[index] = Thread.currentThread().getName();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(managedStage.shutdown(5, TimeUnit.SECONDS)).isZero();
+        assertThat(created.get()).isGreaterThan(0);
+        assertThat(threadNames[0]).startsWith("ups-dispatch-managed-");
+    }
+
+    /**
+     * Occupies the worker with a blocking job, and fills the queue with two counting jobs.
+     */
+    private void fillStage() {
+        assertThat(stage.submit(blockingJob())).isTrue();
+        assertThat(stage.submit(countingJob())).isTrue();
+        assertThat(stage.submit(countingJob())).isTrue();
+    }
+
+    private Runnable blockingJob() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private Runnable countingJob() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                processed.incrementAndGet();
+            }
+        };
+    }
+}
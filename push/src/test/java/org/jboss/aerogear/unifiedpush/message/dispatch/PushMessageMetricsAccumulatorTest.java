@@ -0,0 +1,119 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.dispatch;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.VariantMetricInformation;
+import org.jboss.aerogear.unifiedpush.service.metrics.PushMessageMetricsService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.ejb.SessionContext;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PushMessageMetricsAccumulatorTest {
+
+    private PushMessageMetricsAccumulator accumulator;
+    private PushMessageMetricsService metricsService;
+    private AndroidVariant variant;
+    private PushMessageInformation pushMessageInformation;
+
+    @Before
+    public void setUp() {
+        accumulator = new PushMessageMetricsAccumulator();
+        metricsService = mock(PushMessageMetricsService.class);
+        final SessionContext context = mock(SessionContext.class);
+        when(context.getBusinessObject(PushMessageMetricsAccumulator.class)).thenReturn(accumulator);
+        accumulator.setContext(context);
+        accumulator.setMetricsService(metricsService);
+
+        variant = new AndroidVariant();
+        variant.setVariantID("variant");
+        pushMessageInformation = new PushMessageInformation();
+        pushMessageInformation.setId("push-message");
+    }
+
+    @Test
+    public void perTokenSenderCountsEveryTokenOnce() {
+        final NotificationDispatcher.SenderServiceCallback callback = new NotificationDispatcher.SenderServiceCallback(accumulator, variant, 1000, pushMessageInformation);
+
+        // a sender that reports every token of the batch on its own:
+        for (int i = 0; i < 998; i++) {
+            callback.onSuccess(1);
+        }
+        callback.onError(1, "Error delivering payload");
+        callback.onError(1, "Error delivering payload");
+        // nothing of the batch is left:
+        callback.onSuccess();
+        callback.onSuccess(1);
+
+        final Map<Boolean, Long> receivers = flush();
+        assertThat(receivers.get(Boolean.TRUE)).isEqualTo(998);
+        assertThat(receivers.get(Boolean.FALSE)).isEqualTo(2);
+    }
+
+    @Test
+    public void batchOutcomeCoversTheTokensNotReportedYet() {
+        final NotificationDispatcher.SenderServiceCallback callback = new NotificationDispatcher.SenderServiceCallback(accumulator, variant, 1000, pushMessageInformation);
+
+        callback.onSuccess(3);
+        callback.onError("Interrupted");
+
+        final Map<Boolean, Long> receivers = flush();
+        assertThat(receivers.get(Boolean.TRUE)).isEqualTo(3);
+        assertThat(receivers.get(Boolean.FALSE)).isEqualTo(997);
+    }
+
+    @Test
+    public void batchesOfOneMessageAreSummedUp() {
+        new NotificationDispatcher.SenderServiceCallback(accumulator, variant, 1000, pushMessageInformation).onSuccess();
+        new NotificationDispatcher.SenderServiceCallback(accumulator, variant, 500, pushMessageInformation).onSuccess(500);
+
+        final Map<Boolean, Long> receivers = flush();
+        assertThat(receivers.get(Boolean.TRUE)).isEqualTo(1500);
+        assertThat(receivers).doesNotContainKey(Boolean.FALSE);
+    }
+
+    /**
+     * Writes the pending metrics, and returns the stored receivers per delivery status.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Boolean, Long> flush() {
+        accumulator.flushOnShutdown();
+        assertThat(accumulator.getPendingCount()).isZero();
+
+        final ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(metricsService).addVariantInformations(eq("push-message"), captor.capture());
+
+        final Map<Boolean, Long> receivers = new HashMap<Boolean, Long>();
+        for (VariantMetricInformation variantInformation : (Collection<VariantMetricInformation>) captor.getValue()) {
+            assertThat(variantInformation.getVariantID()).isEqualTo("variant");
+            receivers.put(variantInformation.getDeliveryStatus(), variantInformation.getReceivers());
+        }
+        return receivers;
+    }
+}
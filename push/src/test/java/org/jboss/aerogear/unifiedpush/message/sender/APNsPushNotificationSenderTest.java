@@ -17,16 +17,28 @@
 package org.jboss.aerogear.unifiedpush.message.sender;
 
 
+import com.notnoop.apns.ApnsDelegate;
+import com.notnoop.apns.ApnsService;
 import org.jboss.aerogear.unifiedpush.api.iOSVariant;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,17 +47,55 @@ public class APNsPushNotificationSenderTest {
     @Test
     public void callbackOnError() throws Exception {
         final APNsPushNotificationSender sender = new APNsPushNotificationSender();
+        sender.setApnsServiceCache(new ApnsServiceCache());
         final NotificationSenderCallback callback = mock(NotificationSenderCallback.class);
         
         final iOSVariant iosVariant = mock(iOSVariant.class);
         when(iosVariant.getCertificate()).thenReturn(readCertificate());
         when(iosVariant.getPassphrase()).thenReturn("123456");
+        when(iosVariant.getVariantID()).thenReturn("ios-variant");
         
         sender.sendPushMessage(iosVariant, Arrays.asList("token"), mock(UnifiedPushMessage.class), callback);
         
         verify(callback).onError("Error sending payload to APNs server: Invalid hex character: t");
     }
 
+    @Test
+    public void callbackPerToken() throws Exception {
+        final APNsPushNotificationSender sender = new APNsPushNotificationSender();
+        final ApnsServiceCache apnsServiceCache = mock(ApnsServiceCache.class);
+        sender.setApnsServiceCache(apnsServiceCache);
+        final NotificationSenderCallback callback = mock(NotificationSenderCallback.class);
+
+        final iOSVariant iosVariant = mock(iOSVariant.class);
+        final UnifiedPushMessage pushMessage = mock(UnifiedPushMessage.class);
+        when(pushMessage.getRenderedPayload(APNsPushNotificationSender.APNS_PAYLOAD)).thenReturn("{\"aps\":{}}");
+
+        // like the APNs library, the service notifies the delegate once per token:
+        final ApnsService service = mock(ApnsService.class);
+        when(apnsServiceCache.getApnsService(any(iOSVariant.class), any(ApnsDelegate.class))).thenAnswer(new Answer<ApnsService>() {
+            @Override
+            public ApnsService answer(InvocationOnMock invocation) {
+                final ApnsDelegate delegate = (ApnsDelegate) invocation.getArguments()[1];
+                doAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) {
+                        for (Object token : (Collection<?>) invocation.getArguments()[0]) {
+                            delegate.messageSent(null, false);
+                        }
+                        return null;
+                    }
+                }).when(service).push(anyCollectionOf(String.class), anyString(), any(Date.class));
+                return service;
+            }
+        });
+
+        sender.sendPushMessage(iosVariant, Arrays.asList("token1", "token2", "token3"), pushMessage, callback);
+
+        verify(callback, times(3)).onSuccess(1);
+        verify(callback, never()).onSuccess();
+    }
+
     /**
      * The store read by this method was copied from
      * https://github.com/notnoop/java-apns/tree/master/src/test/resources
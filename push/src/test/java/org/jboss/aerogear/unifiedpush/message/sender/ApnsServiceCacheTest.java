@@ -0,0 +1,142 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import com.notnoop.apns.ApnsDelegateAdapter;
+import com.notnoop.apns.ApnsService;
+import org.jboss.aerogear.unifiedpush.api.iOSVariant;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ApnsServiceCacheTest {
+
+    private ApnsServiceCache cache;
+    private iOSVariant variant;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ApnsServiceCache();
+
+        variant = new iOSVariant();
+        variant.setCertificate(readCertificate());
+        variant.setPassphrase("123456");
+    }
+
+    @After
+    public void tearDown() {
+        cache.stopAll();
+        System.clearProperty("aerogear.apns.retire-grace-period");
+    }
+
+    @Test
+    public void reuseServiceOfVariant() {
+        final ApnsService service = cache.getApnsService(variant, new ApnsDelegateAdapter());
+
+        assertThat(service).isNotNull();
+        assertThat(cache.getApnsService(variant, new ApnsDelegateAdapter())).isSameAs(service);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void newServiceForChangedVariant() {
+        final ApnsService service = cache.getApnsService(variant, new ApnsDelegateAdapter());
+
+        variant.setProduction(true);
+
+        assertThat(cache.getApnsService(variant, new ApnsDelegateAdapter())).isNotSameAs(service);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void reuseServiceOfReloadedVariant() {
+        final ApnsService service = cache.getApnsService(variant, new ApnsDelegateAdapter());
+
+        // same values, but a different certificate array:
+        variant.setCertificate(variant.getCertificate().clone());
+
+        assertThat(cache.getApnsService(variant, new ApnsDelegateAdapter())).isSameAs(service);
+    }
+
+    @Test
+    public void replacedServiceIsNotStoppedRightAway() {
+        cache.getApnsService(variant, new ApnsDelegateAdapter());
+
+        variant.setProduction(true);
+        cache.getApnsService(variant, new ApnsDelegateAdapter());
+        assertThat(cache.retiredSize()).isEqualTo(1);
+
+        // still within the grace period:
+        cache.evictIdleServices();
+        assertThat(cache.retiredSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void retiredServiceIsStoppedAfterGracePeriod() {
+        System.setProperty("aerogear.apns.retire-grace-period", "0");
+        cache = new ApnsServiceCache();
+        cache.getApnsService(variant, new ApnsDelegateAdapter());
+
+        cache.invalidate(variant.getVariantID());
+        assertThat(cache.retiredSize()).isEqualTo(1);
+
+        cache.evictIdleServices();
+        assertThat(cache.retiredSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void newServiceAfterInvalidate() {
+        final ApnsService service = cache.getApnsService(variant, new ApnsDelegateAdapter());
+
+        cache.invalidate(variant.getVariantID());
+        assertThat(cache.size()).isEqualTo(0);
+
+        assertThat(cache.getApnsService(variant, new ApnsDelegateAdapter())).isNotSameAs(service);
+    }
+
+    @Test
+    public void noServiceForInvalidCertificate() {
+        variant.setCertificate("not a certificate".getBytes());
+
+        assertThat(cache.getApnsService(variant, new ApnsDelegateAdapter())).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    /**
+     * The store read by this method was copied from
+     * https://github.com/notnoop/java-apns/tree/master/src/test/resources
+     */
+    private static byte[] readCertificate() throws Exception {
+        return asByteArray(ApnsServiceCacheTest.class.getResourceAsStream("/clientStore.p12"));
+    }
+
+    private static byte[] asByteArray(final InputStream is) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int reads = is.read();
+        while (reads != -1) {
+            baos.write(reads);
+            reads = is.read();
+        }
+        return baos.toByteArray();
+    }
+}
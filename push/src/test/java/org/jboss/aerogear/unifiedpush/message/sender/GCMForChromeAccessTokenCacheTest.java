@@ -0,0 +1,201 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import org.jboss.aerogear.unifiedpush.api.ChromePackagedAppVariant;
+import org.jboss.aerogear.unifiedpush.message.helper.ChromePackagedAppTokenCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GCMForChromeAccessTokenCacheTest {
+
+    private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private ChromePackagedAppVariant variant;
+
+    @Before
+    public void setUp() {
+        variant = new ChromePackagedAppVariant();
+        variant.setClientId("client-id");
+    }
+
+    @Test
+    public void reuseAccessToken() {
+        final StubbedAccessTokenCache cache = new StubbedAccessTokenCache(ONE_HOUR);
+
+        assertThat(cache.getAccessToken(variant)).isEqualTo("token-1");
+        assertThat(cache.getAccessToken(variant)).isEqualTo("token-1");
+
+        assertThat(cache.requests.get()).isEqualTo(1);
+        assertThat(cache.getStatistics().getHits()).isEqualTo(1);
+        assertThat(cache.getStatistics().getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void refreshExpiredAccessToken() {
+        final StubbedAccessTokenCache cache = new StubbedAccessTokenCache(-1000, ONE_HOUR);
+
+        assertThat(cache.getAccessToken(variant)).isEqualTo("token-1");
+        assertThat(cache.getAccessToken(variant)).isEqualTo("token-2");
+        assertThat(cache.getAccessToken(variant)).isEqualTo("token-2");
+
+        assertThat(cache.requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void refreshAfterInvalidate() {
+        final StubbedAccessTokenCache cache = new StubbedAccessTokenCache(ONE_HOUR, ONE_HOUR);
+
+        assertThat(cache.getAccessToken(variant)).isEqualTo("token-1");
+        cache.invalidate(variant.getClientId());
+
+        assertThat(cache.getAccessToken(variant)).isEqualTo("token-2");
+        assertThat(cache.requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidateDuringRefreshDropsItsToken() throws Exception {
+        final StubbedAccessTokenCache cache = new StubbedAccessTokenCache(ONE_HOUR, ONE_HOUR);
+        cache.blockRequests();
+
+        final List<String> accessTokens = new ArrayList<String>();
+        final Thread caller = new Thread() {
+            @Override
+            public void run() {
+                accessTokens.add(cache.getAccessToken(variant));
+            }
+        };
+        caller.start();
+
+        // the credentials change while the token is requested with the old ones:
+        assertThat(cache.requestStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        cache.invalidate(variant.getClientId());
+        cache.releaseRequests();
+        caller.join(5000);
+
+        assertThat(accessTokens).containsExactly("token-1");
+        assertThat(cache.getStatistics().getCachedTokens()).isEqualTo(0);
+
+        assertThat(cache.getAccessToken(variant)).isEqualTo("token-2");
+        assertThat(cache.requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void concurrentCallersShareOneRefresh() throws Exception {
+        final StubbedAccessTokenCache cache = new StubbedAccessTokenCache(ONE_HOUR, ONE_HOUR);
+        cache.blockRequests();
+
+        final List<String> accessTokens = new ArrayList<String>();
+        final List<Thread> callers = new ArrayList<Thread>();
+        for (int i = 0; i < 5; i++) {
+            final Thread caller = new Thread() {
+                @Override
+                public void run() {
+                    final String accessToken = cache.getAccessToken(variant);
+                    synchronized (accessTokens) {
+                        accessTokens.add(accessToken);
+                    }
+                }
+            };
+            callers.add(caller);
+            caller.start();
+        }
+
+        // one caller requests the token, the others wait for it:
+        assertThat(cache.requestStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitWaiting(callers);
+        cache.releaseRequests();
+
+        for (Thread caller : callers) {
+            caller.join(5000);
+        }
+        assertThat(cache.requests.get()).isEqualTo(1);
+        assertThat(accessTokens).containsOnly("token-1").hasSize(5);
+    }
+
+    @Test
+    public void failedRefreshReturnsNull() {
+        final StubbedAccessTokenCache cache = new StubbedAccessTokenCache();
+
+        assertThat(cache.getAccessToken(variant)).isNull();
+        assertThat(cache.getStatistics().getFailedRefreshes()).isEqualTo(1);
+        assertThat(cache.getStatistics().getCachedTokens()).isEqualTo(0);
+    }
+
+    private static void awaitWaiting(List<Thread> threads) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            int waiting = 0;
+            for (Thread thread : threads) {
+                if (thread.getState() == Thread.State.WAITING || thread.getState() == Thread.State.TIMED_WAITING) {
+                    waiting++;
+                }
+            }
+            if (waiting == threads.size()) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Hands out the next of the given lifetimes instead of asking Google, fails once they are used up.
+     */
+    private static class StubbedAccessTokenCache extends GCMForChromeAccessTokenCache {
+        private final long[] lifetimes;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final CountDownLatch requestStarted = new CountDownLatch(1);
+        private volatile CountDownLatch release;
+
+        StubbedAccessTokenCache(long... lifetimes) {
+            this.lifetimes = lifetimes;
+        }
+
+        void blockRequests() {
+            release = new CountDownLatch(1);
+        }
+
+        void releaseRequests() {
+            release.countDown();
+        }
+
+        @Override
+        protected ChromePackagedAppTokenCache requestAccessToken(ChromePackagedAppVariant chromePackagedAppVariant) throws Exception {
+            final int request = requests.incrementAndGet();
+            requestStarted.countDown();
+            if (release != null) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            if (request > lifetimes.length) {
+                throw new IllegalStateException("no more access tokens");
+            }
+
+            final ChromePackagedAppTokenCache accessToken = new ChromePackagedAppTokenCache();
+            accessToken.setAccessToken("token-" + request);
+            accessToken.setExpiresIn(System.currentTimeMillis() + lifetimes[request - 1]);
+            return accessToken;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import org.jboss.aerogear.unifiedpush.api.ChromePackagedAppVariant;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GCMForChromePushNotificationSenderTest {
+
+    @Test
+    public void noSendWithoutAccessToken() {
+        final ChromePackagedAppVariant variant = new ChromePackagedAppVariant();
+        variant.setClientId("client-id");
+
+        final GCMForChromeAccessTokenCache accessTokenCache = mock(GCMForChromeAccessTokenCache.class);
+        when(accessTokenCache.getAccessToken(variant)).thenReturn(null);
+
+        final GCMForChromePushNotificationSender sender = new GCMForChromePushNotificationSender() {
+            @Override
+            protected HttpURLConnection getConnection(String url) throws IOException {
+                throw new AssertionError("nothing must be posted without an access token");
+            }
+        };
+        sender.setAccessTokenCache(accessTokenCache);
+        final NotificationSenderCallback callback = mock(NotificationSenderCallback.class);
+
+        sender.sendPushMessage(variant, Arrays.asList("channel-1", "channel-2"), mock(UnifiedPushMessage.class), callback);
+
+        verify(callback).onError(2, "Could not obtain a GCM/Chrome access token");
+        verify(callback, never()).onSuccess(anyInt());
+    }
+}
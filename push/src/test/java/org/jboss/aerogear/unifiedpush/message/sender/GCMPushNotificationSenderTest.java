@@ -0,0 +1,229 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import com.google.android.gcm.server.Message;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.dispatch.DispatchPipeline;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GCMPushNotificationSenderTest {
+
+    private static final Pattern REGISTRATION_IDS = Pattern.compile("\"registration_ids\"\\s*:\\s*\\[([^\\]]*)\\]");
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private CountDownLatch allPagesArrived;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private DispatchPipeline dispatchPipeline;
+    private GCMPushNotificationSender sender;
+    private UnifiedPushMessage pushMessage;
+    private NotificationSenderCallback callback;
+
+    @Before
+    public void setUp() throws IOException {
+        // a stand-in for GCM, that holds every request until all pages have arrived (or a timeout):
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/gcm/send", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final String request = readBody(exchange.getRequestBody());
+                requests.incrementAndGet();
+                final int current = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), current));
+                }
+                try {
+                    allPagesArrived.countDown();
+                    allPagesArrived.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+
+                if (request.contains("\"failing-token\"")) {
+                    respond(exchange, 400, "Bad request");
+                } else {
+                    respond(exchange, 200, multicastResult(request));
+                }
+            }
+        });
+        server.start();
+        System.setProperty(StandInDestinations.GCM_ENDPOINT, "http://127.0.0.1:" + server.getAddress().getPort() + "/gcm/send");
+
+        dispatchPipeline = new DispatchPipeline();
+        dispatchPipeline.start();
+
+        sender = new GCMPushNotificationSender();
+        sender.setDispatchPipeline(dispatchPipeline);
+        sender.setClientInstallationService(mock(ClientInstallationService.class));
+
+        pushMessage = mock(UnifiedPushMessage.class);
+        when(pushMessage.getRenderedPayload(GCMPushNotificationSender.GCM_MESSAGE)).thenReturn(new Message.Builder().addData("alert", "Hello").build());
+        callback = mock(NotificationSenderCallback.class);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(StandInDestinations.GCM_ENDPOINT);
+        dispatchPipeline.stop();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void sendsPagesConcurrently() {
+        allPagesArrived = new CountDownLatch(3);
+
+        sender.sendPushMessage(androidVariant(3), tokens(2500, -1), pushMessage, callback);
+
+        assertThat(requests.get()).isEqualTo(3);
+        assertThat(maxInFlight.get()).isEqualTo(3);
+        verify(callback, times(2)).onSuccess(1000);
+        verify(callback).onSuccess(500);
+        verify(callback, never()).onError(anyInt(), anyString());
+    }
+
+    @Test
+    public void limitsPagesInFlightPerVariant() {
+        allPagesArrived = new CountDownLatch(1);
+
+        sender.sendPushMessage(androidVariant(1), tokens(3000, -1), pushMessage, callback);
+
+        assertThat(requests.get()).isEqualTo(3);
+        assertThat(maxInFlight.get()).isEqualTo(1);
+        verify(callback, times(3)).onSuccess(1000);
+    }
+
+    @Test
+    public void collectsFailuresPerPage() {
+        allPagesArrived = new CountDownLatch(3);
+
+        // the second page is rejected by GCM:
+        sender.sendPushMessage(androidVariant(3), tokens(2500, 1500), pushMessage, callback);
+
+        assertThat(requests.get()).isEqualTo(3);
+        verify(callback).onSuccess(1000);
+        verify(callback).onSuccess(500);
+        verify(callback).onError(1000, "Error sending payload to GCM server");
+        verify(callback, never()).onError(anyString());
+    }
+
+    @Test
+    public void keepsInterruptWhileWaitingForPages() throws Exception {
+        final DispatchPipeline interruptedPipeline = mock(DispatchPipeline.class);
+        when(interruptedPipeline.invokeAll(any(Collection.class), anyInt())).thenThrow(new InterruptedException());
+        sender.setDispatchPipeline(interruptedPipeline);
+
+        sender.sendPushMessage(androidVariant(3), tokens(2500, -1), pushMessage, callback);
+
+        // clears the flag again, for the next test:
+        assertThat(Thread.interrupted()).isTrue();
+        verify(callback).onError("Interrupted while sending payload to GCM server");
+    }
+
+    private static AndroidVariant androidVariant(int pagesInFlight) {
+        final AndroidVariant androidVariant = new AndroidVariant();
+        androidVariant.setVariantID("android-variant");
+        androidVariant.setGoogleKey("google-key");
+        androidVariant.setPagesInFlight(pagesInFlight);
+        return androidVariant;
+    }
+
+    private static List<String> tokens(int count, int failingIndex) {
+        final List<String> tokens = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            tokens.add(i == failingIndex ? "failing-token" : "token-" + i);
+        }
+        return tokens;
+    }
+
+    private static String multicastResult(String request) {
+        final Matcher matcher = REGISTRATION_IDS.matcher(request);
+        final int registrationIds = matcher.find() ? matcher.group(1).split(",").length : 0;
+
+        final StringBuilder results = new StringBuilder();
+        for (int i = 0; i < registrationIds; i++) {
+            if (i > 0) {
+                results.append(',');
+            }
+            results.append("{\"message_id\":\"0:").append(i).append("\"}");
+        }
+        return "{\"multicast_id\":1,\"success\":" + registrationIds + ",\"failure\":0,\"canonical_ids\":0,\"results\":[" + results + "]}";
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toString("UTF-8");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
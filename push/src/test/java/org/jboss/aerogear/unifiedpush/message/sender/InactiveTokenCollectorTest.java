@@ -0,0 +1,91 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class InactiveTokenCollectorTest {
+
+    private InactiveTokenCollector collector;
+    private ClientInstallationService clientInstallationService;
+
+    @Before
+    public void setUp() {
+        System.setProperty("aerogear.inactive-tokens.flush-size", "3");
+        collector = new InactiveTokenCollector();
+        clientInstallationService = mock(ClientInstallationService.class);
+        collector.setClientInstallationService(clientInstallationService);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("aerogear.inactive-tokens.flush-size");
+    }
+
+    @Test
+    public void collectsBelowFlushSize() {
+        collector.add("variant", Arrays.asList("token-1", "token-2"));
+
+        verifyNoMoreInteractions(clientInstallationService);
+    }
+
+    @Test
+    public void flushesVariantOnFlushSize() {
+        collector.add("other-variant", Arrays.asList("token-a"));
+        collector.add("variant", Arrays.asList("token-1", "token-2"));
+        collector.add("variant", Arrays.asList("token-2", "token-3"));
+
+        verify(clientInstallationService).removeInstallationsForVariantByDeviceTokens("variant",
+                new HashSet<String>(Arrays.asList("token-1", "token-2", "token-3")));
+        verifyNoMoreInteractions(clientInstallationService);
+    }
+
+    @Test
+    public void flushesAllVariants() {
+        collector.add("variant", Arrays.asList("token-1", "token-1"));
+        collector.add("other-variant", Arrays.asList("token-a"));
+
+        collector.flush();
+
+        verify(clientInstallationService).removeInstallationsForVariantByDeviceTokens("variant", Collections.singleton("token-1"));
+        verify(clientInstallationService).removeInstallationsForVariantByDeviceTokens("other-variant", Collections.singleton("token-a"));
+
+        // nothing left for the next flush:
+        collector.flush();
+        verifyNoMoreInteractions(clientInstallationService);
+    }
+
+    @Test
+    public void ignoresEmptyReports() {
+        collector.add("variant", Collections.<String>emptyList());
+
+        collector.flush();
+
+        verifyNoMoreInteractions(clientInstallationService);
+    }
+}
@@ -17,9 +17,28 @@
 package org.jboss.aerogear.unifiedpush.message.sender;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jboss.aerogear.unifiedpush.api.SimplePushVariant;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.dispatch.DispatchPipeline;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -47,4 +66,88 @@ public class SimplePushNotificationSenderTest {
         assertEquals(200, connection.getResponseCode());
     }
 
+    @Test
+    public void groupsUpdateURLsByHost() {
+        final Map<String, List<String>> clientURLsByHost = SimplePushNotificationSender.groupByHost(Arrays.asList(
+                "http://push.example.com/update/1",
+                "https://push.example.com/update/2",
+                "http://push.example.com:8080/update/3",
+                "http://push.example.com/update/4",
+                "not a URL",
+                "http://other.example.com/update/5"));
+
+        assertEquals(5, clientURLsByHost.size());
+        assertEquals(Arrays.asList("http://push.example.com/update/1", "http://push.example.com/update/4"),
+                clientURLsByHost.get("http://push.example.com:-1"));
+        assertEquals(Arrays.asList("https://push.example.com/update/2"), clientURLsByHost.get("https://push.example.com:-1"));
+        assertEquals(Arrays.asList("http://push.example.com:8080/update/3"), clientURLsByHost.get("http://push.example.com:8080"));
+        assertEquals(Arrays.asList("not a URL"), clientURLsByHost.get(""));
+    }
+
+    @Test
+    public void slicesUpdateURLsPerHost() {
+        final List<List<String>> slices = SimplePushNotificationSender.slice(SimplePushNotificationSender.groupByHost(Arrays.asList(
+                "http://a.example.com/1", "http://a.example.com/2", "http://a.example.com/3", "http://a.example.com/4",
+                "http://a.example.com/5", "http://b.example.com/6")), 2);
+
+        assertEquals(3, slices.size());
+        assertEquals(Arrays.asList("http://a.example.com/1", "http://a.example.com/2", "http://a.example.com/3"), slices.get(0));
+        assertEquals(Arrays.asList("http://a.example.com/4", "http://a.example.com/5"), slices.get(1));
+        assertEquals(Arrays.asList("http://b.example.com/6"), slices.get(2));
+    }
+
+    @Test
+    public void reportsOutcomeOncePerBatch() throws Exception {
+        final HttpServer accepting = startPushServer(200);
+        final HttpServer failing = startPushServer(500);
+        final DispatchPipeline dispatchPipeline = new DispatchPipeline();
+        dispatchPipeline.start();
+        try {
+            final List<String> clientURLs = new ArrayList<String>();
+            for (int i = 0; i < 3; i++) {
+                clientURLs.add(updateURL(accepting, i));
+            }
+            for (int i = 0; i < 2; i++) {
+                clientURLs.add(updateURL(failing, i));
+            }
+
+            final SimplePushNotificationSender sender = new SimplePushNotificationSender();
+            sender.setDispatchPipeline(dispatchPipeline);
+            final UnifiedPushMessage pushMessage = mock(UnifiedPushMessage.class);
+            when(pushMessage.getSimplePush()).thenReturn("version=1");
+            final NotificationSenderCallback callback = mock(NotificationSenderCallback.class);
+
+            sender.sendPushMessage(new SimplePushVariant(), clientURLs, pushMessage, callback);
+
+            verify(callback).onSuccess(3);
+            verify(callback).onError(2, "Error delivering the payload. SimplePush Network status code was: 500");
+            verify(callback, never()).onSuccess(1);
+            verify(callback, never()).onError(anyString());
+        } finally {
+            dispatchPipeline.stop();
+            accepting.stop(0);
+            failing.stop(0);
+        }
+    }
+
+    private static HttpServer startPushServer(final int statusCode) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        server.createContext("/update", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final InputStream body = exchange.getRequestBody();
+                while (body.read() != -1) {
+                    // drain
+                }
+                exchange.sendResponseHeaders(statusCode, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static String updateURL(HttpServer server, int channel) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/update/" + channel;
+    }
 }
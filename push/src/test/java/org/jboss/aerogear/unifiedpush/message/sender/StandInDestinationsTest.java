@@ -0,0 +1,74 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StandInDestinationsTest {
+
+    @After
+    public void clearProperties() {
+        System.clearProperty(StandInDestinations.APNS_GATEWAY);
+        System.clearProperty(StandInDestinations.APNS_FEEDBACK);
+        System.clearProperty(StandInDestinations.GCM_ENDPOINT);
+    }
+
+    @Test
+    public void noStandInsByDefault() {
+        assertThat(StandInDestinations.apnsGateway()).isNull();
+        assertThat(StandInDestinations.apnsFeedback()).isNull();
+        assertThat(StandInDestinations.gcmEndpoint()).isNull();
+    }
+
+    @Test
+    public void acceptLoopbackDestinations() {
+        System.setProperty(StandInDestinations.APNS_GATEWAY, "localhost:2195");
+        System.setProperty(StandInDestinations.APNS_FEEDBACK, "127.0.0.1:2196");
+        System.setProperty(StandInDestinations.GCM_ENDPOINT, "http://127.0.0.1:8091/gcm/send");
+
+        final InetSocketAddress gateway = StandInDestinations.apnsGateway();
+        assertThat(gateway.getHostString()).isEqualTo("localhost");
+        assertThat(gateway.getPort()).isEqualTo(2195);
+        assertThat(StandInDestinations.apnsFeedback().getHostString()).isEqualTo("127.0.0.1");
+        assertThat(StandInDestinations.gcmEndpoint()).isEqualTo("http://127.0.0.1:8091/gcm/send");
+    }
+
+    @Test
+    public void ignoreOtherHosts() {
+        System.setProperty(StandInDestinations.APNS_GATEWAY, "10.1.2.3:2195");
+        System.setProperty(StandInDestinations.GCM_ENDPOINT, "https://10.1.2.3/gcm/send");
+
+        assertThat(StandInDestinations.apnsGateway()).isNull();
+        assertThat(StandInDestinations.gcmEndpoint()).isNull();
+    }
+
+    @Test
+    public void ignoreMalformedDestinations() {
+        System.setProperty(StandInDestinations.APNS_GATEWAY, "localhost");
+        System.setProperty(StandInDestinations.APNS_FEEDBACK, "localhost:feedback");
+        System.setProperty(StandInDestinations.GCM_ENDPOINT, "localhost:8091/gcm/send");
+
+        assertThat(StandInDestinations.apnsGateway()).isNull();
+        assertThat(StandInDestinations.apnsFeedback()).isNull();
+        assertThat(StandInDestinations.gcmEndpoint()).isNull();
+    }
+}
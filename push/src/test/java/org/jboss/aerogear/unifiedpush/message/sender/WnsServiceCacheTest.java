@@ -0,0 +1,112 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import ar.com.fernandospr.wns.WnsService;
+import org.jboss.aerogear.unifiedpush.api.WindowsVariant;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class WnsServiceCacheTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty("aerogear.wns.idle-timeout");
+    }
+
+    @Test
+    public void reuseServiceOfApplication() {
+        final CountingWnsServiceCache cache = new CountingWnsServiceCache();
+
+        final WnsService service = cache.getWnsService(windowsVariant("sid", "secret"));
+
+        assertThat(cache.getWnsService(windowsVariant("sid", "secret"))).isSameAs(service);
+        assertThat(cache.created.get()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void newServiceForChangedClientSecret() {
+        final CountingWnsServiceCache cache = new CountingWnsServiceCache();
+
+        final WnsService service = cache.getWnsService(windowsVariant("sid", "secret"));
+
+        assertThat(cache.getWnsService(windowsVariant("sid", "new-secret"))).isNotSameAs(service);
+        assertThat(cache.created.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidateRemovesServicesOfSid() {
+        final CountingWnsServiceCache cache = new CountingWnsServiceCache();
+        final WnsService service = cache.getWnsService(windowsVariant("sid", "secret"));
+        cache.getWnsService(windowsVariant("sid", "new-secret"));
+        final WnsService other = cache.getWnsService(windowsVariant("sid-2", "secret"));
+
+        cache.invalidate("sid");
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getWnsService(windowsVariant("sid-2", "secret"))).isSameAs(other);
+        assertThat(cache.getWnsService(windowsVariant("sid", "secret"))).isNotSameAs(service);
+    }
+
+    @Test
+    public void evictIdleServices() throws InterruptedException {
+        System.setProperty("aerogear.wns.idle-timeout", "0");
+        final CountingWnsServiceCache cache = new CountingWnsServiceCache();
+        cache.getWnsService(windowsVariant("sid", "secret"));
+
+        Thread.sleep(10);
+        cache.evictIdleServices();
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void keepServicesInUse() {
+        final CountingWnsServiceCache cache = new CountingWnsServiceCache();
+        cache.getWnsService(windowsVariant("sid", "secret"));
+
+        cache.evictIdleServices();
+
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    private static WindowsVariant windowsVariant(String sid, String clientSecret) {
+        final WindowsVariant windowsVariant = new WindowsVariant();
+        windowsVariant.setSid(sid);
+        windowsVariant.setClientSecret(clientSecret);
+        return windowsVariant;
+    }
+
+    /**
+     * Creates mocked services instead of authenticating against WNS.
+     */
+    private static class CountingWnsServiceCache extends WnsServiceCache {
+        private final AtomicInteger created = new AtomicInteger();
+
+        @Override
+        protected WnsService createWnsService(WindowsVariant windowsVariant) {
+            created.incrementAndGet();
+            return mock(WnsService.class);
+        }
+    }
+}
@@ -30,15 +30,30 @@ import java.util.Set;
 public interface ClientInstallationService {
 
     /**
-     * Store a new Installation object on the database.
+     * Store a new Installation object on the database, or update the metadata of the already registered one. A
+     * registration that collides with a concurrent registration of the same device is retried as an update.
      */
     void addInstallation(Variant variant, Installation installation);
 
+    /**
+     * Store new Installation objects, or update the metadata of the already existing ones, within one transaction.
+     * Used to write registrations in batches.
+     */
+    void addOrUpdateInstallations(Variant variant, List<Installation> installations);
+
     /**
      * Add new Installations objects, for importing devices on the database.
      */
     void addInstallations(Variant variant, List<Installation> installations);
 
+    /**
+     * Add a chunk of new Installations objects, for importing devices on the database. Installations without token,
+     * or with a token that is already registered for the variant, are ignored.
+     *
+     * @return the number of imported installations
+     */
+    int importInstallations(Variant variant, List<Installation> installations);
+
     /**
      * Find all installations for the variant specified.
      *  @param variantId the id of the variant to find the installations for
@@ -48,6 +63,21 @@ public interface ClientInstallationService {
      */
     PageResult<Installation> findInstallationsByVariant(String variantId, Integer page, Integer pageSize);
 
+    /**
+     * Keyset paging: finds the next page of installations for the variant specified, ordered by their ID.
+     * @param variantId the id of the variant to find the installations for
+     * @param lastInstallationID ID of the last installation of the previous page, or <code>null</code> for the first page
+     * @param pageSize the size of the page
+     * @return the installations of the page, an empty list after the last page
+     */
+    List<Installation> findInstallationsByVariantAfter(String variantId, String lastInstallationID, int pageSize);
+
+    /**
+     * Counts the installations of the variant specified.
+     * @param exact if <code>false</code> a recently counted (approximate) total is fine
+     */
+    long countInstallationsByVariant(String variantId, boolean exact);
+
     /**
      * Performs an update/merge on the given entity.
      */
@@ -95,4 +125,11 @@ public interface ClientInstallationService {
      */
     List<String> findAllDeviceTokenForVariantIDByCriteria(String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes);
 
+    /**
+     * Used by the Sender API to read the device-tokens of a given variant batch by batch, based on provided criteria.
+     * Pass the last token of a batch to receive the next one, an empty list is returned once all tokens have been read.
+     */
+    List<String> findDeviceTokensForVariantIDByCriteria(String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes,
+                                                        String lastTokenFromPreviousBatch, int batchSize);
+
 }
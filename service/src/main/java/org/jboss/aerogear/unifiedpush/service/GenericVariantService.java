@@ -18,6 +18,8 @@ package org.jboss.aerogear.unifiedpush.service;
 
 import org.jboss.aerogear.unifiedpush.api.Variant;
 
+import java.util.List;
+
 /**
  * Service class that offers functionality to deal with the different variants (e.g. Android, iOS or SimplePush variants).
  */
@@ -38,6 +40,18 @@ public interface GenericVariantService {
      */
     Variant findByVariantID(String variantID);
 
+    /**
+     * Returns the Variant entity, matching the given variantID, from a short-lived cache if present.
+     * Intended for the authentication of the client APIs, the returned entity must not be modified.
+     */
+    Variant findByVariantIDCached(String variantID);
+
+    /**
+     * Returns the current Variant entities of the push application with the given pushApplicationID, loaded from the
+     * database (not from the cache), e.g. for sending a push message to all of them.
+     */
+    List<Variant> findAllVariantsByPushApplicationID(String pushApplicationID);
+
     /**
      * Removes the given variant entity.
      */
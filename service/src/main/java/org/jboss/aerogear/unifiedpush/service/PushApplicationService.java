@@ -39,6 +39,12 @@ public interface PushApplicationService {
      */
     PushApplication findByPushApplicationID(String pushApplicationID);
 
+    /**
+     * Returns the PushApplication entity, matching the given ID, from a short-lived cache if present.
+     * Intended for the authentication of the client APIs, the returned entity must not be modified.
+     */
+    PushApplication findByPushApplicationIDCached(String pushApplicationID);
+
     /**
      * Removes the given PushApplication entity.
      */
@@ -0,0 +1,57 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.cache;
+
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the totals of the paged listings (installations of a variant, push messages of an application or variant)
+ * for a while, so that paging through a large listing does not run a <code>count</code> query on every page.
+ * The cached totals are approximate: they do not reflect changes made during their time to live.
+ *
+ * Size and time to live of the entries are configured with the <code>aerogear.count-cache.size</code>
+ * (default 10000) and <code>aerogear.count-cache.ttl</code> (in seconds, default 30) system properties.
+ */
+@ApplicationScoped
+public class CountCache {
+
+    private static final int DEFAULT_SIZE = 10000;
+    private static final long DEFAULT_TTL_SECONDS = 30;
+
+    private final ExpiringCache<String, Long> counts;
+
+    public CountCache() {
+        final int size = ConfigurationUtils.tryGetIntegerProperty("aerogear.count-cache.size", DEFAULT_SIZE);
+        final long ttl = ConfigurationUtils.tryGetLongProperty("aerogear.count-cache.ttl", DEFAULT_TTL_SECONDS);
+
+        counts = new ExpiringCache<String, Long>(size, ttl, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the cached count, or <code>null</code> if there is none (or it expired).
+     */
+    public Long get(String key) {
+        return counts.get(key);
+    }
+
+    public void put(String key, long count) {
+        counts.put(key, count);
+    }
+}
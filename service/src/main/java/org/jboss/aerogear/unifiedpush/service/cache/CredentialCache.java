@@ -0,0 +1,78 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.cache;
+
+import org.jboss.aerogear.unifiedpush.api.PushApplication;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps recently used variants and push applications in memory, so that the HTTP Basic authentication of the
+ * device registration and sender endpoints does not need a database query for every request.
+ *
+ * Size and time to live of the entries are configured with the <code>aerogear.credentials-cache.size</code>
+ * (default 10000) and <code>aerogear.credentials-cache.ttl</code> (in seconds, default 60) system properties.
+ * The services invalidate the entries when they change or remove a variant or push application.
+ */
+@ApplicationScoped
+public class CredentialCache {
+
+    private static final int DEFAULT_SIZE = 10000;
+    private static final long DEFAULT_TTL_SECONDS = 60;
+
+    private final ExpiringCache<String, Variant> variants;
+    private final ExpiringCache<String, PushApplication> pushApplications;
+
+    public CredentialCache() {
+        final int size = ConfigurationUtils.tryGetIntegerProperty("aerogear.credentials-cache.size", DEFAULT_SIZE);
+        final long ttl = ConfigurationUtils.tryGetLongProperty("aerogear.credentials-cache.ttl", DEFAULT_TTL_SECONDS);
+
+        variants = new ExpiringCache<String, Variant>(size, ttl, TimeUnit.SECONDS);
+        pushApplications = new ExpiringCache<String, PushApplication>(size, ttl, TimeUnit.SECONDS);
+    }
+
+    public Variant getVariant(String variantID) {
+        return variants.get(variantID);
+    }
+
+    public void putVariant(Variant variant) {
+        variants.put(variant.getVariantID(), variant);
+    }
+
+    /**
+     * Drops the given variant, and all push applications, as they contain their variants.
+     */
+    public void invalidateVariant(String variantID) {
+        variants.remove(variantID);
+        pushApplications.clear();
+    }
+
+    public PushApplication getPushApplication(String pushApplicationID) {
+        return pushApplications.get(pushApplicationID);
+    }
+
+    public void putPushApplication(PushApplication pushApplication) {
+        pushApplications.put(pushApplication.getPushApplicationID(), pushApplication);
+    }
+
+    public void invalidatePushApplication(String pushApplicationID) {
+        pushApplications.remove(pushApplicationID);
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.dashboard;
+
+import org.jboss.aerogear.unifiedpush.api.PushApplication;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
+import org.jboss.aerogear.unifiedpush.dao.PushApplicationDao;
+import org.jboss.aerogear.unifiedpush.dao.PushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.dao.VariantDao;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.SessionContext;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maintains the numbers of the 'Dashboard' (applications, devices and messages) in memory, in total and per
+ * developer, so loading the dashboard does not count the rows of the tables.
+ *
+ * The registration, deletion and send paths update the counters as they go. Since those updates are applied before
+ * the transaction commits (and each cluster node has its own counters), the numbers may drift: they are recounted
+ * with one grouped query per table every ten minutes, and in the background once a change that cascades (e.g.
+ * removing a variant with all of its installations) has been committed.
+ *
+ * There are no counters per push application: its pages count the installations of one application only, and its
+ * message total is already served from the count cache of the {@link org.jboss.aerogear.unifiedpush.service.metrics.PushMessageMetricsService}.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class DashboardCounters {
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(DashboardCounters.class);
+
+    @Resource
+    private SessionContext context;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+
+    @Inject
+    private PushApplicationDao pushApplicationDao;
+
+    @Inject
+    private InstallationDao installationDao;
+
+    @Inject
+    private PushMessageInformationDao pushMessageInformationDao;
+
+    @Inject
+    private VariantDao variantDao;
+
+    private volatile Counters counters;
+
+    /**
+     * Returns the numbers of all developers.
+     */
+    public DashboardData loadDashboardData() {
+        return getCounters().total.toDashboardData();
+    }
+
+    /**
+     * Returns the numbers of the given developer.
+     */
+    public DashboardData loadDashboardData(String developer) {
+        final Totals totals = getCounters().byDeveloper.get(developer);
+        return totals == null ? new DashboardData() : totals.toDashboardData();
+    }
+
+    public void applicationAdded(PushApplication pushApplication) {
+        adjust(pushApplication.getDeveloper(), 1, 0, 0);
+    }
+
+    /**
+     * The variants, installations and push messages of the application are gone as well, so everything is recounted
+     * once the removal has been committed.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void applicationRemoved(PushApplication pushApplication) {
+        adjust(pushApplication.getDeveloper(), -1, 0, 0);
+        reconcileAfterCommit();
+    }
+
+    /**
+     * The installations of the variant are gone as well, so everything is recounted once the removal has been committed.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void variantRemoved(Variant variant) {
+        reconcileAfterCommit();
+    }
+
+    public void installationsAdded(Variant variant, long installations) {
+        adjust(variant.getDeveloper(), 0, installations, 0);
+    }
+
+    public void installationsRemoved(Variant variant, long installations) {
+        adjust(variant.getDeveloper(), 0, -installations, 0);
+    }
+
+    public void installationsRemoved(String variantID, long installations) {
+        final Variant variant = variantDao.findByVariantID(variantID);
+        if (variant != null) {
+            installationsRemoved(variant, installations);
+        }
+    }
+
+    public void messageSubmitted(PushApplication pushApplication) {
+        adjust(pushApplication.getDeveloper(), 0, 0, 1);
+    }
+
+    @Asynchronous
+    public void requestReconcile() {
+        reconcile();
+    }
+
+    /**
+     * Recounts all numbers, replacing the maintained ones.
+     */
+    @Schedule(hour = "*", minute = "*/10", persistent = false)
+    public void reconcile() {
+        final Map<String, Long> applications = pushApplicationDao.countPushApplicationsByDeveloper();
+        final Map<String, Long> devices = installationDao.countInstallationsByDeveloper();
+        final Map<String, Long> messages = pushMessageInformationDao.countPushMessagesByDeveloper();
+
+        final Set<String> developers = new HashSet<String>(applications.keySet());
+        developers.addAll(devices.keySet());
+        developers.addAll(messages.keySet());
+
+        final Counters recounted = new Counters();
+        for (String developer : developers) {
+            final long developerApplications = valueOf(applications.get(developer));
+            final long developerDevices = valueOf(devices.get(developer));
+            final long developerMessages = valueOf(messages.get(developer));
+
+            recounted.total.add(developerApplications, developerDevices, developerMessages);
+            if (developer != null) {
+                recounted.totalsOf(developer).add(developerApplications, developerDevices, developerMessages);
+            }
+        }
+
+        final Counters previous = counters;
+        if (previous != null && previous.total.differsFrom(recounted.total)) {
+            logger.fine("Dashboard counters drifted, corrected from " + previous.total + " to " + recounted.total);
+        }
+        counters = recounted;
+    }
+
+    /**
+     * Requests a reconcile once the transaction of the caller has been committed: a recount before the commit would
+     * still see the removed rows. Without a transaction, the reconcile is requested right away.
+     */
+    private void reconcileAfterCommit() {
+        if (transactionRegistry.getTransactionKey() == null) {
+            context.getBusinessObject(DashboardCounters.class).requestReconcile();
+            return;
+        }
+
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    context.getBusinessObject(DashboardCounters.class).requestReconcile();
+                }
+            }
+        });
+    }
+
+    private Counters getCounters() {
+        if (counters == null) {
+            synchronized (this) {
+                if (counters == null) {
+                    reconcile();
+                }
+            }
+        }
+        return counters;
+    }
+
+    private void adjust(String developer, long applications, long devices, long messages) {
+        final Counters current = counters;
+        // not loaded yet, the first read counts everything anyways
+        if (current == null) {
+            return;
+        }
+
+        current.total.add(applications, devices, messages);
+        if (developer != null) {
+            current.totalsOf(developer).add(applications, devices, messages);
+        }
+    }
+
+    private static long valueOf(Long count) {
+        return count == null ? 0 : count;
+    }
+
+    private static class Counters {
+        private final Totals total = new Totals();
+        private final ConcurrentMap<String, Totals> byDeveloper = new ConcurrentHashMap<String, Totals>();
+
+        Totals totalsOf(String developer) {
+            Totals totals = byDeveloper.get(developer);
+            if (totals == null) {
+                final Totals created = new Totals();
+                totals = byDeveloper.putIfAbsent(developer, created);
+                if (totals == null) {
+                    totals = created;
+                }
+            }
+            return totals;
+        }
+    }
+
+    private static class Totals {
+        private final AtomicLong applications = new AtomicLong();
+        private final AtomicLong devices = new AtomicLong();
+        private final AtomicLong messages = new AtomicLong();
+
+        void add(long applicationsDelta, long devicesDelta, long messagesDelta) {
+            applications.addAndGet(applicationsDelta);
+            devices.addAndGet(devicesDelta);
+            messages.addAndGet(messagesDelta);
+        }
+
+        boolean differsFrom(Totals other) {
+            return applications.get() != other.applications.get()
+                    || devices.get() != other.devices.get()
+                    || messages.get() != other.messages.get();
+        }
+
+        DashboardData toDashboardData() {
+            final DashboardData data = new DashboardData();
+            // updates are applied before the commit, a rolled back one could leave a negative number until the next recount
+            data.setApplications(Math.max(0, applications.get()));
+            data.setDevices(Math.max(0, devices.get()));
+            data.setMessages(Math.max(0, messages.get()));
+            return data;
+        }
+
+        @Override
+        public String toString() {
+            return "[applications=" + applications + ", devices=" + devices + ", messages=" + messages + "]";
+        }
+    }
+}
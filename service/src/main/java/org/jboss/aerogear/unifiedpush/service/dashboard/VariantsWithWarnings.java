@@ -0,0 +1,94 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.dashboard;
+
+import org.jboss.aerogear.unifiedpush.dao.PushMessageInformationDao;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the variants that showed failures on sending, for the 'warnings' of the Dashboard.
+ *
+ * Failures are added when they are recorded, so reading the warnings does not scan the stored
+ * {@link org.jboss.aerogear.unifiedpush.api.VariantMetricInformation} objects. The index is rebuilt from the stored
+ * failures once an hour, which also drops the variants whose failures were deleted with their outdated push
+ * message information, and picks up the failures recorded on other cluster nodes.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class VariantsWithWarnings {
+
+    @Inject
+    private PushMessageInformationDao pushMessageInformationDao;
+
+    private volatile Set<String> variantIDs;
+
+    /**
+     * Returns the IDs of all variants with failures.
+     */
+    public List<String> getVariantIDs() {
+        return new ArrayList<String>(getIndex());
+    }
+
+    public void failureRecorded(String variantID) {
+        final Set<String> index = variantIDs;
+        // not loaded yet, the first read picks it up
+        if (index != null) {
+            index.add(variantID);
+        }
+    }
+
+    public void variantRemoved(String variantID) {
+        final Set<String> index = variantIDs;
+        if (index != null) {
+            index.remove(variantID);
+        }
+    }
+
+    /**
+     * Rebuilds the index from the stored failures.
+     */
+    @Schedule(hour = "*", persistent = false)
+    public void rebuild() {
+        final Set<String> index = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        index.addAll(pushMessageInformationDao.findVariantIDsWithWarnings());
+        variantIDs = index;
+    }
+
+    private Set<String> getIndex() {
+        if (variantIDs == null) {
+            synchronized (this) {
+                if (variantIDs == null) {
+                    rebuild();
+                }
+            }
+        }
+        return variantIDs;
+    }
+}
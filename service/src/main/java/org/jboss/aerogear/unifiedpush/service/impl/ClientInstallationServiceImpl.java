@@ -16,20 +16,29 @@
  */
 package org.jboss.aerogear.unifiedpush.service.impl;
 
+import org.jboss.aerogear.unifiedpush.api.Category;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedIn;
+import org.jboss.aerogear.unifiedpush.service.cache.CountCache;
+import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardCounters;
 import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
 
 import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -39,6 +48,9 @@ import java.util.Set;
 @Stateless
 public class ClientInstallationServiceImpl implements ClientInstallationService {
 
+    // number of installations that are imported (and flushed) at once:
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+
     private final AeroGearLogger logger = AeroGearLogger.getInstance(ClientInstallationServiceImpl.class);
 
     @Inject
@@ -48,12 +60,69 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
     @LoggedIn
     private Instance<String> developer;
 
+    @Inject
+    private CountCache countCache;
+
+    // our own business interface, for calls that need their own transaction:
+    @Inject
+    private Instance<ClientInstallationService> self;
+
+    @Inject
+    private DashboardCounters dashboardCounters;
+
     @Override
     @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void addInstallation(Variant variant, Installation entity) {
+        // the installation is stored in its own transaction, so that a failing commit can be retried:
+        final List<Installation> entities = Collections.singletonList(entity);
+        try {
+            self.get().addOrUpdateInstallations(variant, entities);
+        } catch (RuntimeException e) {
+            if (!isConstraintViolation(e)) {
+                throw e;
+            }
 
-        // does it already exist ?
-        Installation installation = this.findInstallationForVariantByDeviceToken(variant.getVariantID(), entity.getDeviceToken());
+            // the same device has been registered concurrently (e.g. on another node), and the unique
+            // (variantID, tokenHash) key rejected our insert: the installation exists now, so we update it instead
+            logger.fine("Device with token '" + entity.getDeviceToken() + "' was registered concurrently, updating it");
+            self.get().addOrUpdateInstallations(variant, entities);
+        }
+    }
+
+    @Override
+    public void addOrUpdateInstallations(Variant variant, List<Installation> entities) {
+
+        // don't bother
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+
+        // load the already existing installations, with one query:
+        final Set<String> deviceTokens = new HashSet<String>();
+        for (Installation entity : entities) {
+            deviceTokens.add(entity.getDeviceToken());
+        }
+        final Map<String, Installation> existingInstallations = new HashMap<String, Installation>();
+        for (Installation installation : dao.findInstallationsForVariantByDeviceTokens(variant.getVariantID(), deviceTokens)) {
+            existingInstallations.put(installation.getDeviceToken(), installation);
+        }
+
+        for (Installation entity : entities) {
+            final Installation installation = existingInstallations.get(entity.getDeviceToken());
+            storeInstallation(variant, installation, entity);
+
+            // a token might be contained more than once
+            if (installation == null) {
+                existingInstallations.put(entity.getDeviceToken(), entity);
+            }
+        }
+    }
+
+    /**
+     * Registers the posted entity, or updates the given (already stored) installation with its values.
+     */
+    private void storeInstallation(Variant variant, Installation installation, Installation entity) {
 
         // Needed for the Admin UI Only. Help for setting up Routes
         entity.setPlatform(variant.getType().getTypeName());
@@ -64,12 +133,18 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
             // store the installation:
             entity.setVariant(variant);
             dao.create(entity);
+            dashboardCounters.installationsAdded(variant, 1);
         } else {
             // We only update the metadata, if the device is enabled:
             if (installation.isEnabled()) {
-                logger.finest("Updating received metadata for an 'enabled' installation");
-                // update the entity:
-                this.updateInstallation(installation, entity);
+                // most re-registrations (e.g. on every app start) post the very same metadata:
+                if (hasChangedMetadata(installation, entity)) {
+                    logger.finest("Updating received metadata for an 'enabled' installation");
+                    // update the entity:
+                    this.updateInstallation(installation, entity);
+                } else {
+                    logger.finest("Received metadata for an 'enabled' installation is unchanged, skipping the update");
+                }
             }
         }
     }
@@ -83,18 +158,32 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
             return;
         }
 
-        Set<String> existingTokens = new HashSet<String>(findAllDeviceTokenForVariantIDByCriteria(variant.getVariantID(), null, null, null));
-
         // clear out:
         dao.flushAndClear();
 
-        for (int i = 0; i < installations.size(); i++) {
+        for (int from = 0; from < installations.size(); from += IMPORT_CHUNK_SIZE) {
+            importInstallations(variant, installations.subList(from, Math.min(from + IMPORT_CHUNK_SIZE, installations.size())));
+        }
+    }
 
-            Installation current = installations.get(i);
+    @Override
+    public int importInstallations(Variant variant, List<Installation> installations) {
+
+        // only look up the tokens of this chunk, instead of holding all tokens of the variant in memory:
+        final Set<String> tokens = new HashSet<String>();
+        for (Installation current : installations) {
+            if (hasTokenValue(current)) {
+                tokens.add(current.getDeviceToken());
+            }
+        }
+        final Set<String> existingTokens = new HashSet<String>(dao.findDeviceTokensForVariantByDeviceTokens(variant.getVariantID(), tokens));
+
+        int imported = 0;
+        for (Installation current : installations) {
 
             // let's avoid duplicated tokens/devices per variant
             // For devices without a token, let's also not bother the DAO layer to throw BeanValidation exception
-            if (!existingTokens.contains(current.getDeviceToken()) && hasTokenValue(current)) {
+            if (hasTokenValue(current) && !existingTokens.contains(current.getDeviceToken())) {
 
                 logger.finest("Importing device with token: " + current.getDeviceToken());
 
@@ -102,22 +191,21 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
                 current.setVariant(variant);
 
                 dao.create(current);
+                imported++;
 
-                // and add a reference to the existing tokens set, to ensure the JSON file contains no duplicates:
+                // and add a reference to the existing tokens set, to ensure the chunk contains no duplicates:
                 existingTokens.add(current.getDeviceToken());
-
-                // some tunings, ever 10k devices releasing resources
-                if (i % 10000 == 0) {
-                    logger.finest("releasing some resources during import");
-                    dao.flushAndClear();
-                }
             } else {
                 // for now, we ignore them.... no update applied!
                 logger.finest("Device with token '" + current.getDeviceToken() + "' already exists. Ignoring it ");
             }
         }
-        // clear out:
+
+        // releasing resources after every chunk
         dao.flushAndClear();
+        dashboardCounters.installationsAdded(variant, imported);
+
+        return imported;
     }
 
     @Override
@@ -135,6 +223,24 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
         return dao.findInstallationsByVariant(variantId, developer.get(), page, pageSize);
     }
 
+    @Override
+    public List<Installation> findInstallationsByVariantAfter(String variantId, String lastInstallationID, int pageSize) {
+        return dao.findInstallationsByVariantAfter(variantId, developer.get(), lastInstallationID, pageSize);
+    }
+
+    @Override
+    public long countInstallationsByVariant(String variantId, boolean exact) {
+        final String key = "installations:" + variantId;
+        final Long cachedCount = exact ? null : countCache.get(key);
+        if (cachedCount != null) {
+            return cachedCount;
+        }
+
+        final long count = dao.countInstallationsByVariant(variantId, developer.get());
+        countCache.put(key, count);
+        return count;
+    }
+
     @Override
     public void updateInstallation(
             Installation installation) {
@@ -166,15 +272,20 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
     @Override
     public void removeInstallation(Installation installation) {
         dao.delete(installation);
+        if (installation.getVariant() != null) {
+            dashboardCounters.installationsRemoved(installation.getVariant(), 1);
+        }
     }
 
     @Override
     @Asynchronous
     public void removeInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens) {
-        // collect inactive installations for the given variant:
-        List<Installation> inactiveInstallations = dao.findInstallationsForVariantByDeviceTokens(variantID, deviceTokens);
-        // get rid of them
-        this.removeInstallations(inactiveInstallations);
+        // get rid of the inactive installations for the given variant, in bulk:
+        final int removed = dao.deleteInstallationsForVariantByDeviceTokens(variantID, deviceTokens);
+        logger.fine("Removed " + removed + " inactive installations of variant " + variantID);
+        if (removed > 0) {
+            dashboardCounters.installationsRemoved(variantID, removed);
+        }
     }
 
     @Override
@@ -182,6 +293,49 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
         return dao.findInstallationForVariantByDeviceToken(variantID, deviceToken);
     }
 
+    /**
+     * Checks whether the given exception was caused by an integrity constraint violation of the database, using the
+     * standard SQL state class (23) that all supported databases report.
+     */
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                final String sqlState = ((SQLException) cause).getSQLState();
+                if (sqlState != null && sqlState.startsWith("23")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the "updateable" values of the stored installation with the posted ones.
+     */
+    private boolean hasChangedMetadata(Installation storedInstallation, Installation postedInstallation) {
+        return storedInstallation.isEnabled() != postedInstallation.isEnabled()
+                || !isEqual(storedInstallation.getAlias(), postedInstallation.getAlias())
+                || !isEqual(storedInstallation.getDeviceType(), postedInstallation.getDeviceType())
+                || !isEqual(storedInstallation.getOperatingSystem(), postedInstallation.getOperatingSystem())
+                || !isEqual(storedInstallation.getOsVersion(), postedInstallation.getOsVersion())
+                || !isEqual(storedInstallation.getPlatform(), postedInstallation.getPlatform())
+                || !categoryNames(storedInstallation.getCategories()).equals(categoryNames(postedInstallation.getCategories()));
+    }
+
+    private static boolean isEqual(String first, String second) {
+        return (first == null) ? second == null : first.equals(second);
+    }
+
+    private static Set<String> categoryNames(Set<Category> categories) {
+        final Set<String> names = new HashSet<String>();
+        if (categories != null) {
+            for (Category category : categories) {
+                names.add(category.getName());
+            }
+        }
+        return names;
+    }
+
     // =====================================================================
     // ======== Various finder services for the Sender REST API ============
     // =====================================================================
@@ -194,6 +348,15 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
         return dao.findAllDeviceTokenForVariantIDByCriteria(variantID, categories, aliases, deviceTypes);
     }
 
+    /**
+     * Batched finder for 'send', used by the dispatch pipeline
+     */
+    @Override
+    public List<String> findDeviceTokensForVariantIDByCriteria(String variantID, List<String> categories, List<String> aliases, List<String> deviceTypes,
+                                                               String lastTokenFromPreviousBatch, int batchSize) {
+        return dao.findDeviceTokensForVariantIDByCriteria(variantID, categories, aliases, deviceTypes, lastTokenFromPreviousBatch, batchSize);
+    }
+
     /**
      * A simple validation util that checks if a token is present
      */
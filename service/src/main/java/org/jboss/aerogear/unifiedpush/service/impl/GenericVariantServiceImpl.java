@@ -20,9 +20,13 @@ import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.dao.VariantDao;
 import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedIn;
+import org.jboss.aerogear.unifiedpush.service.cache.CredentialCache;
+import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardCounters;
+import org.jboss.aerogear.unifiedpush.service.dashboard.VariantsWithWarnings;
 
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import java.util.List;
 
 public class GenericVariantServiceImpl implements GenericVariantService {
 
@@ -33,6 +37,15 @@ public class GenericVariantServiceImpl implements GenericVariantService {
     @LoggedIn
     private Instance<String> loginName;
 
+    @Inject
+    private CredentialCache credentialCache;
+
+    @Inject
+    private DashboardCounters dashboardCounters;
+
+    @Inject
+    private VariantsWithWarnings variantsWithWarnings;
+
     @Override
     public void addVariant(Variant variant) {
         variant.setDeveloper(loginName.get());
@@ -44,13 +57,34 @@ public class GenericVariantServiceImpl implements GenericVariantService {
         return variantDao.findByVariantID(variantID);
     }
 
+    @Override
+    public List<Variant> findAllVariantsByPushApplicationID(String pushApplicationID) {
+        return variantDao.findAllVariantsByPushApplicationID(pushApplicationID);
+    }
+
+    @Override
+    public Variant findByVariantIDCached(String variantID) {
+        Variant variant = credentialCache.getVariant(variantID);
+        if (variant == null) {
+            variant = variantDao.findByVariantID(variantID);
+            if (variant != null) {
+                credentialCache.putVariant(variant);
+            }
+        }
+        return variant;
+    }
+
     @Override
     public void updateVariant(Variant variant) {
         variantDao.update(variant);
+        credentialCache.invalidateVariant(variant.getVariantID());
     }
 
     @Override
     public void removeVariant(Variant variant) {
         variantDao.delete(variant);
+        credentialCache.invalidateVariant(variant.getVariantID());
+        dashboardCounters.variantRemoved(variant);
+        variantsWithWarnings.variantRemoved(variant.getVariantID());
     }
 }
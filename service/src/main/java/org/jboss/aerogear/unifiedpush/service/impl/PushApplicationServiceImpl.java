@@ -21,6 +21,9 @@ import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.dao.PushApplicationDao;
 import org.jboss.aerogear.unifiedpush.service.PushApplicationService;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedIn;
+import org.jboss.aerogear.unifiedpush.service.cache.CredentialCache;
+import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardCounters;
+import org.jboss.aerogear.unifiedpush.service.dashboard.VariantsWithWarnings;
 
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
@@ -35,6 +38,15 @@ public class PushApplicationServiceImpl implements PushApplicationService {
     @LoggedIn
     private Instance<String> loginName;
 
+    @Inject
+    private CredentialCache credentialCache;
+
+    @Inject
+    private DashboardCounters dashboardCounters;
+
+    @Inject
+    private VariantsWithWarnings variantsWithWarnings;
+
     public PushApplicationServiceImpl() {
     }
 
@@ -43,6 +55,7 @@ public class PushApplicationServiceImpl implements PushApplicationService {
 
         pushApp.setDeveloper(loginName.get());
         pushApplicationDao.create(pushApp);
+        dashboardCounters.applicationAdded(pushApp);
     }
 
     @Override
@@ -50,10 +63,23 @@ public class PushApplicationServiceImpl implements PushApplicationService {
         return pushApplicationDao.findByPushApplicationID(pushApplicationID);
     }
 
+    @Override
+    public PushApplication findByPushApplicationIDCached(String pushApplicationID) {
+        PushApplication pushApplication = credentialCache.getPushApplication(pushApplicationID);
+        if (pushApplication == null) {
+            pushApplication = pushApplicationDao.findByPushApplicationID(pushApplicationID);
+            if (pushApplication != null) {
+                credentialCache.putPushApplication(pushApplication);
+            }
+        }
+        return pushApplication;
+    }
+
     @Override
     public void addVariant(PushApplication pushApp, Variant variant) {
         pushApp.getVariants().add(variant);
         pushApplicationDao.update(pushApp);
+        credentialCache.invalidatePushApplication(pushApp.getPushApplicationID());
     }
 
     @Override
@@ -64,11 +90,20 @@ public class PushApplicationServiceImpl implements PushApplicationService {
     @Override
     public void updatePushApplication(PushApplication pushApp) {
         pushApplicationDao.update(pushApp);
+        credentialCache.invalidatePushApplication(pushApp.getPushApplicationID());
     }
 
     @Override
     public void removePushApplication(PushApplication pushApp) {
         pushApplicationDao.delete(pushApp);
+
+        // the variants are removed together with their push application:
+        for (Variant variant : pushApp.getVariants()) {
+            credentialCache.invalidateVariant(variant.getVariantID());
+            variantsWithWarnings.variantRemoved(variant.getVariantID());
+        }
+        credentialCache.invalidatePushApplication(pushApp.getPushApplicationID());
+        dashboardCounters.applicationRemoved(pushApp);
     }
 
 }
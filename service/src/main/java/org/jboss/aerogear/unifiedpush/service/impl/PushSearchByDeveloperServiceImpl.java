@@ -17,18 +17,19 @@
 package org.jboss.aerogear.unifiedpush.service.impl;
 
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
-import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
-import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dao.PushApplicationDao;
+import org.jboss.aerogear.unifiedpush.dao.PushMessageActivity;
 import org.jboss.aerogear.unifiedpush.dao.PushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.dao.VariantDao;
 import org.jboss.aerogear.unifiedpush.service.PushSearchService;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedIn;
 import org.jboss.aerogear.unifiedpush.service.dashboard.Application;
 import org.jboss.aerogear.unifiedpush.service.dashboard.ApplicationVariant;
+import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardCounters;
 import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardData;
+import org.jboss.aerogear.unifiedpush.service.dashboard.VariantsWithWarnings;
 
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
@@ -49,7 +50,10 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
     private VariantDao variantDao;
 
     @Inject
-    private InstallationDao installationDao;
+    private DashboardCounters dashboardCounters;
+
+    @Inject
+    private VariantsWithWarnings variantsWithWarnings;
 
     @Inject
     private PushMessageInformationDao pushMessageInformationDao;
@@ -75,22 +79,11 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
     }
 
     /**
-     * Receives the dashboard data for the given user
+     * Receives the dashboard data for the given user, from the maintained counters
      */
     @Override
     public DashboardData loadDashboardData() {
-
-        long totalApps = totalApplicationNumber();
-        long totalDevices = totalDeviceNumber();
-        long totalMessages = totalMessages();
-
-
-        final DashboardData data = new DashboardData();
-        data.setApplications(totalApps);
-        data.setDevices(totalDevices);
-        data.setMessages(totalMessages);
-
-        return data;
+        return dashboardCounters.loadDashboardData(loginName.get());
     }
 
     /**
@@ -99,12 +92,12 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
      */
     @Override
     public List<ApplicationVariant> getVariantsWithWarnings() {
-        final List<String> warningIDs = pushMessageInformationDao.findVariantIDsWithWarnings(loginName.get());
+        final List<String> warningIDs = variantsWithWarnings.getVariantIDs();
         if (warningIDs.isEmpty()) {
             return Collections.emptyList();
         }
 
-        return wrapApplicationVariant(pushApplicationDao.findByVariantIds(warningIDs));
+        return wrapApplicationVariant(pushApplicationDao.findByVariantIdsForDeveloper(warningIDs, loginName.get()));
     }
 
     /**
@@ -115,18 +108,6 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
         return wrapApplication(pushMessageInformationDao.findLastThreeActivity(loginName.get()));
     }
 
-    private long totalMessages() {
-        return pushMessageInformationDao.getNumberOfPushMessagesForApplications(loginName.get());
-    }
-
-    private long totalDeviceNumber() {
-        return installationDao.getNumberOfDevicesForVariantIDs(loginName.get());
-    }
-
-    private long totalApplicationNumber() {
-        return pushApplicationDao.getNumberOfPushApplicationsForDeveloper(loginName.get());
-    }
-
     private List<ApplicationVariant> wrapApplicationVariant(List<PushApplication> applications) {
         final List<ApplicationVariant> applicationVariants = new ArrayList<ApplicationVariant>(applications.size());
         for (PushApplication application : applications) {
@@ -138,13 +119,11 @@ public class PushSearchByDeveloperServiceImpl implements PushSearchService {
         return applicationVariants;
     }
 
-    private List<Application> wrapApplication(List<PushMessageInformation> pushMessageInformations) {
-        final List<Application> applications = new ArrayList<Application>(pushMessageInformations.size());
-        for (PushMessageInformation pushMessageInformation : pushMessageInformations) {
-            String applicationName = pushApplicationDao.findByPushApplicationID(pushMessageInformation.getPushApplicationId()).getName();
-            final Application application = new Application(applicationName, pushMessageInformation.getPushApplicationId(), pushMessageInformation.getTotalReceivers(), pushMessageInformation.getSubmitDate());
+    private List<Application> wrapApplication(List<PushMessageActivity> activities) {
+        final List<Application> applications = new ArrayList<Application>(activities.size());
+        for (PushMessageActivity activity : activities) {
+            final Application application = new Application(activity.getApplicationName(), activity.getPushApplicationID(), activity.getTotalReceivers(), activity.getSubmitDate());
             applications.add(application);
-
         }
         return applications;
     }
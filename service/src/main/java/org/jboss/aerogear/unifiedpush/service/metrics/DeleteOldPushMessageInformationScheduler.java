@@ -6,7 +6,7 @@
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
  *
- *     http://www.apache.org/licenses/LICENSE-2.0
+ * 	http://www.apache.org/licenses/LICENSE-2.0
  *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
@@ -16,24 +16,181 @@
  */
 package org.jboss.aerogear.unifiedpush.service.metrics;
 
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+import org.jboss.aerogear.unifiedpush.utils.DateUtils;
+
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.Schedule;
+import javax.ejb.SessionContext;
 import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Retention of the push message history: deletes the outdated {@link org.jboss.aerogear.unifiedpush.api.PushMessageInformation}
+ * objects in batches of <code>aerogear.metrics.retention.batch-size</code> (default 1000), each batch in its own
+ * transaction, so the job neither holds all outdated objects in memory nor locks the table for the entire run.
+ *
+ * The history is kept for <code>aerogear.metrics.retention-days</code> days (default 30). The retention of a single
+ * PushApplication can be changed with <code>aerogear.metrics.retention-days.&lt;pushApplicationID&gt;</code>, a value
+ * of 0 (or less) keeps its history forever.
+ *
+ * Hourly {@link org.jboss.aerogear.unifiedpush.api.PushMetricRollup}s are kept for
+ * <code>aerogear.metrics.rollups.hourly-retention-days</code> days (default 90), the daily ones are kept forever.
+ */
 @Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 public class DeleteOldPushMessageInformationScheduler {
 
+    private static final String RETENTION_DAYS_PROPERTY = "aerogear.metrics.retention-days";
+    private static final int DEFAULT_RETENTION_DAYS = 30;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_HOURLY_ROLLUP_RETENTION_DAYS = 90;
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(DeleteOldPushMessageInformationScheduler.class);
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong deletedInRun = new AtomicLong();
+    private final AtomicLong batchesInRun = new AtomicLong();
+    private final AtomicLong totalDeleted = new AtomicLong();
+    private volatile long runStarted;
+    private volatile long lastRunStarted;
+    private volatile long lastRunMillis;
+    private volatile long deletedInLastRun;
+
     @Inject
     private PushMessageMetricsService service;
 
+    @Inject
+    private PushMetricRollupService rollupService;
+
+    @Resource
+    private SessionContext context;
+
     /**
      * Job that triggers a delete of outdated metric information from the Server.
      *
      * Note: Occurring every day at midnight in the default time zone associated with the container
      * in which the application is executing. These are the default values from the @Schedule annotation.
      */
-    @Schedule
-    public void deleteOutdatedMetrics(){
-        service.deleteOutdatedPushInformationData();
+    @Schedule(persistent = false)
+    public void deleteOutdatedMetrics() {
+        if (!running.compareAndSet(false, true)) {
+            logger.warning("Previous deletion of outdated push message information is still running, skipping this one");
+            return;
+        }
+        try {
+            runStarted = System.currentTimeMillis();
+            deletedInRun.set(0);
+            batchesInRun.set(0);
+
+            final int batchSize = Math.max(1, ConfigurationUtils.tryGetIntegerProperty("aerogear.metrics.retention.batch-size", DEFAULT_BATCH_SIZE));
+            final int defaultRetentionDays = ConfigurationUtils.tryGetIntegerProperty(RETENTION_DAYS_PROPERTY, DEFAULT_RETENTION_DAYS);
+            final Map<String, Integer> retentionDaysByApplication = retentionDaysByApplication();
+
+            // applications with their own retention first, they are left out of the default one:
+            for (Map.Entry<String, Integer> retention : retentionDaysByApplication.entrySet()) {
+                if (retention.getValue() > 0) {
+                    deleteOutdated(retention.getKey(), DateUtils.calculatePastDate(retention.getValue()), Collections.<String>emptySet(), batchSize);
+                }
+            }
+            if (defaultRetentionDays > 0) {
+                deleteOutdated(null, DateUtils.calculatePastDate(defaultRetentionDays), retentionDaysByApplication.keySet(), batchSize);
+            }
+
+            final int hourlyRollupRetentionDays = ConfigurationUtils.tryGetIntegerProperty("aerogear.metrics.rollups.hourly-retention-days", DEFAULT_HOURLY_ROLLUP_RETENTION_DAYS);
+            if (hourlyRollupRetentionDays > 0) {
+                final int deletedRollups = context.getBusinessObject(DeleteOldPushMessageInformationScheduler.class)
+                        .deleteHourlyRollups(DateUtils.calculatePastDate(hourlyRollupRetentionDays));
+                logger.fine("Deleted " + deletedRollups + " outdated hourly rollups");
+            }
+        } catch (Exception e) {
+            logger.severe("Error deleting outdated push message information", e);
+        } finally {
+            lastRunStarted = runStarted;
+            lastRunMillis = System.currentTimeMillis() - runStarted;
+            deletedInLastRun = deletedInRun.get();
+            running.set(false);
+
+            logger.info("Deleted " + deletedInLastRun + " outdated push message information objects in " + batchesInRun.get()
+                    + " batches, took " + lastRunMillis + "ms (" + perSecond(deletedInLastRun, lastRunMillis) + " per second)");
+        }
+    }
+
+    /**
+     * Deletes one batch of outdated push message information, in its own transaction.
+     *
+     * Not intended to be called directly, use {@link #deleteOutdatedMetrics()}.
+     *
+     * @param pushApplicationID the application to clean up, or <code>null</code> for all but the excluded ones
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int deleteBatch(String pushApplicationID, Date oldest, Collection<String> excludedPushApplicationIDs, int batchSize) {
+        if (pushApplicationID != null) {
+            return service.deleteOutdatedPushInformationData(pushApplicationID, oldest, batchSize);
+        }
+        return service.deleteOutdatedPushInformationData(oldest, excludedPushApplicationIDs, batchSize);
+    }
+
+    /**
+     * Deletes the outdated hourly rollups, in its own transaction.
+     *
+     * Not intended to be called directly, use {@link #deleteOutdatedMetrics()}.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int deleteHourlyRollups(Date oldest) {
+        return rollupService.deleteOutdatedHourlyRollups(oldest);
+    }
+
+    /**
+     * Progress of the running deletion, and the outcome of the last one.
+     */
+    public RetentionStatistics getStatistics() {
+        final boolean isRunning = running.get();
+        final long elapsed = isRunning ? System.currentTimeMillis() - runStarted : 0;
+        final long deleted = isRunning ? deletedInRun.get() : 0;
+
+        return new RetentionStatistics(isRunning, deleted, perSecond(deleted, elapsed),
+                lastRunStarted == 0 ? null : new Date(lastRunStarted), deletedInLastRun, lastRunMillis,
+                perSecond(deletedInLastRun, lastRunMillis), totalDeleted.get());
+    }
+
+    private void deleteOutdated(String pushApplicationID, Date oldest, Collection<String> excludedPushApplicationIDs, int batchSize) {
+        final DeleteOldPushMessageInformationScheduler self = context.getBusinessObject(DeleteOldPushMessageInformationScheduler.class);
+
+        int deleted;
+        do {
+            deleted = self.deleteBatch(pushApplicationID, oldest, excludedPushApplicationIDs, batchSize);
+
+            batchesInRun.incrementAndGet();
+            deletedInRun.addAndGet(deleted);
+            totalDeleted.addAndGet(deleted);
+            logger.fine("Deleted a batch of " + deleted + " outdated push message information objects, "
+                    + deletedInRun.get() + " in this run so far");
+        } while (deleted == batchSize);
+    }
+
+    private static Map<String, Integer> retentionDaysByApplication() {
+        final Map<String, Integer> retentionDays = new HashMap<String, Integer>();
+        for (String pushApplicationID : ConfigurationUtils.tryGetPropertiesWithPrefix(RETENTION_DAYS_PROPERTY + ".").keySet()) {
+            retentionDays.put(pushApplicationID, ConfigurationUtils.tryGetIntegerProperty(RETENTION_DAYS_PROPERTY + "." + pushApplicationID, DEFAULT_RETENTION_DAYS));
+        }
+        return retentionDays;
+    }
+
+    private static long perSecond(long count, long millis) {
+        return millis <= 0 ? count : count * 1000 / millis;
     }
 }
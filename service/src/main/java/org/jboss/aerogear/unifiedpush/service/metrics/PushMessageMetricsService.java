@@ -17,12 +17,16 @@
 package org.jboss.aerogear.unifiedpush.service.metrics;
 
 import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.VariantMetricInformation;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dao.PushMessageInformationDao;
-import org.jboss.aerogear.unifiedpush.utils.DateUtils;
+import org.jboss.aerogear.unifiedpush.service.cache.CountCache;
+import org.jboss.aerogear.unifiedpush.service.dashboard.VariantsWithWarnings;
 
 import javax.inject.Inject;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Service class to handle different aspects of the Push Message Information metadata for the "Push Message History" view
@@ -30,13 +34,18 @@ import java.util.Date;
  */
 public class PushMessageMetricsService {
 
-    // that's what we currently use as the maximum days the message information objects are stored
-    // before wiped out automatically by the DeleteOldPushMessageInformationScheduler
-    private final static int DAYS_OF_MAX_OLDEST_INFO_MSG = 30;
-
     @Inject
     private PushMessageInformationDao pushMessageInformationDao;
 
+    @Inject
+    private CountCache countCache;
+
+    @Inject
+    private VariantsWithWarnings variantsWithWarnings;
+
+    @Inject
+    private PushMetricRollupService rollupService;
+
     /**
      * Starts the capturing of metadata around a push message request.
      *
@@ -68,6 +77,37 @@ public class PushMessageMetricsService {
         pushMessageInformationDao.update(pushMessageInformation);
     }
 
+    /**
+     * Adds the given (aggregated) outcomes to the stored {@link org.jboss.aerogear.unifiedpush.api.PushMessageInformation}
+     * object. An outcome of a variant, with the same delivery status and reason as an already stored one, is added to
+     * the stored one, instead of being stored again. The outcomes are added to the hourly and daily rollups as well.
+     */
+    public void addVariantInformations(String pushMessageInformationId, Collection<VariantMetricInformation> variantInformations) {
+        final PushMessageInformation pushMessageInformation = pushMessageInformationDao.find(pushMessageInformationId);
+        if (pushMessageInformation == null) {
+            // deleted in the meantime, nothing to update
+            return;
+        }
+
+        rollupService.addOutcomes(pushMessageInformation, variantInformations);
+
+        for (VariantMetricInformation variantInformation : variantInformations) {
+            final VariantMetricInformation stored = findSameOutcome(pushMessageInformation, variantInformation);
+            if (stored != null) {
+                stored.setReceivers(stored.getReceivers() + variantInformation.getReceivers());
+            } else {
+                pushMessageInformation.getVariantInformations().add(variantInformation);
+            }
+            pushMessageInformation.setTotalReceivers(pushMessageInformation.getTotalReceivers() + variantInformation.getReceivers());
+
+            if (Boolean.FALSE.equals(variantInformation.getDeliveryStatus())) {
+                variantsWithWarnings.failureRecorded(variantInformation.getVariantID());
+            }
+        }
+
+        pushMessageInformationDao.update(pushMessageInformation);
+    }
+
     /**
      * Returns a list of metadata objects for the given Push Application
      */
@@ -83,11 +123,85 @@ public class PushMessageMetricsService {
     }
 
     /**
-     *  We trigger a delete of all {@link org.jboss.aerogear.unifiedpush.api.PushMessageInformation} objects that are
-     *  <i>older</i> than 30 days!
+     * Returns the next page of metadata objects for the given Push Application, continuing after the given
+     * (last) object of the previous page, if any.
+     */
+    public List<PushMessageInformation> findAllForPushApplicationAfter(String pushApplicationID, boolean sorting, Date lastSubmitDate, String lastId, int pageSize) {
+        return pushMessageInformationDao.findAllForPushApplicationAfter(pushApplicationID, sorting, lastSubmitDate, lastId, pageSize);
+    }
+
+    /**
+     * Returns the next page of metadata objects for the given Variant, continuing after the given (last) object of
+     * the previous page, if any.
+     */
+    public List<PushMessageInformation> findAllForVariantAfter(String variantID, boolean sorting, Date lastSubmitDate, String lastId, int pageSize) {
+        return pushMessageInformationDao.findAllForVariantAfter(variantID, sorting, lastSubmitDate, lastId, pageSize);
+    }
+
+    /**
+     * Counts the metadata objects for the given Push Application.
+     * @param exact if <code>false</code> a recently counted (approximate) total is fine
+     */
+    public long countForPushApplication(String pushApplicationID, boolean exact) {
+        final String key = "messages-application:" + pushApplicationID;
+        final Long cachedCount = exact ? null : countCache.get(key);
+        if (cachedCount != null) {
+            return cachedCount;
+        }
+
+        final long count = pushMessageInformationDao.countForPushApplication(pushApplicationID);
+        countCache.put(key, count);
+        return count;
+    }
+
+    /**
+     * Counts the metadata objects for the given Variant.
+     * @param exact if <code>false</code> a recently counted (approximate) total is fine
+     */
+    public long countForVariant(String variantID, boolean exact) {
+        final String key = "messages-variant:" + variantID;
+        final Long cachedCount = exact ? null : countCache.get(key);
+        if (cachedCount != null) {
+            return cachedCount;
+        }
+
+        final long count = pushMessageInformationDao.countForVariant(variantID);
+        countCache.put(key, count);
+        return count;
+    }
+
+    private static VariantMetricInformation findSameOutcome(PushMessageInformation pushMessageInformation, VariantMetricInformation variantInformation) {
+        for (VariantMetricInformation stored : pushMessageInformation.getVariantInformations()) {
+            if (isEqual(stored.getVariantID(), variantInformation.getVariantID())
+                    && isEqual(stored.getDeliveryStatus(), variantInformation.getDeliveryStatus())
+                    && isEqual(stored.getReason(), variantInformation.getReason())) {
+                return stored;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Deletes a batch of the oldest {@link org.jboss.aerogear.unifiedpush.api.PushMessageInformation} objects that are
+     * older than the given date, except for those of the given Push Applications.
+     *
+     * @return the number of deleted objects, less than <code>batchSize</code> if there are no more outdated ones
+     */
+    public int deleteOutdatedPushInformationData(Date oldest, Collection<String> excludedPushApplicationIDs, int batchSize) {
+        return pushMessageInformationDao.deletePushInformationOlderThan(oldest, excludedPushApplicationIDs, batchSize);
+    }
+
+    /**
+     * Deletes a batch of the oldest {@link org.jboss.aerogear.unifiedpush.api.PushMessageInformation} objects of the given
+     * Push Application that are older than the given date.
+     *
+     * @return the number of deleted objects, less than <code>batchSize</code> if there are no more outdated ones
      */
-    public void deleteOutdatedPushInformationData() {
-        final Date historyDate = DateUtils.calculatePastDate(DAYS_OF_MAX_OLDEST_INFO_MSG);
-        pushMessageInformationDao.deletePushInformationOlderThan(historyDate);
+    public int deleteOutdatedPushInformationData(String pushApplicationID, Date oldest, int batchSize) {
+        return pushMessageInformationDao.deletePushInformationOlderThan(pushApplicationID, oldest, batchSize);
     }
 }
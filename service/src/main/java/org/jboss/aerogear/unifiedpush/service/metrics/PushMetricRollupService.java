@@ -0,0 +1,110 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import org.jboss.aerogear.unifiedpush.api.PushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.PushMetricRollup;
+import org.jboss.aerogear.unifiedpush.api.RollupPeriod;
+import org.jboss.aerogear.unifiedpush.api.VariantMetricInformation;
+import org.jboss.aerogear.unifiedpush.dao.PushMetricRollupDao;
+
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains the hourly and daily {@link PushMetricRollup}s of the PushApplications and their variants, so that charts
+ * over long periods are read from a few pre-aggregated rows instead of the (raw) push message history.
+ */
+public class PushMetricRollupService {
+
+    @Inject
+    private PushMetricRollupDao pushMetricRollupDao;
+
+    /**
+     * Adds the given outcomes of a push message to the rollups of the bucket of its submit date.
+     *
+     * Needs to be invoked <i>before</i> the outcomes are added to the given {@link PushMessageInformation} object: the
+     * message counts as sent (to a variant) with its first outcome (for the variant).
+     */
+    public void addOutcomes(PushMessageInformation pushMessageInformation, Collection<VariantMetricInformation> variantInformations) {
+        final Set<String> knownVariantIDs = new HashSet<String>();
+        for (VariantMetricInformation stored : pushMessageInformation.getVariantInformations()) {
+            knownVariantIDs.add(stored.getVariantID());
+        }
+
+        for (RollupPeriod period : RollupPeriod.values()) {
+            final Date periodStart = period.startOf(pushMessageInformation.getSubmitDate());
+            final String pushApplicationId = pushMessageInformation.getPushApplicationId();
+
+            final PushMetricRollup applicationTotal = new PushMetricRollup(period, periodStart, pushApplicationId, null);
+            applicationTotal.setSends(knownVariantIDs.isEmpty() ? 1 : 0);
+
+            final Map<String, PushMetricRollup> variantTotals = new LinkedHashMap<String, PushMetricRollup>();
+            for (VariantMetricInformation variantInformation : variantInformations) {
+                PushMetricRollup variantTotal = variantTotals.get(variantInformation.getVariantID());
+                if (variantTotal == null) {
+                    variantTotal = new PushMetricRollup(period, periodStart, pushApplicationId, variantInformation.getVariantID());
+                    variantTotal.setSends(knownVariantIDs.contains(variantInformation.getVariantID()) ? 0 : 1);
+                    variantTotals.put(variantInformation.getVariantID(), variantTotal);
+                }
+                addOutcome(variantTotal, variantInformation);
+                addOutcome(applicationTotal, variantInformation);
+            }
+
+            pushMetricRollupDao.addToRollup(applicationTotal);
+            for (PushMetricRollup variantTotal : variantTotals.values()) {
+                pushMetricRollupDao.addToRollup(variantTotal);
+            }
+        }
+    }
+
+    /**
+     * Returns the rollups of the given PushApplication, for the buckets starting within the given range.
+     */
+    public List<PushMetricRollup> findForPushApplication(String pushApplicationID, RollupPeriod period, Date from, Date to) {
+        return pushMetricRollupDao.findForPushApplication(pushApplicationID, period, from, to);
+    }
+
+    /**
+     * Returns the rollups of the given Variant, for the buckets starting within the given range.
+     */
+    public List<PushMetricRollup> findForVariant(String variantID, RollupPeriod period, Date from, Date to) {
+        return pushMetricRollupDao.findForVariant(variantID, period, from, to);
+    }
+
+    /**
+     * Deletes the hourly rollups of buckets that started before the given date, the daily ones are kept.
+     */
+    public int deleteOutdatedHourlyRollups(Date oldest) {
+        return pushMetricRollupDao.deleteRollupsOlderThan(RollupPeriod.HOUR, oldest);
+    }
+
+    private static void addOutcome(PushMetricRollup rollup, VariantMetricInformation variantInformation) {
+        rollup.setReceivers(rollup.getReceivers() + variantInformation.getReceivers());
+        if (Boolean.TRUE.equals(variantInformation.getDeliveryStatus())) {
+            rollup.setSuccesses(rollup.getSuccesses() + variantInformation.getReceivers());
+        } else {
+            rollup.setFailures(rollup.getFailures() + variantInformation.getReceivers());
+        }
+    }
+}
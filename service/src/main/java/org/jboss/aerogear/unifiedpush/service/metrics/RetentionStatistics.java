@@ -0,0 +1,87 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.util.Date;
+
+/**
+ * Snapshot of the progress of the {@link DeleteOldPushMessageInformationScheduler}.
+ */
+public class RetentionStatistics {
+
+    private final boolean running;
+    private final long deletedInCurrentRun;
+    private final long currentDeletesPerSecond;
+    private final Date lastRunStarted;
+    private final long deletedInLastRun;
+    private final long lastRunMillis;
+    private final long lastRunDeletesPerSecond;
+    private final long totalDeleted;
+
+    public RetentionStatistics(boolean running, long deletedInCurrentRun, long currentDeletesPerSecond, Date lastRunStarted,
+                               long deletedInLastRun, long lastRunMillis, long lastRunDeletesPerSecond, long totalDeleted) {
+        this.running = running;
+        this.deletedInCurrentRun = deletedInCurrentRun;
+        this.currentDeletesPerSecond = currentDeletesPerSecond;
+        this.lastRunStarted = lastRunStarted;
+        this.deletedInLastRun = deletedInLastRun;
+        this.lastRunMillis = lastRunMillis;
+        this.lastRunDeletesPerSecond = lastRunDeletesPerSecond;
+        this.totalDeleted = totalDeleted;
+    }
+
+    /**
+     * Whether a deletion is running right now.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getDeletedInCurrentRun() {
+        return deletedInCurrentRun;
+    }
+
+    public long getCurrentDeletesPerSecond() {
+        return currentDeletesPerSecond;
+    }
+
+    /**
+     * Start of the last finished deletion, <code>null</code> if there was none since the server started.
+     */
+    public Date getLastRunStarted() {
+        return lastRunStarted;
+    }
+
+    public long getDeletedInLastRun() {
+        return deletedInLastRun;
+    }
+
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+
+    public long getLastRunDeletesPerSecond() {
+        return lastRunDeletesPerSecond;
+    }
+
+    /**
+     * Number of objects deleted since the server started.
+     */
+    public long getTotalDeleted() {
+        return totalDeleted;
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.registration;
+
+import org.jboss.aerogear.unifiedpush.api.Installation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.service.util.CoalescingFlush;
+import org.jboss.aerogear.unifiedpush.utils.AeroGearLogger;
+import org.jboss.aerogear.unifiedpush.utils.ConfigurationUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.SessionContext;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Optional write-behind mode for device registrations (<code>aerogear.registration.write-behind.enabled</code>,
+ * off by default).
+ *
+ * Registrations are queued in memory, coalesced by variant and device token (the latest registration wins), and
+ * written by a background flush in batches of <code>aerogear.registration.write-behind.batch-size</code> (default 500)
+ * installations, one transaction per batch. A flush happens as soon as a batch is full, or every
+ * <code>aerogear.registration.write-behind.flush-interval</code> milliseconds (default 250), which bounds the lag.
+ *
+ * Pending registrations only live in memory: they are flushed on a regular shutdown, but lost when the server
+ * crashes. The amount at risk is bounded by <code>aerogear.registration.write-behind.max-pending</code> (default 10000):
+ * once it is reached, {@link #enqueue(Variant, Installation)} refuses new registrations and the caller has to
+ * write them directly.
+ *
+ * Where no registration may be lost, <code>aerogear.registration.write-behind.synchronous</code> (off by default)
+ * makes {@link #enqueue(Variant, Installation)} return only once the registration has been written. The
+ * registrations of concurrent requests are still coalesced, and written together in one transaction per batch.
+ * A registration that could not be written is handed back to the caller, see {@link #isSynchronous()}.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class InstallationWriteBehindQueue {
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_FLUSH_INTERVAL = 250;
+    private static final int DEFAULT_MAX_PENDING = 10000;
+
+    private final AeroGearLogger logger = AeroGearLogger.getInstance(InstallationWriteBehindQueue.class);
+
+    private final ConcurrentMap<String, PendingRegistration> pendingRegistrations = new ConcurrentHashMap<String, PendingRegistration>();
+    private final CoalescingFlush flush = new CoalescingFlush() {
+        @Override
+        protected void flushInBackground() {
+            context.getBusinessObject(InstallationWriteBehindQueue.class).flushInBackground();
+        }
+
+        @Override
+        protected void write() {
+            writePending();
+        }
+    };
+
+    private boolean enabled;
+    private boolean synchronous;
+    private int batchSize;
+    private int maxPending;
+
+    @Resource
+    private TimerService timerService;
+
+    @Resource
+    private SessionContext context;
+
+    @Inject
+    private ClientInstallationService clientInstallationService;
+
+    @PostConstruct
+    public void init() {
+        enabled = ConfigurationUtils.tryGetBooleanProperty("aerogear.registration.write-behind.enabled", false);
+        batchSize = Math.max(1, ConfigurationUtils.tryGetIntegerProperty("aerogear.registration.write-behind.batch-size", DEFAULT_BATCH_SIZE));
+        maxPending = Math.max(batchSize, ConfigurationUtils.tryGetIntegerProperty("aerogear.registration.write-behind.max-pending", DEFAULT_MAX_PENDING));
+        synchronous = ConfigurationUtils.tryGetBooleanProperty("aerogear.registration.write-behind.synchronous", false);
+
+        if (enabled) {
+            final long flushInterval = Math.max(1, ConfigurationUtils.tryGetLongProperty("aerogear.registration.write-behind.flush-interval", DEFAULT_FLUSH_INTERVAL));
+            logger.info("Write-behind for device registrations enabled, batch size: " + batchSize + ", flush interval: " + flushInterval + "ms"
+                    + (synchronous ? ", synchronous" : ""));
+
+            timerService.createIntervalTimer(flushInterval, flushInterval, new TimerConfig(null, false));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether {@link #enqueue(Variant, Installation)} waits until the registration has been written. A caller that
+     * gets <code>false</code> from it in this mode has to write the installation directly, before answering the device.
+     */
+    public boolean isSynchronous() {
+        return enabled && synchronous;
+    }
+
+    /**
+     * Queues the registration of the given installation for the given variant. In synchronous mode, waits until the
+     * registration has been written.
+     *
+     * @return <code>false</code> if write-behind is disabled, if too many registrations are pending, or (in synchronous
+     * mode) if the registration could not be written. The caller has to write the installation directly in that case.
+     */
+    public boolean enqueue(Variant variant, Installation installation) {
+        if (!enabled) {
+            return false;
+        }
+
+        final String key = keyFor(variant.getVariantID(), installation.getDeviceToken());
+        if (pendingRegistrations.size() >= maxPending && !pendingRegistrations.containsKey(key)) {
+            return false;
+        }
+        final PendingRegistration registration = new PendingRegistration(variant, installation);
+        pendingRegistrations.put(key, registration);
+
+        if (synchronous) {
+            // together with the registrations of the concurrent requests:
+            flush.flushAndWait();
+            return !registration.failed;
+        } else if (pendingRegistrations.size() >= batchSize) {
+            flush.request();
+        }
+        return true;
+    }
+
+    /**
+     * Drops a pending (not yet written) registration, e.g. when the device unregisters.
+     *
+     * @return <code>true</code> if a registration was pending
+     */
+    public boolean discard(String variantID, String deviceToken) {
+        return enabled && pendingRegistrations.remove(keyFor(variantID, deviceToken)) != null;
+    }
+
+    /**
+     * Number of registrations that have not been written yet.
+     */
+    public int getPendingCount() {
+        return pendingRegistrations.size();
+    }
+
+    @Asynchronous
+    public void flushInBackground() {
+        flush.flush();
+    }
+
+    @Timeout
+    public void onFlushInterval() {
+        flush.flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush.flushAndWait();
+    }
+
+    /**
+     * Writes all pending registrations, batch by batch. Invoked by the {@link CoalescingFlush}, one flush at a time.
+     */
+    private void writePending() {
+        int written;
+        do {
+            written = 0;
+            for (Map.Entry<Variant, List<PendingRegistration>> batch : nextBatch().entrySet()) {
+                write(batch.getKey(), batch.getValue());
+                written += batch.getValue().size();
+            }
+        } while (written >= batchSize);
+    }
+
+    /**
+     * Takes up to <code>batchSize</code> pending registrations off the queue, grouped by variant.
+     */
+    private Map<Variant, List<PendingRegistration>> nextBatch() {
+        final Map<String, Variant> variants = new LinkedHashMap<String, Variant>();
+        final Map<Variant, List<PendingRegistration>> batch = new LinkedHashMap<Variant, List<PendingRegistration>>();
+
+        int size = 0;
+        final Iterator<Map.Entry<String, PendingRegistration>> iterator = pendingRegistrations.entrySet().iterator();
+        while (size < batchSize && iterator.hasNext()) {
+            final Map.Entry<String, PendingRegistration> entry = iterator.next();
+            final PendingRegistration registration = entry.getValue();
+
+            // a newer registration for the same token could have replaced this one in the meantime:
+            if (!pendingRegistrations.remove(entry.getKey(), registration)) {
+                continue;
+            }
+
+            // group by variantID, the queued Variant objects are not necessarily the same instance:
+            Variant variant = variants.get(registration.variant.getVariantID());
+            if (variant == null) {
+                variant = registration.variant;
+                variants.put(variant.getVariantID(), variant);
+                batch.put(variant, new ArrayList<PendingRegistration>());
+            }
+            batch.get(variant).add(registration);
+            size++;
+        }
+        return batch;
+    }
+
+    private void write(Variant variant, List<PendingRegistration> registrations) {
+        final List<Installation> installations = new ArrayList<Installation>(registrations.size());
+        for (PendingRegistration registration : registrations) {
+            installations.add(registration.installation);
+        }
+
+        try {
+            clientInstallationService.addOrUpdateInstallations(variant, installations);
+        } catch (Exception e) {
+            logger.warning("Could not write a batch of " + installations.size() + " registrations, writing them one by one: " + e.getMessage());
+
+            // one invalid installation should not cost the entire batch:
+            for (PendingRegistration registration : registrations) {
+                try {
+                    clientInstallationService.addOrUpdateInstallations(variant, Collections.singletonList(registration.installation));
+                } catch (Exception ex) {
+                    // in synchronous mode, the waiting caller writes it directly:
+                    registration.failed = true;
+                    logger.severe("Could not write registration of device with token '" + registration.installation.getDeviceToken() + "'", ex);
+                }
+            }
+        }
+    }
+
+    private static String keyFor(String variantID, String deviceToken) {
+        return variantID + ':' + deviceToken;
+    }
+
+    private static class PendingRegistration {
+        private final Variant variant;
+        private final Installation installation;
+        private volatile boolean failed;
+
+        PendingRegistration(Variant variant, Installation installation) {
+            this.variant = variant;
+            this.installation = installation;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Flushes an in-memory write-behind buffer, e.g. of registrations or delivery metrics.
+ *
+ * Requests for a background flush are coalesced, only one of them is queued at a time. Flushes never run
+ * concurrently: {@link #flush()} returns immediately while another flush is running, and {@link #flushAndWait()}
+ * waits for it. A request that arrives while a flush is running is served by another background flush once the
+ * running one has finished.
+ */
+public abstract class CoalescingFlush {
+
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Requests a flush in the background, unless one has been requested already and has not started yet.
+     */
+    public void request() {
+        if (requested.compareAndSet(false, true)) {
+            flushInBackground();
+        }
+    }
+
+    /**
+     * Writes the pending entries, unless a flush is running already.
+     */
+    public void flush() {
+        if (!lock.tryLock()) {
+            // the running flush requests another one when it is done, see unlock()
+            return;
+        }
+        try {
+            requested.set(false);
+            write();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Writes the pending entries, waiting for a running flush to finish first. Once this method returns, everything
+     * that was pending when it was called has been written.
+     */
+    public void flushAndWait() {
+        lock.lock();
+        try {
+            requested.set(false);
+            write();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Releases the lock, and starts another background flush for the requests that came in while writing: their
+     * background flush found the lock taken, and did not write anything.
+     */
+    private void unlock() {
+        lock.unlock();
+        if (requested.get()) {
+            flushInBackground();
+        }
+    }
+
+    /**
+     * Hands the flush over to a background thread, e.g. to an <code>@Asynchronous</code> method that calls
+     * {@link #flush()}.
+     */
+    protected abstract void flushInBackground();
+
+    /**
+     * Writes all pending entries. Never invoked concurrently.
+     */
+    protected abstract void write();
+}
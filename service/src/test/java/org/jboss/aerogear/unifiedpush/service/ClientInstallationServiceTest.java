@@ -22,11 +22,16 @@ import org.apache.openejb.mockito.MockitoInjector;
 import org.apache.openejb.testing.MockInjector;
 import org.apache.openejb.testing.Module;
 import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.Category;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAInstallationDao;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAPushApplicationDao;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAPushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAVariantDao;
+import org.jboss.aerogear.unifiedpush.service.cache.CountCache;
+import org.jboss.aerogear.unifiedpush.service.cache.CredentialCache;
+import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardCounters;
+import org.jboss.aerogear.unifiedpush.service.dashboard.VariantsWithWarnings;
 import org.jboss.aerogear.unifiedpush.service.impl.ClientInstallationServiceImpl;
 import org.jboss.aerogear.unifiedpush.service.impl.GenericVariantServiceImpl;
 import org.jboss.aerogear.unifiedpush.service.impl.PushApplicationServiceImpl;
@@ -44,6 +49,8 @@ import org.mockito.Mock;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
 
@@ -92,6 +99,10 @@ public class ClientInstallationServiceTest extends AbstractBaseServiceTest {
         beans.addManagedClass(JPAPushMessageInformationDao.class);
         beans.addManagedClass(JPAInstallationDao.class);
         beans.addManagedClass(GenericVariantServiceImpl.class);
+        beans.addManagedClass(CredentialCache.class);
+        beans.addManagedClass(DashboardCounters.class);
+        beans.addManagedClass(VariantsWithWarnings.class);
+        beans.addManagedClass(CountCache.class);
         beans.addManagedClass(JPAVariantDao.class);
         beans.addManagedClass(PushSearchByDeveloperServiceImpl.class);
         beans.addManagedClass(PushApplicationServiceImpl.class);
@@ -158,6 +169,59 @@ public class ClientInstallationServiceTest extends AbstractBaseServiceTest {
         assertThat(clientInstallationService.findAllDeviceTokenForVariantIDByCriteria(androidVariant.getVariantID(), null, null, null)).hasSize(1);
     }
 
+    @Test
+    public void reRegisterDeviceWithSameAndChangedMetadata() {
+        Installation device = new Installation();
+        String deviceToken = generateFakedDeviceTokenString();
+        device.setDeviceToken(deviceToken);
+        device.setAlias("username");
+        device.setCategories(new HashSet<Category>(Arrays.asList(new Category("soccer"))));
+        clientInstallationService.addInstallation(androidVariant, device);
+
+        // same metadata, again:
+        Installation sameRegistration = new Installation();
+        sameRegistration.setDeviceToken(deviceToken);
+        sameRegistration.setAlias("username");
+        sameRegistration.setCategories(new HashSet<Category>(Arrays.asList(new Category("soccer"))));
+        clientInstallationService.addInstallation(androidVariant, sameRegistration);
+
+        Installation stored = clientInstallationService.findInstallationForVariantByDeviceToken(androidVariant.getVariantID(), deviceToken);
+        assertThat(stored.getAlias()).isEqualTo("username");
+        assertThat(stored.getCategories()).hasSize(1);
+
+        // changed categories:
+        Installation changedRegistration = new Installation();
+        changedRegistration.setDeviceToken(deviceToken);
+        changedRegistration.setAlias("username");
+        changedRegistration.setCategories(new HashSet<Category>(Arrays.asList(new Category("soccer"), new Category("football"))));
+        clientInstallationService.addInstallation(androidVariant, changedRegistration);
+
+        stored = clientInstallationService.findInstallationForVariantByDeviceToken(androidVariant.getVariantID(), deviceToken);
+        assertThat(stored.getCategories()).hasSize(2);
+        assertThat(clientInstallationService.findAllDeviceTokenForVariantIDByCriteria(androidVariant.getVariantID(), null, null, null)).hasSize(1);
+    }
+
+    @Test
+    public void addOrUpdateDevicesInOneGo() {
+        Installation device = new Installation();
+        String deviceToken = generateFakedDeviceTokenString();
+        device.setDeviceToken(deviceToken);
+        clientInstallationService.addInstallation(androidVariant, device);
+
+        // one update, one new device:
+        Installation sameDeviceDifferentRegistration = new Installation();
+        sameDeviceDifferentRegistration.setDeviceToken(deviceToken);
+        sameDeviceDifferentRegistration.setAlias("username");
+
+        Installation otherDevice = new Installation();
+        otherDevice.setDeviceToken(generateFakedDeviceTokenString());
+
+        clientInstallationService.addOrUpdateInstallations(androidVariant, Arrays.asList(sameDeviceDifferentRegistration, otherDevice));
+
+        assertThat(clientInstallationService.findAllDeviceTokenForVariantIDByCriteria(androidVariant.getVariantID(), null, null, null)).hasSize(2);
+        assertThat(clientInstallationService.findInstallationForVariantByDeviceToken(androidVariant.getVariantID(), deviceToken).getAlias()).isEqualTo("username");
+    }
+
     @Test
     public void importDevicesWithAndWithoutTokenDuplicates() {
 
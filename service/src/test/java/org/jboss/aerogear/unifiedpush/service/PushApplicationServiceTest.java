@@ -27,6 +27,9 @@ import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAInstallationDao;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAPushApplicationDao;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAPushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAVariantDao;
+import org.jboss.aerogear.unifiedpush.service.cache.CredentialCache;
+import org.jboss.aerogear.unifiedpush.service.dashboard.DashboardCounters;
+import org.jboss.aerogear.unifiedpush.service.dashboard.VariantsWithWarnings;
 import org.jboss.aerogear.unifiedpush.service.impl.PushApplicationServiceImpl;
 import org.jboss.aerogear.unifiedpush.service.impl.PushSearchByDeveloperServiceImpl;
 import org.jboss.aerogear.unifiedpush.service.impl.PushSearchServiceImpl;
@@ -91,6 +94,9 @@ public class PushApplicationServiceTest extends AbstractBaseServiceTest {
         beans.addManagedClass(JPAInstallationDao.class);
         beans.addManagedClass(JPAPushMessageInformationDao.class);
         beans.addManagedClass(PushApplicationServiceImpl.class);
+        beans.addManagedClass(CredentialCache.class);
+        beans.addManagedClass(DashboardCounters.class);
+        beans.addManagedClass(VariantsWithWarnings.class);
         beans.addManagedClass(JPAPushApplicationDao.class);
         beans.addManagedClass(PushSearchByDeveloperServiceImpl.class);
         beans.addManagedClass(PushSearchServiceImpl.class);
@@ -0,0 +1,72 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExpiringCacheTest {
+
+    @Test
+    public void returnsCachedValue() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<String, String>(10, 1, TimeUnit.MINUTES);
+        cache.put("key", "value");
+
+        assertThat(cache.get("key")).isEqualTo("value");
+        assertThat(cache.get("other")).isNull();
+    }
+
+    @Test
+    public void dropsExpiredValue() throws InterruptedException {
+        final ExpiringCache<String, String> cache = new ExpiringCache<String, String>(10, 10, TimeUnit.MILLISECONDS);
+        cache.put("key", "value");
+
+        Thread.sleep(50);
+
+        assertThat(cache.get("key")).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void dropsLeastRecentlyUsedValue() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<String, String>(2, 1, TimeUnit.MINUTES);
+        cache.put("one", "1");
+        cache.put("two", "2");
+        cache.get("one");
+        cache.put("three", "3");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("one")).isEqualTo("1");
+        assertThat(cache.get("two")).isNull();
+    }
+
+    @Test
+    public void removeAndClear() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<String, String>(10, 1, TimeUnit.MINUTES);
+        cache.put("one", "1");
+        cache.put("two", "2");
+
+        cache.remove("one");
+        assertThat(cache.get("one")).isNull();
+
+        cache.clear();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+}
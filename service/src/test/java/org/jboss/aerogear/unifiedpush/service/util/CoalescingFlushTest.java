@@ -0,0 +1,150 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CoalescingFlushTest {
+
+    @Test
+    public void coalescesRequests() {
+        final CountingFlush flush = new CountingFlush();
+
+        flush.request();
+        flush.request();
+        assertThat(flush.backgroundFlushes.get()).isEqualTo(1);
+
+        // once the queued flush has started, the next request queues another one:
+        flush.flush();
+        flush.request();
+        assertThat(flush.backgroundFlushes.get()).isEqualTo(2);
+        assertThat(flush.writes.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void skipsFlushWhileAnotherIsRunning() throws InterruptedException {
+        final BlockingFlush flush = new BlockingFlush();
+        final Thread running = start(flush);
+        assertThat(flush.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        flush.flush();
+        assertThat(flush.writes.get()).isEqualTo(1);
+
+        flush.release.countDown();
+        running.join(5000);
+        assertThat(flush.writes.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void servesRequestThatArrivedDuringFlush() throws InterruptedException {
+        final BlockingFlush flush = new BlockingFlush();
+        final Thread running = start(flush);
+        assertThat(flush.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // the background flush of this request finds the running flush:
+        flush.request();
+        flush.flush();
+        assertThat(flush.backgroundFlushes.get()).isEqualTo(1);
+
+        flush.release.countDown();
+        running.join(5000);
+
+        // once done, the running flush starts another one:
+        assertThat(flush.backgroundFlushes.get()).isEqualTo(2);
+        flush.flush();
+        flush.request();
+        assertThat(flush.backgroundFlushes.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void flushAndWaitWaitsForRunningFlush() throws InterruptedException {
+        final BlockingFlush flush = new BlockingFlush();
+        final Thread running = start(flush);
+        assertThat(flush.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        final CountDownLatch waited = new CountDownLatch(1);
+        final Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                flush.flushAndWait();
+                waited.countDown();
+            }
+        };
+        waiting.start();
+
+        assertThat(waited.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+        flush.release.countDown();
+        assertThat(waited.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(flush.writes.get()).isEqualTo(2);
+
+        running.join(5000);
+        waiting.join(5000);
+    }
+
+    private static Thread start(final CoalescingFlush flush) {
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                flush.flush();
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private static class CountingFlush extends CoalescingFlush {
+        final AtomicInteger backgroundFlushes = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+
+        @Override
+        protected void flushInBackground() {
+            backgroundFlushes.incrementAndGet();
+        }
+
+        @Override
+        protected void write() {
+            writes.incrementAndGet();
+        }
+    }
+
+    /**
+     * The first write blocks until released.
+     */
+    private static class BlockingFlush extends CountingFlush {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void write() {
+            if (writes.incrementAndGet() == 1) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}